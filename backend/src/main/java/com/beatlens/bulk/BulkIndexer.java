@@ -0,0 +1,391 @@
+package com.beatlens.bulk;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.config.CoreBeanConfig;
+import com.beatlens.core.AudioConstants;
+import com.beatlens.core.AudioProcessor;
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.PeakDetector;
+import com.beatlens.core.SongIds;
+import com.beatlens.core.SpectrogramGenerator;
+import com.beatlens.index.IndexManifest;
+import com.beatlens.index.IndexSegment;
+import com.beatlens.index.PostingBuffer;
+import com.beatlens.index.PostingSegment;
+import com.beatlens.index.SegmentFile;
+import com.beatlens.index.SegmentFileStore;
+import com.beatlens.index.SegmentedFingerprintIndex;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Offline bulk indexer: fingerprints a directory of audio files on all cores
+ * and writes the result as files PostgreSQL and the in-process index can load
+ * directly, without the web application, JPA or a database connection.
+ *
+ * <h3>Output</h3>
+ * <pre>
+ * songs.pgcopy          songs rows, binary COPY format (see {@link PgBinaryCopyWriter})
+ * song_tags.pgcopy      song_tags rows (only with --tags)
+ * postings.pgcopy       postings rows (the compact V4 posting table)
+ * songs-manifest.tsv    id, file, title, artist, duration and fingerprint count of every song
+ * load.sql              psql script that loads the files and advances the songs sequence
+ * index/                index segments + manifest for beatlens.index.directory (with --segments)
+ * </pre>
+ *
+ * <p>Song IDs are assigned here, starting at {@code --first-id}, so the
+ * output is meant for an empty catalog or an ID range known to be free. The
+ * fingerprint pipeline is configured from the same {@code application.yml}
+ * as the server (optionally overridden by {@code --config}), so bulk-loaded
+ * fingerprints match those of songs uploaded later. Files are named
+ * {@code Artist - Title.ext}; otherwise the file name becomes the title.</p>
+ *
+ * <p>Run it from the packaged jar:</p>
+ * <pre>
+ * java -cp beatlens-backend.jar -Dloader.main=com.beatlens.bulk.BulkIndexer \
+ *      org.springframework.boot.loader.launch.PropertiesLauncher \
+ *      /music --out=/tmp/catalog --segments --catalog=backlist
+ * </pre>
+ */
+public final class BulkIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkIndexer.class);
+
+    private static final Set<String> AUDIO_EXTENSIONS = Set.of(
+            "wav", "mp3", "flac", "ogg", "oga", "opus", "m4a", "aac", "webm", "aiff", "aif");
+
+    /** Command-line options. */
+    record Options(Path input, Path output, int threads, long firstId, String catalog, Set<String> tags,
+                   boolean segments, int segmentPostings, Path config) {
+
+        static Options parse(String[] args) {
+            Path input = null;
+            Path output = Path.of("bulk-index");
+            int threads = Runtime.getRuntime().availableProcessors();
+            long firstId = 1;
+            String catalog = null;
+            Set<String> tags = Set.of();
+            boolean segments = false;
+            int segmentPostings = 20_000_000;
+            Path config = null;
+
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    if (input != null) throw new IllegalArgumentException("More than one input directory: " + arg);
+                    input = Path.of(arg);
+                    continue;
+                }
+                int eq = arg.indexOf('=');
+                String key = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+                String value = eq < 0 ? "true" : arg.substring(eq + 1);
+                switch (key) {
+                    case "out" -> output = Path.of(value);
+                    case "threads" -> threads = Integer.parseInt(value);
+                    case "first-id" -> firstId = Long.parseLong(value);
+                    case "catalog" -> catalog = value.isBlank() ? null : value.trim();
+                    case "tags" -> tags = Arrays.stream(value.split(","))
+                            .map(String::trim).filter(t -> !t.isEmpty())
+                            .collect(Collectors.toCollection(LinkedHashSet::new));
+                    case "segments" -> segments = Boolean.parseBoolean(value);
+                    case "segment-postings" -> segmentPostings = Integer.parseInt(value);
+                    case "config" -> config = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option --" + key);
+                }
+            }
+            if (input == null) {
+                throw new IllegalArgumentException("Usage: BulkIndexer <audio-dir> [--out=dir] [--threads=n] "
+                        + "[--first-id=n] [--catalog=name] [--tags=a,b] [--segments] "
+                        + "[--segment-postings=n] [--config=application.yml]");
+            }
+            if (threads < 1 || firstId < 1 || segmentPostings < 1) {
+                throw new IllegalArgumentException("--threads, --first-id and --segment-postings must be positive");
+            }
+            return new Options(input, output, threads, firstId, catalog, tags, segments, segmentPostings, config);
+        }
+    }
+
+    /** One fingerprinted file. */
+    private record Fingerprinted(Path file, String title, String artist, double durationSeconds,
+                                 List<FingerprintGenerator.Fingerprint> fingerprints) {}
+
+    private final Options options;
+    private final AudioProcessor audioProcessor;
+    private final SpectrogramGenerator spectrogramGenerator;
+    private final PeakDetector peakDetector;
+    private final FingerprintGenerator fingerprintGenerator;
+
+    BulkIndexer(Options options, AudioProperties props) {
+        this.options = options;
+        // Same wiring as the server, so fingerprints are identical
+        CoreBeanConfig core = new CoreBeanConfig();
+        this.audioProcessor = core.audioProcessor();
+        this.spectrogramGenerator = core.spectrogramGenerator(props);
+        this.peakDetector = core.peakDetector(props);
+        this.fingerprintGenerator = core.fingerprintGenerator(props);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        new BulkIndexer(options, loadProperties(options.config())).run();
+    }
+
+    /** Bind {@code beatlens.*} from the bundled application.yml, overlaid by {@code override} if given. */
+    static AudioProperties loadProperties(Path override) throws IOException {
+        YamlPropertySourceLoader loader = new YamlPropertySourceLoader();
+        List<PropertySource<?>> sources = new ArrayList<>();
+        if (override != null) {
+            sources.addAll(loader.load("override", new FileSystemResource(override)));
+        }
+        sources.addAll(loader.load("application", new ClassPathResource("application.yml")));
+        return new Binder(ConfigurationPropertySources.from(sources))
+                .bind("beatlens", AudioProperties.class)
+                .orElseGet(AudioProperties::new);
+    }
+
+    // ═══ Indexing ═══
+
+    void run() throws IOException, InterruptedException {
+        List<Path> files = listAudioFiles(options.input());
+        if (options.firstId() + files.size() - 1 > SongIds.MAX) {
+            throw new IllegalArgumentException("Song IDs would exceed the indexable maximum " + SongIds.MAX);
+        }
+        Files.createDirectories(options.output());
+        log.info("Bulk indexing {} files from {} on {} threads into {}",
+                files.size(), options.input(), options.threads(), options.output());
+
+        long started = System.nanoTime();
+        // Whole milliseconds, so the index watermark equals what the database reads back
+        LocalDateTime indexedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads(), r -> {
+            Thread t = new Thread(r, "bulk-indexer");
+            t.setDaemon(true);
+            return t;
+        });
+        CompletionService<Fingerprinted> completion = new ExecutorCompletionService<>(executor);
+        files.forEach(file -> completion.submit(() -> fingerprint(file)));
+
+        long nextId = options.firstId();
+        long postings = 0;
+        int failed = 0;
+        SegmentWriter segments = options.segments()
+                ? new SegmentWriter(new SegmentFileStore(options.output().resolve("index")), options.segmentPostings())
+                : null;
+
+        try (PgBinaryCopyWriter songs = copyWriter("songs.pgcopy");
+             PgBinaryCopyWriter postingRows = copyWriter("postings.pgcopy");
+             PgBinaryCopyWriter songTags = options.tags().isEmpty() ? null : copyWriter("song_tags.pgcopy");
+             BufferedWriter manifest = Files.newBufferedWriter(options.output().resolve("songs-manifest.tsv"))) {
+            manifest.write("id\tfile\ttitle\tartist\tduration_seconds\tfingerprint_count\n");
+
+            for (int done = 1; done <= files.size(); done++) {
+                Fingerprinted song;
+                try {
+                    song = completion.take().get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    log.warn("Skipping file: {}", e.getCause().getMessage());
+                    continue;
+                }
+
+                long songId = nextId++;
+                songs.startRow(8)
+                        .writeLong(songId)
+                        .writeText(song.title())
+                        .writeText(song.artist())
+                        .writeText(song.file().toAbsolutePath().toString())
+                        .writeDouble(song.durationSeconds())
+                        .writeInt(song.fingerprints().size())
+                        .writeTimestamp(indexedAt)
+                        .writeText(options.catalog());
+                if (songTags != null) {
+                    for (String tag : options.tags()) {
+                        songTags.startRow(2).writeLong(songId).writeText(tag);
+                    }
+                }
+                for (FingerprintGenerator.Fingerprint fp : song.fingerprints()) {
+                    postingRows.startRow(3)
+                            .writeLong(fp.hash)
+                            .writeInt(SongIds.toInt(songId))
+                            .writeInt(fp.anchorTime);
+                }
+                manifest.write(songId + "\t" + tsv(song.file().toString()) + "\t" + tsv(song.title()) + "\t"
+                        + tsv(song.artist()) + "\t" + String.format(Locale.ROOT, "%.3f", song.durationSeconds())
+                        + "\t" + song.fingerprints().size() + "\n");
+                if (segments != null) {
+                    segments.add(songId, song.fingerprints());
+                }
+                postings += song.fingerprints().size();
+
+                if (done % 100 == 0) {
+                    log.info("{}/{} files, {} fingerprints", done, files.size(), postings);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long songCount = nextId - options.firstId();
+        if (segments != null) {
+            segments.finish(new IndexManifest.Watermark(
+                    songCount == 0 ? 0 : nextId - 1, songCount,
+                    songCount == 0 ? 0 : Timestamp.valueOf(indexedAt).getTime()));
+        }
+        writeLoadScript(songCount);
+        log.info("Bulk indexed {} songs ({} failed), {} fingerprints in {} s",
+                songCount, failed, postings, (System.nanoTime() - started) / 1_000_000_000);
+    }
+
+    private Fingerprinted fingerprint(Path file) throws IOException {
+        double[] samples = audioProcessor.readFile(file.toFile());
+        if (samples.length < AudioConstants.FRAME_SIZE) {
+            throw new IOException(file + ": audio too short for fingerprinting");
+        }
+        double[][] spectrogram = spectrogramGenerator.generateSpectrogram(samples);
+        List<PeakDetector.Peak> peaks = peakDetector.detectPeaks(spectrogram);
+        List<FingerprintGenerator.Fingerprint> fingerprints = fingerprintGenerator.generateFingerprints(peaks);
+
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        int dash = base.indexOf(" - ");
+        String artist = dash > 0 ? base.substring(0, dash).trim() : null;
+        String title = dash > 0 ? base.substring(dash + 3).trim() : base.trim();
+        return new Fingerprinted(file, title, artist, samples.length / (double) AudioConstants.SAMPLE_RATE,
+                fingerprints);
+    }
+
+    private static List<Path> listAudioFiles(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(p -> {
+                        String name = p.getFileName().toString();
+                        int dot = name.lastIndexOf('.');
+                        return dot > 0 && AUDIO_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private PgBinaryCopyWriter copyWriter(String name) throws IOException {
+        OutputStream out = Files.newOutputStream(options.output().resolve(name));
+        return new PgBinaryCopyWriter(out);
+    }
+
+    private static String tsv(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    private void writeLoadScript(long songCount) throws IOException {
+        StringBuilder sql = new StringBuilder()
+                .append("-- Generated by BulkIndexer for ").append(songCount).append(" songs.\n")
+                .append("-- Run from this directory against a database migrated by Flyway:\n")
+                .append("--   psql -v ON_ERROR_STOP=1 -f load.sql \"$DATABASE_URL\"\n")
+                .append("-- For very large loads, drop idx_postings_hash first and recreate it afterwards.\n")
+                .append("BEGIN;\n")
+                .append("DO $$ BEGIN\n")
+                .append("  IF NOT (SELECT done FROM postings_backfill WHERE id = 1) THEN\n")
+                .append("    RAISE EXCEPTION 'postings backfill still running; load once it is done';\n")
+                .append("  END IF;\n")
+                .append("END $$;\n")
+                .append("\\copy songs (id, title, artist, file_path, duration_seconds, fingerprint_count, indexed_at, catalog)")
+                .append(" FROM 'songs.pgcopy' WITH (FORMAT binary)\n");
+        if (!options.tags().isEmpty()) {
+            sql.append("\\copy song_tags (song_id, tag) FROM 'song_tags.pgcopy' WITH (FORMAT binary)\n");
+        }
+        sql.append("\\copy postings (hash, song_id, time_offset) FROM 'postings.pgcopy' WITH (FORMAT binary)\n")
+                .append("SELECT setval('songs_id_seq', GREATEST((SELECT MAX(id) FROM songs), 1));\n")
+                .append("COMMIT;\n")
+                .append("ANALYZE songs;\n")
+                .append("ANALYZE postings;\n");
+        Files.writeString(options.output().resolve("load.sql"), sql);
+    }
+
+    // ═══ Index segments ═══
+
+    /**
+     * Cuts the postings into segment files of at most {@code segmentPostings}
+     * postings each, and finally writes a manifest so that a server with
+     * {@code beatlens.index.directory} pointing here restores them on startup.
+     */
+    private static final class SegmentWriter {
+        private final SegmentFileStore store;
+        private final int segmentPostings;
+        private final List<IndexSegment> written = new ArrayList<>();
+        private PostingBuffer buffer;
+        private RoaringBitmap songs = new RoaringBitmap();
+
+        SegmentWriter(SegmentFileStore store, int segmentPostings) {
+            this.store = store;
+            this.segmentPostings = segmentPostings;
+            this.buffer = new PostingBuffer(Math.min(segmentPostings, 1 << 20));
+        }
+
+        void add(long songId, List<FingerprintGenerator.Fingerprint> fingerprints) throws IOException {
+            for (FingerprintGenerator.Fingerprint fp : fingerprints) {
+                buffer.add(fp.hash, songId, fp.anchorTime);
+            }
+            songs.add(SongIds.toInt(songId));
+            if (buffer.size() >= segmentPostings) {
+                cut();
+            }
+        }
+
+        private void cut() throws IOException {
+            if (buffer.size() == 0) return;
+            buffer.sort();
+            PostingSegment segment = PostingSegment.builder(buffer.size()).appendAll(buffer.cursor()).build();
+            long generation = written.size() + 1;
+            Path path = store.segmentPath(generation);
+            Files.createDirectories(path.getParent());
+            SegmentFile.write(segment, path);
+            // Keep only the mapping, not the built copy
+            written.add(new IndexSegment(generation, SegmentFile.map(path, false), songs));
+            buffer = new PostingBuffer(Math.min(segmentPostings, 1 << 20));
+            songs = new RoaringBitmap();
+        }
+
+        void finish(IndexManifest.Watermark watermark) throws IOException {
+            cut();
+            store.writeSnapshot(new SegmentedFingerprintIndex.Snapshot(
+                    written, new RoaringBitmap(), null, watermark.maxSongId(), watermark.songCount()),
+                    watermark, true);
+        }
+    }
+}
@@ -2,6 +2,11 @@ package com.beatlens.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Binds the {@code beatlens.*} properties from application.yml to typed Java fields.
@@ -15,6 +20,15 @@ public class AudioProperties {
     private PeakDetection peakDetection = new PeakDetection();
     private Fingerprint fingerprint = new Fingerprint();
     private Matching matching = new Matching();
+    private Index index = new Index();
+    private HashFilter hashFilter = new HashFilter();
+    private Shard shard = new Shard();
+    private Duplicates duplicates = new Duplicates();
+    private Postings postings = new Postings();
+    private LookupCache lookupCache = new LookupCache();
+    private ResultCache resultCache = new ResultCache();
+    private LookupBatch lookupBatch = new LookupBatch();
+    private CatalogEvents catalogEvents = new CatalogEvents();
 
     // ═══ Nested classes ═══
 
@@ -74,6 +88,16 @@ public class AudioProperties {
         private int offsetTolerance = 3;
         private int minAlignedMatches = 3;
         private double minConfidence = 5.0;
+        private int maxCandidates = 64;
+        private double candidateHitRatio = 0.05;
+        private boolean coarseRetrieval = false;
+        private int coarseCandidates = 256;
+        private double segmentWindowSeconds = 10.0;
+        private double segmentHopSeconds = 5.0;
+        private int parallelism = 0;
+        private Duration deadline = Duration.ofSeconds(5);
+        private int maxResults = 10;
+        private Duration maxDeadline = Duration.ofMinutes(5);
 
         public int getOffsetTolerance() { return offsetTolerance; }
         public void setOffsetTolerance(int offsetTolerance) { this.offsetTolerance = offsetTolerance; }
@@ -81,6 +105,230 @@ public class AudioProperties {
         public void setMinAlignedMatches(int minAlignedMatches) { this.minAlignedMatches = minAlignedMatches; }
         public double getMinConfidence() { return minConfidence; }
         public void setMinConfidence(double minConfidence) { this.minConfidence = minConfidence; }
+        public int getMaxCandidates() { return maxCandidates; }
+        public void setMaxCandidates(int maxCandidates) { this.maxCandidates = maxCandidates; }
+        public double getCandidateHitRatio() { return candidateHitRatio; }
+        public void setCandidateHitRatio(double candidateHitRatio) { this.candidateHitRatio = candidateHitRatio; }
+        public boolean isCoarseRetrieval() { return coarseRetrieval; }
+        public void setCoarseRetrieval(boolean coarseRetrieval) { this.coarseRetrieval = coarseRetrieval; }
+        public int getCoarseCandidates() { return coarseCandidates; }
+        public void setCoarseCandidates(int coarseCandidates) { this.coarseCandidates = coarseCandidates; }
+        public double getSegmentWindowSeconds() { return segmentWindowSeconds; }
+        public void setSegmentWindowSeconds(double segmentWindowSeconds) { this.segmentWindowSeconds = segmentWindowSeconds; }
+        public double getSegmentHopSeconds() { return segmentHopSeconds; }
+        public void setSegmentHopSeconds(double segmentHopSeconds) { this.segmentHopSeconds = segmentHopSeconds; }
+        public int getParallelism() { return parallelism; }
+        public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+        public Duration getDeadline() { return deadline; }
+        public void setDeadline(Duration deadline) { this.deadline = deadline; }
+        public int getMaxResults() { return maxResults; }
+        public void setMaxResults(int maxResults) { this.maxResults = maxResults; }
+        public Duration getMaxDeadline() { return maxDeadline; }
+        public void setMaxDeadline(Duration maxDeadline) { this.maxDeadline = maxDeadline; }
+    }
+
+    public static class Index {
+        /** Where match-time hash lookups are served from. */
+        public enum Engine { DATABASE, MEMORY, MAPPED }
+
+        /** Whether this node ships its index segments, pulls them, or neither. */
+        public enum ReplicationRole { NONE, PRIMARY, REPLICA }
+
+        private Engine engine = Engine.DATABASE;
+        private int loadFetchSize = 10000;
+        private String directory = "data/index";
+        private boolean verifyChecksums = true;
+        private int memtablePostings = 1_000_000;
+        private int compactionMaxSegments = 8;
+        private Duration compactionInterval = Duration.ofSeconds(30);
+        private long compactionPostingsPerSecond = 20_000_000;
+        private boolean snapshotEnabled = true;
+        private Duration snapshotInterval = Duration.ofMinutes(5);
+        private int restoreThreads = 0;
+        private ReplicationRole replicationRole = ReplicationRole.NONE;
+        private String replicationSource;
+        private Duration replicationPollInterval = Duration.ofSeconds(10);
+
+        public Engine getEngine() { return engine; }
+        public void setEngine(Engine engine) { this.engine = engine; }
+        public int getLoadFetchSize() { return loadFetchSize; }
+        public void setLoadFetchSize(int loadFetchSize) { this.loadFetchSize = loadFetchSize; }
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+        public boolean isVerifyChecksums() { return verifyChecksums; }
+        public void setVerifyChecksums(boolean verifyChecksums) { this.verifyChecksums = verifyChecksums; }
+        public int getMemtablePostings() { return memtablePostings; }
+        public void setMemtablePostings(int memtablePostings) { this.memtablePostings = memtablePostings; }
+        public int getCompactionMaxSegments() { return compactionMaxSegments; }
+        public void setCompactionMaxSegments(int compactionMaxSegments) { this.compactionMaxSegments = compactionMaxSegments; }
+        public Duration getCompactionInterval() { return compactionInterval; }
+        public void setCompactionInterval(Duration compactionInterval) { this.compactionInterval = compactionInterval; }
+        public long getCompactionPostingsPerSecond() { return compactionPostingsPerSecond; }
+        public void setCompactionPostingsPerSecond(long compactionPostingsPerSecond) { this.compactionPostingsPerSecond = compactionPostingsPerSecond; }
+        public boolean isSnapshotEnabled() { return snapshotEnabled; }
+        public void setSnapshotEnabled(boolean snapshotEnabled) { this.snapshotEnabled = snapshotEnabled; }
+        public Duration getSnapshotInterval() { return snapshotInterval; }
+        public void setSnapshotInterval(Duration snapshotInterval) { this.snapshotInterval = snapshotInterval; }
+        public int getRestoreThreads() { return restoreThreads; }
+        public void setRestoreThreads(int restoreThreads) { this.restoreThreads = restoreThreads; }
+        public ReplicationRole getReplicationRole() { return replicationRole; }
+        public void setReplicationRole(ReplicationRole replicationRole) { this.replicationRole = replicationRole; }
+        public String getReplicationSource() { return replicationSource; }
+        public void setReplicationSource(String replicationSource) { this.replicationSource = replicationSource; }
+        public Duration getReplicationPollInterval() { return replicationPollInterval; }
+        public void setReplicationPollInterval(Duration replicationPollInterval) { this.replicationPollInterval = replicationPollInterval; }
+    }
+
+    public static class HashFilter {
+        private boolean enabled = true;
+        private double fpp = 0.01;
+        private int loadFetchSize = 10000;
+        private Duration fullRebuildInterval = Duration.ofHours(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public double getFpp() { return fpp; }
+        public void setFpp(double fpp) { this.fpp = fpp; }
+        public int getLoadFetchSize() { return loadFetchSize; }
+        public void setLoadFetchSize(int loadFetchSize) { this.loadFetchSize = loadFetchSize; }
+        public Duration getFullRebuildInterval() { return fullRebuildInterval; }
+        public void setFullRebuildInterval(Duration fullRebuildInterval) { this.fullRebuildInterval = fullRebuildInterval; }
+    }
+
+    public static class Shard {
+        private int count = 1;
+        private int index = 0;
+        private List<String> nodes = new ArrayList<>();
+        private Duration timeout = Duration.ofSeconds(2);
+        private String secret = "";
+
+        public int getCount() { return count; }
+        public void setCount(int count) { this.count = count; }
+        public int getIndex() { return index; }
+        public void setIndex(int index) { this.index = index; }
+        public List<String> getNodes() { return nodes; }
+        public void setNodes(List<String> nodes) { this.nodes = nodes; }
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+        public String getSecret() { return secret; }
+        public void setSecret(String secret) { this.secret = secret; }
+    }
+
+    public static class Duplicates {
+        private int sampleRate = 4;
+        private int minAlignedMatches = 10;
+        private double minCoverage = 0.2;
+        private double duplicateCoverage = 0.5;
+        private int parallelism = 0;
+
+        public int getSampleRate() { return sampleRate; }
+        public void setSampleRate(int sampleRate) { this.sampleRate = sampleRate; }
+        public int getMinAlignedMatches() { return minAlignedMatches; }
+        public void setMinAlignedMatches(int minAlignedMatches) { this.minAlignedMatches = minAlignedMatches; }
+        public double getMinCoverage() { return minCoverage; }
+        public void setMinCoverage(double minCoverage) { this.minCoverage = minCoverage; }
+        public double getDuplicateCoverage() { return duplicateCoverage; }
+        public void setDuplicateCoverage(double duplicateCoverage) { this.duplicateCoverage = duplicateCoverage; }
+        public int getParallelism() { return parallelism; }
+        public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+    }
+
+    public static class Postings {
+        private int backfillBatchSongs = 200;
+        private Duration backfillPause = Duration.ofMillis(100);
+        private int purgeBatchRows = 5000;
+        private Duration purgePause = Duration.ofMillis(50);
+        private Duration purgeInterval = Duration.ofSeconds(10);
+
+        public int getBackfillBatchSongs() { return backfillBatchSongs; }
+        public void setBackfillBatchSongs(int backfillBatchSongs) { this.backfillBatchSongs = backfillBatchSongs; }
+        public Duration getBackfillPause() { return backfillPause; }
+        public void setBackfillPause(Duration backfillPause) { this.backfillPause = backfillPause; }
+        public int getPurgeBatchRows() { return purgeBatchRows; }
+        public void setPurgeBatchRows(int purgeBatchRows) { this.purgeBatchRows = purgeBatchRows; }
+        public Duration getPurgePause() { return purgePause; }
+        public void setPurgePause(Duration purgePause) { this.purgePause = purgePause; }
+        public Duration getPurgeInterval() { return purgeInterval; }
+        public void setPurgeInterval(Duration purgeInterval) { this.purgeInterval = purgeInterval; }
+    }
+
+    public static class LookupCache {
+        private DataSize exactBudget = DataSize.ofMegabytes(256);
+        private DataSize coarseBudget = DataSize.ofMegabytes(64);
+        private Duration expireAfterAccess = Duration.ofMinutes(30);
+        private Duration negativeTtl = Duration.ofMinutes(1);
+        private boolean warmupEnabled = true;
+        private String sketchFile = "data/hot-hashes.bin";
+        private int sampleRate = 16;
+        private Duration sketchPersistInterval = Duration.ofMinutes(5);
+        private int warmupHashes = 100_000;
+        private int warmupBatch = 500;
+        private int warmupRate = 20_000;
+
+        public DataSize getExactBudget() { return exactBudget; }
+        public void setExactBudget(DataSize exactBudget) { this.exactBudget = exactBudget; }
+        public DataSize getCoarseBudget() { return coarseBudget; }
+        public void setCoarseBudget(DataSize coarseBudget) { this.coarseBudget = coarseBudget; }
+        public Duration getExpireAfterAccess() { return expireAfterAccess; }
+        public void setExpireAfterAccess(Duration expireAfterAccess) { this.expireAfterAccess = expireAfterAccess; }
+        public Duration getNegativeTtl() { return negativeTtl; }
+        public void setNegativeTtl(Duration negativeTtl) { this.negativeTtl = negativeTtl; }
+        public boolean isWarmupEnabled() { return warmupEnabled; }
+        public void setWarmupEnabled(boolean warmupEnabled) { this.warmupEnabled = warmupEnabled; }
+        public String getSketchFile() { return sketchFile; }
+        public void setSketchFile(String sketchFile) { this.sketchFile = sketchFile; }
+        public int getSampleRate() { return sampleRate; }
+        public void setSampleRate(int sampleRate) { this.sampleRate = sampleRate; }
+        public Duration getSketchPersistInterval() { return sketchPersistInterval; }
+        public void setSketchPersistInterval(Duration sketchPersistInterval) { this.sketchPersistInterval = sketchPersistInterval; }
+        public int getWarmupHashes() { return warmupHashes; }
+        public void setWarmupHashes(int warmupHashes) { this.warmupHashes = warmupHashes; }
+        public int getWarmupBatch() { return warmupBatch; }
+        public void setWarmupBatch(int warmupBatch) { this.warmupBatch = warmupBatch; }
+        public int getWarmupRate() { return warmupRate; }
+        public void setWarmupRate(int warmupRate) { this.warmupRate = warmupRate; }
+    }
+
+    public static class ResultCache {
+        private boolean enabled = true;
+        private int maxEntries = 10_000;
+        private Duration ttl = Duration.ofMinutes(10);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+    }
+
+    public static class LookupBatch {
+        private boolean enabled = true;
+        private int maxHashes = 1000;
+        private Duration maxDelay = Duration.ofMillis(2);
+        private int concurrency = 4;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getMaxHashes() { return maxHashes; }
+        public void setMaxHashes(int maxHashes) { this.maxHashes = maxHashes; }
+        public Duration getMaxDelay() { return maxDelay; }
+        public void setMaxDelay(Duration maxDelay) { this.maxDelay = maxDelay; }
+        public int getConcurrency() { return concurrency; }
+        public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+    }
+
+    public static class CatalogEvents {
+        private boolean enabled = true;
+        private String channel = "beatlens_catalog";
+        private Duration reconnectDelay = Duration.ofSeconds(5);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getChannel() { return channel; }
+        public void setChannel(String channel) { this.channel = channel; }
+        public Duration getReconnectDelay() { return reconnectDelay; }
+        public void setReconnectDelay(Duration reconnectDelay) { this.reconnectDelay = reconnectDelay; }
     }
 
     // ═══ Getters / setters ═══
@@ -95,4 +343,22 @@ public class AudioProperties {
     public void setFingerprint(Fingerprint fingerprint) { this.fingerprint = fingerprint; }
     public Matching getMatching() { return matching; }
     public void setMatching(Matching matching) { this.matching = matching; }
+    public Index getIndex() { return index; }
+    public void setIndex(Index index) { this.index = index; }
+    public HashFilter getHashFilter() { return hashFilter; }
+    public void setHashFilter(HashFilter hashFilter) { this.hashFilter = hashFilter; }
+    public Shard getShard() { return shard; }
+    public void setShard(Shard shard) { this.shard = shard; }
+    public Duplicates getDuplicates() { return duplicates; }
+    public void setDuplicates(Duplicates duplicates) { this.duplicates = duplicates; }
+    public Postings getPostings() { return postings; }
+    public void setPostings(Postings postings) { this.postings = postings; }
+    public LookupCache getLookupCache() { return lookupCache; }
+    public void setLookupCache(LookupCache lookupCache) { this.lookupCache = lookupCache; }
+    public ResultCache getResultCache() { return resultCache; }
+    public void setResultCache(ResultCache resultCache) { this.resultCache = resultCache; }
+    public LookupBatch getLookupBatch() { return lookupBatch; }
+    public void setLookupBatch(LookupBatch lookupBatch) { this.lookupBatch = lookupBatch; }
+    public CatalogEvents getCatalogEvents() { return catalogEvents; }
+    public void setCatalogEvents(CatalogEvents catalogEvents) { this.catalogEvents = catalogEvents; }
 }
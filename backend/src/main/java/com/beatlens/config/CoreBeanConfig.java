@@ -48,7 +48,25 @@ public class CoreBeanConfig {
         return new SongMatcher(
                 props.getMatching().getOffsetTolerance(),
                 props.getMatching().getMinAlignedMatches(),
-                props.getMatching().getMinConfidence()
+                props.getMatching().getMinConfidence(),
+                props.getMatching().getMaxCandidates(),
+                props.getMatching().getCandidateHitRatio(),
+                props.getMatching().getCoarseCandidates()
+        );
+    }
+
+    @Bean
+    public ShardAssignment shardAssignment(AudioProperties props) {
+        return new ShardAssignment(props.getShard().getCount(), props.getShard().getIndex());
+    }
+
+    @Bean
+    public SegmentMatcher segmentMatcher(SongMatcher songMatcher, AudioProperties props) {
+        return new SegmentMatcher(
+                songMatcher,
+                AudioConstants.secondsToFrames(props.getMatching().getSegmentWindowSeconds()),
+                AudioConstants.secondsToFrames(props.getMatching().getSegmentHopSeconds()),
+                props.getMatching().getOffsetTolerance()
         );
     }
 }
@@ -0,0 +1,75 @@
+package com.beatlens.config;
+
+import com.beatlens.index.PackedPostings;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Sizes the two hash-lookup caches by memory instead of by entry count.
+ * <p>
+ * One {@code fingerprint-lookup} entry may hold a single posting or tens of
+ * thousands, so {@code maximumSize} says nothing about heap use. Both caches
+ * hold {@code long[]} values ({@link PackedPostings}, coarse song IDs) and
+ * are bounded by {@code beatlens.lookup-cache.*-budget} through a byte
+ * weigher. Empty results are cached too, but expire after
+ * {@code negative-ttl} whatever their reads; the other caches keep the
+ * {@code spring.cache.caffeine.spec}.
+ */
+@Configuration
+public class LookupCacheConfig {
+
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> lookupCacheCustomizer(AudioProperties props) {
+        AudioProperties.LookupCache config = props.getLookupCache();
+        return manager -> {
+            manager.registerCustomCache("fingerprint-lookup", build(config.getExactBudget().toBytes(), config));
+            manager.registerCustomCache("coarse-lookup", build(config.getCoarseBudget().toBytes(), config));
+        };
+    }
+
+    private static com.github.benmanes.caffeine.cache.Cache<Object, Object> build(
+            long budgetBytes, AudioProperties.LookupCache config) {
+        return Caffeine.newBuilder()
+                .maximumWeight(budgetBytes)
+                .weigher((Object key, Object value) -> value instanceof long[] a ? PackedPostings.weigh(a) : 1)
+                .expireAfter(new LookupExpiry(config.getExpireAfterAccess(), config.getNegativeTtl()))
+                .recordStats()
+                .build();
+    }
+
+    /** Access-based expiry for postings; a fixed lifetime for empty results. */
+    static final class LookupExpiry implements Expiry<Object, Object> {
+        private final long accessNanos;
+        private final long negativeNanos;
+
+        LookupExpiry(Duration expireAfterAccess, Duration negativeTtl) {
+            this.accessNanos = expireAfterAccess.toNanos();
+            this.negativeNanos = negativeTtl.toNanos();
+        }
+
+        private static boolean isNegative(Object value) {
+            return value instanceof long[] a && a.length == 0;
+        }
+
+        @Override
+        public long expireAfterCreate(Object key, Object value, long currentTime) {
+            return isNegative(value) ? negativeNanos : accessNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+            return isNegative(value) ? negativeNanos : accessNanos;
+        }
+
+        @Override
+        public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+            return isNegative(value) ? currentDuration : accessNanos;
+        }
+    }
+}
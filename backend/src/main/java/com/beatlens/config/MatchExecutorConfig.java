@@ -0,0 +1,35 @@
+package com.beatlens.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pool for CPU-bound matching work that can be split up per request,
+ * e.g. scoring the windows of a segmented match in parallel.
+ * <p>
+ * Sized by {@code beatlens.matching.parallelism}; {@code 0} means one thread
+ * per available processor.
+ */
+@Configuration
+public class MatchExecutorConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService matchExecutor(AudioProperties props) {
+        int threads = props.getMatching().getParallelism() > 0
+                ? props.getMatching().getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "match-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+}
@@ -0,0 +1,37 @@
+package com.beatlens.config;
+
+import com.beatlens.service.FingerprintIndexService;
+import com.beatlens.service.HashFilterService;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports {@code OUT_OF_SERVICE} until the in-process index and the hash
+ * filter are loaded, so that load balancers and orchestrators only route
+ * traffic to an instance that can answer from warm data structures.
+ *
+ * <p>Part of the {@code readiness} health group; liveness is unaffected, so a
+ * slow warm-up never gets the instance restarted.</p>
+ */
+@Component("warmup")
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    private final FingerprintIndexService indexService;
+    private final HashFilterService hashFilterService;
+
+    public WarmupHealthIndicator(FingerprintIndexService indexService, HashFilterService hashFilterService) {
+        this.indexService = indexService;
+        this.hashFilterService = hashFilterService;
+    }
+
+    @Override
+    public Health health() {
+        boolean indexWarm = !indexService.isEnabled() || indexService.isReady();
+        boolean filterWarm = !hashFilterService.isEnabled() || hashFilterService.isReady();
+        Health.Builder builder = indexWarm && filterWarm ? Health.up() : Health.outOfService();
+        if (indexService.isEnabled()) builder.withDetail("index", indexWarm ? "ready" : "loading");
+        if (hashFilterService.isEnabled()) builder.withDetail("hashFilter", filterWarm ? "ready" : "building");
+        return builder.build();
+    }
+}
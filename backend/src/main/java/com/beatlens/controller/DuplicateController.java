@@ -0,0 +1,38 @@
+package com.beatlens.controller;
+
+import com.beatlens.model.dto.DuplicateReportDto;
+import com.beatlens.service.DuplicateScanService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/duplicates")
+public class DuplicateController {
+
+    private final DuplicateScanService scanService;
+
+    public DuplicateController(DuplicateScanService scanService) {
+        this.scanService = scanService;
+    }
+
+    /** Progress of the running scan, or the report of the last one. */
+    @GetMapping
+    public ResponseEntity<DuplicateReportDto> getReport() {
+        return ResponseEntity.ok(scanService.getReport());
+    }
+
+    /**
+     * Start a catalog-wide duplicate scan in the background.
+     * Returns 409 if a scan is already running.
+     */
+    @PostMapping("/scan")
+    public ResponseEntity<DuplicateReportDto> scan(@RequestParam(value = "plan", defaultValue = "false") boolean plan) {
+        HttpStatus status = scanService.start(plan) ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT;
+        return ResponseEntity.status(status).body(scanService.getReport());
+    }
+}
@@ -0,0 +1,65 @@
+package com.beatlens.controller;
+
+import com.beatlens.model.dto.CacheWarmupDto;
+import com.beatlens.model.dto.IndexStatusDto;
+import com.beatlens.service.FingerprintIndexService;
+import com.beatlens.service.LookupCacheWarmer;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/index")
+public class IndexController {
+
+    private final FingerprintIndexService indexService;
+    private final LookupCacheWarmer cacheWarmer;
+
+    public IndexController(FingerprintIndexService indexService, LookupCacheWarmer cacheWarmer) {
+        this.indexService = indexService;
+        this.cacheWarmer = cacheWarmer;
+    }
+
+    @GetMapping
+    public ResponseEntity<IndexStatusDto> getStatus() {
+        return ResponseEntity.ok(indexService.getStatus());
+    }
+
+    /**
+     * Rebuild the in-process index from the database in the background.
+     * Returns 409 if the index is disabled or a load is already running.
+     */
+    @PostMapping("/rebuild")
+    public ResponseEntity<IndexStatusDto> rebuild() {
+        HttpStatus status = indexService.rebuild() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT;
+        return ResponseEntity.status(status).body(indexService.getStatus());
+    }
+
+    /** Progress of the lookup-cache warm-up (database engine only). */
+    @GetMapping("/cache-warmup")
+    public ResponseEntity<CacheWarmupDto> cacheWarmup() {
+        return ResponseEntity.ok(cacheWarmer.getStatus());
+    }
+
+    /** Latest snapshot manifest of a primary, polled by replicas. 404 on other nodes. */
+    @GetMapping("/replication/manifest")
+    public ResponseEntity<Resource> manifest() {
+        return indexService.shippedManifest()
+                .map(file -> ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).body(file))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /** A segment file listed in a primary's manifest. */
+    @GetMapping("/replication/segments/{generation}")
+    public ResponseEntity<Resource> segment(@PathVariable long generation) {
+        return indexService.shippedSegment(generation)
+                .map(file -> ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(file))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
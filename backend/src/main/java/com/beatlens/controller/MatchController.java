@@ -1,7 +1,9 @@
 package com.beatlens.controller;
 
 import com.beatlens.model.dto.MatchResponse;
+import com.beatlens.model.dto.SegmentedMatchResponse;
 import com.beatlens.service.MatchService;
+import com.beatlens.service.SongFilterService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
@@ -10,6 +12,8 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api")
@@ -17,6 +21,8 @@ public class MatchController {
 
     private static final Logger log = LoggerFactory.getLogger(MatchController.class);
 
+    static final String DEADLINE_HEADER = "X-BeatLens-Deadline-Ms";
+
     private final MatchService matchService;
 
     public MatchController(MatchService matchService) {
@@ -28,16 +34,61 @@ public class MatchController {
      *
      * Accepts any audio format that FFmpeg supports: WAV, MP3, FLAC, OGG,
      * WebM/Opus, AAC, M4A, etc. Format is detected automatically.
+     *
+     * The optional {@value #DEADLINE_HEADER} header overrides the configured
+     * time budget (milliseconds). When it runs out during lookups the
+     * response is marked partial.
+     *
+     * Optional {@code catalog}, {@code tag} and {@code songId} parameters
+     * (repeatable or comma-separated) scope the match to a subset of songs.
      */
     @PostMapping(value = "/match", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<MatchResponse> match(
-            @RequestParam("file") MultipartFile file) throws IOException {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "catalog", required = false) List<String> catalogs,
+            @RequestParam(value = "tag", required = false) List<String> tags,
+            @RequestParam(value = "songId", required = false) List<Long> songIds,
+            @RequestHeader(value = DEADLINE_HEADER, required = false) Long deadlineMs) throws IOException {
+
+        SongFilterService.Criteria criteria = SongFilterService.Criteria.of(catalogs, tags, songIds);
+        log.info("Match request: size={}, contentType={}, deadlineMs={}, filter={}",
+                file.getSize(), file.getContentType(), deadlineMs, criteria.isEmpty() ? "none" : criteria);
+
+        MatchResponse response = matchService.match(file.getBytes(), budget(deadlineMs), criteria);
+
+        log.info("Match completed: {} results, partial={}", response.results().size(), response.partial());
+        return ResponseEntity.ok(response);
+    }
 
-        log.info("Match request: size={}, contentType={}", file.getSize(), file.getContentType());
+    /**
+     * Match a long recording (full track, DJ set) and return a timeline of
+     * the songs detected in it, one segment per contiguous match.
+     *
+     * Takes the same deadline header and filter parameters as {@code /match}.
+     * Not available on sharded deployments (501).
+     */
+    @PostMapping(value = "/match/segments", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<SegmentedMatchResponse> matchSegments(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "catalog", required = false) List<String> catalogs,
+            @RequestParam(value = "tag", required = false) List<String> tags,
+            @RequestParam(value = "songId", required = false) List<Long> songIds,
+            @RequestHeader(value = DEADLINE_HEADER, required = false) Long deadlineMs) throws IOException {
 
-        MatchResponse response = matchService.match(file.getBytes());
+        SongFilterService.Criteria criteria = SongFilterService.Criteria.of(catalogs, tags, songIds);
+        log.info("Segmented match request: size={}, contentType={}, deadlineMs={}, filter={}",
+                file.getSize(), file.getContentType(), deadlineMs, criteria.isEmpty() ? "none" : criteria);
 
-        log.info("Match completed: {} results", response.results().size());
+        SegmentedMatchResponse response = matchService.matchSegments(file.getBytes(), budget(deadlineMs), criteria);
+
+        log.info("Segmented match completed: {} segments, partial={}", response.segments().size(), response.partial());
         return ResponseEntity.ok(response);
     }
+
+    private static Duration budget(Long deadlineMs) {
+        if (deadlineMs != null && deadlineMs <= 0) {
+            throw new IllegalArgumentException(DEADLINE_HEADER + " must be a positive number of milliseconds");
+        }
+        return deadlineMs != null ? Duration.ofMillis(deadlineMs) : null;
+    }
 }
@@ -0,0 +1,62 @@
+package com.beatlens.controller;
+
+import com.beatlens.model.dto.ShardMatchRequest;
+import com.beatlens.model.dto.ShardMatchResponse;
+import com.beatlens.service.MatchService;
+import com.beatlens.service.ShardCoordinator;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Node-to-node endpoints of a sharded deployment, called by
+ * {@link ShardCoordinator}. Not meant for clients: every call must carry
+ * {@code beatlens.shard.secret} in {@value ShardCoordinator#SECRET_HEADER},
+ * otherwise it is refused with 403.
+ */
+@RestController
+@RequestMapping("/api/shard")
+public class ShardController {
+
+    private final MatchService matchService;
+    private final ShardCoordinator shardCoordinator;
+
+    public ShardController(MatchService matchService, ShardCoordinator shardCoordinator) {
+        this.matchService = matchService;
+        this.shardCoordinator = shardCoordinator;
+    }
+
+    /** Score query fingerprints against this node's shard only. */
+    @PostMapping("/match")
+    public ResponseEntity<ShardMatchResponse> match(
+            @RequestHeader(value = ShardCoordinator.SECRET_HEADER, required = false) String secret,
+            @RequestBody ShardMatchRequest request) {
+        if (!shardCoordinator.isTrustedNode(secret)) return forbidden();
+        return ResponseEntity.ok(matchService.matchShard(request));
+    }
+
+    /** Load a song of this shard that was indexed on another node. */
+    @PutMapping("/songs/{id}")
+    public ResponseEntity<Void> songIndexed(
+            @RequestHeader(value = ShardCoordinator.SECRET_HEADER, required = false) String secret,
+            @PathVariable Long id) {
+        if (!shardCoordinator.isTrustedNode(secret)) return forbidden();
+        return shardCoordinator.loadRemoteSong(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /** Drop a song of this shard that was deleted on another node. */
+    @DeleteMapping("/songs/{id}")
+    public ResponseEntity<Void> songDeleted(
+            @RequestHeader(value = ShardCoordinator.SECRET_HEADER, required = false) String secret,
+            @PathVariable Long id) {
+        if (!shardCoordinator.isTrustedNode(secret)) return forbidden();
+        shardCoordinator.removeRemoteSong(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    private static <T> ResponseEntity<T> forbidden() {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+}
@@ -1,8 +1,10 @@
 package com.beatlens.controller;
 
 import com.beatlens.model.Song;
+import com.beatlens.model.dto.PurgeStatusDto;
 import com.beatlens.model.dto.SongDto;
 import com.beatlens.service.IndexingService;
+import com.beatlens.service.SongPurgeService;
 import com.beatlens.service.SongService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +15,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/songs")
@@ -23,25 +27,32 @@ public class SongController {
 
     private final SongService songService;
     private final IndexingService indexingService;
+    private final SongPurgeService purgeService;
 
-    public SongController(SongService songService, IndexingService indexingService) {
+    public SongController(SongService songService, IndexingService indexingService,
+                          SongPurgeService purgeService) {
         this.songService = songService;
         this.indexingService = indexingService;
+        this.purgeService = purgeService;
     }
 
     /**
-     * Upload and index a new song.
+     * Upload and index a new song, optionally assigning it to a catalog and tags
+     * (used to scope {@code /api/match}).
      */
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<SongDto> uploadSong(
             @RequestParam("file") MultipartFile file,
             @RequestParam("title") String title,
-            @RequestParam(value = "artist", required = false) String artist) throws IOException {
+            @RequestParam(value = "artist", required = false) String artist,
+            @RequestParam(value = "catalog", required = false) String catalog,
+            @RequestParam(value = "tags", required = false) List<String> tags) throws IOException {
 
-        log.info("Upload request: title=\"{}\", artist=\"{}\", size={}",
-                title, artist, file.getSize());
+        log.info("Upload request: title=\"{}\", artist=\"{}\", catalog={}, tags={}, size={}",
+                title, artist, catalog, tags, file.getSize());
 
-        Song song = indexingService.indexSong(title, artist, file.getBytes());
+        Song song = indexingService.indexSong(title, artist, catalog,
+                tags == null ? Set.of() : new HashSet<>(tags), file.getBytes());
         return ResponseEntity.status(HttpStatus.CREATED).body(SongDto.from(song));
     }
 
@@ -71,11 +82,20 @@ public class SongController {
     }
 
     /**
-     * Delete a song and its fingerprints.
+     * Delete a song. It stops matching at once; its fingerprints are purged
+     * in the background (see {@code /api/songs/purge}).
      */
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteSong(@PathVariable Long id) {
         songService.deleteSong(id);
         return ResponseEntity.noContent().build();
     }
+
+    /**
+     * Progress of the background purge of deleted songs on this node.
+     */
+    @GetMapping("/purge")
+    public ResponseEntity<PurgeStatusDto> purgeStatus() {
+        return ResponseEntity.ok(purgeService.getStatus());
+    }
 }
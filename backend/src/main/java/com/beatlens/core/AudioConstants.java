@@ -54,6 +54,21 @@ public final class AudioConstants {
     public static final int OFFSET_TOLERANCE = 3;
     public static final int MIN_ALIGNED_MATCHES = 3;
     public static final double MIN_CONFIDENCE = 5.0;
+    // Two-stage matching: only the top songs by raw hit count get a full
+    // offset histogram. The rest of a large catalog's candidates are noise.
+    public static final int MAX_CANDIDATES = 64;
+    public static final double CANDIDATE_HIT_RATIO = 0.05;
+    // Coarse-hash retrieval is drift tolerant but less selective, so it keeps
+    // a wider shortlist that exact-hash verification then narrows down.
+    public static final int COARSE_CANDIDATES = 256;
+
+    // ═══ Segmented Matching ═══
+    // Long queries are scored in overlapping windows so that a DJ set or a
+    // full upload yields a timeline of songs instead of one global offset.
+    public static final double SEGMENT_WINDOW_SECONDS = 10.0;
+    public static final double SEGMENT_HOP_SECONDS = 5.0;
+    public static final int SEGMENT_WINDOW_FRAMES = secondsToFrames(SEGMENT_WINDOW_SECONDS);
+    public static final int SEGMENT_HOP_FRAMES = secondsToFrames(SEGMENT_HOP_SECONDS);
 
     // ═══ Utility methods ═══
 
@@ -62,6 +77,11 @@ public final class AudioConstants {
         return (int) Math.round(frequency / FREQUENCY_RESOLUTION);
     }
 
+    /** Convert a duration in seconds to a number of spectrogram frames (at least 1). */
+    public static int secondsToFrames(double seconds) {
+        return Math.max(1, (int) Math.round(seconds / TIME_RESOLUTION));
+    }
+
     /** Convert FFT bin index to frequency (Hz). */
     public static double binToFrequency(int bin) {
         return bin * FREQUENCY_RESOLUTION;
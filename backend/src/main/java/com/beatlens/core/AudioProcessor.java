@@ -10,6 +10,7 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles audio I/O: decoding any supported format to normalised
@@ -28,7 +29,7 @@ public class AudioProcessor {
      */
     public double[] readFile(File file) throws IOException {
         log.debug("Reading audio file: {}", file.getAbsolutePath());
-        byte[] raw = decodeWithFfmpeg(file.getAbsolutePath());
+        byte[] raw = decodeWithFfmpeg(file.getAbsolutePath(), Deadline.NONE);
         return bytesToSamples(raw);
     }
 
@@ -37,7 +38,16 @@ public class AudioProcessor {
      * The bytes may be WAV, MP3, FLAC, OGG, WebM, AAC, M4A, etc.
      */
     public double[] readBytes(byte[] audioBytes) throws IOException {
-        byte[] raw = decodeWithFfmpegFromBytes(audioBytes);
+        return readBytes(audioBytes, Deadline.NONE);
+    }
+
+    /**
+     * Decode raw bytes, killing FFmpeg if it is still running at the deadline.
+     *
+     * @throws Deadline.ExceededException if decoding did not finish in time
+     */
+    public double[] readBytes(byte[] audioBytes, Deadline deadline) throws IOException {
+        byte[] raw = decodeWithFfmpegFromBytes(audioBytes, deadline);
         return bytesToSamples(raw);
     }
 
@@ -75,7 +85,7 @@ public class AudioProcessor {
      * Decode audio from a file path via FFmpeg.
      * Output: raw 16-bit signed LE mono PCM at 44100 Hz.
      */
-    private byte[] decodeWithFfmpeg(String filePath) throws IOException {
+    private byte[] decodeWithFfmpeg(String filePath, Deadline deadline) throws IOException {
         ProcessBuilder pb = new ProcessBuilder(
                 "ffmpeg",
                 "-hide_banner", "-loglevel", "error",
@@ -86,7 +96,7 @@ public class AudioProcessor {
                 "pipe:1"
         );
         pb.redirectErrorStream(false);
-        return runFfmpeg(pb, null);
+        return runFfmpeg(pb, deadline);
     }
 
     /**
@@ -94,17 +104,17 @@ public class AudioProcessor {
      * so FFmpeg can probe the container format (piped input can confuse
      * format detection for some containers, e.g. MP3, AAC).
      */
-    private byte[] decodeWithFfmpegFromBytes(byte[] audioBytes) throws IOException {
+    private byte[] decodeWithFfmpegFromBytes(byte[] audioBytes, Deadline deadline) throws IOException {
         File tmp = File.createTempFile("beatlens-", ".audio");
         try {
             Files.write(tmp.toPath(), audioBytes);
-            return decodeWithFfmpeg(tmp.getAbsolutePath());
+            return decodeWithFfmpeg(tmp.getAbsolutePath(), deadline);
         } finally {
             tmp.delete();
         }
     }
 
-    private byte[] runFfmpeg(ProcessBuilder pb, byte[] stdinData) throws IOException {
+    private byte[] runFfmpeg(ProcessBuilder pb, Deadline deadline) throws IOException {
         Process process = pb.start();
 
         // Drain stdout and stderr concurrently to avoid pipe deadlock.
@@ -128,7 +138,14 @@ public class AudioProcessor {
 
         int exitCode;
         try {
-            exitCode = process.waitFor();
+            if (!process.waitFor(deadline.remainingMillis(), TimeUnit.MILLISECONDS)) {
+                // Killing FFmpeg closes its pipes, which lets the drain threads finish
+                process.destroyForcibly();
+                stdoutThread.join();
+                stderrThread.join();
+                throw new Deadline.ExceededException("audio decode");
+            }
+            exitCode = process.exitValue();
             stdoutThread.join();
             stderrThread.join();
         } catch (InterruptedException e) {
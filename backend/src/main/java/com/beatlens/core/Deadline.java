@@ -0,0 +1,70 @@
+package com.beatlens.core;
+
+import java.time.Duration;
+
+/**
+ * A point in time after which a unit of work should stop.
+ *
+ * <p>Deadlines are based on {@link System#nanoTime()}, so they are immune to
+ * wall-clock adjustments. They are passed down the matching pipeline
+ * (decode → fingerprinting → lookup) so that each stage can give up, or
+ * return what it has, once the caller's time budget is spent.</p>
+ */
+public final class Deadline {
+
+    /** A deadline that never expires. */
+    public static final Deadline NONE = new Deadline(0, false);
+
+    /** Budgets are saturated here, so that adding them to {@link System#nanoTime()} stays comparable. */
+    static final Duration MAX_BUDGET = Duration.ofNanos(Long.MAX_VALUE / 2);
+
+    private final long expiresAtNanos;
+    private final boolean bounded;
+
+    /** Thrown when a stage cannot produce anything useful before its deadline. */
+    public static class ExceededException extends RuntimeException {
+        public ExceededException(String stage) {
+            super("Deadline exceeded during " + stage);
+        }
+    }
+
+    private Deadline(long expiresAtNanos, boolean bounded) {
+        this.expiresAtNanos = expiresAtNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * A deadline {@code budget} from now. Budgets beyond {@link #MAX_BUDGET}
+     * (about 146 years) are treated as exactly that.
+     */
+    public static Deadline after(Duration budget) {
+        long nanos = budget.compareTo(MAX_BUDGET) > 0 ? MAX_BUDGET.toNanos() : budget.toNanos();
+        return new Deadline(System.nanoTime() + nanos, true);
+    }
+
+    /** @return {@code false} for {@link #NONE} */
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public boolean isExpired() {
+        return bounded && System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /** @return milliseconds left (0 once expired), or {@link Long#MAX_VALUE} when unbounded */
+    public long remainingMillis() {
+        if (!bounded) return Long.MAX_VALUE;
+        long remaining = expiresAtNanos - System.nanoTime();
+        return remaining <= 0 ? 0 : Math.max(1, remaining / 1_000_000);
+    }
+
+    /**
+     * @param stage name of the stage, used in the exception message
+     * @throws ExceededException if this deadline has expired
+     */
+    public void check(String stage) {
+        if (isExpired()) {
+            throw new ExceededException(stage);
+        }
+    }
+}
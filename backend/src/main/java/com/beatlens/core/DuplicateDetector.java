@@ -0,0 +1,183 @@
+package com.beatlens.core;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Finds catalog songs that are duplicates or near-duplicates of each other by
+ * matching each song's own fingerprints against the inverted index.
+ *
+ * <h3>Cost</h3>
+ * <p>Comparing all pairs of songs is quadratic; instead every song is one
+ * ordinary {@link SongMatcher} query, so the work is proportional to the
+ * postings its hashes touch. Two things cut that further:</p>
+ * <ul>
+ *   <li><b>Consistent subsampling</b> — only fingerprints whose (mixed) hash
+ *       falls in a fixed 1-in-{@code sampleRate} residue class are queried.
+ *       The selection depends on the hash alone, so two copies of the same
+ *       recording keep the <em>same</em> shared hashes and their alignment
+ *       survives, while lookups shrink by the sample rate.</li>
+ *   <li><b>One direction per pair</b> — a song only scores songs with a
+ *       higher ID, so each pair is scored once and a song never matches itself.</li>
+ * </ul>
+ *
+ * <h3>Classification</h3>
+ * <p>Coverage is the share of a song's (sampled) fingerprints that align with
+ * the other song. High coverage on both sides is a {@link Kind#DUPLICATE};
+ * high coverage on one side only means one song is contained in the other
+ * (an edit, excerpt or extended mix); anything else above
+ * {@code minCoverage} is reported as an {@link Kind#OVERLAP}.</p>
+ */
+public class DuplicateDetector {
+
+    public enum Kind { DUPLICATE, CONTAINED, OVERLAP }
+
+    /**
+     * @param songA         the lower song ID (the query)
+     * @param songB         the higher song ID
+     * @param coverageA     aligned share of {@code songA}'s sampled fingerprints
+     * @param coverageB     estimated aligned share of {@code songB}'s fingerprints
+     * @param offsetSeconds where {@code songA} starts inside {@code songB}
+     */
+    public record Pair(long songA, long songB, Kind kind, int alignedMatches,
+                       double coverageA, double coverageB, double offsetSeconds, double confidence) {}
+
+    /** Duplicates to fold into one song: keep one, delete the rest. */
+    public record MergeGroup(long keep, List<Long> remove) {}
+
+    private final SongMatcher matcher;
+    private final int sampleRate;
+    private final double minCoverage;
+    private final double duplicateCoverage;
+
+    /**
+     * @param matcher           scores candidates; its {@code minAlignedMatches}
+     *                          applies to the sampled fingerprints
+     * @param sampleRate        query one in this many fingerprints (1 = all)
+     * @param minCoverage       pairs below this coverage on both sides are dropped
+     * @param duplicateCoverage coverage a side needs to count as fully contained
+     */
+    public DuplicateDetector(SongMatcher matcher, int sampleRate, double minCoverage, double duplicateCoverage) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be >= 1: " + sampleRate);
+        }
+        this.matcher = matcher;
+        this.sampleRate = sampleRate;
+        this.minCoverage = minCoverage;
+        this.duplicateCoverage = duplicateCoverage;
+    }
+
+    /** @return {@code true} if fingerprints with this hash are part of the sample */
+    public boolean sampled(long hash) {
+        return sampleRate == 1 || Long.remainderUnsigned(mix(hash), sampleRate) == 0;
+    }
+
+    /** @return the sampled subset of {@code fingerprints}, in order */
+    public List<FingerprintGenerator.Fingerprint> sample(List<FingerprintGenerator.Fingerprint> fingerprints) {
+        if (sampleRate == 1) return fingerprints;
+        List<FingerprintGenerator.Fingerprint> sample = new ArrayList<>(fingerprints.size() / sampleRate + 1);
+        for (FingerprintGenerator.Fingerprint fp : fingerprints) {
+            if (sampled(fp.hash)) sample.add(fp);
+        }
+        return sample;
+    }
+
+    /**
+     * Find the songs with a higher ID than {@code songId} that share aligned
+     * fingerprints with it.
+     *
+     * @param sampledFingerprints the song's fingerprints, already {@link #sample sampled}
+     * @param maxSongId           highest song ID in the catalog
+     * @param fingerprintCount    full fingerprint count of a song, for its coverage
+     * @return qualifying pairs, best first
+     */
+    public List<Pair> findPairs(long songId, List<FingerprintGenerator.Fingerprint> sampledFingerprints,
+                                SongMatcher.FingerprintLookup lookup, long maxSongId,
+                                LongToIntFunction fingerprintCount) {
+        if (sampledFingerprints.isEmpty() || songId >= maxSongId) return List.of();
+
+        RoaringBitmap higher = new RoaringBitmap();
+        higher.add(songId + 1, Math.min(maxSongId, 0xFFFFFFFFL) + 1);
+        SongMatcher.MatchOptions options = SongMatcher.MatchOptions.DEFAULT
+                .withSongFilter(SongFilter.fromBitmap(higher));
+
+        List<Pair> pairs = new ArrayList<>();
+        for (SongMatcher.MatchResult result : matcher.match(sampledFingerprints, lookup, options)) {
+            int aligned = result.getAlignedMatches();
+            double coverageA = Math.min(1.0, (double) aligned / sampledFingerprints.size());
+            int countB = fingerprintCount.applyAsInt(result.getSongId());
+            double coverageB = countB <= 0 ? 0 : Math.min(1.0, (double) aligned * sampleRate / countB);
+            if (Math.max(coverageA, coverageB) < minCoverage) continue;
+
+            Kind kind = coverageA >= duplicateCoverage && coverageB >= duplicateCoverage ? Kind.DUPLICATE
+                    : coverageA >= duplicateCoverage || coverageB >= duplicateCoverage ? Kind.CONTAINED
+                    : Kind.OVERLAP;
+            pairs.add(new Pair(songId, result.getSongId(), kind, aligned, coverageA, coverageB,
+                    result.getTimeOffsetSeconds(), result.getConfidence()));
+        }
+        return pairs;
+    }
+
+    /**
+     * Group {@link Kind#DUPLICATE} pairs into connected clusters and keep the
+     * song with the most fingerprints of each (the lowest ID on ties).
+     *
+     * @return one group per cluster, ordered by the song kept
+     */
+    public static List<MergeGroup> plan(List<Pair> pairs, LongToIntFunction fingerprintCount) {
+        Map<Long, Long> parent = new HashMap<>();
+        for (Pair pair : pairs) {
+            if (pair.kind() != Kind.DUPLICATE) continue;
+            long a = root(parent, pair.songA());
+            long b = root(parent, pair.songB());
+            if (a != b) parent.put(Math.max(a, b), Math.min(a, b));
+        }
+
+        Map<Long, List<Long>> clusters = new HashMap<>();
+        for (Long song : parent.keySet()) {
+            clusters.computeIfAbsent(root(parent, song), r -> new ArrayList<>()).add(song);
+        }
+
+        Comparator<Long> preferred = Comparator.<Long>comparingInt(fingerprintCount::applyAsInt).reversed()
+                .thenComparing(Comparator.naturalOrder());
+        List<MergeGroup> groups = new ArrayList<>(clusters.size());
+        for (List<Long> members : clusters.values()) {
+            members.sort(preferred);
+            groups.add(new MergeGroup(members.get(0), List.copyOf(members.subList(1, members.size()))));
+        }
+        groups.sort(Comparator.comparingLong(MergeGroup::keep));
+        return groups;
+    }
+
+    private static long root(Map<Long, Long> parent, long song) {
+        long root = song;
+        Long up;
+        while ((up = parent.putIfAbsent(root, root)) != null && up != root) {
+            root = up;
+        }
+        // Path compression
+        long node = song;
+        while (node != root) {
+            long next = parent.get(node);
+            parent.put(node, root);
+            node = next;
+        }
+        return root;
+    }
+
+    /** MurmurHash3 finaliser: fingerprint hashes are bit-packed, so spread them before sampling. */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93e57a3d2a5L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -15,12 +15,21 @@ import java.util.List;
  * <h3>Hash formula</h3>
  * <pre>hash = (freq1 &amp; 0xFFF) &lt;&lt; 22 | (freq2 &amp; 0xFFF) &lt;&lt; 10 | (timeDelta &amp; 0x3FF)</pre>
  * <p>Frequency bins use 12 bits (0-4095) and time deltas use 10 bits (0-1023).</p>
+ *
+ * <h3>Coarse hash</h3>
+ * <pre>coarse = (freq1 &gt;&gt; 2) &lt;&lt; 19 | (freq2 &gt;&gt; 2) &lt;&lt; 9 | (timeDelta &gt;&gt; 1)</pre>
+ * <p>Frequencies are quantised to groups of 4 bins and time deltas to pairs
+ * of frames, so small drifts that break the exact hash usually still land on
+ * the same coarse hash. Coarse hashes are only used for candidate retrieval;
+ * scoring always uses the exact hash.</p>
  */
 public class FingerprintGenerator {
 
     private static final Logger log = LoggerFactory.getLogger(FingerprintGenerator.class);
     private static final int FREQ_MASK = 0xFFF;      // 12 bits
     private static final int TIME_DELTA_MASK = 0x3FF; // 10 bits
+    private static final int COARSE_FREQ_SHIFT = 2;   // 4 bins per coarse bucket
+    private static final int COARSE_DELTA_SHIFT = 1;  // 2 frames per coarse bucket
 
     private final int targetZoneSize;
     private final int fanOut;
@@ -29,6 +38,7 @@ public class FingerprintGenerator {
     /** A single audio fingerprint: a hash plus anchor time. */
     public static class Fingerprint {
         public final long hash;
+        public final long coarseHash;
         public final int anchorTime;   // frame index of anchor peak
         public final int freq1;
         public final int freq2;
@@ -44,7 +54,54 @@ public class FingerprintGenerator {
             this.hash = ((long) (freq1 & FREQ_MASK) << 22)
                       | ((long) (freq2 & FREQ_MASK) << 10)
                       | (timeDelta & TIME_DELTA_MASK);
+            this.coarseHash = coarseHash(this.hash);
+        }
+
+        /** Rebuild a fingerprint from its hash, e.g. one received from another node. */
+        public static Fingerprint fromHash(long hash, int anchorTime) {
+            return new Fingerprint(
+                    (int) (hash >>> 22) & FREQ_MASK,
+                    (int) (hash >>> 10) & FREQ_MASK,
+                    (int) hash & TIME_DELTA_MASK,
+                    anchorTime);
+        }
+    }
+
+    /**
+     * Derive the coarse hash from an exact hash. Kept as a pure function of
+     * the exact hash so stored fingerprints can be backfilled in SQL.
+     */
+    public static long coarseHash(long hash) {
+        long freq1 = (hash >>> 22) & FREQ_MASK;
+        long freq2 = (hash >>> 10) & FREQ_MASK;
+        long timeDelta = hash & TIME_DELTA_MASK;
+        return ((freq1 >>> COARSE_FREQ_SHIFT) << 19)
+             | ((freq2 >>> COARSE_FREQ_SHIFT) << 9)
+             | (timeDelta >>> COARSE_DELTA_SHIFT);
+    }
+
+    /**
+     * The exact hashes that share a coarse hash: the bits {@link #coarseHash}
+     * drops (two per frequency, one of the time delta) take all 32 values.
+     *
+     * @return the 32 exact hashes, ascending
+     */
+    public static long[] exactHashes(long coarseHash) {
+        long freq1 = ((coarseHash >>> 19) & (FREQ_MASK >>> COARSE_FREQ_SHIFT)) << COARSE_FREQ_SHIFT;
+        long freq2 = ((coarseHash >>> 9) & (FREQ_MASK >>> COARSE_FREQ_SHIFT)) << COARSE_FREQ_SHIFT;
+        long timeDelta = (coarseHash & (TIME_DELTA_MASK >>> COARSE_DELTA_SHIFT)) << COARSE_DELTA_SHIFT;
+        int freqSpread = 1 << COARSE_FREQ_SHIFT;
+        int deltaSpread = 1 << COARSE_DELTA_SHIFT;
+        long[] hashes = new long[freqSpread * freqSpread * deltaSpread];
+        int i = 0;
+        for (int a = 0; a < freqSpread; a++) {
+            for (int b = 0; b < freqSpread; b++) {
+                for (int c = 0; c < deltaSpread; c++) {
+                    hashes[i++] = ((freq1 | a) << 22) | ((freq2 | b) << 10) | (timeDelta | c);
+                }
+            }
         }
+        return hashes;
     }
 
     public FingerprintGenerator() {
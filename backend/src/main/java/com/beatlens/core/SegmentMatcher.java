@@ -0,0 +1,311 @@
+package com.beatlens.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Matches long queries (full uploads, DJ sets) as a timeline of segments.
+ *
+ * <p>The query's fingerprint stream is split into overlapping time windows
+ * that are scored independently by {@link SongMatcher}. Every distinct hash
+ * is looked up exactly once, kept as packed {@code songId << 32 | offset}
+ * postings and shared by all windows that contain it, and windows are
+ * scored in parallel on the supplied {@link Executor}. Consecutive windows
+ * that agree on the song and its time alignment are merged into a single
+ * {@link MatchSegment}.</p>
+ *
+ * <p>{@link SongMatcher.MatchOptions} apply to every window: the song
+ * filter and coarse retrieval as in a single match. Coarse and exact hashes
+ * are looked up once, up front, until the deadline expires, skipping exact
+ * hashes whose coarse bucket holds no allowed song; windows then score from
+ * memory. Hashes not looked up in time have no postings, and the
+ * outcome is marked partial.</p>
+ */
+public class SegmentMatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentMatcher.class);
+
+    private final SongMatcher songMatcher;
+    private final int windowFrames;
+    private final int hopFrames;
+    private final int offsetTolerance;
+
+    /** One contiguous stretch of the query attributed to a single song. */
+    public static class MatchSegment {
+        private final long songId;
+        private final double startSeconds;
+        private final double endSeconds;
+        private final double songOffsetSeconds;
+        private final double confidence;
+
+        public MatchSegment(long songId, double startSeconds, double endSeconds,
+                            double songOffsetSeconds, double confidence) {
+            this.songId = songId;
+            this.startSeconds = startSeconds;
+            this.endSeconds = endSeconds;
+            this.songOffsetSeconds = songOffsetSeconds;
+            this.confidence = confidence;
+        }
+
+        public long getSongId() { return songId; }
+        /** Segment start, in seconds from the beginning of the query. */
+        public double getStartSeconds() { return startSeconds; }
+        /** Segment end, in seconds from the beginning of the query. */
+        public double getEndSeconds() { return endSeconds; }
+        /** Position in the matched song that lines up with {@link #getStartSeconds()}. */
+        public double getSongOffsetSeconds() { return songOffsetSeconds; }
+        public double getConfidence() { return confidence; }
+    }
+
+    /** Segments plus how much of the query was looked up before the deadline. */
+    public record SegmentOutcome(List<MatchSegment> segments, boolean partial, double hashCoverage) {}
+
+    public SegmentMatcher(SongMatcher songMatcher) {
+        this(songMatcher,
+             AudioConstants.SEGMENT_WINDOW_FRAMES,
+             AudioConstants.SEGMENT_HOP_FRAMES,
+             AudioConstants.OFFSET_TOLERANCE);
+    }
+
+    public SegmentMatcher(SongMatcher songMatcher, int windowFrames, int hopFrames, int offsetTolerance) {
+        if (windowFrames <= 0 || hopFrames <= 0 || hopFrames > windowFrames) {
+            throw new IllegalArgumentException(
+                    "Segment window must be positive and hop must be in (0, window]");
+        }
+        this.songMatcher = songMatcher;
+        this.windowFrames = windowFrames;
+        this.hopFrames = hopFrames;
+        this.offsetTolerance = offsetTolerance;
+    }
+
+    /**
+     * Match a query as a sequence of segments.
+     *
+     * @param queryFingerprints fingerprints extracted from the query
+     * @param lookup            strategy for hash-based lookup
+     * @param executor          executor that scores windows in parallel
+     * @return segments in query order
+     */
+    public List<MatchSegment> matchSegments(List<FingerprintGenerator.Fingerprint> queryFingerprints,
+                                            SongMatcher.FingerprintLookup lookup,
+                                            Executor executor) {
+        return matchSegmentsDetailed(queryFingerprints, lookup, SongMatcher.MatchOptions.DEFAULT, executor)
+                .segments();
+    }
+
+    /**
+     * Like {@link #matchSegments(List, SongMatcher.FingerprintLookup, Executor)},
+     * with per-query options applied to every window.
+     */
+    public SegmentOutcome matchSegmentsDetailed(List<FingerprintGenerator.Fingerprint> queryFingerprints,
+                                                SongMatcher.FingerprintLookup lookup,
+                                                SongMatcher.MatchOptions options,
+                                                Executor executor) {
+        if (queryFingerprints.isEmpty()) {
+            return new SegmentOutcome(Collections.emptyList(), false, 1.0);
+        }
+
+        List<FingerprintGenerator.Fingerprint> sorted = new ArrayList<>(queryFingerprints);
+        sorted.sort(Comparator.comparingInt(fp -> fp.anchorTime));
+
+        // Resolve every distinct hash once, in query order, before the deadline;
+        // windows then score against memory only and never stop early on their own
+        Deadline deadline = options.deadline();
+        Map<Long, long[]> coarse = null;
+        boolean coarseComplete = true;
+        if (options.coarseLookup() != null) {
+            long[] distinctCoarse = sorted.stream().mapToLong(fp -> fp.coarseHash).distinct().toArray();
+            options.coarseLookup().prefetch(distinctCoarse);
+            coarse = new HashMap<>(distinctCoarse.length * 2);
+            for (long coarseHash : distinctCoarse) {
+                if (deadline.isExpired()) break;
+                long[] songIds = options.coarseLookup().lookupSongs(coarseHash);
+                coarse.put(coarseHash, songIds == null ? new long[0] : songIds);
+            }
+            coarseComplete = coarse.size() == distinctCoarse.length;
+        }
+
+        long[] distinct = sorted.stream().mapToLong(fp -> fp.hash).distinct().toArray();
+        Map<Long, long[]> resolved = new HashMap<>(distinct.length * 2);
+        long[] toRead = distinct;
+        if (coarse != null) {
+            // A hash whose coarse bucket holds no allowed song has no postings worth reading
+            toRead = new long[distinct.length];
+            int n = 0;
+            for (long hash : distinct) {
+                long[] songIds = coarse.get(FingerprintGenerator.coarseHash(hash));
+                if (songIds == null) continue; // bucket not looked up in time
+                if (anyAllowed(songIds, options.songFilter())) toRead[n++] = hash;
+                else resolved.put(hash, PostingPacker.NONE);
+            }
+            toRead = Arrays.copyOf(toRead, n);
+        }
+        lookup.prefetch(toRead);
+        for (long hash : toRead) {
+            if (deadline.isExpired()) break;
+            PostingPacker packer = new PostingPacker();
+            lookup.forEachPosting(hash, packer);
+            resolved.put(hash, packer.toArray());
+        }
+        SongMatcher.FingerprintLookup shared = new ResolvedLookup(resolved);
+        Map<Long, long[]> coarseSongs = coarse;
+        SongMatcher.MatchOptions windowOptions = coarseSongs == null
+                ? options.withDeadline(Deadline.NONE)
+                : options.withDeadline(Deadline.NONE).withCoarseLookup(coarseSongs::get);
+
+        // Score windows in parallel
+        int firstFrame = sorted.get(0).anchorTime;
+        int lastFrame = sorted.get(sorted.size() - 1).anchorTime;
+        List<CompletableFuture<WindowResult>> futures = new ArrayList<>();
+        for (int start = firstFrame; start <= lastFrame; start += hopFrames) {
+            List<FingerprintGenerator.Fingerprint> window = slice(sorted, start, start + windowFrames);
+            if (window.isEmpty()) continue;
+            final int windowStart = start;
+            final int windowEnd = Math.min(start + windowFrames, lastFrame + 1);
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> scoreWindow(window, shared, windowOptions, windowStart, windowEnd), executor));
+        }
+
+        List<WindowResult> windows = new ArrayList<>(futures.size());
+        for (CompletableFuture<WindowResult> f : futures) {
+            windows.add(f.join());
+        }
+        boolean partial = !coarseComplete || resolved.size() < distinct.length;
+
+        List<MatchSegment> segments = mergeWindows(windows);
+        log.debug("Segmented {} query fingerprints ({}/{} distinct hashes resolved) over {} windows → {} segments",
+                sorted.size(), resolved.size(), distinct.length, windows.size(), segments.size());
+        return new SegmentOutcome(segments, partial, (double) resolved.size() / distinct.length);
+    }
+
+    // ═══ Internals ═══
+
+    private record WindowResult(int startFrame, int endFrame, SongMatcher.MatchResult best) {}
+
+    private WindowResult scoreWindow(List<FingerprintGenerator.Fingerprint> window,
+                                     SongMatcher.FingerprintLookup lookup,
+                                     SongMatcher.MatchOptions options,
+                                     int startFrame, int endFrame) {
+        List<SongMatcher.MatchResult> results = songMatcher.matchDetailed(window, lookup, options).getResults();
+        return new WindowResult(startFrame, endFrame, results.isEmpty() ? null : results.get(0));
+    }
+
+    private static boolean anyAllowed(long[] songIds, SongFilter filter) {
+        for (long songId : songIds) {
+            if (SongIds.isValid(songId) && filter.allows(songId)) return true;
+        }
+        return false;
+    }
+
+    /** Collects one hash's postings as packed {@code songId << 32 | offset} values. */
+    private static final class PostingPacker implements SongMatcher.PostingConsumer {
+        private static final long[] NONE = new long[0];
+        private long[] packed = NONE;
+        private int size;
+
+        @Override
+        public void accept(long songId, int timeOffset) {
+            if (!SongIds.isValid(songId)) return;
+            if (size == packed.length) packed = Arrays.copyOf(packed, Math.max(4, size << 1));
+            packed[size++] = (songId << 32) | (timeOffset & 0xFFFFFFFFL);
+        }
+
+        long[] toArray() {
+            return size == packed.length ? packed : Arrays.copyOf(packed, size);
+        }
+    }
+
+    /** Serves the resolved postings; hashes that were not resolved have none. */
+    private record ResolvedLookup(Map<Long, long[]> resolved) implements SongMatcher.FingerprintLookup {
+        @Override
+        public List<SongMatcher.FingerprintEntry> lookup(long hash) {
+            long[] packed = resolved.get(hash);
+            if (packed == null) return List.of();
+            List<SongMatcher.FingerprintEntry> entries = new ArrayList<>(packed.length);
+            for (long p : packed) entries.add(new SongMatcher.FingerprintEntry(p >>> 32, (int) p));
+            return entries;
+        }
+
+        @Override
+        public void forEachPosting(long hash, SongMatcher.PostingConsumer consumer) {
+            long[] packed = resolved.get(hash);
+            if (packed == null) return;
+            for (long p : packed) consumer.accept(p >>> 32, (int) p);
+        }
+    }
+
+    /** Fingerprints with {@code from <= anchorTime < to}; input must be sorted by anchor time. */
+    private static List<FingerprintGenerator.Fingerprint> slice(List<FingerprintGenerator.Fingerprint> sorted,
+                                                                int from, int to) {
+        int lo = lowerBound(sorted, from);
+        int hi = lowerBound(sorted, to);
+        return sorted.subList(lo, hi);
+    }
+
+    private static int lowerBound(List<FingerprintGenerator.Fingerprint> sorted, int frame) {
+        int lo = 0, hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid).anchorTime < frame) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Merge consecutive windows whose best match is the same song at the same
+     * alignment. Where two different segments overlap, the boundary is placed
+     * in the middle of the overlap; a segment followed by no match keeps its
+     * whole last window.
+     */
+    private List<MatchSegment> mergeWindows(List<WindowResult> windows) {
+        double alignmentTolerance = offsetTolerance * 2 * AudioConstants.TIME_RESOLUTION;
+        List<MatchSegment> segments = new ArrayList<>();
+
+        SongMatcher.MatchResult current = null;
+        int segStart = 0, segEnd = 0;
+        double segConfidence = 0;
+
+        for (WindowResult w : windows) {
+            SongMatcher.MatchResult best = w.best();
+            boolean continues = current != null && best != null
+                    && best.getSongId() == current.getSongId()
+                    && Math.abs(best.getTimeOffsetSeconds() - current.getTimeOffsetSeconds()) <= alignmentTolerance;
+
+            if (continues) {
+                segEnd = w.endFrame();
+                segConfidence = Math.max(segConfidence, best.getConfidence());
+                continue;
+            }
+
+            int boundary = w.startFrame();
+            if (current != null) {
+                boundary = best != null && segEnd > w.startFrame() ? (segEnd + w.startFrame()) / 2 : segEnd;
+                segments.add(toSegment(current, segStart, boundary, segConfidence));
+            }
+            current = best;
+            if (best != null) {
+                segStart = Math.max(w.startFrame(), boundary);
+                segEnd = w.endFrame();
+                segConfidence = best.getConfidence();
+            }
+        }
+        if (current != null) {
+            segments.add(toSegment(current, segStart, segEnd, segConfidence));
+        }
+        return segments;
+    }
+
+    private static MatchSegment toSegment(SongMatcher.MatchResult result, int startFrame, int endFrame,
+                                          double confidence) {
+        double start = startFrame * AudioConstants.TIME_RESOLUTION;
+        double end = endFrame * AudioConstants.TIME_RESOLUTION;
+        // MatchResult offsets are (song time − query time), so add the query position
+        double songOffset = result.getTimeOffsetSeconds() + start;
+        return new MatchSegment(result.getSongId(), start, end, songOffset, confidence);
+    }
+}
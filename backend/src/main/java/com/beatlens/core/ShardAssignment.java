@@ -0,0 +1,93 @@
+package com.beatlens.core;
+
+import java.util.List;
+
+/**
+ * Assigns songs to shards by song ID: song {@code s} belongs to shard
+ * {@code s mod count}.
+ *
+ * <p>Each node of a sharded deployment indexes and scores only the songs of
+ * its own shard. Because the assignment is a pure function of the ID, every
+ * node and the coordinator agree on it without any shared state.</p>
+ */
+public final class ShardAssignment {
+
+    /** A single shard that owns every song. */
+    public static final ShardAssignment SINGLE = new ShardAssignment(1, 0);
+
+    private final int count;
+    private final int index;
+
+    /**
+     * @param count number of shards
+     * @param index this node's shard, in {@code [0, count)}
+     */
+    public ShardAssignment(int count, int index) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException(
+                    "Shard index must be in [0, count) and count positive: index=" + index + ", count=" + count);
+        }
+        this.count = count;
+        this.index = index;
+    }
+
+    public int getCount() { return count; }
+    public int getIndex() { return index; }
+
+    /** @return {@code true} if there is more than one shard */
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    /** @return the shard that owns {@code songId} */
+    public int shardOf(long songId) {
+        return (int) Math.floorMod(songId, (long) count);
+    }
+
+    /** @return {@code true} if this node's shard owns {@code songId} */
+    public boolean owns(long songId) {
+        return count == 1 || shardOf(songId) == index;
+    }
+
+    /**
+     * SQL predicate selecting this shard's rows, e.g. {@code " AND MOD(song_id, 4) = 1"}.
+     *
+     * @param prefix   keyword joining the predicate ({@code WHERE} or {@code AND})
+     * @param idColumn column holding the song ID
+     * @return the predicate with a leading space, or an empty string when unsharded
+     */
+    public String sqlPredicate(String prefix, String idColumn) {
+        return count == 1 ? "" : " " + prefix + " MOD(" + idColumn + ", " + count + ") = " + index;
+    }
+
+    /**
+     * Restrict a lookup to this shard's songs, for stores that also hold
+     * postings of other shards (e.g. a shared database).
+     */
+    public SongMatcher.FingerprintLookup restrict(SongMatcher.FingerprintLookup lookup) {
+        if (count == 1) return lookup;
+        return new SongMatcher.FingerprintLookup() {
+            @Override
+            public List<SongMatcher.FingerprintEntry> lookup(long hash) {
+                List<SongMatcher.FingerprintEntry> entries = lookup.lookup(hash);
+                return entries == null ? List.of() : entries.stream().filter(e -> owns(e.songId)).toList();
+            }
+
+            @Override
+            public void forEachPosting(long hash, SongMatcher.PostingConsumer consumer) {
+                lookup.forEachPosting(hash, (songId, timeOffset) -> {
+                    if (owns(songId)) consumer.accept(songId, timeOffset);
+                });
+            }
+            @Override
+            public void prefetch(long[] hashes) {
+                lookup.prefetch(hashes);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
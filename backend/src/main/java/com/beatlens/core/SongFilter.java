@@ -0,0 +1,83 @@
+package com.beatlens.core;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Collection;
+
+/**
+ * Immutable set of song IDs that a query is allowed to match, backed by a
+ * compressed (Roaring) bitmap.
+ *
+ * <p>The filter is applied inside {@link SongMatcher} before a posting is
+ * counted, so postings for excluded songs never reach the hit counter or the
+ * offset histograms. Song IDs are limited to the {@link SongIds} range,
+ * the same limit the matcher's vote packing relies on.</p>
+ */
+public final class SongFilter {
+
+    /** Allows every song. */
+    public static final SongFilter ALL = new SongFilter(null);
+
+    private final RoaringBitmap bitmap; // null = unrestricted
+
+    private SongFilter(RoaringBitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    /** A filter that allows exactly the given songs. */
+    public static SongFilter of(long... songIds) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (long songId : songIds) {
+            bitmap.add(SongIds.toInt(songId));
+        }
+        return fromBitmap(bitmap);
+    }
+
+    /** A filter that allows exactly the given songs. */
+    public static SongFilter of(Collection<Long> songIds) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (Long songId : songIds) {
+            bitmap.add(SongIds.toInt(songId));
+        }
+        return fromBitmap(bitmap);
+    }
+
+    /** Wrap a bitmap of song IDs. The bitmap is copied and compacted. */
+    public static SongFilter fromBitmap(RoaringBitmap bitmap) {
+        RoaringBitmap copy = bitmap.clone();
+        copy.runOptimize();
+        return new SongFilter(copy);
+    }
+
+    /** @return {@code true} if postings for {@code songId} may be counted */
+    public boolean allows(long songId) {
+        return bitmap == null || SongIds.contains(bitmap, songId);
+    }
+
+    /** @return a filter allowing only songs allowed by both filters */
+    public SongFilter and(SongFilter other) {
+        if (this.bitmap == null) return other;
+        if (other.bitmap == null) return this;
+        return new SongFilter(RoaringBitmap.and(this.bitmap, other.bitmap));
+    }
+
+    /** @return {@code true} if this filter places no restriction */
+    public boolean isUnrestricted() {
+        return bitmap == null;
+    }
+
+    /** @return {@code true} if no song can pass this filter */
+    public boolean isEmpty() {
+        return bitmap != null && bitmap.isEmpty();
+    }
+
+    /** @return number of allowed songs, or -1 when unrestricted */
+    public long cardinality() {
+        return bitmap == null ? -1 : bitmap.getLongCardinality();
+    }
+
+    /** @return serialized size of the underlying bitmap in bytes */
+    public int sizeInBytes() {
+        return bitmap == null ? 0 : bitmap.serializedSizeInBytes();
+    }
+}
@@ -0,0 +1,129 @@
+package com.beatlens.core;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Compact per-song hit counter used for the first (cheap) matching pass.
+ *
+ * <p>An open-addressing {@code long → int} table with linear probing: no
+ * boxing, no per-song objects, and two flat arrays regardless of how many
+ * candidate songs a query touches.</p>
+ */
+class SongHitCounter {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+    private int mask;
+
+    SongHitCounter() {
+        this(1024);
+    }
+
+    SongHitCounter(int expectedSongs) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSongs * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /** Add one hit for {@code songId}. */
+    void increment(long songId) {
+        int slot = slotOf(songId);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = songId;
+            counts[slot] = 1;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+        } else {
+            counts[slot]++;
+        }
+    }
+
+    /** @return number of hits recorded for {@code songId}, or 0 */
+    int get(long songId) {
+        int slot = slotOf(songId);
+        return keys[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    /** @return number of distinct songs seen */
+    int size() {
+        return size;
+    }
+
+    /** @return the largest hit count of any song, or 0 when empty */
+    int maxCount() {
+        int max = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && counts[i] > max) max = counts[i];
+        }
+        return max;
+    }
+
+    /**
+     * Select the songs with the most hits.
+     *
+     * @param limit    maximum number of songs to return
+     * @param minCount songs with fewer hits are never returned
+     * @return song IDs, best first
+     */
+    long[] top(int limit, int minCount) {
+        if (limit <= 0) return new long[0];
+
+        // Min-heap of slot indices keyed by count: O(n log limit)
+        PriorityQueue<Integer> heap = new PriorityQueue<>(
+                Math.min(limit, Math.max(1, size)) + 1,
+                (a, b) -> Integer.compare(counts[a], counts[b]));
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY || counts[i] < minCount) continue;
+            if (heap.size() < limit) {
+                heap.add(i);
+            } else if (counts[i] > counts[heap.peek()]) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+
+        long[] result = new long[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = keys[heap.poll()];
+        }
+        return result;
+    }
+
+    // ═══ Internals ═══
+
+    private int slotOf(long songId) {
+        int slot = mix(songId) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != songId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = slotOf(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
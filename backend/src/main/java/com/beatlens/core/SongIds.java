@@ -0,0 +1,41 @@
+package com.beatlens.core;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * The range of song IDs that postings, song sets and the matcher can hold.
+ *
+ * <p>Packed postings keep a song ID in the upper 32 bits of a {@code long},
+ * the compact postings table stores it as {@code INT}, and song sets are
+ * Roaring bitmaps of {@code int}. Song IDs therefore stop at {@link #MAX}:
+ * V7 caps the {@code songs} sequence there, and indexing rejects IDs above it, so no stored posting carries one; readers
+ * treat such an ID as absent rather than failing.</p>
+ */
+public final class SongIds {
+
+    /** Largest song ID that can be indexed. */
+    public static final long MAX = Integer.MAX_VALUE;
+
+    private SongIds() {}
+
+    /** @return {@code true} if {@code songId} is in {@code [0, MAX]} */
+    public static boolean isValid(long songId) {
+        return songId >= 0 && songId <= MAX;
+    }
+
+    /**
+     * @return {@code songId} as the {@code int} key of a song set
+     * @throws IllegalArgumentException if it is outside {@code [0, MAX]}
+     */
+    public static int toInt(long songId) {
+        if (!isValid(songId)) {
+            throw new IllegalArgumentException("Song id out of range [0, " + MAX + "]: " + songId);
+        }
+        return (int) songId;
+    }
+
+    /** @return {@code true} if {@code songs} holds {@code songId}; IDs out of range are never held */
+    public static boolean contains(RoaringBitmap songs, long songId) {
+        return isValid(songId) && songs.contains((int) songId);
+    }
+}
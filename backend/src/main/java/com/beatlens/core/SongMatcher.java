@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Matches query fingerprints against a fingerprint store using
@@ -20,6 +21,9 @@ public class SongMatcher {
     private final int offsetTolerance;
     private final int minAlignedMatches;
     private final double minConfidence;
+    private final int maxCandidates;
+    private final double candidateHitRatio;
+    private final int coarseCandidates;
 
     /** Strategy interface for looking up fingerprint hashes. */
     @FunctionalInterface
@@ -29,6 +33,135 @@ public class SongMatcher {
          * @return list of (songId, timeOffset) entries that share this hash
          */
         List<FingerprintEntry> lookup(long hash);
+
+        /**
+         * Visit every (songId, timeOffset) posting for a hash. The matcher uses
+         * this on its hot path; stores that keep postings in primitive form
+         * override it to avoid allocating an entry object per posting.
+         */
+        default void forEachPosting(long hash, PostingConsumer consumer) {
+            List<FingerprintEntry> entries = lookup(hash);
+            if (entries == null) return;
+            for (FingerprintEntry entry : entries) {
+                consumer.accept(entry.songId, entry.timeOffset);
+            }
+        }
+
+        /**
+         * Announce the hashes a query is about to look up. Stores behind a
+         * database fetch them in as few round trips as possible (and may block
+         * until they have); in-process stores ignore it.
+         */
+        default void prefetch(long[] hashes) {}
+    }
+
+    /** Receives postings from {@link FingerprintLookup#forEachPosting}. */
+    @FunctionalInterface
+    public interface PostingConsumer {
+        void accept(long songId, int timeOffset);
+    }
+
+    /** Strategy interface for drift-tolerant candidate retrieval by coarse hash. */
+    @FunctionalInterface
+    public interface CoarseLookup {
+        /**
+         * @param coarseHash coarse fingerprint hash
+         * @return distinct IDs of the songs that contain this coarse hash
+         */
+        long[] lookupSongs(long coarseHash);
+
+        /**
+         * Hint that the given coarse hashes are about to be looked up, so a
+         * remote store can fetch them in batches. Default: no-op.
+         */
+        default void prefetch(long[] coarseHashes) {}
+
+        /** Adapt a coarse lookup, passing {@link #prefetch} hints on to {@code prefetch}. */
+        static CoarseLookup of(CoarseLookup lookup, Consumer<long[]> prefetch) {
+            return new CoarseLookup() {
+                @Override
+                public long[] lookupSongs(long coarseHash) {
+                    return lookup.lookupSongs(coarseHash);
+                }
+
+                @Override
+                public void prefetch(long[] coarseHashes) {
+                    prefetch.accept(coarseHashes);
+                }
+            };
+        }
+    }
+
+    /**
+     * Per-query matching options.
+     *
+     * @param coarseLookup when non-null, candidate songs are first retrieved by
+     *                     coarse hash and exact postings are only scored for them
+     * @param deadline     when it expires, lookups stop and the votes gathered
+     *                     so far are scored
+     * @param songFilter   postings for songs it rejects are skipped before counting
+     */
+    public record MatchOptions(CoarseLookup coarseLookup, Deadline deadline, SongFilter songFilter) {
+        public static final MatchOptions DEFAULT = new MatchOptions(null, Deadline.NONE, SongFilter.ALL);
+
+        public MatchOptions withCoarseLookup(CoarseLookup coarseLookup) {
+            return new MatchOptions(coarseLookup, deadline, songFilter);
+        }
+
+        public MatchOptions withDeadline(Deadline deadline) {
+            return new MatchOptions(coarseLookup, deadline, songFilter);
+        }
+
+        public MatchOptions withSongFilter(SongFilter songFilter) {
+            return new MatchOptions(coarseLookup, deadline, songFilter);
+        }
+    }
+
+    /** Ranked results plus how much of the query was actually consulted. */
+    public static class MatchOutcome {
+        private final List<MatchResult> results;
+        private final int hashesConsulted;
+        private final int hashesTotal;
+
+        public MatchOutcome(List<MatchResult> results, int hashesConsulted, int hashesTotal) {
+            this.results = results;
+            this.hashesConsulted = hashesConsulted;
+            this.hashesTotal = hashesTotal;
+        }
+
+        public List<MatchResult> getResults() { return results; }
+        public int getHashesConsulted() { return hashesConsulted; }
+        public int getHashesTotal() { return hashesTotal; }
+
+        /** @return {@code true} if the deadline cut the lookups short */
+        public boolean isPartial() { return hashesConsulted < hashesTotal; }
+
+        /** @return fraction of query hashes that were looked up, in [0, 1] */
+        public double getHashCoverage() {
+            return hashesTotal == 0 ? 1.0 : (double) hashesConsulted / hashesTotal;
+        }
+
+        /**
+         * Merge the outcomes of matching one query against disjoint song
+         * shards into one global ranking. Confidence depends only on the song
+         * and the query, so per-shard results are directly comparable.
+         *
+         * @param shardOutcomes outcomes of the shards that answered
+         * @param shardCount    number of shards queried, including any that did not answer
+         * @param queryHashes   hashes in the query
+         * @return merged results, best first; coverage counts unanswered shards as unconsulted
+         */
+        public static MatchOutcome merge(List<MatchOutcome> shardOutcomes, int shardCount, int queryHashes) {
+            List<MatchResult> merged = new ArrayList<>();
+            int consulted = 0;
+            for (MatchOutcome outcome : shardOutcomes) {
+                merged.addAll(outcome.getResults());
+                consulted += outcome.getHashesTotal() == 0 ? queryHashes
+                        : (int) Math.round(outcome.getHashCoverage() * queryHashes);
+            }
+            Collections.sort(merged);
+            return new MatchOutcome(merged, consulted, shardCount * queryHashes);
+        }
     }
 
     /** An entry from the fingerprint store. */
@@ -78,9 +211,34 @@ public class SongMatcher {
     }
 
     public SongMatcher(int offsetTolerance, int minAlignedMatches, double minConfidence) {
+        this(offsetTolerance, minAlignedMatches, minConfidence,
+             AudioConstants.MAX_CANDIDATES,
+             AudioConstants.CANDIDATE_HIT_RATIO);
+    }
+
+    /**
+     * @param maxCandidates     upper bound on songs that get a full offset histogram
+     * @param candidateHitRatio songs with fewer raw hits than this fraction of the
+     *                          best song's hits are dropped before histogram scoring
+     */
+    public SongMatcher(int offsetTolerance, int minAlignedMatches, double minConfidence,
+                       int maxCandidates, double candidateHitRatio) {
+        this(offsetTolerance, minAlignedMatches, minConfidence,
+             maxCandidates, candidateHitRatio, AudioConstants.COARSE_CANDIDATES);
+    }
+
+    /**
+     * @param coarseCandidates upper bound on songs kept by coarse-hash retrieval
+     *                         (only used when a {@link CoarseLookup} is supplied)
+     */
+    public SongMatcher(int offsetTolerance, int minAlignedMatches, double minConfidence,
+                       int maxCandidates, double candidateHitRatio, int coarseCandidates) {
         this.offsetTolerance = offsetTolerance;
         this.minAlignedMatches = minAlignedMatches;
         this.minConfidence = minConfidence;
+        this.maxCandidates = maxCandidates;
+        this.candidateHitRatio = candidateHitRatio;
+        this.coarseCandidates = coarseCandidates;
     }
 
     /**
@@ -92,20 +250,55 @@ public class SongMatcher {
      */
     public List<MatchResult> match(List<FingerprintGenerator.Fingerprint> queryFingerprints,
                                    FingerprintLookup lookup) {
+        return match(queryFingerprints, lookup, MatchOptions.DEFAULT);
+    }
+
+    /**
+     * Match a set of query fingerprints against the store with per-query options.
+     *
+     * @param queryFingerprints fingerprints extracted from the query clip
+     * @param lookup            strategy for hash-based lookup
+     * @param options           per-query options (coarse retrieval, ...)
+     * @return ranked list of match results (best first)
+     */
+    public List<MatchResult> match(List<FingerprintGenerator.Fingerprint> queryFingerprints,
+                                   FingerprintLookup lookup, MatchOptions options) {
+        return matchDetailed(queryFingerprints, lookup, options).getResults();
+    }
+
+    /**
+     * Like {@link #match(List, FingerprintLookup, MatchOptions)}, but also
+     * reports how many query hashes were consulted before the deadline.
+     */
+    public MatchOutcome matchDetailed(List<FingerprintGenerator.Fingerprint> queryFingerprints,
+                                      FingerprintLookup lookup, MatchOptions options) {
         if (queryFingerprints.isEmpty()) {
-            return Collections.emptyList();
+            return new MatchOutcome(Collections.emptyList(), 0, 0);
+        }
+
+        // Step 0 (optional): restrict candidates by coarse hash
+        SongFilter filter = options.songFilter();
+        long[] liveCoarseHashes = null;
+        if (options.coarseLookup() != null) {
+            CoarseCandidates coarse = retrieveCoarseCandidates(
+                    queryFingerprints, options.coarseLookup(), filter, options.deadline());
+            filter = filter.and(coarse.shortlist());
+            liveCoarseHashes = coarse.liveCoarseHashes();
         }
 
-        // Step 1 + 2: collect matches and build per-song offset histograms
-        Map<Long, SongMatchData> songMatches = collectMatches(queryFingerprints, lookup);
+        // Step 1 + 2: count raw hits, shortlist candidates, then build
+        // offset histograms for the shortlisted songs only
+        MatchCollectionStats stats = new MatchCollectionStats();
+        Map<Long, SongMatchData> songMatches = collectMatches(
+                queryFingerprints, lookup, filter, liveCoarseHashes, options.deadline(), stats);
 
-        // Step 3: score each candidate
+        // Step 3: score each candidate (with whatever votes were gathered in time)
         List<MatchResult> results = scoreMatches(songMatches, queryFingerprints.size());
-        Collections.sort(results); //TODO: how is the sort happening here. on which field?
+        Collections.sort(results); // MatchResult orders by confidence, highest first
 
         log.debug("Matched {} query fingerprints → {} candidates",
                 queryFingerprints.size(), results.size());
-        return results;
+        return new MatchOutcome(results, stats.hashesConsulted, stats.queryFingerprints);
     }
 
     // ═══ Internals ═══
@@ -120,44 +313,204 @@ public class SongMatcher {
         int lookupHits = 0;
         int totalDatabaseEntries = 0;
         int candidateSongs = 0;
+        int shortlistedSongs = 0;
+        int hashesConsulted = 0;
+    }
+
+    /**
+     * Pass-1 posting sink: counts hits and records votes for the current
+     * query fingerprint without allocating per posting.
+     */
+    private static final class VoteCollector implements PostingConsumer {
+        private final SongHitCounter hits;
+        private final VoteBuffer votes;
+        private final SongFilter filter;
+        int anchorTime;
+        int postingsSeen;
+
+        VoteCollector(SongHitCounter hits, VoteBuffer votes, SongFilter filter) {
+            this.hits = hits;
+            this.votes = votes;
+            this.filter = filter;
+        }
+
+        @Override
+        public void accept(long songId, int timeOffset) {
+            postingsSeen++;
+            // IDs beyond the packable range cannot be indexed; skip rather than fail the query
+            if (!SongIds.isValid(songId) || !filter.allows(songId)) return;
+            hits.increment(songId);
+            votes.add(songId, timeOffset - anchorTime);
+        }
+    }
+
+    /**
+     * Growable buffer of packed (songId, offset) votes, so the lookup results
+     * only have to be fetched once for both passes. Song IDs must be
+     * {@link SongIds#isValid valid}.
+     */
+    private static final class VoteBuffer {
+        private long[] votes;
+        private int size;
+
+        VoteBuffer(int initialCapacity) {
+            votes = new long[Math.max(16, initialCapacity)];
+        }
+
+        void add(long songId, int offset) {
+            if (size == votes.length) {
+                votes = Arrays.copyOf(votes, size << 1);
+            }
+            votes[size++] = (songId << 32) | (offset & 0xFFFFFFFFL);
+        }
+
+        int size() { return size; }
+        long songId(int i) { return votes[i] >>> 32; }
+        int offset(int i) { return (int) votes[i]; }
+    }
+
+    /**
+     * @param shortlist        filter allowing only the shortlisted songs
+     * @param liveCoarseHashes sorted coarse hashes whose songs include a
+     *                         shortlisted one; other exact hashes cannot vote
+     */
+    private record CoarseCandidates(SongFilter shortlist, long[] liveCoarseHashes) {}
+
+    /**
+     * Vote for songs by distinct coarse hash and keep the strongest ones.
+     * All coarse hashes are prefetched first, so a remote lookup reads them in
+     * batches rather than one round trip each.
+     */
+    private CoarseCandidates retrieveCoarseCandidates(List<FingerprintGenerator.Fingerprint> queryFingerprints,
+                                                      CoarseLookup coarseLookup, SongFilter filter,
+                                                      Deadline deadline) {
+        long[] coarseHashes = queryFingerprints.stream().mapToLong(fp -> fp.coarseHash).sorted().distinct().toArray();
+        coarseLookup.prefetch(coarseHashes);
+
+        SongHitCounter coarseHits = new SongHitCounter();
+        long[][] songsPerHash = new long[coarseHashes.length][];
+        int looked = 0;
+        for (; looked < coarseHashes.length; looked++) {
+            if (deadline.isExpired()) break;
+            long[] songIds = coarseLookup.lookupSongs(coarseHashes[looked]);
+            if (songIds == null) continue;
+            songsPerHash[looked] = songIds;
+            for (long songId : songIds) {
+                if (!SongIds.isValid(songId) || !filter.allows(songId)) continue;
+                coarseHits.increment(songId);
+            }
+        }
+
+        int relativeFloor = (int) Math.ceil(coarseHits.maxCount() * candidateHitRatio);
+        long[] shortlist = coarseHits.top(coarseCandidates, Math.max(minAlignedMatches, relativeFloor));
+        SongFilter shortlisted = SongFilter.of(shortlist);
+
+        long[] live = new long[looked];
+        int n = 0;
+        for (int i = 0; i < looked; i++) {
+            if (songsPerHash[i] == null) continue;
+            for (long songId : songsPerHash[i]) {
+                if (SongIds.isValid(songId) && shortlisted.allows(songId)) {
+                    live[n++] = coarseHashes[i];
+                    break;
+                }
+            }
+        }
+
+        log.debug("Coarse retrieval: distinctCoarseHashes={}, coarseCandidates={}, shortlisted={}, liveCoarseHashes={}",
+                looked, coarseHits.size(), shortlist.length, n);
+        return new CoarseCandidates(shortlisted, Arrays.copyOf(live, n));
     }
 
+    /**
+     * @param filter           postings for songs it rejects are skipped before counting
+     * @param liveCoarseHashes when non-null, sorted coarse hashes outside of
+     *                         which exact hashes are not looked up at all
+     * @param deadline         lookups stop once it expires; votes gathered so far are kept
+     */
     private Map<Long, SongMatchData> collectMatches(
             List<FingerprintGenerator.Fingerprint> queryFingerprints,
-            FingerprintLookup lookup) {
+            FingerprintLookup lookup,
+            SongFilter filter,
+            long[] liveCoarseHashes,
+            Deadline deadline,
+            MatchCollectionStats stats) {
 
-        Map<Long, SongMatchData> songMatches = new HashMap<>();
-        MatchCollectionStats stats = new MatchCollectionStats();
         stats.queryFingerprints = queryFingerprints.size();
 
+        // Pass 1: count raw hits per song in a compact counter
+        SongHitCounter hits = new SongHitCounter();
+        VoteBuffer votes = new VoteBuffer(queryFingerprints.size() * 4);
+
+        VoteCollector collector = new VoteCollector(hits, votes, filter);
+
+        long[] queryHashes = new long[queryFingerprints.size()];
+        int wanted = 0;
+        for (FingerprintGenerator.Fingerprint qfp : queryFingerprints) {
+            if (isLive(qfp, liveCoarseHashes)) queryHashes[wanted++] = qfp.hash;
+        }
+        lookup.prefetch(wanted == queryHashes.length ? queryHashes : Arrays.copyOf(queryHashes, wanted));
+
         for (FingerprintGenerator.Fingerprint qfp : queryFingerprints) {
-            List<FingerprintEntry> entries = lookup.lookup(qfp.hash);
-            if (entries == null) continue;
-            if (!entries.isEmpty()) {
+            if (deadline.isExpired()) break;
+            stats.hashesConsulted++;
+            // No shortlisted song shares its coarse hash, so none of its postings could count
+            if (!isLive(qfp, liveCoarseHashes)) continue;
+            int seenBefore = collector.postingsSeen;
+            collector.anchorTime = qfp.anchorTime;
+            lookup.forEachPosting(qfp.hash, collector);
+
+            int found = collector.postingsSeen - seenBefore;
+            if (found > 0) {
                 stats.lookupHits++;
-                stats.totalDatabaseEntries += entries.size();
+                stats.totalDatabaseEntries += found;
             }
+        }
 
-            for (FingerprintEntry entry : entries) {
-                SongMatchData data = songMatches.computeIfAbsent(
-                        entry.songId, k -> new SongMatchData());
-                int offset = entry.timeOffset - qfp.anchorTime;
-                // Use floorDiv so negative offsets bin symmetrically
-                // (Java's / operator rounds toward zero, splitting negative
-                // bins unevenly and scattering votes that should cluster).
-                int binned = Math.floorDiv(offset, offsetTolerance) * offsetTolerance;
-                data.offsetHistogram.merge(binned, 1, Integer::sum);
-                data.totalMatches++;
-            }
+        // Shortlist: only the strongest candidates get an offset histogram
+        long[] shortlist = selectCandidates(hits);
+        Map<Long, SongMatchData> songMatches = new HashMap<>(shortlist.length * 2);
+        for (long songId : shortlist) {
+            songMatches.put(songId, new SongMatchData());
         }
 
-        stats.candidateSongs = songMatches.size();
-        log.info("Hash lookup stats: queryFingerprints={}, hashesWithMatches={}, dbEntryHits={}, candidateSongs={}",
-                stats.queryFingerprints, stats.lookupHits, stats.totalDatabaseEntries, stats.candidateSongs);
+        // Pass 2: build offset histograms for the shortlisted songs
+        for (int i = 0; i < votes.size(); i++) {
+            SongMatchData data = songMatches.get(votes.songId(i));
+            if (data == null) continue;
+            // Use floorDiv so negative offsets bin symmetrically
+            // (Java's / operator rounds toward zero, splitting negative
+            // bins unevenly and scattering votes that should cluster).
+            int binned = Math.floorDiv(votes.offset(i), offsetTolerance) * offsetTolerance;
+            data.offsetHistogram.merge(binned, 1, Integer::sum);
+            data.totalMatches++;
+        }
+
+        stats.candidateSongs = hits.size();
+        stats.shortlistedSongs = songMatches.size();
+        log.debug("Hash lookup stats: queryFingerprints={}, consulted={}, hashesWithMatches={}, dbEntryHits={}, candidateSongs={}, shortlisted={}",
+                stats.queryFingerprints, stats.hashesConsulted, stats.lookupHits,
+                stats.totalDatabaseEntries, stats.candidateSongs, stats.shortlistedSongs);
 
         return songMatches;
     }
 
+    private static boolean isLive(FingerprintGenerator.Fingerprint qfp, long[] liveCoarseHashes) {
+        return liveCoarseHashes == null || Arrays.binarySearch(liveCoarseHashes, qfp.coarseHash) >= 0;
+    }
+
+    /**
+     * Keep the top {@code maxCandidates} songs by raw hit count. The cut-off
+     * adapts to the hit distribution: a song needs at least
+     * {@code candidateHitRatio} of the best song's hits, and never fewer than
+     * {@code minAlignedMatches} (it could not pass scoring otherwise).
+     */
+    private long[] selectCandidates(SongHitCounter hits) {
+        int relativeFloor = (int) Math.ceil(hits.maxCount() * candidateHitRatio);
+        int minHits = Math.max(minAlignedMatches, relativeFloor);
+        return hits.top(maxCandidates, minHits);
+    }
+
     private List<MatchResult> scoreMatches(Map<Long, SongMatchData> songMatches,
                                             int queryFingerprintCount) {
         List<MatchResult> results = new ArrayList<>();
@@ -0,0 +1,16 @@
+package com.beatlens.event;
+
+/**
+ * Published by {@link com.beatlens.service.SongService} when a song is deleted,
+ * and replayed by {@link com.beatlens.service.ShardCoordinator} on nodes that
+ * learn of a delete made elsewhere. Listeners that maintain derived lookup
+ * state should react after the transaction commits.
+ *
+ * @param replayed set on replays: they update local state but are not announced to other nodes again
+ */
+public record SongDeletedEvent(long songId, boolean replayed) {
+
+    public SongDeletedEvent(long songId) {
+        this(songId, false);
+    }
+}
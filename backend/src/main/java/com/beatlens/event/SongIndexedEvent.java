@@ -0,0 +1,24 @@
+package com.beatlens.event;
+
+import com.beatlens.core.FingerprintGenerator;
+
+import java.util.List;
+
+/**
+ * Published by {@link com.beatlens.service.IndexingService} once a song and
+ * its fingerprints have been persisted, and replayed by
+ * {@link com.beatlens.service.ShardCoordinator} on nodes that learn of a song
+ * indexed elsewhere. Listeners that maintain derived
+ * lookup state should react after the transaction commits.
+ *
+ * @param replayed set on replays: they update local state but are not announced to other nodes again
+ */
+public record SongIndexedEvent(
+        long songId,
+        List<FingerprintGenerator.Fingerprint> fingerprints,
+        boolean replayed
+) {
+    public SongIndexedEvent(long songId, List<FingerprintGenerator.Fingerprint> fingerprints) {
+        this(songId, fingerprints, false);
+    }
+}
@@ -1,5 +1,6 @@
 package com.beatlens.exception;
 
+import com.beatlens.core.Deadline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -27,6 +28,17 @@ public class GlobalExceptionHandler {
         return buildResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
     }
 
+    @ExceptionHandler(Deadline.ExceededException.class)
+    public ResponseEntity<Map<String, Object>> handleDeadline(Deadline.ExceededException ex) {
+        log.warn("Request deadline exceeded: {}", ex.getMessage());
+        return buildResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+
+    @ExceptionHandler(UnsupportedOperationException.class)
+    public ResponseEntity<Map<String, Object>> handleUnsupported(UnsupportedOperationException ex) {
+        return buildResponse(HttpStatus.NOT_IMPLEMENTED, ex.getMessage());
+    }
+
     @ExceptionHandler(MaxUploadSizeExceededException.class)
     public ResponseEntity<Map<String, Object>> handleMaxSize(MaxUploadSizeExceededException ex) {
         return buildResponse(HttpStatus.PAYLOAD_TOO_LARGE, "File too large. Maximum size is 50MB.");
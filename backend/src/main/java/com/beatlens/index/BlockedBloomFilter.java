@@ -0,0 +1,130 @@
+package com.beatlens.index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache-line blocked Bloom filter over fingerprint hashes.
+ *
+ * <p>Every key maps to one 512-bit block (one cache line) and sets
+ * {@code k} bits inside it, so a membership test costs a single cache miss
+ * regardless of {@code k}. Blocking raises the false-positive rate slightly
+ * over a classic Bloom filter of the same size; {@link #create} compensates
+ * with ~10% more bits.</p>
+ *
+ * <p>Safe for concurrent use: bits are set with atomic OR, so concurrent
+ * {@link #put}s never lose a bit and {@link #mightContain} never returns a
+ * false negative for a completed put.</p>
+ */
+public final class BlockedBloomFilter {
+
+    private static final int BLOCK_BITS = 512;
+    private static final int BLOCK_LONGS = BLOCK_BITS / Long.SIZE;
+    private static final int MAX_BLOCKS = Integer.MAX_VALUE / BLOCK_LONGS;
+    private static final double BLOCKING_OVERHEAD = 1.1;
+
+    private final AtomicLongArray bits;
+    private final int blockCount;
+    private final int hashFunctions;
+    private final long expectedInsertions;
+    private final LongAdder bitsSet = new LongAdder();
+
+    private BlockedBloomFilter(int blockCount, int hashFunctions, long expectedInsertions) {
+        this.bits = new AtomicLongArray(blockCount * BLOCK_LONGS);
+        this.blockCount = blockCount;
+        this.hashFunctions = hashFunctions;
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    /**
+     * @param expectedInsertions number of distinct keys the filter is sized for
+     * @param fpp                target false-positive probability at that size, in (0, 1)
+     */
+    public static BlockedBloomFilter create(long expectedInsertions, double fpp) {
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("False-positive probability must be in (0, 1): " + fpp);
+        }
+        long n = Math.max(1, expectedInsertions);
+        double bitsPerKey = -Math.log(fpp) / (Math.log(2) * Math.log(2));
+        long totalBits = (long) Math.ceil(n * bitsPerKey * BLOCKING_OVERHEAD);
+        int blocks = (int) Math.min(MAX_BLOCKS, Math.max(1, (totalBits + BLOCK_BITS - 1) / BLOCK_BITS));
+        int k = (int) Math.max(1, Math.min(16, Math.round(bitsPerKey * Math.log(2))));
+        return new BlockedBloomFilter(blocks, k, n);
+    }
+
+    public void put(long key) {
+        long h = mix(key);
+        int base = blockOf(h) * BLOCK_LONGS;
+        int a = (int) h;
+        int b = probeStep(h);
+        for (int i = 0; i < hashFunctions; i++) {
+            int bit = (a + i * b) >>> 23; // top 9 bits: position within the block
+            int index = base + (bit >>> 6);
+            long mask = 1L << bit;
+            long previous = bits.getAndAccumulate(index, mask, (x, m) -> x | m);
+            if ((previous & mask) == 0) {
+                bitsSet.increment();
+            }
+        }
+    }
+
+    /** @return {@code false} if {@code key} was definitely never added */
+    public boolean mightContain(long key) {
+        long h = mix(key);
+        int base = blockOf(h) * BLOCK_LONGS;
+        int a = (int) h;
+        int b = probeStep(h);
+        for (int i = 0; i < hashFunctions; i++) {
+            int bit = (a + i * b) >>> 23;
+            if ((bits.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false-positive probability implied by the current fill ratio;
+     *         grows as keys are added beyond the expected count
+     */
+    public double estimatedFpp() {
+        double fill = bitsSet.sum() / (double) (blockCount * (long) BLOCK_BITS);
+        return Math.pow(fill, hashFunctions);
+    }
+
+    /**
+     * @return number of distinct keys put so far, estimated from the fill
+     *         ratio; a cheap cardinality sketch for sizing the next filter
+     */
+    public long estimatedInsertions() {
+        double totalBits = blockCount * (double) BLOCK_BITS;
+        double fill = Math.min(bitsSet.sum() / totalBits, 1 - 1 / totalBits);
+        return Math.round(-totalBits / hashFunctions * Math.log1p(-fill));
+    }
+
+    public long expectedInsertions() { return expectedInsertions; }
+    public int hashFunctions() { return hashFunctions; }
+
+    public long sizeInBytes() {
+        return (long) blockCount * BLOCK_LONGS * Long.BYTES;
+    }
+
+    private int blockOf(long h) {
+        return (int) (((h >>> 32) * blockCount) >>> 32);
+    }
+
+    /** Odd step for double hashing, decorrelated from the block index. */
+    private static int probeStep(long h) {
+        return (int) ((h * 0x9E3779B97F4A7C15L) >>> 32) | 1;
+    }
+
+    /** MurmurHash3 finaliser: fingerprint hashes are structured, so spread their bits first. */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,48 @@
+package com.beatlens.index;
+
+/**
+ * Rate limiter for background compaction, so that merging segments does not
+ * starve match traffic of CPU and I/O.
+ *
+ * <p>Callers report progress in postings; the throttle sleeps whenever the
+ * caller gets ahead of the configured rate.</p>
+ */
+public class CompactionThrottle {
+
+    /** A throttle that never sleeps. */
+    public static final CompactionThrottle UNLIMITED = new CompactionThrottle(0);
+
+    private final long postingsPerSecond;
+    private long startNanos;
+    private long processed;
+
+    /**
+     * @param postingsPerSecond maximum merge rate; 0 or less means unlimited
+     */
+    public CompactionThrottle(long postingsPerSecond) {
+        this.postingsPerSecond = postingsPerSecond;
+    }
+
+    /** @return a fresh throttle with the same rate, for one compaction run */
+    public CompactionThrottle start() {
+        CompactionThrottle run = new CompactionThrottle(postingsPerSecond);
+        run.startNanos = System.nanoTime();
+        return run;
+    }
+
+    /** Record {@code postings} processed, sleeping if ahead of schedule. */
+    public void acquire(long postings) {
+        if (postingsPerSecond <= 0) return;
+        processed += postings;
+        long dueNanos = startNanos + processed * 1_000_000_000L / postingsPerSecond;
+        long sleepNanos = dueNanos - System.nanoTime();
+        if (sleepNanos > 0) {
+            try {
+                Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Compaction interrupted", e);
+            }
+        }
+    }
+}
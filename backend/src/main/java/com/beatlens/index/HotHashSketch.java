@@ -0,0 +1,297 @@
+package com.beatlens.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Approximate access frequencies of query hashes, small enough to persist
+ * and reload across restarts.
+ *
+ * <p>A count-min sketch ({@value #DEPTH} rows of {@code width} counters)
+ * estimates how often each hash was recorded; alongside it the hottest
+ * {@code capacity} hashes are kept as candidates with their estimates, in
+ * a min-heap bounded at {@code capacity}: a recorded hash replaces the
+ * coolest candidate once its estimate exceeds it, so recording stays
+ * {@code O(log capacity)}. A hash that falls out of the candidates keeps its
+ * counts in the sketch and re-enters with its full estimate the next time
+ * it is recorded. Once {@code 10 × width} samples have been recorded all
+ * counts are halved, so yesterday's hits fade out.</p>
+ *
+ * <p>Thread-safe; callers are expected to record a sample of lookups, not
+ * every one. Ranking the candidates ({@link #topHashes}, {@link #writeTo})
+ * sorts a copy taken under the lock, not the candidates themselves.</p>
+ *
+ * <h3>File format</h3>
+ * <pre>
+ * int   magic "HOTH"       int   version
+ * int   width              long  samples
+ * int[] DEPTH × width counters
+ * int   candidate count    (long hash, int estimate) × count
+ * </pre>
+ */
+public final class HotHashSketch {
+
+    static final int DEPTH = 4;
+    private static final int MAGIC = 0x484F5448;
+    private static final int VERSION = 1;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    private final int width;
+    private final int capacity;
+    private final int[] counters;
+    private long samples;
+
+    // Candidates: min-heap on estimate, with each hash's heap slot
+    private final long[] heapHashes;
+    private final int[] heapEstimates;
+    private final Map<Long, Integer> heapSlots = new HashMap<>();
+    private int heapSize;
+
+    /**
+     * @param capacity hot hashes to track; the sketch is sized from it
+     */
+    public HotHashSketch(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.width = Math.max(1024, Integer.highestOneBit(capacity - 1) << 1);
+        this.counters = new int[DEPTH * width];
+        this.heapHashes = new long[capacity];
+        this.heapEstimates = new int[capacity];
+    }
+
+    public synchronized void record(long hash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int i = row * width + slot(hash, row);
+            if (counters[i] < Integer.MAX_VALUE) counters[i]++;
+            estimate = Math.min(estimate, counters[i]);
+        }
+        offer(hash, estimate);
+        if (++samples >= 10L * width) age();
+    }
+
+    /** @return estimated number of times {@code hash} was recorded (never under-counts before aging) */
+    public synchronized int estimate(long hash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters[row * width + slot(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /** @return up to {@code k} of the hottest hashes, hottest first */
+    public long[] topHashes(int k) {
+        Candidates ranked = snapshotCandidates().ranked();
+        return Arrays.copyOf(ranked.hashes, Math.min(k, ranked.hashes.length));
+    }
+
+    public synchronized int candidateCount() {
+        return heapSize;
+    }
+
+    /**
+     * Add the counts and candidates of {@code other}, e.g. a sketch restored
+     * from disk into the one that has been recording since startup.
+     *
+     * @throws IllegalArgumentException if {@code other} has a different width
+     */
+    public void merge(HotHashSketch other) {
+        if (other.width != width) {
+            throw new IllegalArgumentException("Sketch width " + other.width + " does not match " + width);
+        }
+        int[] otherCounters;
+        long otherSamples;
+        Candidates otherCandidates;
+        synchronized (other) {
+            otherCounters = other.counters.clone();
+            otherSamples = other.samples;
+            otherCandidates = other.copyCandidates();
+        }
+        synchronized (this) {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = (int) Math.min(Integer.MAX_VALUE, (long) counters[i] + otherCounters[i]);
+            }
+            samples += otherSamples;
+            // Every estimate may have grown; re-rank the current candidates before offering the others
+            for (int i = 0; i < heapSize; i++) heapEstimates[i] = estimate(heapHashes[i]);
+            heapify();
+            for (long hash : otherCandidates.hashes) offer(hash, estimate(hash));
+            if (samples >= 10L * width) age();
+        }
+    }
+
+    private int slot(long hash, int row) {
+        long h = hash ^ SEEDS[row];
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) ((h ^ (h >>> 33)) & (width - 1));
+    }
+
+    private void age() {
+        for (int i = 0; i < counters.length; i++) counters[i] >>>= 1;
+        // Halving keeps the heap order; dropping the zeros needs a rebuild
+        int kept = 0;
+        for (int i = 0; i < heapSize; i++) {
+            int estimate = heapEstimates[i] >>> 1;
+            if (estimate == 0) continue;
+            heapHashes[kept] = heapHashes[i];
+            heapEstimates[kept++] = estimate;
+        }
+        heapSize = kept;
+        heapify();
+        samples >>>= 1;
+    }
+
+    // ═══ Candidate heap ═══
+
+    /** Track {@code hash} if it is, or now beats, one of the {@code capacity} hottest. Estimates only grow. */
+    private void offer(long hash, int estimate) {
+        Integer at = heapSlots.get(hash);
+        if (at != null) {
+            heapEstimates[at] = estimate;
+            siftDown(at);
+        } else if (heapSize < capacity) {
+            place(heapSize, hash, estimate);
+            siftUp(heapSize++);
+        } else if (estimate > heapEstimates[0]) {
+            heapSlots.remove(heapHashes[0]);
+            place(0, hash, estimate);
+            siftDown(0);
+        }
+    }
+
+    private void heapify() {
+        heapSlots.clear();
+        for (int i = 0; i < heapSize; i++) heapSlots.put(heapHashes[i], i);
+        for (int i = heapSize / 2 - 1; i >= 0; i--) siftDown(i);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapEstimates[parent] <= heapEstimates[i]) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < heapSize && heapEstimates[left] < heapEstimates[smallest]) smallest = left;
+            if (right < heapSize && heapEstimates[right] < heapEstimates[smallest]) smallest = right;
+            if (smallest == i) return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long hash = heapHashes[a];
+        int estimate = heapEstimates[a];
+        place(a, heapHashes[b], heapEstimates[b]);
+        place(b, hash, estimate);
+    }
+
+    private void place(int i, long hash, int estimate) {
+        heapHashes[i] = hash;
+        heapEstimates[i] = estimate;
+        heapSlots.put(hash, i);
+    }
+
+    /** Candidates copied out of the heap, in heap order until {@link #ranked()}. */
+    private record Candidates(long[] hashes, int[] estimates) {
+        /** Hottest first; ties by hash, so the order is stable across runs. */
+        Candidates ranked() {
+            Integer[] order = new Integer[hashes.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> estimates[a] != estimates[b]
+                    ? Integer.compare(estimates[b], estimates[a])
+                    : Long.compare(hashes[a], hashes[b]));
+            long[] rankedHashes = new long[order.length];
+            int[] rankedEstimates = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                rankedHashes[i] = hashes[order[i]];
+                rankedEstimates[i] = estimates[order[i]];
+            }
+            return new Candidates(rankedHashes, rankedEstimates);
+        }
+    }
+
+    private Candidates copyCandidates() {
+        return new Candidates(Arrays.copyOf(heapHashes, heapSize), Arrays.copyOf(heapEstimates, heapSize));
+    }
+
+    private synchronized Candidates snapshotCandidates() {
+        return copyCandidates();
+    }
+
+    // ═══ Persistence ═══
+
+    /** Write the sketch to {@code file}, replacing it atomically. Recording goes on meanwhile. */
+    public void writeTo(Path file) throws IOException {
+        int[] countersCopy;
+        long samplesCopy;
+        Candidates candidatesCopy;
+        synchronized (this) {
+            countersCopy = counters.clone();
+            samplesCopy = samples;
+            candidatesCopy = copyCandidates();
+        }
+        Candidates ranked = candidatesCopy.ranked();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeLong(samplesCopy);
+            for (int c : countersCopy) out.writeInt(c);
+            out.writeInt(ranked.hashes.length);
+            for (int i = 0; i < ranked.hashes.length; i++) {
+                out.writeLong(ranked.hashes[i]);
+                out.writeInt(ranked.estimates[i]);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a sketch written by {@link #writeTo}.
+     *
+     * @param capacity capacity of the sketch to restore into; candidates beyond it are dropped
+     * @throws IOException if the file is unreadable, or was written for a different width
+     */
+    public static HotHashSketch readFrom(Path file, int capacity) throws IOException {
+        HotHashSketch sketch = new HotHashSketch(capacity);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a hot-hash sketch: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported hot-hash sketch version " + version);
+            int width = in.readInt();
+            if (width != sketch.width) {
+                throw new IOException("Sketch width " + width + " does not match " + sketch.width);
+            }
+            sketch.samples = in.readLong();
+            for (int i = 0; i < sketch.counters.length; i++) sketch.counters[i] = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long hash = in.readLong();
+                int estimate = in.readInt();
+                sketch.offer(hash, estimate);
+            }
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,126 @@
+package com.beatlens.index;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Describes a complete index snapshot in a segment directory: which segment
+ * generations belong to it, the songs deleted from them, whether a memtable
+ * file was saved, and the catalog watermark the snapshot corresponds to.
+ *
+ * <p>The manifest is written last and atomically, so a directory whose
+ * manifest can be read always holds every file the manifest lists. It
+ * carries its own copy of the tombstones, so segments and deletes are always
+ * read as one consistent version, e.g. by a replica.</p>
+ */
+public record IndexManifest(int version, List<Long> generations, RoaringBitmap tombstones, boolean hasMemtable,
+                            Watermark watermark, long createdAtMillis) {
+
+    public static final String FILE = "manifest.properties";
+    static final int VERSION = 2;
+
+    /**
+     * Catalog position a snapshot corresponds to. A restored snapshot whose
+     * watermark equals the database's needs no reconciliation.
+     *
+     * @param maxSongId         highest song ID covered
+     * @param songCount         number of songs covered
+     * @param maxIndexedAtMillis latest {@code songs.indexed_at}, or 0 for an empty catalog
+     */
+    public record Watermark(long maxSongId, long songCount, long maxIndexedAtMillis) {}
+
+    public IndexManifest(List<Long> generations, RoaringBitmap tombstones, boolean hasMemtable, Watermark watermark) {
+        this(VERSION, List.copyOf(generations), tombstones.clone(), hasMemtable, watermark, System.currentTimeMillis());
+    }
+
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, FILE, ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            writeTo(out);
+        }
+        Files.move(tmp, directory.resolve(FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("version", Integer.toString(version));
+        p.setProperty("generations", generations.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        p.setProperty("tombstones", encode(tombstones));
+        p.setProperty("memtable", Boolean.toString(hasMemtable));
+        p.setProperty("watermark.maxSongId", Long.toString(watermark.maxSongId()));
+        p.setProperty("watermark.songCount", Long.toString(watermark.songCount()));
+        p.setProperty("watermark.maxIndexedAt", Long.toString(watermark.maxIndexedAtMillis()));
+        p.setProperty("createdAt", Long.toString(createdAtMillis));
+        p.store(out, "BeatLens index snapshot");
+    }
+
+    /** @return the manifest in {@code directory}, or empty if there is none or it cannot be parsed */
+    static Optional<IndexManifest> read(Path directory) throws IOException {
+        Path file = directory.resolve(FILE);
+        if (!Files.exists(file)) return Optional.empty();
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /** @return the manifest in {@code in}, or empty if it cannot be parsed */
+    public static Optional<IndexManifest> read(InputStream in) throws IOException {
+        Properties p = new Properties();
+        p.load(in);
+        try {
+            int version = Integer.parseInt(p.getProperty("version"));
+            if (version != VERSION) return Optional.empty();
+            String gens = p.getProperty("generations", "");
+            List<Long> generations = gens.isBlank() ? List.of()
+                    : Arrays.stream(gens.split(",")).map(Long::parseLong).toList();
+            return Optional.of(new IndexManifest(
+                    version,
+                    generations,
+                    decode(p.getProperty("tombstones", "")),
+                    Boolean.parseBoolean(p.getProperty("memtable")),
+                    new Watermark(
+                            Long.parseLong(p.getProperty("watermark.maxSongId")),
+                            Long.parseLong(p.getProperty("watermark.songCount")),
+                            Long.parseLong(p.getProperty("watermark.maxIndexedAt"))),
+                    Long.parseLong(p.getProperty("createdAt"))));
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String encode(RoaringBitmap bitmap) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(bitmap.serializedSizeInBytes());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            bitmap.serialize(out);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    private static RoaringBitmap decode(String encoded) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        if (encoded.isEmpty()) return bitmap;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            bitmap.deserialize(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt tombstones in manifest", e);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,31 @@
+package com.beatlens.index;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * An immutable {@link PostingSegment} in a {@link SegmentedFingerprintIndex},
+ * together with its generation (creation order, also used to name segment
+ * files) and the set of songs it holds.
+ */
+public final class IndexSegment {
+
+    private final long generation;
+    private final PostingSegment postings;
+    private final RoaringBitmap songs;
+
+    public IndexSegment(long generation, PostingSegment postings, RoaringBitmap songs) {
+        this.generation = generation;
+        this.postings = postings;
+        this.songs = songs;
+    }
+
+    /** Wrap a segment, scanning its postings once to find the songs it holds. */
+    public static IndexSegment of(long generation, PostingSegment postings) {
+        return new IndexSegment(generation, postings, postings.songIds());
+    }
+
+    public long getGeneration() { return generation; }
+    public PostingSegment getPostings() { return postings; }
+    /** Song IDs present in this segment; must not be modified. */
+    public RoaringBitmap getSongs() { return songs; }
+}
@@ -0,0 +1,155 @@
+package com.beatlens.index;
+
+import com.beatlens.core.FingerprintGenerator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the hash-lookup caches consistent with the posting table one song at
+ * a time, instead of clearing them whenever the catalog changes.
+ *
+ * <p>Works on the caches' map views ({@code hash → }{@link PackedPostings} and
+ * {@code coarseHash → long[] songIds}). Only keys already cached are changed,
+ * each with one atomic {@code compute}; absent keys load the new
+ * state from the database on their next miss. Every patch first removes the
+ * song's postings, so applying one twice, or to an entry that was loaded
+ * after the song committed, changes nothing.</p>
+ *
+ * <p>Call after the change has committed. A miss that read the database
+ * before the commit must finish its load inside the cache's own compute
+ * (Spring's {@code @Cacheable(sync = true)}); the patch then waits for it
+ * instead of being overwritten by it.</p>
+ */
+public final class LookupCachePatcher {
+
+    private final ConcurrentMap<Object, Object> exact;
+    private final ConcurrentMap<Object, Object> coarse;
+
+    /**
+     * @param exact  map view of the exact-hash cache
+     * @param coarse map view of the coarse-hash cache
+     */
+    public LookupCachePatcher(ConcurrentMap<Object, Object> exact, ConcurrentMap<Object, Object> coarse) {
+        this.exact = exact;
+        this.coarse = coarse;
+    }
+
+    /**
+     * Add a newly indexed song to the cached entries of its hashes.
+     *
+     * @return number of cached entries patched
+     */
+    public int addSong(long songId, List<FingerprintGenerator.Fingerprint> fingerprints) {
+        Map<Long, int[]> offsetsByHash = groupByHash(fingerprints);
+        int patched = 0;
+        for (Map.Entry<Long, int[]> e : offsetsByHash.entrySet()) {
+            int[] offsets = e.getValue();
+            if (patch(exact, e.getKey(), v -> addPostings((long[]) v, songId, offsets))) {
+                patched++;
+            }
+        }
+        long[] hashes = offsetsByHash.keySet().stream().mapToLong(Long::longValue).toArray();
+        for (long coarseHash : coarseHashes(hashes)) {
+            if (patch(coarse, coarseHash, v -> addCandidate((long[]) v, songId))) {
+                patched++;
+            }
+        }
+        return patched;
+    }
+
+    /**
+     * Strip a deleted song from the cached entries of the given hashes.
+     *
+     * @param hashes hashes the song had postings under; duplicates are fine
+     * @return number of cached entries patched
+     */
+    public int removeSong(long songId, long[] hashes) {
+        int patched = 0;
+        long[] distinct = Arrays.stream(hashes).distinct().toArray();
+        for (long hash : distinct) {
+            if (patch(exact, hash, v -> removePostings((long[]) v, songId))) {
+                patched++;
+            }
+        }
+        for (long coarseHash : coarseHashes(distinct)) {
+            if (patch(coarse, coarseHash, v -> removeCandidate((long[]) v, songId))) {
+                patched++;
+            }
+        }
+        return patched;
+    }
+
+    /**
+     * Rewrite a cached entry, leaving absent keys absent. Deliberately
+     * {@code compute} rather than {@code computeIfPresent}: the latter returns
+     * at once for a key whose load is still in flight, while {@code compute}
+     * waits for that load and then patches its result.
+     */
+    private static boolean patch(ConcurrentMap<Object, Object> cache, long key, UnaryOperator<Object> edit) {
+        boolean[] present = new boolean[1];
+        cache.compute(key, (k, v) -> {
+            if (v == null) return null;
+            present[0] = true;
+            return edit.apply(v);
+        });
+        return present[0];
+    }
+
+    // ═══ Entry edits ═══
+
+    /** {@code postings} without the song's, plus one posting per offset. */
+    static long[] addPostings(long[] postings, long songId, int[] offsets) {
+        long[] kept = removePostings(postings, songId);
+        long[] next = Arrays.copyOf(kept, kept.length + offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            next[kept.length + i] = PackedPostings.pack(songId, offsets[i]);
+        }
+        return next;
+    }
+
+    /** @return {@code postings} itself if the song has none in it */
+    static long[] removePostings(long[] postings, long songId) {
+        int n = 0;
+        long[] kept = new long[postings.length];
+        for (long p : postings) {
+            if (PackedPostings.songId(p) != songId) kept[n++] = p;
+        }
+        if (n == postings.length) return postings;
+        return n == 0 ? PackedPostings.EMPTY : Arrays.copyOf(kept, n);
+    }
+
+    static long[] addCandidate(long[] songIds, long songId) {
+        for (long id : songIds) {
+            if (id == songId) return songIds;
+        }
+        long[] next = Arrays.copyOf(songIds, songIds.length + 1);
+        next[songIds.length] = songId;
+        return next;
+    }
+
+    static long[] removeCandidate(long[] songIds, long songId) {
+        long[] next = Arrays.stream(songIds).filter(id -> id != songId).toArray();
+        return next.length == songIds.length ? songIds : next;
+    }
+
+    private static Map<Long, int[]> groupByHash(List<FingerprintGenerator.Fingerprint> fingerprints) {
+        Map<Long, int[]> offsets = new HashMap<>();
+        for (FingerprintGenerator.Fingerprint fp : fingerprints) {
+            offsets.merge(fp.hash, new int[]{fp.anchorTime}, (a, b) -> {
+                int[] merged = Arrays.copyOf(a, a.length + 1);
+                merged[a.length] = b[0];
+                return merged;
+            });
+        }
+        return offsets;
+    }
+
+    private static long[] coarseHashes(long[] hashes) {
+        return Arrays.stream(hashes).map(FingerprintGenerator::coarseHash).distinct().toArray();
+    }
+}
@@ -0,0 +1,176 @@
+package com.beatlens.index;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Merges hash lookups from concurrent callers into batched queries.
+ *
+ * <p>Callers queue hashes and get a future each. A dispatcher thread flushes
+ * the queue as one call to the batch loader once the oldest hash has waited
+ * {@code maxDelay}, or as soon as {@code maxBatch} hashes are queued. A hash
+ * queued by several callers is loaded once and they share its future. At
+ * most {@code concurrency} batches run at a time; while all are busy, the
+ * queue keeps filling, so batches grow with load.</p>
+ *
+ * <p>Only hashes still queued are shared, never those of a batch already
+ * running, so every result was read after its caller asked for it.</p>
+ */
+public final class LookupCoalescer implements AutoCloseable {
+
+    private final Function<long[], Map<Long, long[]>> loader;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final Semaphore slots;
+    private final ExecutorService executor;
+    private final Thread dispatcher;
+
+    // Guarded by this
+    private final Map<Long, CompletableFuture<long[]>> queued = new LinkedHashMap<>();
+    private long firstQueuedAt;
+    private boolean closed;
+
+    /**
+     * @param loader      reads the postings of many hashes; hashes it leaves out have none
+     * @param maxBatch    most hashes per loader call
+     * @param maxDelay    longest a queued hash waits for others to join its batch
+     * @param concurrency loader calls running at once
+     * @param name        prefix of the dispatcher and loader thread names
+     */
+    public LookupCoalescer(Function<long[], Map<Long, long[]>> loader,
+                           int maxBatch, Duration maxDelay, int concurrency, String name) {
+        if (maxBatch <= 0 || concurrency <= 0) {
+            throw new IllegalArgumentException("maxBatch and concurrency must be positive");
+        }
+        this.loader = loader;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.slots = new Semaphore(concurrency);
+        this.executor = Executors.newFixedThreadPool(concurrency,
+                Thread.ofPlatform().daemon().name(name + "-", 0).factory());
+        this.dispatcher = Thread.ofPlatform().daemon().name(name).start(this::dispatch);
+    }
+
+    /** Queue one hash; the future completes with its packed postings. */
+    public synchronized CompletableFuture<long[]> load(long hash) {
+        if (closed) return CompletableFuture.failedFuture(new IllegalStateException("Lookup coalescer closed"));
+        CompletableFuture<long[]> future = queued.get(hash);
+        if (future == null) {
+            future = new CompletableFuture<>();
+            if (queued.isEmpty()) firstQueuedAt = System.nanoTime();
+            queued.put(hash, future);
+            if (queued.size() == 1 || queued.size() >= maxBatch) notifyAll();
+        }
+        return future;
+    }
+
+    /**
+     * Queue many hashes at once and wait for all of them.
+     *
+     * @return packed postings per distinct hash ({@link PackedPostings#EMPTY} for none)
+     */
+    public Map<Long, long[]> loadAll(long[] hashes) {
+        Map<Long, CompletableFuture<long[]>> futures = new HashMap<>(hashes.length * 2);
+        synchronized (this) {
+            for (long hash : hashes) {
+                if (!futures.containsKey(hash)) futures.put(hash, load(hash));
+            }
+        }
+        Map<Long, long[]> postings = new HashMap<>(futures.size() * 2);
+        futures.forEach((hash, future) -> postings.put(hash, await(future)));
+        return postings;
+    }
+
+    /** Wait for a future from {@link #load}, rethrowing the loader's exception as is. */
+    public static long[] await(CompletableFuture<long[]> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+    }
+
+    // ═══ Dispatch ═══
+
+    private void dispatch() {
+        try {
+            while (true) {
+                slots.acquire();
+                Map<Long, CompletableFuture<long[]>> batch = nextBatch();
+                if (batch == null) return;
+                executor.execute(() -> {
+                    try {
+                        run(batch);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Block until a batch is due; {@code null} once closed. */
+    private synchronized Map<Long, CompletableFuture<long[]>> nextBatch() throws InterruptedException {
+        while (!closed) {
+            if (queued.isEmpty()) {
+                wait();
+                continue;
+            }
+            long remaining = firstQueuedAt + maxDelayNanos - System.nanoTime();
+            if (queued.size() < maxBatch && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                continue;
+            }
+            // Leftovers beyond maxBatch have waited as long as this batch and go out next
+            Map<Long, CompletableFuture<long[]>> batch = new LinkedHashMap<>();
+            Iterator<Map.Entry<Long, CompletableFuture<long[]>>> it = queued.entrySet().iterator();
+            while (it.hasNext() && batch.size() < maxBatch) {
+                Map.Entry<Long, CompletableFuture<long[]>> e = it.next();
+                batch.put(e.getKey(), e.getValue());
+                it.remove();
+            }
+            return batch;
+        }
+        return null;
+    }
+
+    private void run(Map<Long, CompletableFuture<long[]>> batch) {
+        long[] hashes = new long[batch.size()];
+        int i = 0;
+        for (long hash : batch.keySet()) hashes[i++] = hash;
+        try {
+            Map<Long, long[]> found = loader.apply(hashes);
+            batch.forEach((hash, future) -> future.complete(found.getOrDefault(hash, PackedPostings.EMPTY)));
+        } catch (RuntimeException | Error e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    /** Stop dispatching; hashes still queued fail with {@link IllegalStateException}. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            IllegalStateException failure = new IllegalStateException("Lookup coalescer closed");
+            queued.values().forEach(future -> future.completeExceptionally(failure));
+            queued.clear();
+            notifyAll();
+        }
+        dispatcher.interrupt();
+        executor.shutdown();
+    }
+}
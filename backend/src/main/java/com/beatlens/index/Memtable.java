@@ -0,0 +1,103 @@
+package com.beatlens.index;
+
+import com.beatlens.core.SongIds;
+import com.beatlens.core.SongMatcher;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Mutable write buffer for recently indexed songs.
+ *
+ * <p>Postings are held per hash in small copy-on-write arrays, so readers
+ * never lock and never see a torn array. Adding or removing a song costs
+ * O(song size). Writers must be serialised by the caller. When the memtable
+ * grows past its limit, it is frozen into an immutable {@link PostingSegment}
+ * with {@link #toSegment()}.</p>
+ */
+final class Memtable {
+
+    private final ConcurrentHashMap<Long, long[]> postings = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> songHashes = new ConcurrentHashMap<>();
+    private volatile int postingCount;
+
+    /** @return {@code false} if the song is already present */
+    boolean add(long songId, PostingBuffer buffer) {
+        if (songHashes.containsKey(songId)) return false;
+        long[] hashes = new long[buffer.size()];
+        for (int i = 0; i < buffer.size(); i++) {
+            long hash = buffer.hash(i);
+            long packed = (songId << 32) | (buffer.timeOffset(i) & 0xFFFFFFFFL);
+            hashes[i] = hash;
+            postings.compute(hash, (k, existing) -> {
+                if (existing == null) return new long[]{packed};
+                long[] grown = Arrays.copyOf(existing, existing.length + 1);
+                grown[existing.length] = packed;
+                return grown;
+            });
+        }
+        songHashes.put(songId, hashes);
+        postingCount += hashes.length;
+        return true;
+    }
+
+    /** @return {@code false} if the song was not present */
+    boolean remove(long songId) {
+        long[] hashes = songHashes.remove(songId);
+        if (hashes == null) return false;
+        for (long hash : hashes) {
+            postings.computeIfPresent(hash, (k, existing) -> {
+                long[] kept = Arrays.stream(existing).filter(p -> (p >>> 32) != songId).toArray();
+                return kept.length == 0 ? null : kept;
+            });
+        }
+        postingCount -= hashes.length;
+        return true;
+    }
+
+    boolean contains(long songId) {
+        return songHashes.containsKey(songId);
+    }
+
+    void forEach(long hash, SongMatcher.PostingConsumer consumer) {
+        long[] list = postings.get(hash);
+        if (list == null) return;
+        for (long packed : list) {
+            consumer.accept(packed >>> 32, (int) packed);
+        }
+    }
+
+    void forEachHash(LongConsumer consumer) {
+        postings.keySet().forEach(consumer::accept);
+    }
+
+    int postingCount() {
+        return postingCount;
+    }
+
+    boolean isEmpty() {
+        return songHashes.isEmpty();
+    }
+
+    RoaringBitmap songs() {
+        RoaringBitmap songs = new RoaringBitmap();
+        for (long songId : songHashes.keySet()) {
+            songs.add(SongIds.toInt(songId));
+        }
+        return songs;
+    }
+
+    /** Freeze the current contents into an immutable segment. */
+    PostingSegment toSegment() {
+        PostingBuffer buffer = new PostingBuffer(postingCount);
+        postings.forEach((hash, list) -> {
+            for (long packed : list) {
+                buffer.add(hash, packed >>> 32, (int) packed);
+            }
+        });
+        return PostingSegment.builder(buffer.size()).appendAll(buffer.cursor()).build();
+    }
+}
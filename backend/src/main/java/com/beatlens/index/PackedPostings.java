@@ -0,0 +1,81 @@
+package com.beatlens.index;
+
+import com.beatlens.core.SongMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Posting lists as flat {@code long[]}: one {@code songId << 32 | offset}
+ * per posting, the layout the memtable already uses. This is the value type
+ * of the {@code fingerprint-lookup} cache: 8 bytes a posting instead of the
+ * ~40 of a boxed {@code FingerprintEntry} in a list, and a size that is
+ * known exactly, so the cache can be bounded by memory instead of entries.
+ */
+public final class PackedPostings {
+
+    /** Shared value for hashes without postings (negative cache entries). */
+    public static final long[] EMPTY = new long[0];
+
+    /** Rough per-entry cost beyond the array payload: cache node, boxed key, array header. */
+    static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private PackedPostings() {}
+
+    public static long pack(long songId, int timeOffset) {
+        return (songId << 32) | (timeOffset & 0xFFFFFFFFL);
+    }
+
+    public static long songId(long packed) {
+        return packed >>> 32;
+    }
+
+    public static int timeOffset(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * Approximate heap bytes of one cache entry holding {@code values}, for
+     * a Caffeine weigher. Also fits the coarse cache's {@code long[]} song IDs.
+     */
+    public static int weigh(long[] values) {
+        return ENTRY_OVERHEAD_BYTES + 8 * values.length;
+    }
+
+    /**
+     * Adapt a source of packed lists (e.g. the cached database lookup) to the
+     * matcher's lookup interface without materialising entries on the hot path.
+     */
+    public static SongMatcher.FingerprintLookup asLookup(LongFunction<long[]> source) {
+        return asLookup(source, hashes -> {});
+    }
+
+    /** Same, passing {@link SongMatcher.FingerprintLookup#prefetch} hints on to {@code prefetch}. */
+    public static SongMatcher.FingerprintLookup asLookup(LongFunction<long[]> source, Consumer<long[]> prefetch) {
+        return new SongMatcher.FingerprintLookup() {
+            @Override
+            public List<SongMatcher.FingerprintEntry> lookup(long hash) {
+                long[] packed = source.apply(hash);
+                List<SongMatcher.FingerprintEntry> entries = new ArrayList<>(packed.length);
+                for (long p : packed) {
+                    entries.add(new SongMatcher.FingerprintEntry(songId(p), timeOffset(p)));
+                }
+                return entries;
+            }
+
+            @Override
+            public void forEachPosting(long hash, SongMatcher.PostingConsumer consumer) {
+                for (long p : source.apply(hash)) {
+                    consumer.accept(songId(p), timeOffset(p));
+                }
+            }
+
+            @Override
+            public void prefetch(long[] hashes) {
+                prefetch.accept(hashes);
+            }
+        };
+    }
+}
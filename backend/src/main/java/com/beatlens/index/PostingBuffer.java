@@ -0,0 +1,133 @@
+package com.beatlens.index;
+
+import java.util.Arrays;
+
+/**
+ * Growable, sortable batch of (hash, songId, timeOffset) postings held in
+ * parallel primitive arrays.
+ *
+ * <p>Used to stage small, unsorted batches (typically the fingerprints of a
+ * single song) before they are merged into a {@link PostingSegment}.</p>
+ */
+public class PostingBuffer {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private long[] hashes;
+    private long[] songIds;
+    private int[] offsets;
+    private int size;
+    private boolean sorted = true;
+
+    public PostingBuffer() {
+        this(1024);
+    }
+
+    public PostingBuffer(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        hashes = new long[capacity];
+        songIds = new long[capacity];
+        offsets = new int[capacity];
+    }
+
+    public void add(long hash, long songId, int timeOffset) {
+        if (size == hashes.length) {
+            int capacity = size << 1;
+            hashes = Arrays.copyOf(hashes, capacity);
+            songIds = Arrays.copyOf(songIds, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        hashes[size] = hash;
+        songIds[size] = songId;
+        offsets[size] = timeOffset;
+        if (sorted && size > 0 && compare(size - 1, size) > 0) {
+            sorted = false;
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long hash(int i) { return hashes[i]; }
+    public long songId(int i) { return songIds[i]; }
+    public int timeOffset(int i) { return offsets[i]; }
+
+    /** Sort into (hash, songId, timeOffset) order, in place. */
+    public void sort() {
+        if (!sorted) {
+            quickSort(0, size - 1);
+            sorted = true;
+        }
+    }
+
+    /** @return a cursor over the postings; the buffer is sorted first */
+    public PostingCursor cursor() {
+        sort();
+        return new PostingCursor() {
+            private int i = -1;
+
+            @Override public boolean next() { return ++i < size; }
+            @Override public long hash() { return hashes[i]; }
+            @Override public long songId() { return songIds[i]; }
+            @Override public int timeOffset() { return offsets[i]; }
+        };
+    }
+
+    // ═══ Sorting ═══
+
+    private int compare(int a, int b) {
+        int c = Long.compare(hashes[a], hashes[b]);
+        if (c != 0) return c;
+        c = Long.compare(songIds[a], songIds[b]);
+        if (c != 0) return c;
+        return Integer.compare(offsets[a], offsets[b]);
+    }
+
+    private void quickSort(int lo, int hi) {
+        while (hi - lo > INSERTION_SORT_THRESHOLD) {
+            int p = partition(lo, hi);
+            // Recurse into the smaller half to bound stack depth
+            if (p - lo < hi - p) {
+                quickSort(lo, p - 1);
+                lo = p + 1;
+            } else {
+                quickSort(p + 1, hi);
+                hi = p - 1;
+            }
+        }
+        insertionSort(lo, hi);
+    }
+
+    private int partition(int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        // Median of three as pivot, moved to hi
+        if (compare(mid, lo) < 0) swap(mid, lo);
+        if (compare(hi, lo) < 0) swap(hi, lo);
+        if (compare(mid, hi) < 0) swap(mid, hi);
+
+        int store = lo;
+        for (int i = lo; i < hi; i++) {
+            if (compare(i, hi) < 0) {
+                swap(i, store++);
+            }
+        }
+        swap(store, hi);
+        return store;
+    }
+
+    private void insertionSort(int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(j - 1, j) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        long h = hashes[a]; hashes[a] = hashes[b]; hashes[b] = h;
+        long s = songIds[a]; songIds[a] = songIds[b]; songIds[b] = s;
+        int o = offsets[a]; offsets[a] = offsets[b]; offsets[b] = o;
+    }
+}
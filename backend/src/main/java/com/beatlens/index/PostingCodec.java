@@ -0,0 +1,142 @@
+package com.beatlens.index;
+
+import com.beatlens.core.SongMatcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delta + varint codec for the posting block of one hash.
+ *
+ * <p>A block holds the postings of a single hash in (songId, timeOffset)
+ * order. Each posting is two unsigned LEB128 varints:</p>
+ * <pre>
+ * songDelta   songId − previous songId (the first posting uses 0 as previous)
+ * offset      same song:  timeOffset − previous timeOffset  (≥ 0, sorted)
+ *             new song:   zig-zag(timeOffset)
+ * </pre>
+ * <p>Song IDs of a popular hash are dense and offsets within one song are
+ * close together, so most postings take 3–4 bytes instead of the 8 of a
+ * packed {@code long} (and the ~40 of a cached {@code FingerprintEntry}).
+ * Postings per hash are short, so fixed-width bit-packing frames would rarely
+ * fill; byte-aligned varints decode without tables and stay branch-light.</p>
+ */
+final class PostingCodec {
+
+    /** Worst case: a 5-byte song delta and a 5-byte offset. */
+    static final int MAX_BYTES_PER_POSTING = 10;
+
+    /** Initial sizing estimate for builders. */
+    static final int TYPICAL_BYTES_PER_POSTING = 4;
+
+    private PostingCodec() {
+        // utility class
+    }
+
+    /** Stateful encoder for consecutive postings of one block. */
+    static final class BlockEncoder {
+        private long prevSongId;
+        private int prevOffset;
+        private boolean started;
+
+        void startBlock() {
+            prevSongId = 0;
+            prevOffset = 0;
+            started = false;
+        }
+
+        /** Append one posting; postings must arrive in (songId, timeOffset) order within the block. */
+        void encode(ByteBuffer out, long songId, int timeOffset) {
+            long songDelta = songId - prevSongId;
+            putVarint(out, songDelta);
+            if (songDelta == 0 && started) {
+                putVarint(out, Integer.toUnsignedLong(timeOffset - prevOffset));
+            } else {
+                putVarint(out, Integer.toUnsignedLong((timeOffset << 1) ^ (timeOffset >> 31)));
+            }
+            prevSongId = songId;
+            prevOffset = timeOffset;
+            started = true;
+        }
+    }
+
+    /** Decodes one block at a time from a posting section. */
+    static final class BlockDecoder {
+        private final ByteBuffer in;
+        private int pos;
+        private int end;
+        private long songId;
+        private int timeOffset;
+        private boolean started;
+
+        BlockDecoder(ByteBuffer in) {
+            this.in = in;
+        }
+
+        void reset(int from, int to) {
+            pos = from;
+            end = to;
+            songId = 0;
+            timeOffset = 0;
+            started = false;
+        }
+
+        boolean hasNext() {
+            return pos < end;
+        }
+
+        void next() {
+            long songDelta = readVarint();
+            long raw = readVarint();
+            if (songDelta == 0 && started) {
+                timeOffset += (int) raw;
+            } else {
+                int zz = (int) raw;
+                timeOffset = (zz >>> 1) ^ -(zz & 1);
+            }
+            songId += songDelta;
+            started = true;
+        }
+
+        long songId() { return songId; }
+        int timeOffset() { return timeOffset; }
+
+        private long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.get(pos++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /** Decode the block in {@code [from, to)} straight into {@code consumer}. */
+    static void decodeBlock(ByteBuffer in, int from, int to, SongMatcher.PostingConsumer consumer) {
+        BlockDecoder decoder = new BlockDecoder(in);
+        decoder.reset(from, to);
+        while (decoder.hasNext()) {
+            decoder.next();
+            consumer.accept(decoder.songId(), decoder.timeOffset());
+        }
+    }
+
+    /** @return number of postings in the block {@code [from, to)}, without decoding values */
+    static int countBlock(ByteBuffer in, int from, int to) {
+        int terminators = 0;
+        for (int p = from; p < to; p++) {
+            if (in.get(p) >= 0) terminators++;
+        }
+        return terminators / 2;
+    }
+
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
@@ -0,0 +1,43 @@
+package com.beatlens.index;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Forward-only iterator over postings in (hash, songId, timeOffset) order.
+ *
+ * <p>Cursors expose primitives only, so segments of any size can be merged
+ * or serialised without creating an object per posting.</p>
+ */
+public interface PostingCursor {
+
+    /**
+     * Advance to the next posting.
+     *
+     * @return {@code false} when the cursor is exhausted
+     */
+    boolean next();
+
+    long hash();
+
+    long songId();
+
+    int timeOffset();
+
+    /** @return a view of this cursor that skips postings of songs rejected by {@code keepSong} */
+    default PostingCursor filter(LongPredicate keepSong) {
+        PostingCursor source = this;
+        return new PostingCursor() {
+            @Override
+            public boolean next() {
+                while (source.next()) {
+                    if (keepSong.test(source.songId())) return true;
+                }
+                return false;
+            }
+
+            @Override public long hash() { return source.hash(); }
+            @Override public long songId() { return source.songId(); }
+            @Override public int timeOffset() { return source.timeOffset(); }
+        };
+    }
+}
@@ -0,0 +1,320 @@
+package com.beatlens.index;
+
+import com.beatlens.core.SongMatcher;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Immutable inverted-index segment: hash → compressed (songId, timeOffset) postings.
+ *
+ * <h3>Layout</h3>
+ * <p>All four sections live outside the Java heap (direct or mapped buffers),
+ * so a segment contributes no GC-visible objects per hash or per posting:</p>
+ * <pre>
+ * fanout   int[2^bits + 1]  bucket → first directory index (top bits of the hash)
+ * hashes   long[H]          distinct hashes, ascending
+ * starts   int[H + 1]       directory index → byte offset of its posting block
+ * postings byte[]           one posting block per hash, see {@link PostingCodec}
+ * </pre>
+ * <p>A lookup reads one fanout slot, binary-searches a bucket of ~8 hashes and
+ * then decodes one contiguous block: a handful of cache misses.</p>
+ *
+ * <p>Each section is a single buffer, so a segment holds at most
+ * {@link #MAX_POSTING_BYTES} bytes of postings. Larger indexes are split
+ * across segments.</p>
+ */
+public final class PostingSegment {
+
+    /** Largest posting section that still fits one buffer. */
+    public static final int MAX_POSTING_BYTES = Integer.MAX_VALUE - 8;
+
+    private static final int MAX_FANOUT_BITS = 20;
+    private static final int HASHES_PER_BUCKET_BITS = 3; // ~8 hashes per bucket
+
+    private final int fanoutShift;
+    private final long maxHash;
+    private final IntBuffer fanout;
+    private final LongBuffer hashes;
+    private final IntBuffer starts;
+    private final ByteBuffer postings;
+    private final int hashCount;
+    private final int postingCount;
+
+    PostingSegment(int fanoutShift, long maxHash, IntBuffer fanout, LongBuffer hashes,
+                   IntBuffer starts, ByteBuffer postings, int postingCount) {
+        this.fanoutShift = fanoutShift;
+        this.maxHash = maxHash;
+        this.fanout = fanout;
+        this.hashes = hashes;
+        this.starts = starts;
+        this.postings = postings;
+        this.hashCount = hashes.capacity();
+        this.postingCount = postingCount;
+    }
+
+    /** @return a segment with no postings */
+    public static PostingSegment empty() {
+        return builder(0).build();
+    }
+
+    /**
+     * @param expectedPostings capacity hint; the builder grows if it is exceeded
+     */
+    public static Builder builder(int expectedPostings) {
+        return new Builder(expectedPostings);
+    }
+
+    // ═══ Lookup ═══
+
+    /** Visit every posting for {@code hash}, in (songId, timeOffset) order. */
+    public void forEach(long hash, SongMatcher.PostingConsumer consumer) {
+        int i = find(hash);
+        if (i < 0) return;
+        PostingCodec.decodeBlock(postings, starts.get(i), starts.get(i + 1), consumer);
+    }
+
+    /** @return number of postings for {@code hash} */
+    public int postingCount(long hash) {
+        int i = find(hash);
+        return i < 0 ? 0 : PostingCodec.countBlock(postings, starts.get(i), starts.get(i + 1));
+    }
+
+    /** @return {@code true} if the segment has at least one posting for {@code hash} */
+    public boolean contains(long hash) {
+        return find(hash) >= 0;
+    }
+
+    private int find(long hash) {
+        if (hashCount == 0 || hash < 0 || hash > maxHash) return -1;
+        int bucket = (int) (hash >>> fanoutShift);
+        int lo = fanout.get(bucket);
+        int hi = fanout.get(bucket + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long h = hashes.get(mid);
+            if (h < hash) lo = mid + 1;
+            else if (h > hash) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // ═══ Iteration / stats ═══
+
+    /** @return a cursor over all postings in (hash, songId, timeOffset) order */
+    public PostingCursor cursor() {
+        return new PostingCursor() {
+            private final PostingCodec.BlockDecoder decoder = new PostingCodec.BlockDecoder(postings);
+            private int h = -1;
+
+            @Override
+            public boolean next() {
+                while (!decoder.hasNext()) {
+                    if (++h >= hashCount) return false;
+                    decoder.reset(starts.get(h), starts.get(h + 1));
+                }
+                decoder.next();
+                return true;
+            }
+
+            @Override public long hash() { return hashes.get(h); }
+            @Override public long songId() { return decoder.songId(); }
+            @Override public int timeOffset() { return decoder.timeOffset(); }
+        };
+    }
+
+    /** Visit every distinct hash in ascending order, without decoding postings. */
+    public void forEachHash(LongConsumer consumer) {
+        for (int i = 0; i < hashCount; i++) {
+            consumer.accept(hashes.get(i));
+        }
+    }
+
+    /** @return IDs of every song with at least one posting; decodes all postings */
+    public RoaringBitmap songIds() {
+        RoaringBitmap songs = new RoaringBitmap();
+        PostingCursor c = cursor();
+        long last = -1;
+        while (c.next()) {
+            if (c.songId() != last) {
+                last = c.songId();
+                songs.add((int) last);
+            }
+        }
+        return songs;
+    }
+
+    public int hashCount() { return hashCount; }
+    public int postingCount() { return postingCount; }
+
+    /** @return size of the compressed posting section */
+    public int postingBytes() { return postings.capacity(); }
+
+    /** @return bytes held outside the heap by this segment */
+    public long sizeInBytes() {
+        return (long) fanout.capacity() * Integer.BYTES
+             + (long) hashCount * Long.BYTES
+             + (long) starts.capacity() * Integer.BYTES
+             + postings.capacity();
+    }
+
+    /** @return a copy held in freshly allocated direct memory, e.g. to detach from a mapped file */
+    public PostingSegment copyToDirectMemory() {
+        IntBuffer fanoutCopy = directInts(fanout);
+        LongBuffer hashesCopy = ByteBuffer.allocateDirect(hashCount * Long.BYTES).order(ByteOrder.nativeOrder())
+                .asLongBuffer().put(hashes.duplicate().rewind());
+        IntBuffer startsCopy = directInts(starts);
+        ByteBuffer postingsCopy = ByteBuffer.allocateDirect(postings.capacity()).put(postings.duplicate().rewind());
+        return new PostingSegment(fanoutShift, maxHash, fanoutCopy.rewind(), hashesCopy.rewind(),
+                startsCopy.rewind(), postingsCopy.rewind(), postingCount);
+    }
+
+    private static IntBuffer directInts(IntBuffer source) {
+        return ByteBuffer.allocateDirect(source.capacity() * Integer.BYTES).order(ByteOrder.nativeOrder())
+                .asIntBuffer().put(source.duplicate().rewind());
+    }
+
+    // ═══ Package-private accessors for serialisation ═══
+
+    int fanoutShift() { return fanoutShift; }
+    long maxHash() { return maxHash; }
+    IntBuffer fanout() { return fanout.duplicate(); }
+    LongBuffer hashes() { return hashes.duplicate(); }
+    IntBuffer starts() { return starts.duplicate(); }
+    ByteBuffer postings() { return postings.duplicate(); }
+
+    // ═══ Builder ═══
+
+    /**
+     * Builds a segment from postings appended in (hash, songId, timeOffset)
+     * order, e.g. streamed from {@code ORDER BY hash, song_id, time_offset}
+     * or produced by {@link SegmentMerger}.
+     */
+    public static final class Builder {
+        private final PostingCodec.BlockEncoder encoder = new PostingCodec.BlockEncoder();
+        private ByteBuffer postingBytes;
+        private long[] dirHashes = new long[1024];
+        private int[] dirStarts = new int[1024];
+        private int hashCount;
+        private int postingCount;
+
+        private long lastHash = -1;
+        private long lastSongId = -1;
+        private int lastOffset = Integer.MIN_VALUE;
+
+        private Builder(int expectedPostings) {
+            long capacity = Math.max(64, (long) expectedPostings * PostingCodec.TYPICAL_BYTES_PER_POSTING);
+            postingBytes = allocate(Math.min(capacity, MAX_POSTING_BYTES));
+        }
+
+        /**
+         * @throws IllegalArgumentException if postings arrive out of order or
+         *                                  values fall outside the packed ranges
+         * @throws IllegalStateException    if the segment is {@link #isFull() full}
+         */
+        public Builder append(long hash, long songId, int timeOffset) {
+            if (hash < 0) {
+                throw new IllegalArgumentException("Negative hash: " + hash);
+            }
+            if (songId < 0 || songId > 0xFFFFFFFFL) {
+                throw new IllegalArgumentException("Song id out of 32-bit range: " + songId);
+            }
+            if (hash < lastHash
+                    || (hash == lastHash && (songId < lastSongId
+                        || (songId == lastSongId && timeOffset < lastOffset)))) {
+                throw new IllegalArgumentException("Postings must be appended in (hash, songId, timeOffset) order");
+            }
+            if (isFull()) {
+                throw new IllegalStateException("Segment is full (" + MAX_POSTING_BYTES + " posting bytes)");
+            }
+
+            if (hash != lastHash) {
+                if (hashCount == dirHashes.length) {
+                    dirHashes = Arrays.copyOf(dirHashes, hashCount << 1);
+                    dirStarts = Arrays.copyOf(dirStarts, hashCount << 1);
+                }
+                dirHashes[hashCount] = hash;
+                dirStarts[hashCount] = postingBytes.position();
+                hashCount++;
+                encoder.startBlock();
+            }
+
+            if (postingBytes.remaining() < PostingCodec.MAX_BYTES_PER_POSTING) {
+                long grown = Math.min((long) postingBytes.capacity() * 2, MAX_POSTING_BYTES);
+                ByteBuffer bigger = allocate(grown);
+                postingBytes.flip();
+                bigger.put(postingBytes);
+                postingBytes = bigger;
+            }
+            encoder.encode(postingBytes, songId, timeOffset);
+            postingCount++;
+
+            lastHash = hash;
+            lastSongId = songId;
+            lastOffset = timeOffset;
+            return this;
+        }
+
+        /** Append everything a cursor yields. */
+        public Builder appendAll(PostingCursor cursor) {
+            while (cursor.next()) {
+                append(cursor.hash(), cursor.songId(), cursor.timeOffset());
+            }
+            return this;
+        }
+
+        public int postingCount() {
+            return postingCount;
+        }
+
+        /** @return {@code true} once another posting might not fit; start a new segment */
+        public boolean isFull() {
+            return postingBytes.position() > MAX_POSTING_BYTES - PostingCodec.MAX_BYTES_PER_POSTING
+                    || postingCount == Integer.MAX_VALUE;
+        }
+
+        public PostingSegment build() {
+            long maxHash = hashCount == 0 ? 0 : dirHashes[hashCount - 1];
+            int bits = hashCount <= 1 ? 0
+                    : Math.min(MAX_FANOUT_BITS, Math.max(0,
+                        64 - Long.numberOfLeadingZeros(hashCount - 1) - HASHES_PER_BUCKET_BITS));
+            int usedBits = 64 - Long.numberOfLeadingZeros(maxHash);
+            int shift = Math.max(0, usedBits - bits);
+            int buckets = 1 << bits;
+
+            IntBuffer fanout = allocate((long) (buckets + 1) * Integer.BYTES).asIntBuffer();
+            int i = 0;
+            for (int b = 0; b <= buckets; b++) {
+                while (i < hashCount && (dirHashes[i] >>> shift) < b) i++;
+                fanout.put(b, i);
+            }
+
+            LongBuffer hashes = allocate((long) hashCount * Long.BYTES).asLongBuffer();
+            hashes.put(dirHashes, 0, hashCount).flip();
+
+            IntBuffer starts = allocate((long) (hashCount + 1) * Integer.BYTES).asIntBuffer();
+            starts.put(dirStarts, 0, hashCount).put(postingBytes.position()).flip();
+
+            postingBytes.flip();
+            ByteBuffer exact = allocate(postingBytes.remaining());
+            exact.put(postingBytes).flip();
+
+            // Release the heap-side directory; the builder is single-use
+            dirHashes = null;
+            dirStarts = null;
+            postingBytes = null;
+
+            return new PostingSegment(shift, maxHash, fanout, hashes, starts, exact, postingCount);
+        }
+
+        private static ByteBuffer allocate(long bytes) {
+            return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.beatlens.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Immutable on-disk form of a {@link PostingSegment}, served through
+ * {@link FileChannel#map} so the OS page cache decides what stays resident.
+ *
+ * <h3>Format (version 2, little-endian)</h3>
+ * <pre>
+ * header   64 bytes   magic "BLSG", version, fanoutShift, fanoutLength,
+ *                     maxHash, hashCount, postingCount, createdAtMillis, postingBytes
+ * fanout   int[fanoutLength]   padded to 8 bytes
+ * hashes   long[hashCount]
+ * starts   int[hashCount + 1]  padded to 8 bytes
+ * postings byte[postingBytes]  compressed blocks ({@link PostingCodec}), padded to 8 bytes
+ * footer   16 bytes   CRC32C(header..starts), CRC32C(postings), magic "GSLB", version
+ * </pre>
+ * <p>Version 1 stored postings as packed {@code long}s and is no longer
+ * readable; such files are reported as {@link FormatException}s and rebuilt.</p>
+ * <p>The sections are exactly the in-memory layout, so opening a file maps
+ * each section and wraps it without copying or decoding. The directory
+ * checksum is always verified on open; the postings checksum reads the whole
+ * file and is optional.</p>
+ */
+public final class SegmentFile {
+
+    static final int MAGIC = 0x47534C42;         // "BLSG" read little-endian
+    static final int FOOTER_MAGIC = 0x424C5347;  // "GSLB" read little-endian
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 64;
+    static final int FOOTER_BYTES = 16;
+
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private SegmentFile() {
+        // utility class
+    }
+
+    /** Thrown when a file is not a readable segment (bad magic, version, length or checksum). */
+    public static class FormatException extends IOException {
+        public FormatException(Path path, String message) {
+            super(path + ": " + message);
+        }
+    }
+
+    /** Header fields, readable without mapping the whole file. */
+    public record Header(int version, int fanoutShift, int fanoutLength, long maxHash,
+                         int hashCount, int postingCount, long createdAtMillis, int postingBytes) {
+
+        long fanoutOffset() { return HEADER_BYTES; }
+        long hashesOffset() { return fanoutOffset() + align8((long) fanoutLength * Integer.BYTES); }
+        long startsOffset() { return hashesOffset() + (long) hashCount * Long.BYTES; }
+        long postingsOffset() { return startsOffset() + align8((long) (hashCount + 1) * Integer.BYTES); }
+        long footerOffset() { return postingsOffset() + align8(postingBytes); }
+        long fileLength() { return footerOffset() + FOOTER_BYTES; }
+    }
+
+    // ═══ Writing ═══
+
+    /**
+     * Write a segment to {@code path}. The file is written next to its target
+     * and moved into place atomically, so readers never observe a partial file.
+     */
+    public static void write(PostingSegment segment, Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            SectionWriter out = new SectionWriter(ch);
+            IntBuffer fanout = segment.fanout();
+            LongBuffer hashes = segment.hashes();
+            IntBuffer starts = segment.starts();
+            ByteBuffer postings = segment.postings();
+
+            out.putInt(MAGIC).putInt(VERSION).putInt(segment.fanoutShift()).putInt(fanout.capacity())
+               .putLong(segment.maxHash()).putInt(segment.hashCount()).putInt(segment.postingCount())
+               .putLong(System.currentTimeMillis()).putInt(postings.capacity()).pad(HEADER_BYTES);
+
+            for (int i = 0; i < fanout.capacity(); i++) out.putInt(fanout.get(i));
+            out.align8();
+            for (int i = 0; i < hashes.capacity(); i++) out.putLong(hashes.get(i));
+            for (int i = 0; i < starts.capacity(); i++) out.putInt(starts.get(i));
+            out.align8();
+            int directoryCrc = out.finishChecksum();
+
+            out.putBytes(postings);
+            int postingsCrc = out.finishChecksum();
+            out.align8();
+
+            out.putInt(directoryCrc).putInt(postingsCrc).putInt(FOOTER_MAGIC).putInt(VERSION);
+            out.flush();
+            ch.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ═══ Reading ═══
+
+    /** Read and validate the header of a segment file. */
+    public static Header readHeader(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(path, ch);
+        }
+    }
+
+    /**
+     * Map a segment file.
+     *
+     * @param verifyPostings also verify the postings checksum, which reads the entire file
+     * @throws FormatException if the file is truncated, of an unknown version or corrupt
+     */
+    public static PostingSegment map(Path path, boolean verifyPostings) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header h = readHeader(path, ch);
+
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES).order(ORDER);
+            readFully(ch, footer, h.footerOffset());
+            int directoryCrc = footer.getInt(0);
+            int postingsCrc = footer.getInt(4);
+            if (footer.getInt(8) != FOOTER_MAGIC || footer.getInt(12) != h.version()) {
+                throw new FormatException(path, "bad footer");
+            }
+
+            // Map each section separately (a single mapping is limited to 2 GB);
+            // the mappings stay valid after the channel is closed
+            MappedByteBuffer head = map(ch, 0, h.hashesOffset());
+            MappedByteBuffer hashes = map(ch, h.hashesOffset(), h.startsOffset() - h.hashesOffset());
+            MappedByteBuffer starts = map(ch, h.startsOffset(), h.postingsOffset() - h.startsOffset());
+            if (crc(head, hashes, starts) != directoryCrc) {
+                throw new FormatException(path, "directory checksum mismatch");
+            }
+            MappedByteBuffer postings = map(ch, h.postingsOffset(), h.postingBytes());
+            if (verifyPostings && crc(postings) != postingsCrc) {
+                throw new FormatException(path, "postings checksum mismatch");
+            }
+
+            return new PostingSegment(
+                    h.fanoutShift(),
+                    h.maxHash(),
+                    head.slice(HEADER_BYTES, h.fanoutLength() * Integer.BYTES).order(ORDER).asIntBuffer(),
+                    hashes.order(ORDER).asLongBuffer(),
+                    starts.slice(0, (h.hashCount() + 1) * Integer.BYTES).order(ORDER).asIntBuffer(),
+                    postings,
+                    h.postingCount());
+        }
+    }
+
+    private static Header readHeader(Path path, FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size < HEADER_BYTES + FOOTER_BYTES) {
+            throw new FormatException(path, "file too short (" + size + " bytes)");
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+        readFully(ch, buf, 0);
+        if (buf.getInt(0) != MAGIC) {
+            throw new FormatException(path, "not a segment file");
+        }
+        int version = buf.getInt(4);
+        if (version != VERSION) {
+            throw new FormatException(path, "unsupported version " + version);
+        }
+        Header h = new Header(version, buf.getInt(8), buf.getInt(12), buf.getLong(16),
+                buf.getInt(24), buf.getInt(28), buf.getLong(32), buf.getInt(40));
+        if (h.fanoutLength() < 2 || h.hashCount() < 0 || h.postingCount() < 0
+                || h.postingBytes() < 0 || h.postingBytes() > PostingSegment.MAX_POSTING_BYTES) {
+            throw new FormatException(path, "invalid header");
+        }
+        if (h.fileLength() != size) {
+            throw new FormatException(path, "expected " + h.fileLength() + " bytes, found " + size);
+        }
+        return h;
+    }
+
+    // ═══ Internals ═══
+
+    private static long align8(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static MappedByteBuffer map(FileChannel ch, long offset, long length) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private static int crc(ByteBuffer... buffers) {
+        CRC32C crc = new CRC32C();
+        for (ByteBuffer buf : buffers) {
+            crc.update(buf.duplicate());
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    /** Buffered little-endian writer that checksums everything since the last {@link #finishChecksum()}. */
+    private static final class SectionWriter {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ORDER);
+        private CRC32C crc = new CRC32C();
+        private long written;
+
+        SectionWriter(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        SectionWriter putInt(int v) throws IOException {
+            ensure(Integer.BYTES);
+            buf.putInt(v);
+            written += Integer.BYTES;
+            return this;
+        }
+
+        SectionWriter putLong(long v) throws IOException {
+            ensure(Long.BYTES);
+            buf.putLong(v);
+            written += Long.BYTES;
+            return this;
+        }
+
+        /** Write the remaining bytes of {@code src} without staging them. */
+        SectionWriter putBytes(ByteBuffer src) throws IOException {
+            drain();
+            crc.update(src.duplicate());
+            written += src.remaining();
+            while (src.hasRemaining()) ch.write(src);
+            return this;
+        }
+
+        SectionWriter pad(long toOffset) throws IOException {
+            while (written < toOffset) {
+                ensure(1);
+                buf.put((byte) 0);
+                written++;
+            }
+            return this;
+        }
+
+        void align8() throws IOException {
+            pad(SegmentFile.align8(written));
+        }
+
+        int finishChecksum() throws IOException {
+            drain();
+            int value = (int) crc.getValue();
+            crc = new CRC32C();
+            return value;
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) drain();
+        }
+
+        private void drain() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.beatlens.index;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the segments of a {@link SegmentedFingerprintIndex} as memory-mapped
+ * {@link SegmentFile}s in one directory, named {@code segment-<generation>.seg},
+ * next to a {@code tombstones.roaring} file holding the deleted song IDs.
+ *
+ * <p>The same layout doubles as a snapshot of an in-memory index: a
+ * snapshot adds a {@code memtable.seg} file with the unflushed postings and
+ * an {@link IndexManifest}, written last, naming the files that belong to it
+ * and the catalog watermark they reflect.</p>
+ */
+public class SegmentFileStore implements SegmentedFingerprintIndex.SegmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentFileStore.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.seg");
+    static final String TOMBSTONES_FILE = "tombstones.roaring";
+    static final String MEMTABLE_FILE = "memtable.seg";
+
+    /** Segments, tombstones and memtable restored from a snapshot. */
+    public record Restored(IndexManifest manifest, List<IndexSegment> segments, RoaringBitmap tombstones,
+                           PostingSegment memtable) {}
+
+    private final Path directory;
+
+    public SegmentFileStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path segmentPath(long generation) {
+        return directory.resolve(String.format("segment-%016d.seg", generation));
+    }
+
+    @Override
+    public PostingSegment store(long generation, PostingSegment segment) {
+        Path path = segmentPath(generation);
+        try {
+            SegmentFile.write(segment, path);
+            return SegmentFile.map(path, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write segment file " + path, e);
+        }
+    }
+
+    @Override
+    public void delete(long generation) {
+        try {
+            Files.deleteIfExists(segmentPath(generation));
+        } catch (IOException e) {
+            log.warn("Failed to delete segment file {}: {}", segmentPath(generation), e.getMessage());
+        }
+    }
+
+    @Override
+    public void storeTombstones(RoaringBitmap tombstones) {
+        Path path = directory.resolve(TOMBSTONES_FILE);
+        try {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, TOMBSTONES_FILE, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                tombstones.serialize(out);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + path, e);
+        }
+    }
+
+    /**
+     * Map every segment file in the directory, oldest generation first.
+     * Unreadable files are skipped, so their songs are reloaded by the caller.
+     */
+    public List<IndexSegment> openAll(boolean verifyPostings) throws IOException {
+        List<IndexSegment> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return segments;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.seg")) {
+            for (Path file : files) {
+                Matcher m = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (!m.matches()) continue;
+                try {
+                    segments.add(IndexSegment.of(Long.parseLong(m.group(1)), SegmentFile.map(file, verifyPostings)));
+                } catch (IOException e) {
+                    log.warn("Skipping unusable segment file {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(IndexSegment::getGeneration));
+        return segments;
+    }
+
+    // ═══ Snapshots ═══
+
+    /**
+     * Persist a snapshot. Segment files that already hold the same segment are
+     * reused, so repeated snapshots only write what changed since the last one.
+     *
+     * @param prune also delete segment files the snapshot does not list; only
+     *              safe when nothing else writes segments to this directory
+     * @return the manifest written
+     */
+    public IndexManifest writeSnapshot(SegmentedFingerprintIndex.Snapshot snapshot,
+                                       IndexManifest.Watermark watermark, boolean prune) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> generations = new ArrayList<>(snapshot.segments().size());
+        for (IndexSegment segment : snapshot.segments()) {
+            Path path = segmentPath(segment.getGeneration());
+            if (!holds(path, segment.getPostings())) {
+                SegmentFile.write(segment.getPostings(), path);
+            }
+            generations.add(segment.getGeneration());
+        }
+        Path memtablePath = directory.resolve(MEMTABLE_FILE);
+        if (snapshot.memtable() != null) {
+            SegmentFile.write(snapshot.memtable(), memtablePath);
+        }
+        storeTombstones(snapshot.tombstones());
+
+        IndexManifest manifest = new IndexManifest(
+                generations, snapshot.tombstones(), snapshot.memtable() != null, watermark);
+        manifest.write(directory);
+
+        if (snapshot.memtable() == null) {
+            Files.deleteIfExists(memtablePath);
+        }
+        if (prune) {
+            for (long generation : listGenerations()) {
+                if (!generations.contains(generation)) delete(generation);
+            }
+        }
+        return manifest;
+    }
+
+    /** @return {@code true} if {@code path} is a segment file with the same shape as {@code segment} */
+    private static boolean holds(Path path, PostingSegment segment) {
+        if (!Files.exists(path)) return false;
+        try {
+            SegmentFile.Header header = SegmentFile.readHeader(path);
+            return header.hashCount() == segment.hashCount()
+                    && header.postingCount() == segment.postingCount()
+                    && header.postingBytes() == segment.postingBytes();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Restore the snapshot described by the manifest, opening its segment
+     * files in parallel.
+     *
+     * @param copyToMemory copy segments into direct memory instead of serving them from the mapping
+     * @param executor     runs one task per segment file
+     * @return the restored snapshot, or empty if there is no manifest or a listed file is unusable
+     */
+    public Optional<Restored> restoreSnapshot(boolean verifyPostings, boolean copyToMemory, Executor executor)
+            throws IOException {
+        Optional<IndexManifest> found = readManifest();
+        if (found.isEmpty()) return Optional.empty();
+        IndexManifest manifest = found.get();
+
+        List<CompletableFuture<IndexSegment>> opening = manifest.generations().stream()
+                .map(generation -> CompletableFuture.supplyAsync(
+                        () -> open(generation, verifyPostings, copyToMemory), executor))
+                .toList();
+        List<IndexSegment> segments = new ArrayList<>(opening.size());
+        try {
+            for (CompletableFuture<IndexSegment> f : opening) {
+                segments.add(f.join());
+            }
+        } catch (CompletionException e) {
+            log.warn("Cannot restore index snapshot from {}: {}", directory, e.getCause().getMessage());
+            return Optional.empty();
+        }
+
+        PostingSegment memtable = null;
+        if (manifest.hasMemtable()) {
+            try {
+                memtable = SegmentFile.map(directory.resolve(MEMTABLE_FILE), verifyPostings);
+            } catch (IOException e) {
+                log.warn("Cannot restore index snapshot from {}: {}", directory, e.getMessage());
+                return Optional.empty();
+            }
+        }
+        return Optional.of(new Restored(manifest, segments, manifest.tombstones(), memtable));
+    }
+
+    /** @return the current manifest, or empty if no snapshot has been written */
+    public Optional<IndexManifest> readManifest() throws IOException {
+        return IndexManifest.read(directory);
+    }
+
+    /**
+     * Open one segment file.
+     *
+     * @param copyToMemory copy the segment into direct memory instead of serving it from the mapping
+     */
+    public IndexSegment openSegment(long generation, boolean verifyPostings, boolean copyToMemory) throws IOException {
+        PostingSegment mapped = SegmentFile.map(segmentPath(generation), verifyPostings);
+        return IndexSegment.of(generation, copyToMemory ? mapped.copyToDirectMemory() : mapped);
+    }
+
+    private IndexSegment open(long generation, boolean verifyPostings, boolean copyToMemory) {
+        try {
+            return openSegment(generation, verifyPostings, copyToMemory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unusable segment file " + segmentPath(generation), e);
+        }
+    }
+
+    /**
+     * Store a segment file received from elsewhere, e.g. shipped from a
+     * primary. The file only appears under its final name once complete.
+     */
+    public void importSegment(long generation, InputStream content) throws IOException {
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, "segment-", ".tmp");
+        try {
+            Files.copy(content, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, segmentPath(generation), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private List<Long> listGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.seg")) {
+            for (Path file : files) {
+                Matcher m = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (m.matches()) generations.add(Long.parseLong(m.group(1)));
+            }
+        }
+        return generations;
+    }
+
+    /** @return the stored tombstones, or an empty set if none were stored */
+    public RoaringBitmap readTombstones() throws IOException {
+        RoaringBitmap tombstones = new RoaringBitmap();
+        Path path = directory.resolve(TOMBSTONES_FILE);
+        if (Files.exists(path)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+                tombstones.deserialize(in);
+            }
+        }
+        return tombstones;
+    }
+}
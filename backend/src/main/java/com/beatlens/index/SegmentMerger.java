@@ -0,0 +1,72 @@
+package com.beatlens.index;
+
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * K-way merge of sorted posting sources into a new {@link PostingSegment}.
+ *
+ * <p>Used both for incremental updates (base segment + one song's postings)
+ * and for compaction. Postings whose song fails {@code keepSong} are dropped
+ * while merging, which is how deleted songs are removed.</p>
+ */
+public final class SegmentMerger {
+
+    private static final int THROTTLE_BATCH = 1 << 16;
+
+    private SegmentMerger() {
+        // utility class
+    }
+
+    /**
+     * @param sources   cursors, each in (hash, songId, timeOffset) order
+     * @param keepSong  postings for songs rejected by this predicate are dropped
+     * @param sizeHint  expected number of output postings
+     * @return merged segment
+     */
+    public static PostingSegment merge(List<PostingCursor> sources, LongPredicate keepSong, int sizeHint) {
+        return merge(sources, keepSong, sizeHint, CompactionThrottle.UNLIMITED);
+    }
+
+    /**
+     * @param throttle  paces the merge; consulted once per batch of input postings
+     */
+    public static PostingSegment merge(List<PostingCursor> sources, LongPredicate keepSong, int sizeHint,
+                                       CompactionThrottle throttle) {
+        PostingSegment.Builder builder = PostingSegment.builder(sizeHint);
+        PostingCursor[] cursors = sources.toArray(new PostingCursor[0]);
+        boolean[] live = new boolean[cursors.length];
+        for (int i = 0; i < cursors.length; i++) {
+            live[i] = cursors[i].next();
+        }
+
+        // Linear min-selection: k is small (a handful of segments)
+        int sinceThrottle = 0;
+        while (true) {
+            int min = -1;
+            for (int i = 0; i < cursors.length; i++) {
+                if (live[i] && (min < 0 || lessThan(cursors[i], cursors[min]))) {
+                    min = i;
+                }
+            }
+            if (min < 0) break;
+
+            PostingCursor c = cursors[min];
+            if (keepSong.test(c.songId())) {
+                builder.append(c.hash(), c.songId(), c.timeOffset());
+            }
+            live[min] = c.next();
+            if (++sinceThrottle == THROTTLE_BATCH) {
+                throttle.acquire(sinceThrottle);
+                sinceThrottle = 0;
+            }
+        }
+        return builder.build();
+    }
+
+    private static boolean lessThan(PostingCursor a, PostingCursor b) {
+        if (a.hash() != b.hash()) return a.hash() < b.hash();
+        if (a.songId() != b.songId()) return a.songId() < b.songId();
+        return a.timeOffset() < b.timeOffset();
+    }
+}
@@ -0,0 +1,341 @@
+package com.beatlens.index;
+
+import com.beatlens.core.SongIds;
+import com.beatlens.core.SongMatcher;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Log-structured, in-process fingerprint index.
+ *
+ * <h3>Structure</h3>
+ * <ul>
+ *   <li><b>Memtable</b> — newly indexed songs land in a small mutable
+ *       {@link Memtable}; adding a song costs O(song size).</li>
+ *   <li><b>Segments</b> — when the memtable reaches its limit it is frozen
+ *       into an immutable {@link PostingSegment} (off-heap or memory-mapped,
+ *       depending on the {@link SegmentStore}).</li>
+ *   <li><b>Tombstones</b> — deleting a song that lives in a segment records
+ *       its ID in a tombstone bitmap; its postings are filtered out at lookup
+ *       time until compaction drops them.</li>
+ * </ul>
+ *
+ * <p>Readers take a snapshot of an immutable {@link State} and never lock.
+ * Writers are serialised on this object. {@link #compact} merges segments in
+ * the background without blocking writers, then swaps the result in.</p>
+ *
+ * <p>Songs are immutable once indexed, so adding a song that is already
+ * present is a no-op; this makes replaying updates idempotent.</p>
+ */
+public class SegmentedFingerprintIndex implements SongMatcher.FingerprintLookup {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentedFingerprintIndex.class);
+
+    /** Where frozen and compacted segments are kept. */
+    public interface SegmentStore {
+        /** Keeps segments in process memory only. */
+        SegmentStore IN_MEMORY = (generation, segment) -> segment;
+
+        /** Persist a new segment and return the copy to serve lookups from. */
+        PostingSegment store(long generation, PostingSegment segment);
+
+        /** Called once a segment has been replaced by compaction. */
+        default void delete(long generation) {}
+
+        /** Called whenever the tombstone set changes. */
+        default void storeTombstones(RoaringBitmap tombstones) {}
+    }
+
+    /**
+     * Point-in-time copy of the index for persisting: the segments, the
+     * tombstones and the memtable frozen into a segment ({@code null} if empty),
+     * plus the highest song ID and the number of songs it covers.
+     */
+    public record Snapshot(List<IndexSegment> segments, RoaringBitmap tombstones, PostingSegment memtable,
+                           long maxSongId, long songCount) {}
+
+    /** Immutable view of the index; {@code memtable} is the only mutable part. */
+    private record State(List<IndexSegment> segments, Memtable memtable, RoaringBitmap tombstones) {}
+
+    private final SegmentStore store;
+    private final int memtableLimit;
+    private volatile State state = new State(List.of(), new Memtable(), new RoaringBitmap());
+    private long nextGeneration = 1;
+
+    public SegmentedFingerprintIndex() {
+        this(SegmentStore.IN_MEMORY, 1_000_000);
+    }
+
+    /**
+     * @param store         where frozen segments are kept
+     * @param memtableLimit postings after which the memtable is frozen into a segment
+     */
+    public SegmentedFingerprintIndex(SegmentStore store, int memtableLimit) {
+        this.store = store;
+        this.memtableLimit = memtableLimit;
+    }
+
+    // ═══ Lookup ═══
+
+    @Override
+    public List<SongMatcher.FingerprintEntry> lookup(long hash) {
+        List<SongMatcher.FingerprintEntry> entries = new ArrayList<>();
+        forEachPosting(hash, (songId, timeOffset) ->
+                entries.add(new SongMatcher.FingerprintEntry(songId, timeOffset)));
+        return entries;
+    }
+
+    @Override
+    public void forEachPosting(long hash, SongMatcher.PostingConsumer consumer) {
+        State s = state;
+        SongMatcher.PostingConsumer live = s.tombstones().isEmpty() ? consumer
+                : (songId, timeOffset) -> {
+                    if (!SongIds.contains(s.tombstones(), songId)) consumer.accept(songId, timeOffset);
+                };
+        for (IndexSegment segment : s.segments()) {
+            segment.getPostings().forEach(hash, live);
+        }
+        s.memtable().forEach(hash, consumer);
+    }
+
+    // ═══ Updates ═══
+
+    /**
+     * Replace the whole index, e.g. after loading it from the database or
+     * from segment files.
+     */
+    public synchronized void replace(List<IndexSegment> segments, RoaringBitmap tombstones) {
+        List<IndexSegment> previous = state.segments();
+        nextGeneration = Math.max(nextGeneration,
+                segments.stream().mapToLong(IndexSegment::getGeneration).max().orElse(0) + 1);
+        state = new State(List.copyOf(segments), new Memtable(), tombstones.clone());
+        store.storeTombstones(state.tombstones());
+        previous.stream()
+                .filter(old -> segments.stream().noneMatch(seg -> seg.getGeneration() == old.getGeneration()))
+                .forEach(old -> store.delete(old.getGeneration()));
+    }
+
+    /** @return a generation number for a segment built outside the index */
+    public synchronized long allocateGeneration() {
+        return nextGeneration++;
+    }
+
+    /**
+     * Add a song. No-op if the song is already indexed or has been deleted.
+     *
+     * @param songId   song to add
+     * @param postings the song's postings; song IDs in the buffer are ignored
+     * @return {@code true} if the song was added
+     * @throws IllegalArgumentException if {@code songId} is beyond {@link SongIds#MAX}
+     */
+    public synchronized boolean putSong(long songId, PostingBuffer postings) {
+        SongIds.toInt(songId);
+        State s = state;
+        if (SongIds.contains(s.tombstones(), songId) || containsSong(s, songId)) {
+            return false;
+        }
+        s.memtable().add(songId, postings);
+        if (s.memtable().postingCount() >= memtableLimit) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Remove a song (idempotent): directly from the memtable, and by
+     * tombstone from segments.
+     */
+    public synchronized void removeSong(long songId) {
+        State s = state;
+        s.memtable().remove(songId);
+        boolean inSegments = s.segments().stream().anyMatch(seg -> SongIds.contains(seg.getSongs(), songId));
+        if (inSegments && !SongIds.contains(s.tombstones(), songId)) {
+            RoaringBitmap tombstones = s.tombstones().clone();
+            tombstones.add(SongIds.toInt(songId));
+            state = new State(s.segments(), s.memtable(), tombstones);
+            store.storeTombstones(tombstones);
+        }
+    }
+
+    /** @return {@code true} if the song is indexed and not deleted */
+    public boolean containsSong(long songId) {
+        State s = state;
+        return !SongIds.contains(s.tombstones(), songId) && containsSong(s, songId);
+    }
+
+    private static boolean containsSong(State s, long songId) {
+        return s.memtable().contains(songId)
+                || s.segments().stream().anyMatch(seg -> SongIds.contains(seg.getSongs(), songId));
+    }
+
+    /** Reload postings saved from a memtable, e.g. by {@link #snapshot()}. */
+    public synchronized void restoreMemtable(PostingSegment saved) {
+        // Postings are hash-ordered, so gather them per song first
+        Map<Long, PostingBuffer> songs = new HashMap<>();
+        PostingCursor c = saved.cursor();
+        while (c.next()) {
+            songs.computeIfAbsent(c.songId(), id -> new PostingBuffer(256)).add(c.hash(), c.songId(), c.timeOffset());
+        }
+        songs.forEach(this::putSong);
+    }
+
+    /** @return a consistent copy of the index state; the memtable is copied, segments are shared */
+    public synchronized Snapshot snapshot() {
+        State s = state;
+        RoaringBitmap live = liveSongs();
+        return new Snapshot(
+                s.segments(),
+                s.tombstones(),
+                s.memtable().isEmpty() ? null : s.memtable().toSegment(),
+                live.isEmpty() ? 0 : Integer.toUnsignedLong(live.last()),
+                live.getLongCardinality());
+    }
+
+    /** Freeze the memtable into a new segment. */
+    public synchronized void flush() {
+        State s = state;
+        if (s.memtable().isEmpty()) return;
+        long generation = nextGeneration++;
+        PostingSegment frozen = store.store(generation, s.memtable().toSegment());
+        List<IndexSegment> segments = new ArrayList<>(s.segments());
+        segments.add(new IndexSegment(generation, frozen, s.memtable().songs()));
+        state = new State(List.copyOf(segments), new Memtable(), s.tombstones());
+        log.debug("Flushed memtable to segment {} ({} postings)", generation, frozen.postingCount());
+    }
+
+    // ═══ Compaction ═══
+
+    /**
+     * Merge segments if there are more than {@code maxSegments}, or if some
+     * segments hold postings of deleted songs. The merge runs without holding
+     * the write lock; updates that arrive meanwhile are preserved.
+     *
+     * @return {@code true} if a merge was performed
+     */
+    public boolean compact(int maxSegments, CompactionThrottle throttle) {
+        State snapshot = state;
+        List<IndexSegment> inputs = pickCompactionInputs(snapshot, Math.max(1, maxSegments));
+        if (inputs.isEmpty()) return false;
+
+        RoaringBitmap dropped = snapshot.tombstones();
+        RoaringBitmap songs = new RoaringBitmap();
+        List<PostingCursor> cursors = new ArrayList<>(inputs.size());
+        long postingCount = 0;
+        for (IndexSegment seg : inputs) {
+            songs.or(seg.getSongs());
+            cursors.add(seg.getPostings().cursor());
+            postingCount += seg.getPostings().postingCount();
+        }
+        songs.andNot(dropped);
+
+        long started = System.nanoTime();
+        PostingSegment merged = SegmentMerger.merge(cursors, id -> !SongIds.contains(dropped, id),
+                (int) Math.min(postingCount, Integer.MAX_VALUE), throttle.start());
+
+        synchronized (this) {
+            State current = state;
+            if (!current.segments().containsAll(inputs)) {
+                return false; // replaced while merging
+            }
+            long generation = nextGeneration++;
+            PostingSegment stored = store.store(generation, merged);
+            List<IndexSegment> segments = new ArrayList<>(current.segments());
+            segments.removeAll(inputs);
+            segments.add(new IndexSegment(generation, stored, songs));
+
+            // A tombstone is needed only while some segment still holds the song
+            RoaringBitmap live = new RoaringBitmap();
+            segments.forEach(seg -> live.or(seg.getSongs()));
+            RoaringBitmap tombstones = RoaringBitmap.and(current.tombstones(), live);
+
+            state = new State(List.copyOf(segments), current.memtable(), tombstones);
+            if (tombstones.getCardinality() != current.tombstones().getCardinality()) {
+                store.storeTombstones(tombstones);
+            }
+            inputs.forEach(seg -> store.delete(seg.getGeneration()));
+            log.info("Compacted {} segments ({} postings) into segment {} ({} postings) in {} ms",
+                    inputs.size(), postingCount, generation, stored.postingCount(),
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+        return true;
+    }
+
+    /**
+     * Tiered policy: when over the segment limit, merge the smallest segments
+     * down to the limit; otherwise merge the segments holding deleted songs.
+     * Inputs are capped so that the merged segment fits in one segment.
+     */
+    private static List<IndexSegment> pickCompactionInputs(State s, int maxSegments) {
+        List<IndexSegment> segments = s.segments();
+        if (segments.size() > maxSegments) {
+            List<IndexSegment> bySize = new ArrayList<>(segments);
+            bySize.sort(Comparator.comparingInt(seg -> seg.getPostings().postingBytes()));
+            List<IndexSegment> inputs = capToSegmentSize(bySize.subList(0, segments.size() - maxSegments + 1));
+            return inputs.size() >= 2 ? inputs : List.of();
+        }
+        if (!s.tombstones().isEmpty()) {
+            return capToSegmentSize(segments.stream()
+                    .filter(seg -> RoaringBitmap.intersects(seg.getSongs(), s.tombstones()))
+                    .toList());
+        }
+        return List.of();
+    }
+
+    private static List<IndexSegment> capToSegmentSize(List<IndexSegment> candidates) {
+        List<IndexSegment> inputs = new ArrayList<>();
+        long bytes = 0;
+        for (IndexSegment seg : candidates) {
+            bytes += seg.getPostings().postingBytes();
+            if (bytes > PostingSegment.MAX_POSTING_BYTES) break;
+            inputs.add(seg);
+        }
+        return inputs;
+    }
+
+    // ═══ Stats ═══
+
+    public int segmentCount() { return state.segments().size(); }
+    public int tombstoneCount() { return state.tombstones().getCardinality(); }
+    public int memtablePostingCount() { return state.memtable().postingCount(); }
+
+    /** @return directory entries across segments (a hash in several segments counts once per segment) */
+    public long hashCount() {
+        return state.segments().stream().mapToLong(seg -> seg.getPostings().hashCount()).sum();
+    }
+
+    /** Visit every hash with postings; a hash held by several segments is visited once per segment. */
+    public void forEachHash(LongConsumer consumer) {
+        State s = state;
+        s.segments().forEach(seg -> seg.getPostings().forEachHash(consumer));
+        s.memtable().forEachHash(consumer);
+    }
+
+    /** @return postings held, including those of deleted songs not yet compacted away */
+    public long postingCount() {
+        State s = state;
+        return s.segments().stream().mapToLong(seg -> seg.getPostings().postingCount()).sum()
+                + s.memtable().postingCount();
+    }
+
+    /** @return off-heap or mapped bytes held by segments */
+    public long sizeInBytes() {
+        return state.segments().stream().mapToLong(seg -> seg.getPostings().sizeInBytes()).sum();
+    }
+
+    /** @return IDs of songs indexed and not deleted */
+    public RoaringBitmap liveSongs() {
+        State s = state;
+        RoaringBitmap live = s.memtable().songs();
+        s.segments().forEach(seg -> live.or(seg.getSongs()));
+        live.andNot(s.tombstones());
+        return live;
+    }
+}
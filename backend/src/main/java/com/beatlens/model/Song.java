@@ -1,13 +1,22 @@
 package com.beatlens.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.SQLRestriction;
+
 import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * JPA entity for the {@code songs} table.
+ *
+ * <p>Deleted songs keep their row, marked by {@code deleted_at}, until their
+ * postings are purged; JPA never loads them.</p>
  */
 @Entity
 @Table(name = "songs")
+@SQLRestriction("deleted_at IS NULL")
 public class Song {
 
     @Id
@@ -32,6 +41,18 @@ public class Song {
     @Column(name = "indexed_at")
     private LocalDateTime indexedAt;
 
+    @Column(length = 100)
+    private String catalog;
+
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
+    @ElementCollection
+    @CollectionTable(name = "song_tags", joinColumns = @JoinColumn(name = "song_id"))
+    @Column(name = "tag", length = 100, nullable = false)
+    @BatchSize(size = 100)
+    private Set<String> tags = new HashSet<>();
+
     @PrePersist
     protected void onCreate() {
         if (indexedAt == null) {
@@ -61,4 +82,13 @@ public class Song {
 
     public LocalDateTime getIndexedAt() { return indexedAt; }
     public void setIndexedAt(LocalDateTime indexedAt) { this.indexedAt = indexedAt; }
+
+    public String getCatalog() { return catalog; }
+    public void setCatalog(String catalog) { this.catalog = catalog; }
+
+    public LocalDateTime getDeletedAt() { return deletedAt; }
+    public void setDeletedAt(LocalDateTime deletedAt) { this.deletedAt = deletedAt; }
+
+    public Set<String> getTags() { return tags; }
+    public void setTags(Set<String> tags) { this.tags = tags; }
 }
@@ -0,0 +1,18 @@
+package com.beatlens.model.dto;
+
+/**
+ * DTO for the /api/index/cache-warmup endpoint.
+ *
+ * @param state          disabled | idle | skipped (no usable sketch) | running | finished | failed
+ * @param hotHashes      hashes tracked by the current sketch
+ * @param hitRateDuring  lookup cache hit rate while the warm-up ran
+ * @param hitRateAfter   lookup cache hit rate since it finished
+ */
+public record CacheWarmupDto(
+        String state,
+        int hashesTotal,
+        int hashesLoaded,
+        int hotHashes,
+        double hitRateDuring,
+        double hitRateAfter
+) {}
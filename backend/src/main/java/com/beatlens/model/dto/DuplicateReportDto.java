@@ -0,0 +1,26 @@
+package com.beatlens.model.dto;
+
+import com.beatlens.core.DuplicateDetector;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * DTO for the /api/duplicates endpoint: progress of the current scan, or the
+ * result of the last one.
+ *
+ * @param state  idle | running | finished | failed
+ * @param pairs  songs sharing aligned fingerprints, best coverage first
+ * @param plan   duplicate clusters with the song to keep (empty unless requested)
+ */
+public record DuplicateReportDto(
+        String state,
+        Instant startedAt,
+        Instant finishedAt,
+        int sampleRate,
+        int songsTotal,
+        int songsScanned,
+        int songsFailed,
+        List<DuplicateDetector.Pair> pairs,
+        List<DuplicateDetector.MergeGroup> plan
+) {}
@@ -0,0 +1,16 @@
+package com.beatlens.model.dto;
+
+/**
+ * DTO for the /api/index endpoint.
+ */
+public record IndexStatusDto(
+        String engine,
+        boolean ready,
+        boolean loading,
+        int segmentCount,
+        int memtablePostings,
+        int tombstoneCount,
+        long hashCount,
+        long postingCount,
+        long sizeInBytes
+) {}
@@ -4,9 +4,15 @@ import java.util.List;
 
 /**
  * Top-level response wrapper for the match endpoint.
+ *
+ * <p>{@code partial} is set when the request deadline expired during hash
+ * lookups; {@code hashCoverage} is the fraction of query hashes that were
+ * consulted before scoring.</p>
  */
 public record MatchResponse(
         List<MatchResultDto> results,
         int queryFingerprints,
-        double queryDurationSeconds
+        double queryDurationSeconds,
+        boolean partial,
+        double hashCoverage
 ) {}
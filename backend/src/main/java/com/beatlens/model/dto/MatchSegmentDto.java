@@ -0,0 +1,14 @@
+package com.beatlens.model.dto;
+
+/**
+ * DTO for one segment of a segmented (timeline) match.
+ */
+public record MatchSegmentDto(
+        Long songId,
+        String title,
+        String artist,
+        double startSeconds,
+        double endSeconds,
+        double songOffsetSeconds,
+        double confidence
+) {}
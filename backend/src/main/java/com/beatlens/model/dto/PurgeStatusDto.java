@@ -0,0 +1,17 @@
+package com.beatlens.model.dto;
+
+/**
+ * DTO for the /api/songs/purge endpoint: progress of the background purge
+ * of deleted songs on this node.
+ *
+ * @param pendingSongs               deleted songs still to purge in the current run
+ * @param currentSongId              song being purged, or {@code null} between runs
+ * @param currentSongPostingsPurged  postings of the current song removed so far
+ */
+public record PurgeStatusDto(
+        int pendingSongs,
+        Long currentSongId,
+        long currentSongPostingsPurged,
+        long songsPurged,
+        long postingsPurged
+) {}
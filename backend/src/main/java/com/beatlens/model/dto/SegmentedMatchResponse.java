@@ -0,0 +1,18 @@
+package com.beatlens.model.dto;
+
+import java.util.List;
+
+/**
+ * Response wrapper for the segmented match endpoint: a timeline of songs
+ * detected across the query, in query order.
+ *
+ * <p>{@code partial} and {@code hashCoverage} mean the same as in
+ * {@link MatchResponse}, counted over the query's distinct hashes.</p>
+ */
+public record SegmentedMatchResponse(
+        List<MatchSegmentDto> segments,
+        int queryFingerprints,
+        double queryDurationSeconds,
+        boolean partial,
+        double hashCoverage
+) {}
@@ -0,0 +1,19 @@
+package com.beatlens.model.dto;
+
+import java.util.List;
+
+/**
+ * Query sent by the coordinator to each shard's /api/shard/match endpoint.
+ *
+ * <p>Fingerprints travel as parallel {@code hashes} / {@code anchorTimes}
+ * arrays. {@code deadlineMs} is the shard's time budget for lookups, or
+ * {@code null} for none.</p>
+ */
+public record ShardMatchRequest(
+        long[] hashes,
+        int[] anchorTimes,
+        List<String> catalogs,
+        List<String> tags,
+        List<Long> songIds,
+        Long deadlineMs
+) {}
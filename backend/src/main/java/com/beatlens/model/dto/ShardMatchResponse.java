@@ -0,0 +1,21 @@
+package com.beatlens.model.dto;
+
+import java.util.List;
+
+/**
+ * One shard's scored candidates for a query, before the coordinator merges them.
+ */
+public record ShardMatchResponse(
+        int shard,
+        List<Result> results,
+        int hashesConsulted,
+        int hashesTotal
+) {
+    public record Result(
+            long songId,
+            int alignedMatches,
+            int totalMatches,
+            double timeOffsetSeconds,
+            double confidence
+    ) {}
+}
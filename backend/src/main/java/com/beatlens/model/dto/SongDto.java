@@ -3,6 +3,7 @@ package com.beatlens.model.dto;
 import com.beatlens.model.Song;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Read-only DTO returned to clients for song information.
@@ -13,7 +14,9 @@ public record SongDto(
         String artist,
         Double durationSeconds,
         Integer fingerprintCount,
-        LocalDateTime indexedAt
+        LocalDateTime indexedAt,
+        String catalog,
+        List<String> tags
 ) {
     public static SongDto from(Song song) {
         return new SongDto(
@@ -22,7 +25,9 @@ public record SongDto(
                 song.getArtist(),
                 song.getDurationSeconds(),
                 song.getFingerprintCount(),
-                song.getIndexedAt()
+                song.getIndexedAt(),
+                song.getCatalog(),
+                song.getTags().stream().sorted().toList()
         );
     }
 }
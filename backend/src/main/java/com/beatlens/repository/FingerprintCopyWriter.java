@@ -0,0 +1,87 @@
+package com.beatlens.repository;
+
+import com.beatlens.bulk.PgBinaryCopyWriter;
+import com.beatlens.core.FingerprintGenerator;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Inserts a song's fingerprints with PostgreSQL's binary {@code COPY}
+ * protocol instead of one {@code INSERT} per row.
+ *
+ * <p>COPY streams the rows in one round trip and skips text parsing on the
+ * server. The rows are written on the connection of the surrounding
+ * transaction, so they commit or roll back together with the song row. They
+ * go to the compact {@code postings} table, or to the legacy
+ * {@code fingerprints} table (mirrored into {@code postings} by a trigger)
+ * until {@link PostingRepository#isCompactWrites()} says every node has
+ * moved on from it.</p>
+ */
+@Repository
+public class FingerprintCopyWriter {
+
+    static final String COPY_COMPACT_SQL =
+            "COPY postings (hash, song_id, time_offset) FROM STDIN WITH (FORMAT binary)";
+    static final String COPY_LEGACY_SQL =
+            "COPY fingerprints (hash, coarse_hash, song_id, time_offset) FROM STDIN WITH (FORMAT binary)";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataSource dataSource;
+    private final PostingRepository postingRepository;
+
+    public FingerprintCopyWriter(DataSource dataSource, PostingRepository postingRepository) {
+        this.dataSource = dataSource;
+        this.postingRepository = postingRepository;
+    }
+
+    /**
+     * @return number of rows inserted
+     */
+    public long insert(long songId, List<FingerprintGenerator.Fingerprint> fingerprints) {
+        if (fingerprints.isEmpty()) return 0;
+        boolean compact = postingRepository.isCompactWrites();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            PGCopyOutputStream copy = new PGCopyOutputStream(connection.unwrap(PGConnection.class),
+                    compact ? COPY_COMPACT_SQL : COPY_LEGACY_SQL, BUFFER_SIZE);
+            PgBinaryCopyWriter writer = new PgBinaryCopyWriter(copy);
+            try {
+                writeRows(writer, songId, fingerprints, compact);
+                writer.close(); // trailer, then end of COPY
+            } catch (IOException | RuntimeException e) {
+                // Abort rather than end a partial COPY
+                if (copy.isActive()) copy.cancelCopy();
+                throw e;
+            }
+            return copy.getHandledRowCount();
+        } catch (SQLException | IOException e) {
+            throw new DataAccessResourceFailureException(
+                    "COPY of " + fingerprints.size() + " fingerprints for song " + songId + " failed", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /** One row per fingerprint, in the column order of {@link #COPY_COMPACT_SQL} or {@link #COPY_LEGACY_SQL}. */
+    static void writeRows(PgBinaryCopyWriter writer, long songId,
+                          List<FingerprintGenerator.Fingerprint> fingerprints, boolean compact) throws IOException {
+        for (FingerprintGenerator.Fingerprint fp : fingerprints) {
+            if (compact) {
+                writer.startRow(3).writeLong(fp.hash).writeInt(Math.toIntExact(songId)).writeInt(fp.anchorTime);
+            } else {
+                writer.startRow(4).writeLong(fp.hash).writeLong(fp.coarseHash).writeLong(songId)
+                        .writeInt(fp.anchorTime);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.beatlens.repository;
+
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.index.PackedPostings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and deletes fingerprint postings with plain JDBC, against whichever
+ * table currently holds the complete set.
+ *
+ * <p>V4 introduced the compact {@code postings} table. Until its online
+ * backfill from the legacy {@code fingerprints} table has finished (see
+ * {@code PostingBackfillService}), reads and writes stay on
+ * {@code fingerprints}, whose triggers mirror every change into
+ * {@code postings}. Both tables name the shared columns {@code hash},
+ * {@code song_id} and {@code time_offset}, so callers that build their own
+ * SQL only substitute {@link #table()}.</p>
+ *
+ * <p>Each node notices the end of the backfill on its own, up to one
+ * recheck interval late, and then reads {@code postings}. Writes follow only
+ * once {@link #WRITE_SWITCH_GRACE_SECONDS} have passed since the backfill
+ * finished: until then they still go through {@code fingerprints} and its
+ * triggers, so songs indexed anywhere are in both tables while some node may
+ * still be reading the legacy one. Deletes always cover both tables.</p>
+ */
+@Repository
+public class PostingRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(PostingRepository.class);
+
+    public static final String COMPACT_TABLE = "postings";
+    public static final String LEGACY_TABLE = "fingerprints";
+
+    /** How long a "backfill pending" answer is trusted before asking the database again. */
+    private static final long LAYOUT_RECHECK_NANOS = 30_000_000_000L;
+
+    /**
+     * How long writes stay on the legacy table after the backfill is done:
+     * several recheck intervals, so every live node reads {@code postings} first.
+     */
+    static final int WRITE_SWITCH_GRACE_SECONDS = 120;
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile boolean compact;
+    private volatile boolean compactWrites;
+    private volatile long layoutCheckedAt;
+    private volatile boolean layoutChecked;
+
+    public PostingRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // ═══ Layout ═══
+
+    /** @return {@code true} once reads go to the compact table; never reverts */
+    public boolean isCompact() {
+        if (compact) return true;
+        refreshLayoutIfStale();
+        return compact;
+    }
+
+    /**
+     * @return {@code true} once new postings go straight to the compact table
+     *         instead of through the legacy table's triggers; never reverts
+     */
+    public boolean isCompactWrites() {
+        if (compactWrites) return true;
+        refreshLayoutIfStale();
+        return compactWrites;
+    }
+
+    private void refreshLayoutIfStale() {
+        if (!layoutChecked || System.nanoTime() - layoutCheckedAt > LAYOUT_RECHECK_NANOS) {
+            refreshLayout();
+        }
+    }
+
+    /** Re-read the backfill state, e.g. right after finishing it. */
+    public void refreshLayout() {
+        // Measured by the database clock, so nodes agree on when the grace period ends
+        Map<String, Object> layout = jdbcTemplate.queryForMap(
+                "SELECT done, COALESCE(done_at <= now() - ? * INTERVAL '1 second', FALSE) AS writes_compact "
+                        + "FROM postings_backfill WHERE id = 1", WRITE_SWITCH_GRACE_SECONDS);
+        layoutCheckedAt = System.nanoTime();
+        layoutChecked = true;
+        if (Boolean.TRUE.equals(layout.get("done")) && !compact) {
+            compact = true;
+            log.info("Fingerprint postings served from the compact {} table", COMPACT_TABLE);
+        }
+        if (Boolean.TRUE.equals(layout.get("writes_compact")) && !compactWrites) {
+            compactWrites = true;
+            log.info("Fingerprint postings written to the compact {} table only", COMPACT_TABLE);
+        }
+    }
+
+    /** @return the table holding the complete set of postings */
+    public String table() {
+        return isCompact() ? COMPACT_TABLE : LEGACY_TABLE;
+    }
+
+    // ═══ Lookup ═══
+
+    /**
+     * All postings that share the given hash, packed as in {@link PackedPostings}.
+     * Used during matching to look up candidates.
+     */
+    public long[] findByHash(long hash) {
+        long[][] packed = {PackedPostings.EMPTY};
+        int[] size = {0};
+        jdbcTemplate.query("SELECT song_id, time_offset FROM " + table() + " WHERE hash = ?", (RowCallbackHandler) rs -> {
+            if (size[0] == packed[0].length) {
+                packed[0] = Arrays.copyOf(packed[0], Math.max(8, size[0] << 1));
+            }
+            packed[0][size[0]++] = PackedPostings.pack(rs.getLong(1), rs.getInt(2));
+        }, hash);
+        return size[0] == 0 ? PackedPostings.EMPTY : Arrays.copyOf(packed[0], size[0]);
+    }
+
+    /**
+     * Postings of many hashes in one query, e.g. to warm the lookup cache.
+     *
+     * @return packed postings per requested hash; {@link PackedPostings#EMPTY} for hashes without any
+     */
+    public Map<Long, long[]> findByHashes(long[] hashes) {
+        Map<Long, long[]> found = new HashMap<>(hashes.length * 2);
+        for (long hash : hashes) found.put(hash, PackedPostings.EMPTY);
+        // Rows arrive grouped by hash, so one growing buffer is enough
+        long[] current = {0};
+        long[][] buffer = {new long[64]};
+        int[] size = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT hash, song_id, time_offset FROM " + table() + " WHERE hash = ANY(?) ORDER BY hash");
+            ps.setArray(1, bigintArray(connection, hashes));
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            long hash = rs.getLong(1);
+            if (size[0] > 0 && hash != current[0]) {
+                found.put(current[0], Arrays.copyOf(buffer[0], size[0]));
+                size[0] = 0;
+            }
+            current[0] = hash;
+            if (size[0] == buffer[0].length) buffer[0] = Arrays.copyOf(buffer[0], size[0] << 1);
+            buffer[0][size[0]++] = PackedPostings.pack(rs.getLong(2), rs.getInt(3));
+        });
+        if (size[0] > 0) found.put(current[0], Arrays.copyOf(buffer[0], size[0]));
+        return found;
+    }
+
+    /**
+     * Distinct songs that have at least one fingerprint with the given coarse hash.
+     * Used for drift-tolerant candidate retrieval before exact verification.
+     */
+    public long[] findSongIdsByCoarseHash(long coarseHash) {
+        List<Long> songIds = new ArrayList<>();
+        if (isCompact()) {
+            // No coarse column: probe the hash index for the 32 exact hashes instead
+            long[] hashes = FingerprintGenerator.exactHashes(coarseHash);
+            jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(
+                        "SELECT DISTINCT song_id FROM " + COMPACT_TABLE + " WHERE hash = ANY(?)");
+                ps.setArray(1, bigintArray(connection, hashes));
+                return ps;
+            }, (RowCallbackHandler) rs -> songIds.add(rs.getLong(1)));
+        } else {
+            jdbcTemplate.query("SELECT DISTINCT song_id FROM " + LEGACY_TABLE + " WHERE coarse_hash = ?",
+                    (RowCallbackHandler) rs -> songIds.add(rs.getLong(1)), coarseHash);
+        }
+        return songIds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Distinct songs per coarse hash for many coarse hashes in one query, so
+     * coarse retrieval does not pay one round trip per hash.
+     *
+     * @return song IDs per requested coarse hash; {@link PackedPostings#EMPTY} for those without any
+     */
+    public Map<Long, long[]> findSongIdsByCoarseHashes(long[] coarseHashes) {
+        Map<Long, Set<Long>> songs = new HashMap<>(coarseHashes.length * 2);
+        if (isCompact()) {
+            long[] hashes = new long[coarseHashes.length * 32];
+            int n = 0;
+            for (long coarseHash : coarseHashes) {
+                for (long hash : FingerprintGenerator.exactHashes(coarseHash)) hashes[n++] = hash;
+            }
+            long[] probed = Arrays.copyOf(hashes, n);
+            jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(
+                        "SELECT DISTINCT hash, song_id FROM " + COMPACT_TABLE + " WHERE hash = ANY(?)");
+                ps.setArray(1, bigintArray(connection, probed));
+                return ps;
+            }, (RowCallbackHandler) rs -> songs
+                    .computeIfAbsent(FingerprintGenerator.coarseHash(rs.getLong(1)), k -> new HashSet<>())
+                    .add(rs.getLong(2)));
+        } else {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(
+                        "SELECT DISTINCT coarse_hash, song_id FROM " + LEGACY_TABLE + " WHERE coarse_hash = ANY(?)");
+                ps.setArray(1, bigintArray(connection, coarseHashes));
+                return ps;
+            }, (RowCallbackHandler) rs -> songs.computeIfAbsent(rs.getLong(1), k -> new HashSet<>()).add(rs.getLong(2)));
+        }
+        Map<Long, long[]> found = new HashMap<>(coarseHashes.length * 2);
+        for (long coarseHash : coarseHashes) {
+            Set<Long> ids = songs.get(coarseHash);
+            found.put(coarseHash, ids == null ? PackedPostings.EMPTY
+                    : ids.stream().mapToLong(Long::longValue).sorted().toArray());
+        }
+        return found;
+    }
+
+    /**
+     * All fingerprints of a song, e.g. to load it into another node's index.
+     */
+    public List<FingerprintGenerator.Fingerprint> findBySongId(long songId) {
+        List<FingerprintGenerator.Fingerprint> fingerprints = new ArrayList<>();
+        jdbcTemplate.query("SELECT hash, time_offset FROM " + table() + " WHERE song_id = ?",
+                (RowCallbackHandler) rs -> fingerprints.add(
+                        FingerprintGenerator.Fingerprint.fromHash(rs.getLong(1), rs.getInt(2))),
+                songId);
+        return fingerprints;
+    }
+
+    /** @return total number of postings */
+    public long count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table(), Long.class);
+    }
+
+    // ═══ Delete ═══
+
+    /**
+     * Delete all postings of a song from both tables. The legacy rows must go
+     * too: they cascade from {@code songs} and feed the backfill until it is done.
+     */
+    public void deleteBySongId(long songId) {
+        jdbcTemplate.update("DELETE FROM " + LEGACY_TABLE + " WHERE song_id = ?", songId);
+        jdbcTemplate.update("DELETE FROM " + COMPACT_TABLE + " WHERE song_id = ?", songId);
+    }
+
+    /**
+     * Delete up to {@code limit} postings of a song from each table, one
+     * short statement per table, so a purge never holds locks for long.
+     * {@code postings} has no key, so rows are addressed by partition and
+     * {@code ctid}. While the backfill is pending, the V4 delete trigger still
+     * removes the song's mirrored postings in one go.
+     *
+     * @return hashes of the deleted rows (with repeats); empty once the song has no postings left
+     */
+    public long[] deleteBatchBySongId(long songId, int limit) {
+        List<Long> hashes = new ArrayList<>();
+        RowCallbackHandler collect = rs -> hashes.add(rs.getLong(1));
+        jdbcTemplate.query(
+                "DELETE FROM " + LEGACY_TABLE + " WHERE id IN ("
+                        + "SELECT id FROM " + LEGACY_TABLE + " WHERE song_id = ? LIMIT ?) RETURNING hash",
+                collect, songId, limit);
+        jdbcTemplate.query(
+                "DELETE FROM " + COMPACT_TABLE + " WHERE (tableoid, ctid) IN ("
+                        + "SELECT tableoid, ctid FROM " + COMPACT_TABLE + " WHERE song_id = ? LIMIT ?) RETURNING hash",
+                collect, songId, limit);
+        return hashes.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static Array bigintArray(Connection connection, long[] values) throws SQLException {
+        Long[] boxed = new Long[values.length];
+        for (int i = 0; i < values.length; i++) boxed[i] = values[i];
+        return connection.createArrayOf("bigint", boxed);
+    }
+}
@@ -2,15 +2,40 @@ package com.beatlens.repository;
 
 import com.beatlens.model.Song;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface SongRepository extends JpaRepository<Song, Long> {
 
-    @Query(value = "SELECT * FROM songs ORDER BY id OFFSET :offset LIMIT :limit", nativeQuery = true)
+    @Query(value = "SELECT * FROM songs WHERE deleted_at IS NULL ORDER BY id OFFSET :offset LIMIT :limit",
+            nativeQuery = true)
     List<Song> findWithOffset(@Param("offset") long offset, @Param("limit") int limit);
+
+    /**
+     * Tombstone a song; its postings and row are purged in the background.
+     *
+     * @return {@code 0} if the song does not exist or is already deleted
+     */
+    @Modifying
+    @Query(value = "UPDATE songs SET deleted_at = CURRENT_TIMESTAMP WHERE id = :id AND deleted_at IS NULL",
+            nativeQuery = true)
+    int markDeleted(@Param("id") long id);
+
+    /**
+     * IDs of all songs in any of the given catalogs (for match filters).
+     */
+    @Query("SELECT s.id FROM Song s WHERE s.catalog IN :catalogs")
+    List<Long> findIdsByCatalogIn(@Param("catalogs") Collection<String> catalogs);
+
+    /**
+     * IDs of all songs carrying any of the given tags (for match filters).
+     */
+    @Query("SELECT DISTINCT s.id FROM Song s JOIN s.tags t WHERE t IN :tags")
+    List<Long> findIdsByTagIn(@Param("tags") Collection<String> tags);
 }
@@ -0,0 +1,251 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.event.SongIndexedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Keeps the caches of every node in step with catalog changes made on any of
+ * them, over PostgreSQL {@code LISTEN}/{@code NOTIFY}.
+ *
+ * <p>Songs indexed or deleted here are announced on
+ * {@code beatlens.catalog-events.channel} from inside their own transaction,
+ * so a notification goes out exactly when the change commits. Each node
+ * listens on a connection of its own and replays other nodes' changes
+ * through {@link ShardCoordinator#loadRemoteSong} and
+ * {@link ShardCoordinator#removeRemoteSong}: for songs of its shard, the
+ * lookup caches, hash filter and in-process index are patched by the usual
+ * event listeners; every node drops its cached match responses.
+ * Notifications carry only the song ID; the song's hashes are read from the
+ * postings, which the commit has made visible.</p>
+ *
+ * <p>Notifications sent while a node is not listening are lost. After
+ * reconnecting, the node therefore flushes its lookup, filter and match
+ * caches instead of patching them, rebuilds its hash filter (screening
+ * nothing meanwhile) and catches its in-process index up with the songs
+ * table; so it does when applying a change fails.</p>
+ *
+ * <h3>Payload</h3>
+ * <pre>
+ * indexed|deleted songId nodeId
+ * </pre>
+ */
+@Service
+public class CatalogChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogChangeListener.class);
+
+    private static final int POLL_TIMEOUT_MS = 1000;
+    private static final String INDEXED = "indexed";
+    private static final String DELETED = "deleted";
+
+    /** A catalog change announced by another node. */
+    record Change(boolean deleted, long songId) {}
+
+    private final ShardCoordinator shardCoordinator;
+    private final FingerprintLookupService lookupService;
+    private final MatchResultCache resultCache;
+    private final SongFilterService songFilterService;
+    private final SongMetadataService songMetadataService;
+    private final HashFilterService hashFilterService;
+    private final FingerprintIndexService indexService;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSource;
+    private final AudioProperties.CatalogEvents config;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Counter sent;
+    private final Counter received;
+    private volatile boolean running = true;
+    private volatile Thread worker;
+
+    public CatalogChangeListener(ShardCoordinator shardCoordinator,
+                                 FingerprintLookupService lookupService,
+                                 MatchResultCache resultCache,
+                                 SongFilterService songFilterService,
+                                 SongMetadataService songMetadataService,
+                                 HashFilterService hashFilterService,
+                                 FingerprintIndexService indexService,
+                                 JdbcTemplate jdbcTemplate,
+                                 DataSourceProperties dataSource,
+                                 MeterRegistry meterRegistry,
+                                 AudioProperties props) {
+        this.shardCoordinator = shardCoordinator;
+        this.lookupService = lookupService;
+        this.resultCache = resultCache;
+        this.songFilterService = songFilterService;
+        this.songMetadataService = songMetadataService;
+        this.hashFilterService = hashFilterService;
+        this.indexService = indexService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.config = props.getCatalogEvents();
+        if (!config.getChannel().matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalStateException("beatlens.catalog-events.channel must be a lower-case identifier");
+        }
+        this.sent = counter(meterRegistry, "sent");
+        this.received = counter(meterRegistry, "received");
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String direction) {
+        return Counter.builder("beatlens.catalog-events")
+                .description("Catalog change notifications exchanged with other nodes")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    // ═══ Publish ═══
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onSongIndexed(SongIndexedEvent event) {
+        if (!event.replayed()) announce(INDEXED, event.songId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onSongDeleted(SongDeletedEvent event) {
+        if (!event.replayed()) announce(DELETED, event.songId());
+    }
+
+    /** Queue a notification on the current transaction; PostgreSQL delivers it on commit. */
+    private void announce(String op, long songId) {
+        if (!config.isEnabled()) return;
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class,
+                config.getChannel(), payload(op, songId, nodeId));
+        sent.increment();
+    }
+
+    static String payload(String op, long songId, String nodeId) {
+        return op + " " + songId + " " + nodeId;
+    }
+
+    // ═══ Listen ═══
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled()) return;
+        Thread thread = new Thread(this::listen, "catalog-events");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    private void listen() {
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSource.determineUrl(),
+                    dataSource.determineUsername(), dataSource.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + config.getChannel());
+                }
+                if (connectedBefore) {
+                    // Changes made while disconnected were not heard; stop trusting the caches
+                    flushCaches();
+                    log.info("Catalog events reconnected; caches flushed, hash filter and index catching up");
+                }
+                connectedBefore = true;
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) continue;
+                    for (PGNotification notification : notifications) {
+                        handle(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) return;
+                log.warn("Catalog event connection lost: {}; reconnecting in {}", e.getMessage(),
+                        config.getReconnectDelay());
+                try {
+                    Thread.sleep(config.getReconnectDelay().toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    void handle(String payload) {
+        Change change = parse(payload, nodeId);
+        if (change == null) return;
+        received.increment();
+        try {
+            if (change.deleted()) {
+                // Replayed only for this shard's songs, but metadata is cached for every shard's
+                songMetadataService.evict(change.songId());
+                shardCoordinator.removeRemoteSong(change.songId());
+            } else {
+                shardCoordinator.loadRemoteSong(change.songId());
+            }
+            // Coordinators cache merged responses that include other shards' songs
+            resultCache.invalidate();
+        } catch (RuntimeException e) {
+            // The change is as good as unheard: treat it like a missed notification
+            log.warn("Could not apply catalog event '{}': {}; caches flushed, hash filter and index catching up",
+                    payload, e.getMessage());
+            flushCaches();
+        }
+    }
+
+    /**
+     * @return the change {@code payload} announces, or {@code null} if it was
+     *         sent by {@code ownNodeId} (already applied) or is malformed
+     */
+    static Change parse(String payload, String ownNodeId) {
+        String[] parts = payload.split(" ");
+        if (parts.length != 3) {
+            log.warn("Ignoring catalog event '{}'", payload);
+            return null;
+        }
+        if (parts[2].equals(ownNodeId)) return null;
+        long songId;
+        try {
+            songId = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring catalog event '{}'", payload);
+            return null;
+        }
+        return switch (parts[0]) {
+            case INDEXED -> new Change(false, songId);
+            case DELETED -> new Change(true, songId);
+            default -> {
+                log.warn("Ignoring catalog event '{}'", payload);
+                yield null;
+            }
+        };
+    }
+
+    private void flushCaches() {
+        lookupService.invalidateCache();
+        resultCache.invalidate();
+        songFilterService.invalidateCache();
+        hashFilterService.markIncomplete();
+        indexService.catchUpWithCatalog();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        Thread thread = worker;
+        if (thread != null) thread.interrupt();
+    }
+}
@@ -0,0 +1,232 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.DuplicateDetector;
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.ShardAssignment;
+import com.beatlens.core.SongMatcher;
+import com.beatlens.model.dto.DuplicateReportDto;
+import com.beatlens.repository.PostingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Catalog-wide duplicate and near-duplicate scan, run as a background job.
+ *
+ * <p>Every song is matched once against the index with a consistent
+ * subsample of its own fingerprints (see {@link DuplicateDetector}); songs
+ * are spread over {@code beatlens.duplicates.parallelism} workers. Start it
+ * with an in-process index loaded: against the {@code database} engine every
+ * sampled hash is a query. In a sharded deployment each node finds the
+ * duplicates within its own shard.</p>
+ *
+ * <p>The scan only reports; the optional plan lists which song of each
+ * duplicate cluster to keep, and deleting the others is left to the caller.</p>
+ */
+@Service
+public class DuplicateScanService {
+
+    private static final Logger log = LoggerFactory.getLogger(DuplicateScanService.class);
+
+    private static final Comparator<DuplicateDetector.Pair> BEST_FIRST =
+            Comparator.comparingDouble((DuplicateDetector.Pair p) -> Math.min(p.coverageA(), p.coverageB()))
+                    .thenComparingDouble(p -> Math.max(p.coverageA(), p.coverageB()))
+                    .reversed()
+                    .thenComparingLong(DuplicateDetector.Pair::songA)
+                    .thenComparingLong(DuplicateDetector.Pair::songB);
+
+    private final FingerprintIndexService indexService;
+    private final HashFilterService hashFilterService;
+    private final SongPurgeService purgeService;
+    private final JdbcTemplate jdbcTemplate;
+    private final PostingRepository postingRepository;
+    private final ShardAssignment shard;
+    private final AudioProperties.Duplicates config;
+    private final DuplicateDetector detector;
+    private final String songsSql;
+
+    private final Object stateLock = new Object();
+    private volatile String state = "idle";
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile int songsTotal;
+    private final AtomicInteger songsScanned = new AtomicInteger();
+    private final AtomicInteger songsFailed = new AtomicInteger();
+    private final Queue<DuplicateDetector.Pair> found = new ConcurrentLinkedQueue<>();
+    private volatile List<DuplicateDetector.MergeGroup> plan = List.of();
+
+    public DuplicateScanService(FingerprintIndexService indexService,
+                                HashFilterService hashFilterService,
+                                SongPurgeService purgeService,
+                                JdbcTemplate jdbcTemplate,
+                                PostingRepository postingRepository,
+                                ShardAssignment shard,
+                                AudioProperties props) {
+        this.indexService = indexService;
+        this.hashFilterService = hashFilterService;
+        this.purgeService = purgeService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.postingRepository = postingRepository;
+        this.shard = shard;
+        this.config = props.getDuplicates();
+        // Coverage decides what is reported, so no confidence floor
+        SongMatcher matcher = new SongMatcher(
+                props.getMatching().getOffsetTolerance(),
+                config.getMinAlignedMatches(),
+                0.0,
+                props.getMatching().getMaxCandidates(),
+                props.getMatching().getCandidateHitRatio());
+        this.detector = new DuplicateDetector(matcher, config.getSampleRate(),
+                config.getMinCoverage(), config.getDuplicateCoverage());
+        this.songsSql = "SELECT id, fingerprint_count FROM songs WHERE deleted_at IS NULL"
+                + shard.sqlPredicate("AND", "id") + " ORDER BY id";
+    }
+
+    /**
+     * Start a scan in the background, replacing the previous report.
+     *
+     * @param withPlan also group duplicates into a keep/delete plan
+     * @return {@code false} if a scan is already running
+     */
+    public boolean start(boolean withPlan) {
+        synchronized (stateLock) {
+            if ("running".equals(state)) return false;
+            state = "running";
+            startedAt = Instant.now();
+            finishedAt = null;
+            songsTotal = 0;
+            songsScanned.set(0);
+            songsFailed.set(0);
+            found.clear();
+            plan = List.of();
+        }
+        Thread runner = new Thread(() -> run(withPlan), "duplicate-scan");
+        runner.setDaemon(true);
+        runner.start();
+        return true;
+    }
+
+    public DuplicateReportDto getReport() {
+        List<DuplicateDetector.Pair> pairs = new ArrayList<>(found);
+        pairs.sort(BEST_FIRST);
+        return new DuplicateReportDto(state, startedAt, finishedAt, config.getSampleRate(),
+                songsTotal, songsScanned.get(), songsFailed.get(), pairs, plan);
+    }
+
+    // ═══ Scan ═══
+
+    private void run(boolean withPlan) {
+        long started = System.nanoTime();
+        try {
+            if (!indexService.isReady()) {
+                log.warn("Duplicate scan started without a loaded in-process index; every lookup queries the database");
+            }
+            Catalog catalog = loadCatalog();
+            songsTotal = catalog.ids.length;
+            scan(catalog);
+
+            if (withPlan) {
+                plan = DuplicateDetector.plan(new ArrayList<>(found), catalog::fingerprintCount);
+            }
+            // finishedAt first: a report that is no longer running always has it
+            finishedAt = Instant.now();
+            state = "finished";
+            log.info("Duplicate scan finished: {} songs, {} pairs, {} merge groups in {} s",
+                    songsTotal, found.size(), plan.size(), (System.nanoTime() - started) / 1_000_000_000);
+        } catch (RuntimeException | InterruptedException e) {
+            finishedAt = Instant.now();
+            state = "failed";
+            log.error("Duplicate scan failed after {} songs", songsScanned.get(), e);
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scan(Catalog catalog) throws InterruptedException {
+        SongMatcher.FingerprintLookup lookup = purgeService.screen(
+                shard.restrict(hashFilterService.screen(indexService.currentLookup())));
+        long maxSongId = catalog.ids.length == 0 ? 0 : catalog.ids[catalog.ids.length - 1];
+        int threads = config.getParallelism() > 0 ? config.getParallelism() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "duplicate-scan-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (int w = 0; w < threads; w++) {
+                workers.execute(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < catalog.ids.length) {
+                        long songId = catalog.ids[i];
+                        try {
+                            found.addAll(detector.findPairs(songId, sampledFingerprints(songId), lookup,
+                                    maxSongId, catalog::fingerprintCount));
+                        } catch (RuntimeException e) {
+                            songsFailed.incrementAndGet();
+                            log.warn("Duplicate scan skipped song {}: {}", songId, e.getMessage());
+                        }
+                        int done = songsScanned.incrementAndGet();
+                        if (done % 10_000 == 0) {
+                            log.info("Duplicate scan: {}/{} songs, {} pairs", done, catalog.ids.length, found.size());
+                        }
+                    }
+                });
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** Only the sampled fingerprints are materialised. */
+    private List<FingerprintGenerator.Fingerprint> sampledFingerprints(long songId) {
+        List<FingerprintGenerator.Fingerprint> sample = new ArrayList<>();
+        jdbcTemplate.query("SELECT hash, time_offset FROM " + postingRepository.table() + " WHERE song_id = ?", rs -> {
+            long hash = rs.getLong(1);
+            if (detector.sampled(hash)) {
+                sample.add(FingerprintGenerator.Fingerprint.fromHash(hash, rs.getInt(2)));
+            }
+        }, songId);
+        return sample;
+    }
+
+    /** Song IDs in ascending order with their fingerprint counts. */
+    private record Catalog(long[] ids, int[] counts) {
+        int fingerprintCount(long songId) {
+            int i = Arrays.binarySearch(ids, songId);
+            return i < 0 ? 0 : counts[i];
+        }
+    }
+
+    private Catalog loadCatalog() {
+        long[][] ids = {new long[1024]};
+        int[][] counts = {new int[1024]};
+        int[] size = {0};
+        jdbcTemplate.query(songsSql, rs -> {
+            if (size[0] == ids[0].length) {
+                ids[0] = Arrays.copyOf(ids[0], size[0] << 1);
+                counts[0] = Arrays.copyOf(counts[0], size[0] << 1);
+            }
+            ids[0][size[0]] = rs.getLong(1);
+            counts[0][size[0]] = rs.getInt(2);
+            size[0]++;
+        });
+        return new Catalog(Arrays.copyOf(ids[0], size[0]), Arrays.copyOf(counts[0], size[0]));
+    }
+}
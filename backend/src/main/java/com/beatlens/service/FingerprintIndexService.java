@@ -0,0 +1,576 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.ShardAssignment;
+import com.beatlens.core.SongIds;
+import com.beatlens.core.SongMatcher;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.event.SongIndexedEvent;
+import com.beatlens.index.CompactionThrottle;
+import com.beatlens.index.IndexManifest;
+import com.beatlens.index.IndexSegment;
+import com.beatlens.index.PackedPostings;
+import com.beatlens.index.PostingBuffer;
+import com.beatlens.index.PostingSegment;
+import com.beatlens.index.SegmentFileStore;
+import com.beatlens.index.SegmentedFingerprintIndex;
+import com.beatlens.model.dto.IndexStatusDto;
+import com.beatlens.repository.PostingRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+
+/**
+ * Serves match-time hash lookups from an in-process
+ * {@link SegmentedFingerprintIndex} when {@code beatlens.index.engine} is
+ * {@code memory} or {@code mapped}.
+ *
+ * <p>With {@code memory}, the index is rebuilt from the posting table
+ * in one streamed, hash-ordered scan after startup. With
+ * {@code mapped}, segments are persisted as memory-mapped segment files, so
+ * they cost no heap and the OS page cache decides what stays resident. On
+ * restart the files are reused and caught up with the catalog: songs added
+ * since the last flush are loaded individually and songs deleted since are
+ * tombstoned.</p>
+ *
+ * <p>With snapshots enabled, either engine periodically writes the whole
+ * index (segments, tombstones and memtable) to {@code directory} with a
+ * manifest recording the catalog watermark it reflects. On startup the
+ * snapshot's segments are opened in parallel, and catch-up is skipped
+ * entirely when the database still matches the watermark. Until then the
+ * service reports itself as warming up (see {@code WarmupHealthIndicator}).</p>
+ *
+ * <p>For read replicas ({@code replication-role}), a primary flushes its
+ * memtable before every snapshot so that each one consists of immutable
+ * segments only, and serves the files under {@code /api/index/replication}.
+ * Replicas never load or update the index themselves: {@link IndexReplicaService}
+ * installs each new set of segments and tombstones it pulls.</p>
+ *
+ * <p>Newly indexed songs go to the index's memtable and deletes become
+ * tombstones, so neither touches the rest of the index. A scheduled,
+ * throttled compactor merges small segments and drops deleted postings.</p>
+ *
+ * <p>Until the index is ready, lookups fall back to
+ * {@link FingerprintLookupService}. Songs indexed or deleted while a load is
+ * running are queued and replayed once it completes; replays are idempotent.</p>
+ */
+@Service
+public class FingerprintIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(FingerprintIndexService.class);
+
+    /** Beyond this many missing songs, a full reload is cheaper than catching up song by song. */
+    private static final int MAX_CATCH_UP_SONGS = 1000;
+
+    private final FingerprintLookupService lookupService;
+    private final LookupCacheWarmer cacheWarmer;
+    private final PostingRepository postingRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTx;
+    private final AudioProperties.Index config;
+    private final ShardAssignment shard;
+    private final String loadPredicate;
+    private final String postingCountSql;
+    private final String songIdsSql;
+    private final String watermarkSql;
+    private final SegmentFileStore fileStore;
+    private final SegmentFileStore snapshotStore;
+    private final SegmentedFingerprintIndex index;
+    private final CompactionThrottle compactionThrottle;
+
+    private final Object stateLock = new Object();
+    private final List<Runnable> pendingUpdates = new ArrayList<>();
+    private volatile boolean ready;
+    private volatile boolean loading;
+    private final Object snapshotLock = new Object();
+    private IndexManifest lastSnapshot;
+
+    public FingerprintIndexService(FingerprintLookupService lookupService,
+                                   LookupCacheWarmer cacheWarmer,
+                                   PostingRepository postingRepository,
+                                   JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   ShardAssignment shard,
+                                   AudioProperties props) {
+        this.lookupService = lookupService;
+        this.cacheWarmer = cacheWarmer;
+        this.postingRepository = postingRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.config = props.getIndex();
+        this.shard = shard;
+        // Only this node's shard of the catalog is indexed
+        this.loadPredicate = shard.sqlPredicate("WHERE", "song_id") + " ORDER BY hash, song_id, time_offset";
+        // Tombstoned songs are left out; their postings are screened until purged
+        this.postingCountSql = "SELECT COALESCE(SUM(fingerprint_count), 0) FROM songs WHERE deleted_at IS NULL"
+                + shard.sqlPredicate("AND", "id");
+        this.songIdsSql = "SELECT id FROM songs WHERE deleted_at IS NULL" + shard.sqlPredicate("AND", "id");
+        this.watermarkSql = "SELECT COALESCE(MAX(id), 0), COUNT(*), MAX(indexed_at) FROM songs WHERE deleted_at IS NULL"
+                + shard.sqlPredicate("AND", "id");
+        this.fileStore = isMapped() ? new SegmentFileStore(Path.of(config.getDirectory())) : null;
+        this.snapshotStore = fileStore != null ? fileStore : new SegmentFileStore(Path.of(config.getDirectory()));
+        this.index = new SegmentedFingerprintIndex(
+                fileStore != null ? fileStore : SegmentedFingerprintIndex.SegmentStore.IN_MEMORY,
+                config.getMemtablePostings());
+        this.compactionThrottle = new CompactionThrottle(config.getCompactionPostingsPerSecond());
+
+        Gauge.builder("beatlens.index.postings", index, SegmentedFingerprintIndex::postingCount)
+                .description("Postings held by the in-process fingerprint index")
+                .register(meterRegistry);
+        Gauge.builder("beatlens.index.hashes", index, SegmentedFingerprintIndex::hashCount)
+                .description("Hash directory entries across index segments")
+                .register(meterRegistry);
+        Gauge.builder("beatlens.index.offheap", index, SegmentedFingerprintIndex::sizeInBytes)
+                .description("Off-heap or mapped memory used by index segments")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("beatlens.index.segments", index, SegmentedFingerprintIndex::segmentCount)
+                .description("Immutable segments in the in-process fingerprint index")
+                .register(meterRegistry);
+        Gauge.builder("beatlens.index.tombstones", index, SegmentedFingerprintIndex::tombstoneCount)
+                .description("Deleted songs whose postings await compaction")
+                .register(meterRegistry);
+    }
+
+    /** @return {@code true} when an in-process engine is configured */
+    public boolean isEnabled() {
+        return config.getEngine() != AudioProperties.Index.Engine.DATABASE;
+    }
+
+    /** @return {@code true} if this node serves an index shipped from a primary */
+    public boolean isReplica() {
+        return isEnabled() && config.getReplicationRole() == AudioProperties.Index.ReplicationRole.REPLICA;
+    }
+
+    /** @return {@code true} if this node ships its index segments to replicas */
+    public boolean isPrimary() {
+        return isEnabled() && config.isSnapshotEnabled()
+                && config.getReplicationRole() == AudioProperties.Index.ReplicationRole.PRIMARY;
+    }
+
+    /** @return {@code true} once the in-process index is loaded and serving lookups */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return the lookup strategy to use for the next match: the in-process
+     *         index once it is loaded, otherwise the cached database lookup
+     */
+    public SongMatcher.FingerprintLookup currentLookup() {
+        if (ready) return index;
+        return PackedPostings.asLookup(hash -> {
+            cacheWarmer.record(hash);
+            return lookupService.lookup(hash);
+        }, lookupService::prefetch);
+    }
+
+    public IndexStatusDto getStatus() {
+        return new IndexStatusDto(
+                config.getEngine().name().toLowerCase(),
+                ready,
+                loading,
+                index.segmentCount(),
+                index.memtablePostingCount(),
+                index.tombstoneCount(),
+                index.hashCount(),
+                index.postingCount(),
+                index.sizeInBytes());
+    }
+
+    // ═══ Loading ═══
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startLoading() {
+        if (isEnabled() && !isReplica()) {
+            startLoader(false);
+        }
+    }
+
+    /**
+     * Rebuild the index from the database in the background. The current
+     * index keeps serving lookups until the new one is swapped in.
+     *
+     * @return {@code false} if the in-process index is disabled, replicated from
+     *         a primary, or a load is already running
+     */
+    public boolean rebuild() {
+        return isEnabled() && !isReplica() && startLoader(true);
+    }
+
+    /**
+     * Reconcile the serving index with the songs table in the background,
+     * e.g. after catalog events from other nodes may have been lost: missing
+     * songs are loaded, vanished ones removed, and updates arriving meanwhile
+     * are replayed afterwards. Falls back to a full reload when too many
+     * songs are missing.
+     *
+     * @return {@code false} if no in-process index is serving here or a load is already running
+     */
+    public boolean catchUpWithCatalog() {
+        if (!isEnabled() || isReplica() || !ready) return false;
+        synchronized (stateLock) {
+            if (loading) return false;
+            loading = true;
+        }
+        Thread loader = new Thread(this::reconcile, "fingerprint-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+        return true;
+    }
+
+    void reconcile() {
+        boolean caughtUp = true;
+        try {
+            caughtUp = catchUp();
+            synchronized (stateLock) {
+                pendingUpdates.forEach(Runnable::run);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to catch the fingerprint index up with the catalog", e);
+        } finally {
+            synchronized (stateLock) {
+                loading = false;
+                pendingUpdates.clear();
+            }
+        }
+        if (!caughtUp) rebuild();
+    }
+
+    private boolean startLoader(boolean fromDatabase) {
+        synchronized (stateLock) {
+            if (loading) return false;
+            loading = true;
+        }
+        Thread loader = new Thread(() -> load(fromDatabase), "fingerprint-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+        return true;
+    }
+
+    void load(boolean fromDatabase) {
+        long started = System.nanoTime();
+        try {
+            if (fromDatabase || !(restoreSnapshot() || openSegmentFiles())) {
+                loadFromDatabase();
+            }
+            synchronized (stateLock) {
+                pendingUpdates.forEach(Runnable::run);
+                pendingUpdates.clear();
+                ready = true;
+            }
+            log.info("Fingerprint index ready ({}): {} segments, {} postings, {} MB in {} ms",
+                    config.getEngine(), index.segmentCount(), index.postingCount(), index.sizeInBytes() >> 20,
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.error("Failed to load fingerprint index; lookups stay on the previous backend", e);
+        } finally {
+            synchronized (stateLock) {
+                loading = false;
+                pendingUpdates.clear();
+            }
+        }
+    }
+
+    private void loadFromDatabase() {
+        List<PostingSegment> built = readOnlyTx.execute(status -> scanFingerprints());
+        List<IndexSegment> segments = new ArrayList<>(built.size());
+        for (PostingSegment segment : built) {
+            long generation = index.allocateGeneration();
+            PostingSegment stored = fileStore != null ? fileStore.store(generation, segment) : segment;
+            segments.add(IndexSegment.of(generation, stored));
+        }
+        index.replace(segments, new RoaringBitmap());
+    }
+
+    /** Stream the whole table in hash order, cutting a new segment whenever one fills up. */
+    private List<PostingSegment> scanFingerprints() {
+        long expected = jdbcTemplate.queryForObject(postingCountSql, Long.class);
+        List<PostingSegment> segments = new ArrayList<>();
+        PostingSegment.Builder[] builder = {PostingSegment.builder((int) Math.min(expected, Integer.MAX_VALUE))};
+        // Stream rows with a server-side cursor instead of materialising the table
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT hash, song_id, time_offset FROM " + postingRepository.table() + loadPredicate,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(config.getLoadFetchSize());
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            if (builder[0].isFull()) {
+                segments.add(builder[0].build());
+                long remaining = expected - segments.stream().mapToLong(PostingSegment::postingCount).sum();
+                builder[0] = PostingSegment.builder((int) Math.min(Math.max(remaining, 0), Integer.MAX_VALUE));
+            }
+            builder[0].append(rs.getLong(1), rs.getLong(2), rs.getInt(3));
+        });
+        segments.add(builder[0].build());
+        return segments;
+    }
+
+    /**
+     * Restore the last snapshot and, unless the catalog is unchanged since it
+     * was written, catch it up.
+     *
+     * @return {@code false} if there is no usable snapshot
+     */
+    private boolean restoreSnapshot() {
+        if (!config.isSnapshotEnabled()) return false;
+        int threads = config.getRestoreThreads() > 0
+                ? config.getRestoreThreads() : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "fingerprint-index-restore");
+            t.setDaemon(true);
+            return t;
+        });
+        Optional<SegmentFileStore.Restored> restored;
+        try {
+            restored = snapshotStore.restoreSnapshot(config.isVerifyChecksums(), !isMapped(), executor);
+        } catch (IOException e) {
+            log.warn("Cannot read index snapshot in {}: {}", snapshotStore.getDirectory(), e.getMessage());
+            return false;
+        } finally {
+            executor.shutdown();
+        }
+        if (restored.isEmpty()) return false;
+
+        SegmentFileStore.Restored snapshot = restored.get();
+        index.replace(snapshot.segments(), snapshot.tombstones());
+        if (snapshot.memtable() != null) {
+            index.restoreMemtable(snapshot.memtable());
+        }
+        synchronized (snapshotLock) {
+            lastSnapshot = snapshot.manifest();
+        }
+        if (snapshot.manifest().watermark().equals(readWatermark())) {
+            log.info("Restored index snapshot from {}: {} segments, catalog unchanged",
+                    snapshotStore.getDirectory(), index.segmentCount());
+            return true;
+        }
+        return catchUp();
+    }
+
+    /**
+     * Open the segment files of the mapped engine and catch them up with the catalog.
+     *
+     * @return {@code false} if there is nothing usable on disk and the index must be loaded from the database
+     */
+    private boolean openSegmentFiles() {
+        if (fileStore == null) return false;
+        try {
+            List<IndexSegment> segments = fileStore.openAll(config.isVerifyChecksums());
+            if (segments.isEmpty()) return false;
+            index.replace(segments, fileStore.readTombstones());
+        } catch (IOException e) {
+            log.warn("Cannot open segment files in {}: {}", fileStore.getDirectory(), e.getMessage());
+            return false;
+        }
+        return catchUp();
+    }
+
+    /**
+     * Reconcile the index with the songs table.
+     *
+     * @return {@code false} if so many songs are missing that a full reload is cheaper
+     */
+    private boolean catchUp() {
+        RoaringBitmap catalog = new RoaringBitmap();
+        jdbcTemplate.query(songIdsSql, (RowCallbackHandler) rs -> {
+            // Indexing never admits larger IDs, so they have nothing to catch up
+            if (SongIds.isValid(rs.getLong(1))) catalog.add(SongIds.toInt(rs.getLong(1)));
+        });
+        RoaringBitmap indexed = index.liveSongs();
+        RoaringBitmap missing = RoaringBitmap.andNot(catalog, indexed);
+        RoaringBitmap removed = RoaringBitmap.andNot(indexed, catalog);
+        if (missing.getCardinality() > MAX_CATCH_UP_SONGS) {
+            log.info("Index is missing {} songs; reloading from the database", missing.getCardinality());
+            return false;
+        }
+        missing.forEach((int id) -> index.putSong(Integer.toUnsignedLong(id), loadSong(Integer.toUnsignedLong(id))));
+        removed.forEach((int id) -> index.removeSong(Integer.toUnsignedLong(id)));
+        log.info("Index caught up with the catalog ({} segments): {} added and {} deleted songs",
+                index.segmentCount(), missing.getCardinality(), removed.getCardinality());
+        return true;
+    }
+
+    private PostingBuffer loadSong(long songId) {
+        PostingBuffer postings = new PostingBuffer();
+        jdbcTemplate.query("SELECT hash, time_offset FROM " + postingRepository.table() + " WHERE song_id = ?",
+                (RowCallbackHandler) rs -> postings.add(rs.getLong(1), songId, rs.getInt(2)), songId);
+        return postings;
+    }
+
+    private boolean isMapped() {
+        return config.getEngine() == AudioProperties.Index.Engine.MAPPED;
+    }
+
+    // ═══ Compaction ═══
+
+    @Scheduled(fixedDelayString = "${beatlens.index.compaction-interval:30s}",
+               initialDelayString = "${beatlens.index.compaction-interval:30s}")
+    public void compact() {
+        if (!ready || isReplica()) return;
+        try {
+            while (index.compact(config.getCompactionMaxSegments(), compactionThrottle)) {
+                // keep merging until the policy is satisfied
+            }
+        } catch (RuntimeException e) {
+            log.warn("Index compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // ═══ Snapshots ═══
+
+    @Scheduled(fixedDelayString = "${beatlens.index.snapshot-interval:5m}",
+               initialDelayString = "${beatlens.index.snapshot-interval:5m}")
+    public void snapshot() {
+        if (!ready || !config.isSnapshotEnabled() || isReplica()) return;
+        try {
+            writeSnapshot();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Index snapshot failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /** Snapshot the index so the next start does not have to load or catch up. */
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        if (!ready || isReplica()) return;
+        if (config.isSnapshotEnabled()) {
+            snapshot();
+        } else if (fileStore != null) {
+            index.flush();
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        synchronized (snapshotLock) {
+            // Read the catalog first: anything committed later makes the watermark stale, never too new
+            long maxIndexedAt = readWatermark().maxIndexedAtMillis();
+            if (isPrimary()) {
+                // Replicas only take immutable segments
+                index.flush();
+            }
+            SegmentedFingerprintIndex.Snapshot snapshot = index.snapshot();
+            IndexManifest.Watermark watermark =
+                    new IndexManifest.Watermark(snapshot.maxSongId(), snapshot.songCount(), maxIndexedAt);
+            if (lastSnapshot != null && snapshot.memtable() == null
+                    && lastSnapshot.watermark().equals(watermark)
+                    && lastSnapshot.generations().equals(snapshot.segments().stream()
+                            .map(IndexSegment::getGeneration).toList())) {
+                return;
+            }
+            long started = System.nanoTime();
+            // The mapped engine's own flushes and compactions also write here, so only prune for memory
+            lastSnapshot = snapshotStore.writeSnapshot(snapshot, watermark, !isMapped());
+            log.info("Wrote index snapshot: {} segments, {} songs in {} ms",
+                    snapshot.segments().size(), snapshot.songCount(), (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    private IndexManifest.Watermark readWatermark() {
+        return jdbcTemplate.queryForObject(watermarkSql, (rs, rowNum) -> {
+            Timestamp indexedAt = rs.getTimestamp(3);
+            return new IndexManifest.Watermark(rs.getLong(1), rs.getLong(2),
+                    indexedAt == null ? 0 : indexedAt.getTime());
+        });
+    }
+
+    // ═══ Replication ═══
+
+    /**
+     * Swap in a set of segments pulled from the primary; the index switches
+     * over atomically.
+     */
+    public void installReplica(List<IndexSegment> segments, RoaringBitmap tombstones) {
+        index.replace(segments, tombstones);
+        ready = true;
+    }
+
+    /** @return the segments currently served, by ascending generation */
+    public List<IndexSegment> currentSegments() {
+        return index.snapshot().segments();
+    }
+
+    /** Visit every hash in the index, e.g. to build a hash filter without the database. */
+    public void forEachHash(LongConsumer consumer) {
+        index.forEachHash(consumer);
+    }
+
+    /** @return the primary's latest manifest, if this node is a primary and has written one */
+    public Optional<Resource> shippedManifest() {
+        return shipped(snapshotStore.getDirectory().resolve(IndexManifest.FILE));
+    }
+
+    /** @return a segment file listed in one of the primary's manifests */
+    public Optional<Resource> shippedSegment(long generation) {
+        return shipped(snapshotStore.segmentPath(generation));
+    }
+
+    private Optional<Resource> shipped(Path file) {
+        return isPrimary() && Files.isRegularFile(file) ? Optional.of(new FileSystemResource(file)) : Optional.empty();
+    }
+
+    // ═══ Incremental updates ═══
+
+    @TransactionalEventListener
+    public void onSongIndexed(SongIndexedEvent event) {
+        if (!isEnabled() || isReplica() || !shard.owns(event.songId())) return;
+        PostingBuffer postings = new PostingBuffer(event.fingerprints().size());
+        for (FingerprintGenerator.Fingerprint fp : event.fingerprints()) {
+            postings.add(fp.hash, event.songId(), fp.anchorTime);
+        }
+        apply(() -> index.putSong(event.songId(), postings));
+    }
+
+    @TransactionalEventListener
+    public void onSongDeleted(SongDeletedEvent event) {
+        if (!isEnabled() || isReplica()) return;
+        apply(() -> index.removeSong(event.songId()));
+    }
+
+    /**
+     * Apply an update now if the index is serving, and queue it for replay if
+     * a load is running (the load would otherwise overwrite it).
+     */
+    private void apply(Runnable update) {
+        synchronized (stateLock) {
+            if (loading) {
+                pendingUpdates.add(update);
+            }
+            if (ready) {
+                update.run();
+            }
+        }
+    }
+}
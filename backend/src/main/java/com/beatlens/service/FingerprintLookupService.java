@@ -1,47 +1,227 @@
 package com.beatlens.service;
 
+import com.beatlens.config.AudioProperties;
 import com.beatlens.core.SongMatcher;
-import com.beatlens.model.FingerprintEntity;
-import com.beatlens.repository.FingerprintRepository;
+import com.beatlens.event.SongIndexedEvent;
+import com.beatlens.index.LookupCachePatcher;
+import com.beatlens.index.LookupCoalescer;
+import com.beatlens.index.PackedPostings;
+import com.beatlens.repository.PostingRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Bridges the core {@link SongMatcher.FingerprintLookup} interface with
- * the Spring Data repository + Caffeine cache.
+ * Cached database lookups behind the core {@link SongMatcher.FingerprintLookup}
+ * interface (adapted with {@link PackedPostings#asLookup}).
+ * The caches themselves are set up in {@code LookupCacheConfig}.
+ *
+ * <p>The caches are patched song by song as the catalog changes (see
+ * {@link LookupCachePatcher}) rather than cleared, so they stay warm through
+ * bulk ingestion. Misses load under the cache's per-key lock
+ * ({@code sync = true}), which the patches rely on.</p>
+ *
+ * <p>Misses go to the database through a {@link LookupCoalescer}
+ * ({@code beatlens.lookup-batch}), so concurrent queries share batched
+ * {@code hash = ANY(?)} reads instead of one round trip per hash. A query
+ * first {@linkplain #prefetch prefetches} all of its uncached hashes, so it
+ * waits for a few batches rather than for a flush per hash. Coarse lookups
+ * are batched the same way ({@link #prefetchCoarse}), through a coalescer of
+ * their own.</p>
  */
 @Service
 public class FingerprintLookupService {
 
     private static final Logger log = LoggerFactory.getLogger(FingerprintLookupService.class);
 
-    private final FingerprintRepository fingerprintRepository;
+    static final String EXACT_CACHE = "fingerprint-lookup";
+    static final String COARSE_CACHE = "coarse-lookup";
 
-    public FingerprintLookupService(FingerprintRepository fingerprintRepository) {
-        this.fingerprintRepository = fingerprintRepository;
+    private final PostingRepository postingRepository;
+    private final Cache<Object, Object> exactCache;
+    private final Cache<Object, Object> coarseCache;
+    private final LookupCachePatcher patcher;
+    /** {@code null} when {@code beatlens.lookup-batch.enabled} is off. */
+    private final LookupCoalescer coalescer;
+    private final LookupCoalescer coarseCoalescer;
+    /** Bumped before every patch, so a preload can tell that it raced with one. */
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final Counter addPatches;
+    private final Counter removePatches;
+
+    public FingerprintLookupService(PostingRepository postingRepository,
+                                    CacheManager cacheManager,
+                                    MeterRegistry meterRegistry,
+                                    AudioProperties props) {
+        this.postingRepository = postingRepository;
+        this.exactCache = nativeCache(cacheManager, EXACT_CACHE);
+        this.coarseCache = nativeCache(cacheManager, COARSE_CACHE);
+        this.patcher = new LookupCachePatcher(exactCache.asMap(), coarseCache.asMap());
+        AudioProperties.LookupBatch batch = props.getLookupBatch();
+        if (batch.isEnabled()) {
+            DistributionSummary batchSize = DistributionSummary.builder("beatlens.lookup-batch.hashes")
+                    .description("Distinct hashes per batched posting query")
+                    .register(meterRegistry);
+            this.coalescer = new LookupCoalescer(hashes -> {
+                batchSize.record(hashes.length);
+                return postingRepository.findByHashes(hashes);
+            }, batch.getMaxHashes(), batch.getMaxDelay(), batch.getConcurrency(), "lookup-batch");
+            // A coarse hash probes 32 exact hashes on the compact table, so its batches are smaller
+            this.coarseCoalescer = new LookupCoalescer(postingRepository::findSongIdsByCoarseHashes,
+                    Math.max(1, batch.getMaxHashes() / 32), batch.getMaxDelay(), batch.getConcurrency(),
+                    "coarse-lookup-batch");
+        } else {
+            this.coalescer = null;
+            this.coarseCoalescer = null;
+        }
+        this.addPatches = patchCounter(meterRegistry, "add");
+        this.removePatches = patchCounter(meterRegistry, "remove");
+    }
+
+    private static Cache<Object, Object> nativeCache(CacheManager cacheManager, String name) {
+        return ((CaffeineCache) cacheManager.getCache(name)).getNativeCache();
+    }
+
+    private static Counter patchCounter(MeterRegistry registry, String op) {
+        return Counter.builder("beatlens.lookup-cache.patches")
+                .description("Cached lookup entries patched in place for a catalog change")
+                .tag("op", op)
+                .register(registry);
+    }
+
+    /**
+     * Cached hash lookup. On cache miss, queries PostgreSQL and caches the
+     * result, including an empty one.
+     *
+     * @return postings packed as in {@link PackedPostings}
+     */
+    @Cacheable(value = EXACT_CACHE, key = "#hash", sync = true)
+    public long[] lookup(Long hash) {
+        if (coalescer == null) return postingRepository.findByHash(hash);
+        return LookupCoalescer.await(coalescer.load(hash));
+    }
+
+    /**
+     * Load the uncached ones among {@code hashes} in batches and cache them,
+     * so that the lookups which follow are hits. Returns once they are read.
+     */
+    public void prefetch(long[] hashes) {
+        if (coalescer == null) return;
+        ConcurrentMap<Object, Object> map = exactCache.asMap();
+        Set<Long> missing = new HashSet<>();
+        for (long hash : hashes) {
+            if (!map.containsKey(hash)) missing.add(hash);
+        }
+        if (missing.isEmpty()) return;
+        long version = catalogVersion.get();
+        preload(coalescer.loadAll(missing.stream().mapToLong(Long::longValue).toArray()), version);
+    }
+
+    /**
+     * Cached coarse-hash lookup: the distinct song IDs sharing a coarse hash.
+     */
+    @Cacheable(value = COARSE_CACHE, key = "#coarseHash", sync = true)
+    public long[] lookupCoarse(Long coarseHash) {
+        if (coarseCoalescer == null) return postingRepository.findSongIdsByCoarseHash(coarseHash);
+        return LookupCoalescer.await(coarseCoalescer.load(coarseHash));
+    }
+
+    /** Same as {@link #prefetch}, for coarse hashes. */
+    public void prefetchCoarse(long[] coarseHashes) {
+        if (coarseCoalescer == null) return;
+        ConcurrentMap<Object, Object> map = coarseCache.asMap();
+        Set<Long> missing = new HashSet<>();
+        for (long coarseHash : coarseHashes) {
+            if (!map.containsKey(coarseHash)) missing.add(coarseHash);
+        }
+        if (missing.isEmpty()) return;
+        long version = catalogVersion.get();
+        preload(coarseCache, coarseCoalescer.loadAll(missing.stream().mapToLong(Long::longValue).toArray()), version);
+    }
+
+    /** Add a committed song to the cached entries of its hashes. */
+    @TransactionalEventListener
+    public void onSongIndexed(SongIndexedEvent event) {
+        catalogVersion.incrementAndGet();
+        addPatches.increment(patcher.addSong(event.songId(), event.fingerprints()));
     }
 
     /**
-     * Cached hash lookup. On cache miss, queries PostgreSQL and caches the result.
+     * Strip a song from the cached entries of hashes whose postings were just
+     * deleted (called by the purger after each committed batch).
      */
-    @Cacheable(value = "fingerprint-lookup", key = "#hash")
-    public List<SongMatcher.FingerprintEntry> lookup(Long hash) {
-        List<FingerprintEntity> entities = fingerprintRepository.findByHash(hash);
-        return entities.stream()
-                .map(e -> new SongMatcher.FingerprintEntry(e.getSongId(), e.getTimeOffset()))
-                .collect(Collectors.toList());
+    public void removeSong(long songId, long[] hashes) {
+        catalogVersion.incrementAndGet();
+        removePatches.increment(patcher.removeSong(songId, hashes));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (coalescer != null) coalescer.close();
+        if (coarseCoalescer != null) coarseCoalescer.close();
+    }
+
+    // ═══ Warm-up ═══
+
+    /** @return a version to pass to {@link #preload}; read it before querying the postings */
+    public long catalogVersion() {
+        return catalogVersion.get();
+    }
+
+    /**
+     * Put postings read ahead of demand into the exact-hash cache, without
+     * replacing entries that are already there. If a song was indexed or
+     * purged since {@code version} was read, the entries just added may
+     * predate it and are dropped again; their next miss reloads them.
+     *
+     * @return entries added and kept
+     */
+    public int preload(Map<Long, long[]> postings, long version) {
+        return preload(exactCache, postings, version);
+    }
+
+    private int preload(Cache<Object, Object> cache, Map<Long, long[]> values, long version) {
+        List<Long> added = new ArrayList<>();
+        ConcurrentMap<Object, Object> map = cache.asMap();
+        values.forEach((hash, value) -> {
+            if (map.putIfAbsent(hash, value) == null) added.add(hash);
+        });
+        if (catalogVersion.get() != version) {
+            cache.invalidateAll(added);
+            return 0;
+        }
+        return added.size();
+    }
+
+    /** @return hit/miss counters of the exact-hash cache since startup */
+    public CacheStats exactStats() {
+        return exactCache.stats();
     }
 
     /**
-     * Invalidate all cached entries (called when songs are indexed or deleted).
+     * Invalidate all cached entries, e.g. after postings were loaded behind
+     * the application's back.
      */
-    @CacheEvict(value = "fingerprint-lookup", allEntries = true)
+    @CacheEvict(value = {EXACT_CACHE, COARSE_CACHE}, allEntries = true)
     public void invalidateCache() {
         log.info("Fingerprint lookup cache invalidated");
     }
@@ -0,0 +1,387 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.ShardAssignment;
+import com.beatlens.core.SongMatcher;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.event.SongIndexedEvent;
+import com.beatlens.index.BlockedBloomFilter;
+import com.beatlens.repository.PostingRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a {@link BlockedBloomFilter} over every indexed hash and screens
+ * match-time lookups with it, so hashes that exist nowhere in the catalog
+ * (most of a noisy microphone query) skip the cache and the database.
+ *
+ * <p>The filter is built from the posting table after startup;
+ * until then lookups pass through unscreened. New songs are added before
+ * their transaction commits, so the filter never hides a committed hash.
+ * Deletes cannot clear bits, so they mark the filter stale and it is rebuilt
+ * by the scheduled maintenance task, as it is when it outgrows its size.</p>
+ *
+ * <p>Songs indexed on other nodes only reach the filter through replayed
+ * catalog events. When some of those may have been missed,
+ * {@link #markIncomplete()} drops the filter, so lookups pass through
+ * unscreened until a rebuild that started afterwards has read every
+ * committed hash. With catalog events enabled the filter is also rebuilt
+ * every {@code beatlens.hash-filter.full-rebuild-interval}, as a backstop
+ * for misses nobody noticed.</p>
+ *
+ * <p>The filter is sized by the number of distinct hashes, which is far
+ * below the posting count: the previous filter's fill ratio estimates it,
+ * and before the first build PostgreSQL's column statistics do.</p>
+ */
+@Service
+public class HashFilterService {
+
+    private static final Logger log = LoggerFactory.getLogger(HashFilterService.class);
+
+    private static final long MIN_CAPACITY = 1_000_000;
+
+    /** Planner estimate of distinct hashes; negative values are a fraction of the rows. */
+    private static final String DISTINCT_ESTIMATE_SQL =
+            "SELECT n_distinct FROM pg_stats WHERE tablename = ? AND attname = 'hash' ORDER BY inherited DESC LIMIT 1";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PostingRepository postingRepository;
+    private final TransactionTemplate readOnlyTx;
+    private final AudioProperties.HashFilter config;
+    private final boolean catalogEvents;
+    private final ShardAssignment shard;
+    private final FingerprintIndexService indexService;
+    private final String shardPredicate;
+    private final String postingCountSql;
+
+    private volatile BlockedBloomFilter filter;
+    private volatile BlockedBloomFilter building;
+    private volatile boolean stale;
+    private volatile boolean built;
+    private volatile long builtAt;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile boolean rebuildRequested;
+
+    /** Guards {@link #misses} and installing a filter against a concurrent {@link #markIncomplete()}. */
+    private final Object installLock = new Object();
+    private long misses;
+
+    private final Counter negatives;
+    private final Counter positives;
+    private final Counter falsePositives;
+
+    public HashFilterService(JdbcTemplate jdbcTemplate,
+                             PostingRepository postingRepository,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             ShardAssignment shard,
+                             FingerprintIndexService indexService,
+                             AudioProperties props) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postingRepository = postingRepository;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.config = props.getHashFilter();
+        this.catalogEvents = props.getCatalogEvents().isEnabled();
+        this.shard = shard;
+        this.indexService = indexService;
+        // Only this node's shard is looked up, so only its hashes need to pass
+        this.shardPredicate = shard.sqlPredicate("WHERE", "song_id");
+        this.postingCountSql = "SELECT COALESCE(SUM(fingerprint_count), 0) FROM songs"
+                + shard.sqlPredicate("WHERE", "id");
+
+        this.negatives = lookupCounter(meterRegistry, "negative");
+        this.positives = lookupCounter(meterRegistry, "positive");
+        this.falsePositives = lookupCounter(meterRegistry, "false_positive");
+
+        Gauge.builder("beatlens.hash-filter.fpp.estimated", this, HashFilterService::estimatedFpp)
+                .description("False-positive probability implied by the filter's fill ratio")
+                .register(meterRegistry);
+        Gauge.builder("beatlens.hash-filter.fpp.observed", this, HashFilterService::observedFpp)
+                .description("Share of absent hashes the filter let through")
+                .register(meterRegistry);
+        Gauge.builder("beatlens.hash-filter.size", this, s -> s.filter == null ? 0 : s.filter.sizeInBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry registry, String result) {
+        return Counter.builder("beatlens.hash-filter.lookups")
+                .description("Lookups screened by the hash filter")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * @return {@code true} once the first build has finished; stays so while
+     *         a rebuild after {@link #markIncomplete()} runs unscreened
+     */
+    public boolean isReady() {
+        return built;
+    }
+
+    /**
+     * Wrap a lookup so that hashes rejected by the filter return nothing
+     * without reaching {@code delegate}. Returns {@code delegate} unchanged
+     * while the filter is disabled, not yet built or incomplete.
+     */
+    public SongMatcher.FingerprintLookup screen(SongMatcher.FingerprintLookup delegate) {
+        BlockedBloomFilter f = filter;
+        if (f == null) return delegate;
+        return new ScreenedLookup(f, delegate);
+    }
+
+    /**
+     * Add hashes of a song that is being indexed. Safe to call more than once;
+     * songs of other shards are ignored.
+     */
+    public void addAll(long songId, Collection<FingerprintGenerator.Fingerprint> fingerprints) {
+        if (!shard.owns(songId)) return;
+        BlockedBloomFilter current = filter;
+        BlockedBloomFilter next = building;
+        for (FingerprintGenerator.Fingerprint fp : fingerprints) {
+            if (current != null) current.put(fp.hash);
+            if (next != null) next.put(fp.hash);
+        }
+    }
+
+    /** Add one hash, e.g. from a segment shipped to a replica before it is swapped in. */
+    public void addHash(long hash) {
+        BlockedBloomFilter current = filter;
+        BlockedBloomFilter next = building;
+        if (current != null) current.put(hash);
+        if (next != null) next.put(hash);
+    }
+
+    /**
+     * Stop screening until the filter has been rebuilt from scratch, e.g.
+     * after catalog events from other nodes may have been lost. Returns at
+     * once; the rebuild runs in the background.
+     */
+    public void markIncomplete() {
+        if (!config.isEnabled()) return;
+        synchronized (installLock) {
+            misses++;
+            filter = null;
+        }
+        rebuildRequested = true;
+        startRebuild();
+    }
+
+    // ═══ Maintenance ═══
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        // A replica builds its filter once the first segments have been shipped
+        if (!config.isEnabled() || indexService.isReplica()) return;
+        startRebuild();
+    }
+
+    private void startRebuild() {
+        Thread builder = new Thread(this::rebuild, "hash-filter-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    @Scheduled(fixedDelayString = "${beatlens.hash-filter.rebuild-interval:10m}",
+               initialDelayString = "${beatlens.hash-filter.rebuild-interval:10m}")
+    public void maintain() {
+        if (!config.isEnabled()) return;
+        BlockedBloomFilter f = filter;
+        if (f == null) {
+            // A failed build or a miss left no filter; a replica waits for its first shipped segments
+            if (built || !indexService.isReplica()) rebuild();
+            return;
+        }
+        if (stale || f.estimatedFpp() > config.getFpp() * 2 || fullRebuildDue()) {
+            rebuild();
+        }
+    }
+
+    /** Other nodes' songs arrive only as events, so a shared catalog is re-read now and then. */
+    private boolean fullRebuildDue() {
+        Duration interval = config.getFullRebuildInterval();
+        return catalogEvents && !interval.isZero() && System.nanoTime() - builtAt > interval.toNanos();
+    }
+
+    /**
+     * Rebuild the filter from the database, or on a replica from the shipped
+     * index. If a rebuild is already running, one requested by
+     * {@link #markIncomplete()} runs again once it finishes; others are no-ops.
+     */
+    public void rebuild() {
+        if (!config.isEnabled() || !rebuilding.compareAndSet(false, true)) return;
+        try {
+            rebuildRequested = false;
+            build();
+        } finally {
+            building = null;
+            rebuilding.set(false);
+        }
+        // A miss during the build left it incomplete; start over from a newer snapshot
+        if (rebuildRequested) rebuild();
+    }
+
+    private void build() {
+        boolean fromIndex = indexService.isReplica();
+        long started = System.nanoTime();
+        long epoch;
+        synchronized (installLock) {
+            epoch = misses;
+        }
+        try {
+            long expected = fromIndex ? indexService.getStatus().hashCount() : estimateDistinctHashes();
+            // Headroom so that growth does not force an immediate rebuild
+            BlockedBloomFilter next = BlockedBloomFilter.create(
+                    Math.max(MIN_CAPACITY, expected + expected / 4), config.getFpp());
+            stale = false;
+            building = next; // songs indexed from here on are added to both filters
+            if (fromIndex) {
+                indexService.forEachHash(next::put);
+            } else {
+                readOnlyTx.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(
+                            "SELECT hash FROM " + postingRepository.table() + shardPredicate,
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(config.getLoadFetchSize());
+                    return ps;
+                }, (RowCallbackHandler) rs -> next.put(rs.getLong(1))));
+            }
+            synchronized (installLock) {
+                if (epoch != misses) {
+                    log.info("Hash filter build discarded: catalog changes were missed while it ran");
+                    return;
+                }
+                filter = next;
+            }
+            built = true;
+            builtAt = System.nanoTime();
+            log.info("Hash filter built: {} MB, k={}, sized for {} hashes in {} ms",
+                    next.sizeInBytes() >> 20, next.hashFunctions(), next.expectedInsertions(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException e) {
+            stale = true;
+            log.error("Failed to build hash filter; keeping the previous one", e);
+        }
+    }
+
+    /**
+     * Distinct hashes of this shard, capped by its posting count: estimated
+     * from the current filter's fill, or before the first build from the
+     * planner statistics of the posting table (absent until it is analyzed).
+     */
+    long estimateDistinctHashes() {
+        long postings = jdbcTemplate.queryForObject(postingCountSql, Long.class);
+        BlockedBloomFilter current = filter;
+        if (current != null) {
+            return Math.min(postings, current.estimatedInsertions());
+        }
+        List<Double> stats = jdbcTemplate.queryForList(DISTINCT_ESTIMATE_SQL, Double.class,
+                postingRepository.table());
+        if (stats.isEmpty() || stats.get(0) == null || stats.get(0) == 0) return postings;
+        double nDistinct = stats.get(0);
+        long distinct = nDistinct > 0 ? (long) nDistinct : (long) Math.ceil(-nDistinct * postings);
+        return Math.min(postings, distinct);
+    }
+
+    /** Covers songs committed while a rebuild was scanning a snapshot that predates them. */
+    @TransactionalEventListener
+    public void onSongIndexed(SongIndexedEvent event) {
+        addAll(event.songId(), event.fingerprints());
+    }
+
+    @TransactionalEventListener
+    public void onSongDeleted(SongDeletedEvent event) {
+        stale = true;
+    }
+
+    // ═══ Metrics ═══
+
+    private double estimatedFpp() {
+        BlockedBloomFilter f = filter;
+        return f == null ? 0 : f.estimatedFpp();
+    }
+
+    private double observedFpp() {
+        double fp = falsePositives.count();
+        double absent = fp + negatives.count();
+        return absent == 0 ? 0 : fp / absent;
+    }
+
+    // ═══ Screening ═══
+
+    private final class ScreenedLookup implements SongMatcher.FingerprintLookup {
+        private final BlockedBloomFilter filter;
+        private final SongMatcher.FingerprintLookup delegate;
+
+        ScreenedLookup(BlockedBloomFilter filter, SongMatcher.FingerprintLookup delegate) {
+            this.filter = filter;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<SongMatcher.FingerprintEntry> lookup(long hash) {
+            if (!filter.mightContain(hash)) {
+                negatives.increment();
+                return List.of();
+            }
+            List<SongMatcher.FingerprintEntry> entries = delegate.lookup(hash);
+            record(entries == null || entries.isEmpty());
+            return entries;
+        }
+
+        @Override
+        public void forEachPosting(long hash, SongMatcher.PostingConsumer consumer) {
+            if (!filter.mightContain(hash)) {
+                negatives.increment();
+                return;
+            }
+            boolean[] any = new boolean[1];
+            delegate.forEachPosting(hash, (songId, timeOffset) -> {
+                any[0] = true;
+                consumer.accept(songId, timeOffset);
+            });
+            record(!any[0]);
+        }
+
+        /** Only hashes that pass the filter are worth fetching. */
+        @Override
+        public void prefetch(long[] hashes) {
+            long[] present = new long[hashes.length];
+            int n = 0;
+            for (long hash : hashes) {
+                if (filter.mightContain(hash)) present[n++] = hash;
+            }
+            if (n > 0) delegate.prefetch(n == hashes.length ? hashes : Arrays.copyOf(present, n));
+        }
+
+        private void record(boolean absent) {
+            (absent ? falsePositives : positives).increment();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.index.IndexManifest;
+import com.beatlens.index.IndexSegment;
+import com.beatlens.index.SegmentFileStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a read replica's in-process index in step with a primary by pulling
+ * the segments its snapshots list.
+ *
+ * <p>{@code beatlens.index.replication-source} is either the primary's base
+ * URL, in which case new segment files are downloaded into this node's
+ * {@code directory}, or a directory the primary writes its snapshots to
+ * (e.g. a shared volume), in which case files are opened in place. Segments
+ * are immutable, so only generations not already held are fetched; the new
+ * set and the manifest's tombstones are then swapped in at once. Replicas
+ * never query the posting table.</p>
+ */
+@Service
+public class IndexReplicaService {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexReplicaService.class);
+
+    private static final Duration HTTP_TIMEOUT = Duration.ofSeconds(30);
+
+    /** Where manifests and segments are pulled from. */
+    private interface Source {
+        Optional<IndexManifest> manifest() throws IOException;
+
+        IndexSegment open(long generation) throws IOException;
+
+        /** Called for generations the replica no longer serves. */
+        default void release(long generation) {}
+    }
+
+    private final FingerprintIndexService indexService;
+    private final HashFilterService hashFilterService;
+    private final AudioProperties.Index config;
+    private final Source source;
+    private IndexManifest applied;
+
+    public IndexReplicaService(FingerprintIndexService indexService,
+                               HashFilterService hashFilterService,
+                               AudioProperties props) {
+        this.indexService = indexService;
+        this.hashFilterService = hashFilterService;
+        this.config = props.getIndex();
+        this.source = indexService.isReplica() ? createSource(config) : null;
+    }
+
+    private static Source createSource(AudioProperties.Index config) {
+        String location = config.getReplicationSource();
+        if (location == null || location.isBlank()) {
+            throw new IllegalStateException("beatlens.index.replication-source is required for a replica");
+        }
+        boolean copyToMemory = config.getEngine() == AudioProperties.Index.Engine.MEMORY;
+        Path directory = Path.of(config.getDirectory());
+        if (location.startsWith("http://") || location.startsWith("https://")) {
+            return new HttpSource(location, new SegmentFileStore(directory), copyToMemory);
+        }
+        Path shared = Path.of(location);
+        if (shared.toAbsolutePath().normalize().equals(directory.toAbsolutePath().normalize())) {
+            // The replica's own segment store would delete the primary's files
+            throw new IllegalStateException("beatlens.index.replication-source must not be beatlens.index.directory");
+        }
+        return new DirectorySource(new SegmentFileStore(shared), config.isVerifyChecksums(), copyToMemory);
+    }
+
+    /** Install the primary's latest snapshot if it differs from the one served. */
+    @Scheduled(fixedDelayString = "${beatlens.index.replication-poll-interval:10s}")
+    public void poll() {
+        if (source == null) return;
+        try {
+            Optional<IndexManifest> latest = source.manifest();
+            if (latest.isEmpty() || latest.get().equals(applied)) return;
+            install(latest.get());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Index replication from {} failed; serving the previous snapshot: {}",
+                    config.getReplicationSource(), e.getMessage());
+        }
+    }
+
+    private void install(IndexManifest manifest) throws IOException {
+        long started = System.nanoTime();
+        Map<Long, IndexSegment> held = indexService.currentSegments().stream()
+                .collect(Collectors.toMap(IndexSegment::getGeneration, Function.identity()));
+
+        List<IndexSegment> segments = new ArrayList<>(manifest.generations().size());
+        int fetched = 0;
+        for (long generation : manifest.generations()) {
+            IndexSegment segment = held.get(generation);
+            if (segment == null) {
+                segment = source.open(generation);
+                // The filter must admit the new hashes before lookups can reach them
+                segment.getPostings().forEachHash(hashFilterService::addHash);
+                fetched++;
+            }
+            segments.add(segment);
+        }
+
+        boolean first = applied == null;
+        indexService.installReplica(segments, manifest.tombstones());
+        applied = manifest;
+
+        Set<Long> kept = new HashSet<>(manifest.generations());
+        held.keySet().stream().filter(generation -> !kept.contains(generation)).forEach(source::release);
+        if (first) {
+            hashFilterService.rebuild();
+        }
+        log.info("Installed index snapshot from {}: {} segments ({} new), {} tombstones in {} ms",
+                config.getReplicationSource(), segments.size(), fetched, manifest.tombstones().getCardinality(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // ═══ Sources ═══
+
+    /** Opens segment files in a directory the primary writes to. */
+    private record DirectorySource(SegmentFileStore store, boolean verify, boolean copyToMemory) implements Source {
+        @Override
+        public Optional<IndexManifest> manifest() throws IOException {
+            return store.readManifest();
+        }
+
+        @Override
+        public IndexSegment open(long generation) throws IOException {
+            return store.openSegment(generation, verify, copyToMemory);
+        }
+    }
+
+    /** Downloads segment files from the primary's {@code /api/index/replication} endpoints. */
+    private static final class HttpSource implements Source {
+        private final RestClient restClient;
+        private final SegmentFileStore local;
+        private final boolean copyToMemory;
+
+        HttpSource(String baseUrl, SegmentFileStore local, boolean copyToMemory) {
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(
+                    HttpClient.newBuilder().connectTimeout(HTTP_TIMEOUT).build());
+            requestFactory.setReadTimeout(HTTP_TIMEOUT);
+            this.restClient = RestClient.builder()
+                    .baseUrl(baseUrl + "/api/index/replication")
+                    .requestFactory(requestFactory)
+                    .build();
+            this.local = local;
+            this.copyToMemory = copyToMemory;
+        }
+
+        @Override
+        public Optional<IndexManifest> manifest() throws IOException {
+            try {
+                byte[] body = restClient.get().uri("/manifest").retrieve().body(byte[].class);
+                return body == null ? Optional.empty() : IndexManifest.read(new ByteArrayInputStream(body));
+            } catch (HttpClientErrorException.NotFound e) {
+                return Optional.empty();
+            }
+        }
+
+        @Override
+        public IndexSegment open(long generation) throws IOException {
+            IOException[] failure = new IOException[1];
+            restClient.get().uri("/segments/{generation}", generation).exchange((request, response) -> {
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    failure[0] = new IOException("Primary answered " + response.getStatusCode()
+                            + " for segment " + generation);
+                    return null;
+                }
+                try (InputStream body = response.getBody()) {
+                    local.importSegment(generation, body);
+                }
+                return null;
+            });
+            if (failure[0] != null) throw failure[0];
+            // Always verify downloads, so a truncated or corrupted transfer is never served
+            return local.openSegment(generation, true, copyToMemory);
+        }
+
+        @Override
+        public void release(long generation) {
+            local.delete(generation);
+        }
+    }
+}
@@ -1,18 +1,21 @@
 package com.beatlens.service;
 
 import com.beatlens.core.*;
+import com.beatlens.event.SongIndexedEvent;
 import com.beatlens.exception.AudioProcessingException;
-import com.beatlens.model.FingerprintEntity;
 import com.beatlens.model.Song;
-import com.beatlens.repository.FingerprintRepository;
+import com.beatlens.repository.FingerprintCopyWriter;
 import com.beatlens.repository.SongRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Orchestrates the fingerprinting pipeline for song indexing:
@@ -28,23 +31,26 @@ public class IndexingService {
     private final PeakDetector peakDetector;
     private final FingerprintGenerator fingerprintGenerator;
     private final SongRepository songRepository;
-    private final FingerprintRepository fingerprintRepository;
-    private final FingerprintLookupService lookupService;
+    private final FingerprintCopyWriter fingerprintCopyWriter;
+    private final HashFilterService hashFilterService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public IndexingService(AudioProcessor audioProcessor,
                            SpectrogramGenerator spectrogramGenerator,
                            PeakDetector peakDetector,
                            FingerprintGenerator fingerprintGenerator,
                            SongRepository songRepository,
-                           FingerprintRepository fingerprintRepository,
-                           FingerprintLookupService lookupService) {
+                           FingerprintCopyWriter fingerprintCopyWriter,
+                           HashFilterService hashFilterService,
+                           ApplicationEventPublisher eventPublisher) {
         this.audioProcessor = audioProcessor;
         this.spectrogramGenerator = spectrogramGenerator;
         this.peakDetector = peakDetector;
         this.fingerprintGenerator = fingerprintGenerator;
         this.songRepository = songRepository;
-        this.fingerprintRepository = fingerprintRepository;
-        this.lookupService = lookupService;
+        this.fingerprintCopyWriter = fingerprintCopyWriter;
+        this.hashFilterService = hashFilterService;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -58,7 +64,18 @@ public class IndexingService {
      */
     @Transactional
     public Song indexSong(String title, String artist, byte[] audioBytes) {
-        log.info("Indexing song: {} - {}", title, artist);
+        return indexSong(title, artist, null, Set.of(), audioBytes);
+    }
+
+    /**
+     * Index a song and assign it to a catalog and tags for filtered matching.
+     *
+     * @param catalog    catalog name (nullable)
+     * @param tags       tags (may be empty)
+     */
+    @Transactional
+    public Song indexSong(String title, String artist, String catalog, Set<String> tags, byte[] audioBytes) {
+        log.info("Indexing song: {} - {} (catalog={}, tags={})", title, artist, catalog, tags);
 
         // 1. Decode audio
         double[] samples;
@@ -91,24 +108,27 @@ public class IndexingService {
         song.setArtist(artist);
         song.setDurationSeconds(durationSeconds);
         song.setFingerprintCount(fingerprints.size());
+        song.setCatalog(catalog == null || catalog.isBlank() ? null : catalog.trim());
+        song.setTags(tags.stream()
+                .filter(t -> t != null && !t.isBlank())
+                .map(String::trim)
+                .collect(Collectors.toCollection(HashSet::new)));
         song = songRepository.save(song);
+        if (!SongIds.isValid(song.getId())) {
+            // Rolls the row back: postings and song sets cannot hold the ID
+            throw new IllegalStateException("Song id " + song.getId() + " exceeds the indexable maximum "
+                    + SongIds.MAX + "; the catalog is full");
+        }
 
-        // 4. Save fingerprints in batches
+        // 4. Stream fingerprints in with COPY (IDENTITY keys rule out batched INSERTs)
         final Long songId = song.getId();
-        List<FingerprintEntity> entities = new ArrayList<>(fingerprints.size());
-        for (FingerprintGenerator.Fingerprint fp : fingerprints) {
-            entities.add(new FingerprintEntity(fp.hash, songId, fp.anchorTime));
-        }
+        fingerprintCopyWriter.insert(songId, fingerprints);
 
-        // Batch save in chunks of 5000
-        int batchSize = 5000;
-        for (int i = 0; i < entities.size(); i += batchSize) {
-            int end = Math.min(i + batchSize, entities.size());
-            fingerprintRepository.saveAll(entities.subList(i, end));
-        }
+        // 5. Make the hashes visible to the hash filter before they commit
+        hashFilterService.addAll(songId, fingerprints);
 
-        // 5. Invalidate cache
-        lookupService.invalidateCache();
+        // 6. Filters are recompiled and lookup caches patched once this commits
+        eventPublisher.publishEvent(new SongIndexedEvent(songId, fingerprints));
 
         log.info("Song indexed successfully: id={}, fingerprints={}", songId, fingerprints.size());
         return song;
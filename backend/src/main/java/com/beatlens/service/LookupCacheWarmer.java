@@ -0,0 +1,201 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.index.HotHashSketch;
+import com.beatlens.model.dto.CacheWarmupDto;
+import com.beatlens.repository.PostingRepository;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Warms the {@code fingerprint-lookup} cache after a restart from the hashes
+ * real queries asked for before it.
+ *
+ * <p>One in {@code beatlens.lookup-cache.sample-rate} query lookups that go
+ * through the cache is recorded in a {@link HotHashSketch}, which is written
+ * to {@code sketch-file} every {@code sketch-persist-interval} and on
+ * shutdown. On startup the last sketch is merged into the one recording
+ * since startup, and the {@code warmup-hashes} hottest hashes are read in
+ * batches of {@code warmup-batch}, at most {@code warmup-rate} hashes a
+ * second, and put into the cache ahead of demand. Only the {@code database} engine looks hashes up through the
+ * cache, so nothing is warmed with an in-process index.</p>
+ *
+ * <p>Progress is at {@code /api/index/cache-warmup}, together with the
+ * cache's hit rate while the warm-up ran and since it finished.</p>
+ */
+@Service
+public class LookupCacheWarmer {
+
+    private static final Logger log = LoggerFactory.getLogger(LookupCacheWarmer.class);
+
+    private final FingerprintLookupService lookupService;
+    private final PostingRepository postingRepository;
+    private final AudioProperties.LookupCache config;
+    private final boolean databaseEngine;
+    private final Path sketchFile;
+    private final HotHashSketch sketch;
+    /** Set once the last sketch was read (or found missing), so it is never overwritten unread. */
+    private volatile boolean sketchRead;
+
+    private volatile String state = "idle";
+    private volatile int hashesTotal;
+    private volatile int hashesLoaded;
+    private volatile CacheStats statsAtStart;
+    private volatile CacheStats statsAtEnd;
+
+    public LookupCacheWarmer(FingerprintLookupService lookupService,
+                             PostingRepository postingRepository,
+                             MeterRegistry meterRegistry,
+                             AudioProperties props) {
+        this.lookupService = lookupService;
+        this.postingRepository = postingRepository;
+        this.config = props.getLookupCache();
+        this.databaseEngine = props.getIndex().getEngine() == AudioProperties.Index.Engine.DATABASE;
+        this.sketchFile = Path.of(config.getSketchFile());
+        this.sketch = new HotHashSketch(config.getWarmupHashes());
+
+        Gauge.builder("beatlens.lookup-cache.warmup.loaded", this, w -> w.hashesLoaded)
+                .description("Hot hashes preloaded into the lookup cache")
+                .register(meterRegistry);
+        Gauge.builder("beatlens.lookup-cache.warmup.hit-rate", this, LookupCacheWarmer::hitRateDuring)
+                .description("Lookup cache hit rate while the warm-up ran")
+                .tag("phase", "during")
+                .register(meterRegistry);
+        Gauge.builder("beatlens.lookup-cache.warmup.hit-rate", this, LookupCacheWarmer::hitRateAfter)
+                .description("Lookup cache hit rate since the warm-up finished")
+                .tag("phase", "after")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return config.isWarmupEnabled() && databaseEngine;
+    }
+
+    /** Sample a hash that a query is about to look up through the cache. */
+    public void record(long hash) {
+        if (!isEnabled()) return;
+        if (config.getSampleRate() > 1 && ThreadLocalRandom.current().nextInt(config.getSampleRate()) != 0) return;
+        sketch.record(hash);
+    }
+
+    // ═══ Warm-up ═══
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWarmup() {
+        if (!isEnabled()) return;
+        Thread worker = new Thread(this::warmup, "lookup-cache-warmup");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void warmup() {
+        long started = System.nanoTime();
+        HotHashSketch restored;
+        try {
+            restored = HotHashSketch.readFrom(sketchFile, config.getWarmupHashes());
+        } catch (NoSuchFileException e) {
+            log.info("No hot-hash sketch at {}; lookup cache starts cold", sketchFile);
+            state = "skipped";
+            sketchRead = true;
+            return;
+        } catch (IOException e) {
+            log.warn("Cannot read hot-hash sketch {}: {}; lookup cache starts cold", sketchFile, e.getMessage());
+            state = "skipped";
+            sketchRead = true;
+            return;
+        }
+        // Merge rather than replace: queries have been recording since startup
+        sketch.merge(restored);
+        sketchRead = true;
+        long[] hot = sketch.topHashes(config.getWarmupHashes());
+        hashesTotal = hot.length;
+        statsAtStart = lookupService.exactStats();
+        state = "running";
+        try {
+            int batch = Math.max(1, config.getWarmupBatch());
+            for (int from = 0; from < hot.length; from += batch) {
+                long batchStarted = System.nanoTime();
+                long[] hashes = Arrays.copyOfRange(hot, from, Math.min(hot.length, from + batch));
+                long version = lookupService.catalogVersion();
+                lookupService.preload(postingRepository.findByHashes(hashes), version);
+                hashesLoaded += hashes.length;
+                pace(hashes.length, batchStarted);
+            }
+            state = "finished";
+            log.info("Lookup cache warmed with {} hot hashes in {} ms",
+                    hashesLoaded, (System.nanoTime() - started) / 1_000_000);
+        } catch (InterruptedException e) {
+            state = "failed";
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            state = "failed";
+            log.warn("Lookup cache warm-up stopped after {} hashes: {}", hashesLoaded, e.getMessage());
+        } finally {
+            statsAtEnd = lookupService.exactStats();
+        }
+    }
+
+    /** Sleep off whatever is left of the batch's share of {@code warmup-rate}. */
+    private void pace(int hashes, long batchStarted) throws InterruptedException {
+        if (config.getWarmupRate() <= 0) return;
+        long dueNanos = batchStarted + hashes * 1_000_000_000L / config.getWarmupRate();
+        long sleepNanos = dueNanos - System.nanoTime();
+        if (sleepNanos > 0) {
+            Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+        }
+    }
+
+    // ═══ Persistence ═══
+
+    @Scheduled(fixedDelayString = "${beatlens.lookup-cache.sketch-persist-interval:5m}",
+            initialDelayString = "${beatlens.lookup-cache.sketch-persist-interval:5m}")
+    public void persistSketch() {
+        // Until the last sketch is restored, writing would replace it with a nearly empty one
+        if (!isEnabled() || !sketchRead) return;
+        try {
+            Files.createDirectories(sketchFile.toAbsolutePath().getParent());
+            sketch.writeTo(sketchFile);
+        } catch (IOException e) {
+            log.warn("Cannot write hot-hash sketch {}: {}", sketchFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        persistSketch();
+    }
+
+    // ═══ Status ═══
+
+    private double hitRateDuring() {
+        CacheStats start = statsAtStart;
+        if (start == null) return 0;
+        CacheStats end = statsAtEnd != null ? statsAtEnd : lookupService.exactStats();
+        return end.minus(start).hitRate();
+    }
+
+    private double hitRateAfter() {
+        CacheStats end = statsAtEnd;
+        return end == null ? 0 : lookupService.exactStats().minus(end).hitRate();
+    }
+
+    public CacheWarmupDto getStatus() {
+        return new CacheWarmupDto(isEnabled() ? state : "disabled", hashesTotal, hashesLoaded,
+                sketch.candidateCount(), hitRateDuring(), hitRateAfter());
+    }
+}
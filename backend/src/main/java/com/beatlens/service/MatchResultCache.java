@@ -0,0 +1,145 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.Deadline;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.event.SongIndexedEvent;
+import com.beatlens.model.dto.MatchResponse;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Reuses {@code /api/match} responses for byte-identical uploads.
+ *
+ * <p>Responses are keyed by the SHA-256 of the upload, the song filter and
+ * the catalog generation, so a repeated clip costs one digest instead of a
+ * decode, FFT and lookups. Concurrent requests for the same key share one
+ * computation: the first runs the match on its own thread, the others wait
+ * for its result (or its exception).</p>
+ *
+ * <p>Indexing or deleting a song moves the catalog generation on, so no
+ * response computed before the change is served after it, even one still
+ * in flight. Changes made on other nodes arrive through
+ * {@link CatalogChangeListener}; {@code beatlens.result-cache.ttl} bounds
+ * how long one it missed can be absent from a cached answer.</p>
+ *
+ * <p>Each request brings its own deadline, and what one request's budget
+ * allowed says nothing about another's. A response cut short by its
+ * deadline is therefore never kept, and requests that were waiting for it,
+ * or for a match that ran out of time, run the match on their own budget.</p>
+ */
+@Service
+public class MatchResultCache {
+
+    private record Key(String digest, SongFilterService.Criteria criteria, long generation) {}
+
+    private final boolean enabled;
+    private final AsyncCache<Key, MatchResponse> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter coalesced;
+    private final Counter misses;
+
+    public MatchResultCache(MeterRegistry meterRegistry, AudioProperties props) {
+        AudioProperties.ResultCache config = props.getResultCache();
+        this.enabled = config.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfterWrite(config.getTtl())
+                .buildAsync();
+        this.hits = counter(meterRegistry, "hit");
+        this.coalesced = counter(meterRegistry, "coalesced");
+        this.misses = counter(meterRegistry, "miss");
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("beatlens.match-cache.requests")
+                .description("Match requests by result-cache outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Return the cached response for this upload, wait for an identical
+     * match in flight, or run {@code match} and share its result.
+     */
+    public MatchResponse get(byte[] audioBytes, SongFilterService.Criteria criteria, Supplier<MatchResponse> match) {
+        if (!enabled) return match.get();
+
+        Key key = new Key(sha256(audioBytes), criteria, generation.get());
+        CompletableFuture<MatchResponse> mine = new CompletableFuture<>();
+        CompletableFuture<MatchResponse> shared = cache.asMap().putIfAbsent(key, mine);
+        if (shared != null) {
+            (shared.isDone() ? hits : coalesced).increment();
+            MatchResponse response;
+            try {
+                response = await(shared);
+            } catch (Deadline.ExceededException e) {
+                return match.get();
+            }
+            return response.partial() ? match.get() : response;
+        }
+
+        misses.increment();
+        try {
+            MatchResponse response = match.get();
+            // Unpublish first, so no later request is served a partial response
+            if (response.partial()) cache.asMap().remove(key, mine);
+            mine.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            // Waiters see the same exception, or retry on their own budget if it was the deadline
+            cache.asMap().remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static MatchResponse await(CompletableFuture<MatchResponse> shared) {
+        try {
+            return shared.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // ═══ Catalog changes ═══
+
+    @TransactionalEventListener
+    public void onSongIndexed(SongIndexedEvent event) {
+        invalidate();
+    }
+
+    @TransactionalEventListener
+    public void onSongDeleted(SongDeletedEvent event) {
+        invalidate();
+    }
+
+    /** Stop serving every response computed so far, including those still in flight. */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.synchronous().invalidateAll();
+    }
+}
@@ -1,22 +1,31 @@
 package com.beatlens.service;
 
+import com.beatlens.config.AudioProperties;
 import com.beatlens.core.*;
 import com.beatlens.exception.AudioProcessingException;
-import com.beatlens.model.Song;
 import com.beatlens.model.dto.MatchResponse;
 import com.beatlens.model.dto.MatchResultDto;
-import com.beatlens.repository.SongRepository;
+import com.beatlens.model.dto.MatchSegmentDto;
+import com.beatlens.model.dto.SegmentedMatchResponse;
+import com.beatlens.model.dto.ShardMatchRequest;
+import com.beatlens.model.dto.ShardMatchResponse;
+import com.beatlens.service.SongMetadataService.SongMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Orchestrates the matching pipeline:
  * query audio → PCM (via FFmpeg) → fingerprints → hash lookup → time-alignment scoring.
+ *
+ * <p>In a sharded deployment the lookup and scoring steps run on every shard
+ * (see {@link ShardCoordinator}) and this node only merges the results.</p>
  */
 @Service
 public class MatchService {
@@ -28,23 +37,59 @@ public class MatchService {
     private final PeakDetector peakDetector;
     private final FingerprintGenerator fingerprintGenerator;
     private final SongMatcher songMatcher;
+    private final SegmentMatcher segmentMatcher;
     private final FingerprintLookupService lookupService;
-    private final SongRepository songRepository;
+    private final FingerprintIndexService indexService;
+    private final HashFilterService hashFilterService;
+    private final SongPurgeService purgeService;
+    private final SongMetadataService songMetadataService;
+    private final SongFilterService songFilterService;
+    private final MatchResultCache resultCache;
+    private final ExecutorService matchExecutor;
+    private final ShardAssignment shard;
+    private final ShardCoordinator shardCoordinator;
+    private final boolean coarseRetrieval;
+    private final Duration defaultDeadline;
+    private final Duration maxDeadline;
+    private final int maxResults;
 
     public MatchService(AudioProcessor audioProcessor,
                         SpectrogramGenerator spectrogramGenerator,
                         PeakDetector peakDetector,
                         FingerprintGenerator fingerprintGenerator,
                         SongMatcher songMatcher,
+                        SegmentMatcher segmentMatcher,
                         FingerprintLookupService lookupService,
-                        SongRepository songRepository) {
+                        FingerprintIndexService indexService,
+                        HashFilterService hashFilterService,
+                        SongPurgeService purgeService,
+                        SongMetadataService songMetadataService,
+                        SongFilterService songFilterService,
+                        MatchResultCache resultCache,
+                        ExecutorService matchExecutor,
+                        ShardAssignment shard,
+                        ShardCoordinator shardCoordinator,
+                        AudioProperties props) {
         this.audioProcessor = audioProcessor;
         this.spectrogramGenerator = spectrogramGenerator;
         this.peakDetector = peakDetector;
         this.fingerprintGenerator = fingerprintGenerator;
         this.songMatcher = songMatcher;
+        this.segmentMatcher = segmentMatcher;
         this.lookupService = lookupService;
-        this.songRepository = songRepository;
+        this.indexService = indexService;
+        this.hashFilterService = hashFilterService;
+        this.purgeService = purgeService;
+        this.songMetadataService = songMetadataService;
+        this.songFilterService = songFilterService;
+        this.resultCache = resultCache;
+        this.matchExecutor = matchExecutor;
+        this.shard = shard;
+        this.shardCoordinator = shardCoordinator;
+        this.coarseRetrieval = props.getMatching().isCoarseRetrieval();
+        this.defaultDeadline = props.getMatching().getDeadline();
+        this.maxDeadline = props.getMatching().getMaxDeadline();
+        this.maxResults = props.getMatching().getMaxResults();
     }
 
     /**
@@ -55,9 +100,221 @@ public class MatchService {
      * @return match response with ranked results
      */
     public MatchResponse match(byte[] audioBytes) {
+        return match(audioBytes, null, SongFilterService.Criteria.NONE);
+    }
+
+    /**
+     * Match within a time budget. The deadline covers decoding, fingerprinting
+     * and hash lookups; if it expires during lookups, the votes gathered so far
+     * are scored and the response is marked partial.
+     *
+     * Filter criteria restrict matching to a sub-catalog; postings for other
+     * songs are skipped before any votes are recorded.
+     *
+     * Repeated uploads of the same bytes are answered from
+     * {@link MatchResultCache} while the catalog is unchanged.
+     *
+     * @param audioBytes raw bytes of any supported audio format
+     * @param budget     time budget, or {@code null} for {@code beatlens.matching.deadline}
+     * @param criteria   catalog / tag / song-ID filter ({@link SongFilterService.Criteria#NONE} for all songs)
+     * @return match response with the {@code beatlens.matching.max-results} best results
+     * @throws Deadline.ExceededException if the deadline expires before lookups start
+     * @throws IllegalArgumentException   if {@code budget} exceeds {@code beatlens.matching.max-deadline}
+     */
+    public MatchResponse match(byte[] audioBytes, Duration budget, SongFilterService.Criteria criteria) {
+        checkBudget(budget);
+        return resultCache.get(audioBytes, criteria, () -> matchUncached(audioBytes, budget, criteria));
+    }
+
+    private MatchResponse matchUncached(byte[] audioBytes, Duration budget, SongFilterService.Criteria criteria) {
+        Deadline deadline = startDeadline(budget);
+
+        QueryFingerprints query = fingerprintQuery(audioBytes, deadline);
+        List<FingerprintGenerator.Fingerprint> fingerprints = query.fingerprints();
+        double queryDuration = query.durationSeconds();
+
+        if (fingerprints.isEmpty()) {
+            return new MatchResponse(List.of(), 0, queryDuration, false, 1.0);
+        }
+
+        SongFilter filter = songFilterService.compile(criteria);
+        if (filter.isEmpty()) {
+            log.info("Song filter {} matches no songs; skipping lookups", criteria);
+            return new MatchResponse(List.of(), fingerprints.size(), queryDuration, false, 1.0);
+        }
+
+        SongMatcher.MatchOutcome outcome = shardCoordinator.isEnabled()
+                ? shardCoordinator.match(fingerprints, deadline, criteria)
+                : matchLocal(fingerprints, deadline, filter);
+        List<SongMatcher.MatchResult> coreResults = outcome.getResults();
+        if (outcome.isPartial()) {
+            log.warn("Match deadline reached after {}/{} hashes; scoring partial votes",
+                    outcome.getHashesConsulted(), outcome.getHashesTotal());
+        }
+
+        // Results are ranked best first; only the returned ones need song details
+        List<SongMatcher.MatchResult> top = coreResults.subList(0, Math.min(coreResults.size(), maxResults));
+        Map<Long, SongMetadata> songs = songMetadataService.resolve(
+                top.stream().map(SongMatcher.MatchResult::getSongId).toList());
+        List<MatchResultDto> dtos = new ArrayList<>(top.size());
+        for (SongMatcher.MatchResult mr : top) {
+            SongMetadata song = songs.get(mr.getSongId());
+            dtos.add(new MatchResultDto(
+                    mr.getSongId(),
+                    song != null ? song.title() : SongMetadata.UNKNOWN,
+                    song != null ? song.artist() : SongMetadata.UNKNOWN,
+                    mr.getConfidence(),
+                    mr.getAlignedMatches(),
+                    mr.getTotalMatches(),
+                    mr.getTimeOffsetSeconds()
+            ));
+        }
+
+        return new MatchResponse(dtos, fingerprints.size(), queryDuration,
+                outcome.isPartial(), outcome.getHashCoverage());
+    }
+
+    /**
+     * Score fingerprints sent by a coordinator against this node's shard.
+     */
+    public ShardMatchResponse matchShard(ShardMatchRequest request) {
+        if (request.hashes().length != request.anchorTimes().length) {
+            throw new IllegalArgumentException("hashes and anchorTimes must have the same length");
+        }
+        List<FingerprintGenerator.Fingerprint> fingerprints = new ArrayList<>(request.hashes().length);
+        for (int i = 0; i < request.hashes().length; i++) {
+            fingerprints.add(FingerprintGenerator.Fingerprint.fromHash(request.hashes()[i], request.anchorTimes()[i]));
+        }
+        Deadline deadline = request.deadlineMs() != null
+                ? Deadline.after(Duration.ofMillis(request.deadlineMs()))
+                : Deadline.NONE;
+        SongFilter filter = songFilterService.compile(
+                SongFilterService.Criteria.of(request.catalogs(), request.tags(), request.songIds()));
+
+        SongMatcher.MatchOutcome outcome = filter.isEmpty()
+                ? new SongMatcher.MatchOutcome(List.of(), 0, 0)
+                : matchLocal(fingerprints, deadline, filter);
+        List<ShardMatchResponse.Result> results = new ArrayList<>(outcome.getResults().size());
+        for (SongMatcher.MatchResult mr : outcome.getResults()) {
+            results.add(new ShardMatchResponse.Result(mr.getSongId(), mr.getAlignedMatches(),
+                    mr.getTotalMatches(), mr.getTimeOffsetSeconds(), mr.getConfidence()));
+        }
+        return new ShardMatchResponse(shard.getIndex(), results,
+                outcome.getHashesConsulted(), outcome.getHashesTotal());
+    }
+
+    /**
+     * Match a long clip (full upload, DJ set) as a timeline of segments.
+     * Overlapping windows are scored in parallel and adjacent windows that
+     * agree on song and alignment are merged.
+     *
+     * The deadline, song filter and coarse retrieval work as in
+     * {@link #match(byte[], Duration, SongFilterService.Criteria)}; hashes not
+     * looked up in time leave the response partial.
+     *
+     * @param audioBytes raw bytes of any supported audio format
+     * @param budget     time budget, or {@code null} for {@code beatlens.matching.deadline}
+     * @param criteria   catalog / tag / song-ID filter ({@link SongFilterService.Criteria#NONE} for all songs)
+     * @return segments in query order
+     * @throws UnsupportedOperationException on a sharded node, which only holds part of the catalog
+     * @throws IllegalArgumentException      if {@code budget} exceeds {@code beatlens.matching.max-deadline}
+     */
+    public SegmentedMatchResponse matchSegments(byte[] audioBytes, Duration budget,
+                                                SongFilterService.Criteria criteria) {
+        if (shardCoordinator.isEnabled()) {
+            throw new UnsupportedOperationException(
+                    "Segmented matching is not available on a sharded deployment: this node holds only shard "
+                            + shard.getIndex() + " of " + shard.getCount());
+        }
+        checkBudget(budget);
+        Deadline deadline = startDeadline(budget);
+
+        QueryFingerprints query = fingerprintQuery(audioBytes, deadline);
+        List<FingerprintGenerator.Fingerprint> fingerprints = query.fingerprints();
+
+        if (fingerprints.isEmpty()) {
+            return new SegmentedMatchResponse(List.of(), 0, query.durationSeconds(), false, 1.0);
+        }
+
+        SongFilter filter = songFilterService.compile(criteria);
+        if (filter.isEmpty()) {
+            log.info("Song filter {} matches no songs; skipping lookups", criteria);
+            return new SegmentedMatchResponse(List.of(), fingerprints.size(), query.durationSeconds(), false, 1.0);
+        }
+
+        SegmentMatcher.SegmentOutcome outcome = segmentMatcher.matchSegmentsDetailed(
+                fingerprints, localLookup(), localOptions(deadline, filter), matchExecutor);
+        List<SegmentMatcher.MatchSegment> segments = outcome.segments();
+        if (outcome.partial()) {
+            log.warn("Segmented match deadline reached with {}% of distinct hashes looked up",
+                    String.format("%.0f", outcome.hashCoverage() * 100));
+        }
+
+        Map<Long, SongMetadata> songs = songMetadataService.resolve(
+                segments.stream().map(SegmentMatcher.MatchSegment::getSongId).distinct().toList());
+        List<MatchSegmentDto> dtos = new ArrayList<>(segments.size());
+        for (SegmentMatcher.MatchSegment seg : segments) {
+            SongMetadata song = songs.get(seg.getSongId());
+            dtos.add(new MatchSegmentDto(
+                    seg.getSongId(),
+                    song != null ? song.title() : SongMetadata.UNKNOWN,
+                    song != null ? song.artist() : SongMetadata.UNKNOWN,
+                    seg.getStartSeconds(),
+                    seg.getEndSeconds(),
+                    seg.getSongOffsetSeconds(),
+                    seg.getConfidence()
+            ));
+        }
+
+        return new SegmentedMatchResponse(dtos, fingerprints.size(), query.durationSeconds(),
+                outcome.partial(), outcome.hashCoverage());
+    }
+
+    // ═══ Internals ═══
+
+    private void checkBudget(Duration budget) {
+        if (budget != null && budget.compareTo(maxDeadline) > 0) {
+            throw new IllegalArgumentException("Deadline " + budget.toMillis() + " ms exceeds the maximum of "
+                    + maxDeadline.toMillis() + " ms");
+        }
+    }
+
+    private Deadline startDeadline(Duration budget) {
+        Duration effective = budget != null ? budget : defaultDeadline;
+        return effective != null && !effective.isZero() ? Deadline.after(effective) : Deadline.NONE;
+    }
+
+    /** Look up and score a query against the songs of this node's shard. */
+    private SongMatcher.MatchOutcome matchLocal(List<FingerprintGenerator.Fingerprint> fingerprints,
+                                                Deadline deadline, SongFilter filter) {
+        return songMatcher.matchDetailed(fingerprints, localLookup(), localOptions(deadline, filter));
+    }
+
+    private SongMatcher.MatchOptions localOptions(Deadline deadline, SongFilter filter) {
+        SongMatcher.MatchOptions options = SongMatcher.MatchOptions.DEFAULT
+                .withDeadline(deadline)
+                .withSongFilter(filter);
+        if (coarseRetrieval) {
+            options = options.withCoarseLookup(purgeService.screenCoarse(
+                    SongMatcher.CoarseLookup.of(lookupService::lookupCoarse, lookupService::prefetchCoarse)));
+        }
+        return options;
+    }
+
+    private SongMatcher.FingerprintLookup localLookup() {
+        return purgeService.screen(shard.restrict(hashFilterService.screen(indexService.currentLookup())));
+    }
+
+    private record QueryFingerprints(List<FingerprintGenerator.Fingerprint> fingerprints,
+                                     double durationSeconds) {}
+
+    /** Decode the query and run it through spectrogram → peaks → fingerprints. */
+    private QueryFingerprints fingerprintQuery(byte[] audioBytes, Deadline deadline) {
         double[] samples;
         try {
-            samples = audioProcessor.readBytes(audioBytes);
+            samples = audioProcessor.readBytes(audioBytes, deadline);
+        } catch (Deadline.ExceededException e) {
+            throw e;
         } catch (Exception e) {
             throw new AudioProcessingException("Failed to decode query audio: " + e.getMessage(), e);
         }
@@ -71,32 +328,12 @@ public class MatchService {
                 String.format("%.2f", queryDuration), samples.length);
 
         double[][] spectrogram = spectrogramGenerator.generateSpectrogram(samples);
+        deadline.check("spectrogram");
         List<PeakDetector.Peak> peaks = peakDetector.detectPeaks(spectrogram);
         List<FingerprintGenerator.Fingerprint> fingerprints = fingerprintGenerator.generateFingerprints(peaks);
+        deadline.check("fingerprinting");
 
         log.info("Query produced {} fingerprints", fingerprints.size());
-
-        if (fingerprints.isEmpty()) {
-            return new MatchResponse(List.of(), 0, queryDuration);
-        }
-
-        List<SongMatcher.MatchResult> coreResults = songMatcher.match(
-                fingerprints, lookupService::lookup);
-
-        List<MatchResultDto> dtos = new ArrayList<>();
-        for (SongMatcher.MatchResult mr : coreResults) {
-            Optional<Song> song = songRepository.findById(mr.getSongId());
-            dtos.add(new MatchResultDto(
-                    mr.getSongId(),
-                    song.map(Song::getTitle).orElse("Unknown"),
-                    song.map(Song::getArtist).orElse("Unknown"),
-                    mr.getConfidence(),
-                    mr.getAlignedMatches(),
-                    mr.getTotalMatches(),
-                    mr.getTimeOffsetSeconds()
-            ));
-        }
-
-        return new MatchResponse(dtos, fingerprints.size(), queryDuration);
+        return new QueryFingerprints(fingerprints, queryDuration);
     }
 }
@@ -0,0 +1,146 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.repository.PostingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Copies the legacy {@code fingerprints} table into the compact
+ * {@code postings} table (V4) while the application keeps serving.
+ *
+ * <p>Songs up to the migration's watermark are copied in ID ranges of
+ * {@code beatlens.postings.backfill-batch-songs}, one short transaction per
+ * range; later songs reach {@code postings} through the V4 triggers. Each
+ * range is deleted from {@code postings} and re-copied under one
+ * {@code REPEATABLE READ} snapshot, so rows the triggers mirrored before the
+ * snapshot are replaced rather than duplicated and rows mirrored after it
+ * are left alone. The range's songs are share-locked so that deleting one
+ * of them waits for the copy instead of leaving copied postings behind.</p>
+ *
+ * <p>Progress lives in {@code postings_backfill} and its row is locked per
+ * batch, so several nodes can run the backfill at once and a restart
+ * resumes where it stopped. Once it is done, {@link PostingRepository}
+ * switches reads to {@code postings}, and writes after a grace period
+ * (V6).</p>
+ */
+@Service
+public class PostingBackfillService {
+
+    private static final Logger log = LoggerFactory.getLogger(PostingBackfillService.class);
+
+    static final Duration MIN_CONFLICT_BACKOFF = Duration.ofMillis(50);
+    static final Duration MAX_CONFLICT_BACKOFF = Duration.ofSeconds(10);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate batchTx;
+    private final PostingRepository postingRepository;
+    private final AudioProperties.Postings config;
+
+    public PostingBackfillService(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  PostingRepository postingRepository,
+                                  AudioProperties props) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchTx = new TransactionTemplate(transactionManager);
+        this.batchTx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.postingRepository = postingRepository;
+        this.config = props.getPostings();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        if (postingRepository.isCompact()) return;
+        Thread worker = new Thread(this::backfill, "postings-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void backfill() {
+        long started = System.nanoTime();
+        log.info("Copying fingerprints into the compact postings table in the background");
+        try {
+            long copied = 0;
+            int conflicts = 0;
+            while (true) {
+                Long batch;
+                try {
+                    batch = batchTx.execute(status -> copyNextRange());
+                } catch (ConcurrencyFailureException e) {
+                    // Another node advanced the progress row, or a concurrent delete won:
+                    // back off so contending nodes do not retry in lockstep
+                    conflicts++;
+                    log.debug("Backfill batch conflicted ({} in a row), retrying: {}", conflicts, e.getMessage());
+                    Thread.sleep(conflictBackoff(config.getBackfillPause(), conflicts).toMillis());
+                    continue;
+                }
+                conflicts = 0;
+                if (batch == null) break;
+                copied += batch;
+                Thread.sleep(config.getBackfillPause().toMillis());
+            }
+            postingRepository.refreshLayout();
+            log.info("Postings backfill complete: {} rows copied by this node in {} s",
+                    copied, (System.nanoTime() - started) / 1_000_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Postings backfill failed; still serving from fingerprints, resumes on next start", e);
+        }
+    }
+
+    /**
+     * Pause before retrying after {@code conflicts} consecutive conflicts:
+     * the batch pause (at least {@link #MIN_CONFLICT_BACKOFF}), doubled per
+     * conflict up to {@link #MAX_CONFLICT_BACKOFF}, with up to 50% jitter.
+     */
+    static Duration conflictBackoff(Duration pause, int conflicts) {
+        long base = Math.max(pause.toMillis(), MIN_CONFLICT_BACKOFF.toMillis());
+        long backoff = Math.min(base << Math.min(conflicts - 1, 16), MAX_CONFLICT_BACKOFF.toMillis());
+        return Duration.ofMillis(backoff - ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+    }
+
+    /** @return rows copied, or {@code null} once the backfill is done */
+    private Long copyNextRange() {
+        Map<String, Object> progress = jdbcTemplate.queryForMap(
+                "SELECT watermark, last_song_id, done FROM postings_backfill WHERE id = 1 FOR UPDATE");
+        if ((Boolean) progress.get("done")) return null;
+        long watermark = ((Number) progress.get("watermark")).longValue();
+        long from = ((Number) progress.get("last_song_id")).longValue();
+
+        Long last = jdbcTemplate.queryForObject(
+                "SELECT MAX(id) FROM (SELECT id FROM songs WHERE id > ? AND id <= ? ORDER BY id LIMIT ?) batch",
+                Long.class, from, watermark, config.getBackfillBatchSongs());
+        long to = last == null ? watermark : last;
+
+        jdbcTemplate.query("SELECT id FROM songs WHERE id > ? AND id <= ? FOR SHARE",
+                (RowCallbackHandler) rs -> {}, from, to);
+        jdbcTemplate.update("DELETE FROM postings WHERE song_id > ? AND song_id <= ?", from, to);
+        int copied = jdbcTemplate.update(
+                "INSERT INTO postings (hash, song_id, time_offset) "
+                        + "SELECT hash, song_id, time_offset FROM fingerprints WHERE song_id > ? AND song_id <= ?",
+                from, to);
+        boolean done = to >= watermark;
+        jdbcTemplate.update(
+                "UPDATE postings_backfill SET last_song_id = ?, done = ?, updated_at = CURRENT_TIMESTAMP, "
+                        + "done_at = CASE WHEN ? THEN now() END WHERE id = 1",
+                to, done, done);
+        if (done) {
+            log.info("Postings backfill reached song {}", watermark);
+        }
+        return (long) copied;
+    }
+}
@@ -0,0 +1,242 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.Deadline;
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.ShardAssignment;
+import com.beatlens.core.SongMatcher;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.event.SongIndexedEvent;
+import com.beatlens.model.dto.ShardMatchRequest;
+import com.beatlens.model.dto.ShardMatchResponse;
+import com.beatlens.repository.PostingRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Scatter-gather matching across song shards.
+ *
+ * <p>Songs are assigned to shards by {@link ShardAssignment}; every node
+ * indexes and scores only its own shard. A node with
+ * {@code beatlens.shard.nodes} configured coordinates {@code /api/match}:
+ * the query's fingerprints are sent to every shard's
+ * {@code /api/shard/match} in parallel, and the per-shard candidates are
+ * merged into one ranking. A shard that fails or misses its timeout is left
+ * out and the match is reported as partial.</p>
+ *
+ * <p>All nodes share the catalog database, so a song can be uploaded to any
+ * of them. When the song belongs to another shard, its owner is told to load
+ * it ({@code PUT /api/shard/songs/{id}}), and likewise for deletes; a missed
+ * notification is repaired by the owner's catch-up on its next start.
+ * Nodes of the same shard learn of each other's changes through
+ * {@link CatalogChangeListener}.</p>
+ *
+ * <p>Nodes authenticate each other with {@code beatlens.shard.secret}, sent
+ * in the {@value #SECRET_HEADER} header on every node-to-node call. The
+ * secret is required as soon as there is more than one shard or this node
+ * coordinates; without one, the {@code /api/shard} endpoints refuse every
+ * call.</p>
+ */
+@Service
+public class ShardCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    /** Header carrying {@code beatlens.shard.secret} on node-to-node calls */
+    public static final String SECRET_HEADER = "X-BeatLens-Shard-Secret";
+
+    private final ShardAssignment shard;
+    private final List<String> nodes;
+    private final Duration timeout;
+    private final byte[] secret;
+    private final RestClient restClient;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final PostingRepository postingRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ShardCoordinator(ShardAssignment shard,
+                            PostingRepository postingRepository,
+                            ApplicationEventPublisher eventPublisher,
+                            AudioProperties props) {
+        this.shard = shard;
+        this.nodes = List.copyOf(props.getShard().getNodes());
+        this.timeout = props.getShard().getTimeout();
+        this.secret = props.getShard().getSecret().getBytes(StandardCharsets.UTF_8);
+        this.postingRepository = postingRepository;
+        this.eventPublisher = eventPublisher;
+        if (!nodes.isEmpty() && nodes.size() != shard.getCount()) {
+            throw new IllegalStateException("beatlens.shard.nodes lists " + nodes.size()
+                    + " nodes but beatlens.shard.count is " + shard.getCount());
+        }
+        if ((shard.isSharded() || isEnabled()) && props.getShard().getSecret().isBlank()) {
+            throw new IllegalStateException("beatlens.shard.secret must be set on sharded nodes;"
+                    + " they authenticate each other's /api/shard calls with it");
+        }
+
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(
+                HttpClient.newBuilder().connectTimeout(timeout).executor(executor).build());
+        requestFactory.setReadTimeout(timeout);
+        this.restClient = RestClient.builder()
+                .requestFactory(requestFactory)
+                .defaultHeader(SECRET_HEADER, props.getShard().getSecret())
+                .build();
+    }
+
+    /** @return {@code true} if this node fans matches out to the shards */
+    public boolean isEnabled() {
+        return !nodes.isEmpty();
+    }
+
+    /**
+     * Check the {@value #SECRET_HEADER} of a call to {@code /api/shard}.
+     *
+     * @param presented header value, or {@code null} if absent
+     * @return {@code true} if a secret is configured and {@code presented} matches it
+     */
+    public boolean isTrustedNode(String presented) {
+        return secret.length > 0 && presented != null
+                && MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // ═══ Scatter-gather ═══
+
+    /**
+     * Match a query against every shard and merge the results.
+     *
+     * @param fingerprints query fingerprints
+     * @param deadline     overall budget; each shard gets the smaller of it and {@code beatlens.shard.timeout}
+     * @param criteria     song filter, evaluated by each shard
+     * @return merged outcome; partial if any shard did not answer in time
+     */
+    public SongMatcher.MatchOutcome match(List<FingerprintGenerator.Fingerprint> fingerprints,
+                                          Deadline deadline, SongFilterService.Criteria criteria) {
+        long budgetMs = Math.min(timeout.toMillis(), deadline.remainingMillis());
+        // Leave the shard some slack to send its (partial) answer before we stop waiting
+        ShardMatchRequest request = toRequest(fingerprints, Math.max(1, budgetMs * 9 / 10), criteria);
+
+        List<CompletableFuture<ShardMatchResponse>> calls = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            String node = nodes.get(i);
+            calls.add(CompletableFuture
+                    .supplyAsync(() -> restClient.post()
+                            .uri(node + "/api/shard/match")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(request)
+                            .retrieve()
+                            .body(ShardMatchResponse.class), executor)
+                    .orTimeout(budgetMs, TimeUnit.MILLISECONDS));
+        }
+
+        List<SongMatcher.MatchOutcome> answered = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            try {
+                answered.add(toOutcome(calls.get(i).join()));
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                log.warn("Shard {} ({}) left out of match: {}", i, nodes.get(i),
+                        cause instanceof TimeoutException ? "no answer within " + budgetMs + " ms" : cause.toString());
+            }
+        }
+        return SongMatcher.MatchOutcome.merge(answered, nodes.size(), fingerprints.size());
+    }
+
+    private static ShardMatchRequest toRequest(List<FingerprintGenerator.Fingerprint> fingerprints,
+                                               long deadlineMs, SongFilterService.Criteria criteria) {
+        long[] hashes = new long[fingerprints.size()];
+        int[] anchorTimes = new int[fingerprints.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = fingerprints.get(i).hash;
+            anchorTimes[i] = fingerprints.get(i).anchorTime;
+        }
+        return new ShardMatchRequest(hashes, anchorTimes,
+                List.copyOf(criteria.catalogs()), List.copyOf(criteria.tags()), List.copyOf(criteria.songIds()),
+                deadlineMs);
+    }
+
+    private static SongMatcher.MatchOutcome toOutcome(ShardMatchResponse response) {
+        List<SongMatcher.MatchResult> results = response.results().stream()
+                .map(r -> new SongMatcher.MatchResult(r.songId(), r.alignedMatches(), r.totalMatches(),
+                        r.timeOffsetSeconds(), r.confidence()))
+                .toList();
+        return new SongMatcher.MatchOutcome(results, response.hashesConsulted(), response.hashesTotal());
+    }
+
+    // ═══ Catalog changes ═══
+
+    @TransactionalEventListener
+    public void onSongIndexed(SongIndexedEvent event) {
+        notifyOwner(event.songId(), false);
+    }
+
+    @TransactionalEventListener
+    public void onSongDeleted(SongDeletedEvent event) {
+        notifyOwner(event.songId(), true);
+    }
+
+    private void notifyOwner(long songId, boolean deleted) {
+        if (!isEnabled() || shard.owns(songId)) return;
+        int owner = shard.shardOf(songId);
+        String uri = nodes.get(owner) + "/api/shard/songs/" + songId;
+        executor.execute(() -> {
+            try {
+                if (deleted) {
+                    restClient.delete().uri(uri).retrieve().toBodilessEntity();
+                } else {
+                    restClient.put().uri(uri).retrieve().toBodilessEntity();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not notify shard {} of song {} ({}): {}",
+                        owner, songId, deleted ? "deleted" : "indexed", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Load a song of this shard that another node indexed, and replay it to
+     * the local listeners once the read transaction completes. Called for
+     * {@code PUT /api/shard/songs/{id}} and by {@link CatalogChangeListener}.
+     *
+     * @return {@code false} if the song is not in this shard or has no fingerprints
+     */
+    @Transactional(readOnly = true)
+    public boolean loadRemoteSong(long songId) {
+        if (!shard.owns(songId)) return false;
+        List<FingerprintGenerator.Fingerprint> fingerprints = postingRepository.findBySongId(songId);
+        if (fingerprints.isEmpty()) return false;
+        eventPublisher.publishEvent(new SongIndexedEvent(songId, fingerprints, true));
+        return true;
+    }
+
+    /** Drop a song of this shard that another node deleted (same callers). */
+    @Transactional(readOnly = true)
+    public void removeRemoteSong(long songId) {
+        if (!shard.owns(songId)) return;
+        eventPublisher.publishEvent(new SongDeletedEvent(songId, true));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,109 @@
+package com.beatlens.service;
+
+import com.beatlens.core.SongFilter;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.event.SongIndexedEvent;
+import com.beatlens.repository.SongRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compiles catalog / tag / song-ID match filters into compressed
+ * {@link SongFilter} bitmaps.
+ *
+ * <p>Each kind of criterion that is present narrows the result (AND across
+ * kinds); values within one kind are alternatives (OR). Compiled filters are
+ * cached in the {@code song-filter} cache until a catalog change commits.</p>
+ */
+@Service
+public class SongFilterService {
+
+    private static final Logger log = LoggerFactory.getLogger(SongFilterService.class);
+
+    private final SongRepository songRepository;
+
+    /** Normalised filter criteria; also the cache key. */
+    public record Criteria(Set<String> catalogs, Set<String> tags, Set<Long> songIds) {
+
+        public static final Criteria NONE = new Criteria(Set.of(), Set.of(), Set.of());
+
+        public static Criteria of(List<String> catalogs, List<String> tags, List<Long> songIds) {
+            return new Criteria(normalise(catalogs), normalise(tags),
+                    songIds == null ? Set.of() : Set.copyOf(new TreeSet<>(songIds)));
+        }
+
+        public boolean isEmpty() {
+            return catalogs.isEmpty() && tags.isEmpty() && songIds.isEmpty();
+        }
+
+        private static Set<String> normalise(Collection<String> values) {
+            if (values == null) return Set.of();
+            TreeSet<String> out = new TreeSet<>();
+            for (String v : values) {
+                if (v != null && !v.isBlank()) out.add(v.trim());
+            }
+            return Set.copyOf(out);
+        }
+    }
+
+    public SongFilterService(SongRepository songRepository) {
+        this.songRepository = songRepository;
+    }
+
+    /**
+     * Compile criteria into a song filter. Empty criteria allow every song.
+     */
+    @Cacheable(value = "song-filter", key = "#criteria", condition = "!#criteria.isEmpty()")
+    public SongFilter compile(Criteria criteria) {
+        if (criteria.isEmpty()) {
+            return SongFilter.ALL;
+        }
+
+        SongFilter filter = SongFilter.ALL;
+        if (!criteria.catalogs().isEmpty()) {
+            filter = filter.and(SongFilter.of(songRepository.findIdsByCatalogIn(criteria.catalogs())));
+        }
+        if (!criteria.tags().isEmpty()) {
+            filter = filter.and(SongFilter.of(songRepository.findIdsByTagIn(criteria.tags())));
+        }
+        if (!criteria.songIds().isEmpty()) {
+            filter = filter.and(SongFilter.of(criteria.songIds()));
+        }
+
+        log.info("Compiled song filter {}: {} songs, {} bytes",
+                criteria, filter.cardinality(), filter.sizeInBytes());
+        return filter;
+    }
+
+    /**
+     * Drop compiled filters, e.g. after catalog changes may have been missed.
+     */
+    @CacheEvict(value = "song-filter", allEntries = true)
+    public void invalidateCache() {
+        log.debug("Song filter cache invalidated");
+    }
+
+    // ═══ Catalog changes ═══
+    // Evicted only after commit: a filter compiled earlier would miss the new song (or keep the deleted one)
+
+    @TransactionalEventListener
+    @CacheEvict(value = "song-filter", allEntries = true)
+    public void onSongIndexed(SongIndexedEvent event) {
+        log.debug("Song filter cache invalidated for indexed song {}", event.songId());
+    }
+
+    @TransactionalEventListener
+    @CacheEvict(value = "song-filter", allEntries = true)
+    public void onSongDeleted(SongDeletedEvent event) {
+        log.debug("Song filter cache invalidated for deleted song {}", event.songId());
+    }
+}
@@ -0,0 +1,76 @@
+package com.beatlens.service;
+
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.model.Song;
+import com.beatlens.repository.SongRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Titles and artists of matched songs, read through the {@code song-metadata}
+ * cache.
+ *
+ * <p>A match resolves all of its result songs at once: cached ones come from
+ * the cache, the rest from a single {@code findAllById}. Only the fields a
+ * result shows are cached, not the entity, so nothing lazy is left to load
+ * outside a session. Song metadata never changes after indexing; a delete
+ * evicts its entry once it commits, so a match running concurrently cannot
+ * reload the row before the tombstone is visible and keep it cached.</p>
+ */
+@Service
+public class SongMetadataService {
+
+    static final String CACHE = "song-metadata";
+
+    /** What a match result shows of a song. */
+    public record SongMetadata(long id, String title, String artist) {
+        public static final String UNKNOWN = "Unknown";
+
+        static SongMetadata of(Song song) {
+            return new SongMetadata(song.getId(), song.getTitle(), song.getArtist());
+        }
+    }
+
+    private final SongRepository songRepository;
+    private final Cache<Object, Object> cache;
+
+    public SongMetadataService(SongRepository songRepository, CacheManager cacheManager) {
+        this.songRepository = songRepository;
+        this.cache = ((CaffeineCache) cacheManager.getCache(CACHE)).getNativeCache();
+    }
+
+    /**
+     * @return metadata of the given songs that exist; deleted or unknown IDs are left out
+     */
+    public Map<Long, SongMetadata> resolve(Collection<Long> songIds) {
+        Map<Object, Object> cached = cache.getAll(songIds, missing -> {
+            Map<Object, Object> loaded = new HashMap<>();
+            for (Song song : songRepository.findAllById(missing.stream().map(id -> (Long) id).toList())) {
+                loaded.put(song.getId(), SongMetadata.of(song));
+            }
+            return loaded;
+        });
+        Map<Long, SongMetadata> metadata = new HashMap<>(cached.size() * 2);
+        cached.forEach((id, value) -> metadata.put((Long) id, (SongMetadata) value));
+        return metadata;
+    }
+
+    /** Drop a song's entry (also called for songs other nodes delete). */
+    public void evict(long songId) {
+        cache.invalidate(songId);
+    }
+
+    // ═══ Catalog changes ═══
+
+    @TransactionalEventListener
+    public void onSongDeleted(SongDeletedEvent event) {
+        evict(event.songId());
+    }
+}
@@ -0,0 +1,245 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.ShardAssignment;
+import com.beatlens.core.SongIds;
+import com.beatlens.core.SongMatcher;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.model.dto.PurgeStatusDto;
+import com.beatlens.repository.PostingRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second half of song deletion: screens tombstoned songs out of lookups and
+ * purges their postings in the background.
+ *
+ * <p>{@link SongService#deleteSong} only sets {@code songs.deleted_at}. From
+ * the moment that commits, {@link #screen} drops the song's postings from
+ * every lookup, whether they come from the in-process index, the lookup
+ * cache or the database. The scheduled purger then deletes the postings
+ * {@code beatlens.postings.purge-batch-rows} at a time, each batch its own
+ * short statement followed by {@code purge-pause}, and deletes the
+ * {@code songs} row last. Each batch's hashes are stripped from the
+ * lookup cache as it commits.</p>
+ *
+ * <p>Each node purges the songs of its own shard; replicas only screen.
+ * Purged IDs stay screened for the life of the process; IDs are never
+ * reused, so that costs a few bytes per deletion.</p>
+ */
+@Service
+public class SongPurgeService {
+
+    private static final Logger log = LoggerFactory.getLogger(SongPurgeService.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final PostingRepository postingRepository;
+    private final FingerprintIndexService indexService;
+    private final FingerprintLookupService lookupService;
+    private final ShardAssignment shard;
+    private final AudioProperties.Postings config;
+
+    /** Copy-on-write: lookups read it without locking. */
+    private volatile RoaringBitmap deleted = new RoaringBitmap();
+    private final Object deletedLock = new Object();
+
+    private final ExecutorService purgeExecutor =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("song-purge").factory());
+    private final AtomicBoolean purging = new AtomicBoolean();
+    private volatile int pendingSongs;
+    private volatile Long currentSongId;
+    private final AtomicLong currentSongPostings = new AtomicLong();
+    private final AtomicLong songsPurged = new AtomicLong();
+    private final AtomicLong postingsPurged = new AtomicLong();
+
+    public SongPurgeService(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            PostingRepository postingRepository,
+                            FingerprintIndexService indexService,
+                            FingerprintLookupService lookupService,
+                            ShardAssignment shard,
+                            MeterRegistry meterRegistry,
+                            AudioProperties props) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.postingRepository = postingRepository;
+        this.indexService = indexService;
+        this.lookupService = lookupService;
+        this.shard = shard;
+        this.config = props.getPostings();
+
+        Gauge.builder("beatlens.purge.pending", this, s -> s.pendingSongs)
+                .description("Deleted songs whose postings are still being purged")
+                .register(meterRegistry);
+        Gauge.builder("beatlens.purge.postings", this, s -> s.postingsPurged.get())
+                .description("Postings purged since startup")
+                .register(meterRegistry);
+    }
+
+    // ═══ Screening ═══
+
+    /**
+     * Wrap a lookup so that postings of deleted songs are dropped. Returns
+     * {@code delegate} unchanged while nothing is deleted.
+     */
+    public SongMatcher.FingerprintLookup screen(SongMatcher.FingerprintLookup delegate) {
+        RoaringBitmap d = deleted;
+        if (d.isEmpty()) return delegate;
+        return new SongMatcher.FingerprintLookup() {
+            @Override
+            public List<SongMatcher.FingerprintEntry> lookup(long hash) {
+                List<SongMatcher.FingerprintEntry> entries = delegate.lookup(hash);
+                return entries == null ? List.of() : entries.stream().filter(e -> !SongIds.contains(d, e.songId)).toList();
+            }
+
+            @Override
+            public void forEachPosting(long hash, SongMatcher.PostingConsumer consumer) {
+                delegate.forEachPosting(hash, (songId, timeOffset) -> {
+                    if (!SongIds.contains(d, songId)) consumer.accept(songId, timeOffset);
+                });
+            }
+
+            @Override
+            public void prefetch(long[] hashes) {
+                delegate.prefetch(hashes);
+            }
+        };
+    }
+
+    /** Same for coarse candidates, so deleted songs do not take candidate slots. */
+    public SongMatcher.CoarseLookup screenCoarse(SongMatcher.CoarseLookup delegate) {
+        RoaringBitmap d = deleted;
+        if (d.isEmpty()) return delegate;
+        return SongMatcher.CoarseLookup.of(coarseHash -> {
+            long[] songIds = delegate.lookupSongs(coarseHash);
+            if (songIds == null) return new long[0];
+            int n = 0;
+            long[] live = new long[songIds.length];
+            for (long songId : songIds) {
+                if (!SongIds.contains(d, songId)) live[n++] = songId;
+            }
+            return n == songIds.length ? songIds : Arrays.copyOf(live, n);
+        }, delegate::prefetch);
+    }
+
+    @TransactionalEventListener
+    public void onSongDeleted(SongDeletedEvent event) {
+        addDeleted(List.of(event.songId()));
+    }
+
+    private void addDeleted(List<Long> songIds) {
+        if (songIds.isEmpty()) return;
+        synchronized (deletedLock) {
+            RoaringBitmap next = deleted.clone();
+            // IDs beyond the indexable range never have postings to screen
+            songIds.stream().filter(SongIds::isValid).forEach(id -> next.add(SongIds.toInt(id)));
+            deleted = next;
+        }
+    }
+
+    // ═══ Purge ═══
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadTombstones() {
+        List<Long> pending = findTombstoned("");
+        addDeleted(pending);
+        if (!pending.isEmpty()) {
+            log.info("{} deleted songs are screened until purged", pending.size());
+        }
+    }
+
+    /**
+     * Purge every tombstoned song of this shard, oldest deletion first, on the
+     * service's own worker thread so a long purge does not hold up the other
+     * scheduled tasks. Also picks up songs tombstoned by other nodes for
+     * screening.
+     */
+    @Scheduled(fixedDelayString = "${beatlens.postings.purge-interval:10s}",
+            initialDelayString = "${beatlens.postings.purge-interval:10s}")
+    public void startPurge() {
+        if (!purging.compareAndSet(false, true)) return;
+        purgeExecutor.execute(this::purge);
+    }
+
+    void purge() {
+        try {
+            addDeleted(findTombstoned(""));
+            if (indexService.isReplica()) return;
+            List<Long> pending = findTombstoned(shard.sqlPredicate("AND", "id"));
+            pendingSongs = pending.size();
+            for (long songId : pending) {
+                purgeSong(songId);
+                pendingSongs--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Song purge stopped, resuming on the next run: {}", e.getMessage());
+        } finally {
+            currentSongId = null;
+            purging.set(false);
+        }
+    }
+
+    private void purgeSong(long songId) throws InterruptedException {
+        long started = System.nanoTime();
+        currentSongId = songId;
+        currentSongPostings.set(0);
+        long[] hashes;
+        while ((hashes = postingRepository.deleteBatchBySongId(songId, config.getPurgeBatchRows())).length > 0) {
+            lookupService.removeSong(songId, hashes);
+            currentSongPostings.addAndGet(hashes.length);
+            postingsPurged.addAndGet(hashes.length);
+            Thread.sleep(config.getPurgePause().toMillis());
+        }
+        // Deleting the row waits for a backfill batch that share-locked it; that
+        // batch may have copied postings, so sweep once more in the same transaction
+        tx.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM songs WHERE id = ? AND deleted_at IS NOT NULL", songId);
+            postingRepository.deleteBySongId(songId);
+        });
+        songsPurged.incrementAndGet();
+        log.info("Purged deleted song id={}: {} postings in {} ms",
+                songId, currentSongPostings.get(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /** Interrupt a running purge; it resumes with the current song on the next start. */
+    @PreDestroy
+    public void shutdown() {
+        purgeExecutor.shutdownNow();
+    }
+
+    private List<Long> findTombstoned(String predicate) {
+        List<Long> ids = new ArrayList<>();
+        jdbcTemplate.query("SELECT id FROM songs WHERE deleted_at IS NOT NULL" + predicate + " ORDER BY deleted_at",
+                (RowCallbackHandler) rs -> ids.add(rs.getLong(1)));
+        return ids;
+    }
+
+    public PurgeStatusDto getStatus() {
+        return new PurgeStatusDto(pendingSongs, currentSongId, currentSongPostings.get(),
+                songsPurged.get(), postingsPurged.get());
+    }
+}
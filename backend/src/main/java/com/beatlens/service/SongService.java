@@ -1,14 +1,15 @@
 package com.beatlens.service;
 
+import com.beatlens.event.SongDeletedEvent;
 import com.beatlens.exception.SongNotFoundException;
 import com.beatlens.model.Song;
 import com.beatlens.model.dto.SongDto;
 import com.beatlens.model.dto.StatsDto;
-import com.beatlens.repository.FingerprintRepository;
+import com.beatlens.repository.PostingRepository;
 import com.beatlens.repository.SongRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -23,15 +24,15 @@ public class SongService {
     private static final Logger log = LoggerFactory.getLogger(SongService.class);
 
     private final SongRepository songRepository;
-    private final FingerprintRepository fingerprintRepository;
-    private final FingerprintLookupService lookupService;
+    private final PostingRepository postingRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public SongService(SongRepository songRepository,
-                       FingerprintRepository fingerprintRepository,
-                       FingerprintLookupService lookupService) {
+                       PostingRepository postingRepository,
+                       ApplicationEventPublisher eventPublisher) {
         this.songRepository = songRepository;
-        this.fingerprintRepository = fingerprintRepository;
-        this.lookupService = lookupService;
+        this.postingRepository = postingRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     public List<SongDto> listAllSongs() {
@@ -56,20 +57,23 @@ public class SongService {
         return SongDto.from(song);
     }
 
+    /**
+     * Delete a song. Only its row is marked here; once this commits, matching
+     * screens out its postings, and {@link SongPurgeService} removes them in
+     * the background.
+     */
     @Transactional
     public void deleteSong(Long id) {
-        if (!songRepository.existsById(id)) {
+        if (songRepository.markDeleted(id) == 0) {
             throw new SongNotFoundException(id);
         }
-        fingerprintRepository.deleteBySongId(id);
-        songRepository.deleteById(id);
-        lookupService.invalidateCache();
-        log.info("Deleted song id={}", id);
+        eventPublisher.publishEvent(new SongDeletedEvent(id));
+        log.info("Deleted song id={}; postings are purged in the background", id);
     }
 
     public StatsDto getStats() {
         long totalSongs = songRepository.count();
-        long totalFingerprints = fingerprintRepository.count();
+        long totalFingerprints = postingRepository.count();
         Double avg = (totalSongs > 0) ? (double) totalFingerprints / totalSongs : null;
         return new StatsDto(totalSongs, totalFingerprints, avg);
     }
@@ -0,0 +1,15 @@
+-- V2: Coarse hash for drift-tolerant candidate retrieval.
+-- Must stay in sync with FingerprintGenerator.coarseHash():
+--   (freq1 >> 2) << 19 | (freq2 >> 2) << 9 | (timeDelta >> 1)
+
+ALTER TABLE fingerprints ADD COLUMN coarse_hash BIGINT;
+
+UPDATE fingerprints
+SET coarse_hash = (((hash >> 24) & 1023) << 19)
+                | (((hash >> 12) & 1023) << 9)
+                | ((hash >> 1) & 511);
+
+ALTER TABLE fingerprints ALTER COLUMN coarse_hash SET NOT NULL;
+
+-- (coarse_hash, song_id) so candidate retrieval is an index-only scan
+CREATE INDEX idx_fingerprints_coarse_hash ON fingerprints(coarse_hash, song_id);
@@ -0,0 +1,15 @@
+-- V3: Catalog and tags on songs, used to scope matching to a sub-catalog
+
+ALTER TABLE songs ADD COLUMN catalog VARCHAR(100);
+
+CREATE INDEX idx_songs_catalog ON songs(catalog);
+
+CREATE TABLE song_tags (
+    song_id     BIGINT NOT NULL,
+    tag         VARCHAR(100) NOT NULL,
+    PRIMARY KEY (song_id, tag),
+    CONSTRAINT fk_song_tags_song FOREIGN KEY (song_id) REFERENCES songs(id) ON DELETE CASCADE
+);
+
+-- Index on tag for compiling tag filters into song-ID sets
+CREATE INDEX idx_song_tags_tag ON song_tags(tag);
@@ -0,0 +1,94 @@
+-- V4: Compact posting storage.
+--
+-- A fingerprints row carries a BIGSERIAL id, BIGINT hash, coarse_hash and
+-- song_id and an INT offset, indexed three times: 40 bytes of data plus
+-- ~28 bytes of tuple overhead per posting before the indexes. postings keeps
+-- only (hash, INT song_id, INT offset) = 16 bytes of data:
+--   * no surrogate key; a posting is identified by its values
+--   * song_id as INT (2^31 songs is far beyond one catalog; the matcher packs
+--     song IDs into 32 bits anyway)
+--   * no coarse_hash: a coarse hash covers exactly 32 exact hashes, so coarse
+--     lookups become hash = ANY(...) probes of the hash index
+--   * hash-partitioned on hash, so each partition's indexes stay small and
+--     vacuum / reindex work per partition
+-- Both indexes hold long runs of equal keys, which B-tree deduplication
+-- (PostgreSQL 13+) stores once per leaf page.
+--
+-- Existing rows are copied online by PostingBackfillService, song range by
+-- song range, while the application keeps serving from fingerprints. The
+-- triggers below mirror writes to fingerprints (e.g. from nodes still on
+-- the previous version) into postings meanwhile. fingerprints is dropped by
+-- a later migration once every node reads postings.
+
+CREATE TABLE postings (
+    hash        BIGINT NOT NULL,
+    song_id     INT NOT NULL,
+    time_offset INT NOT NULL
+) PARTITION BY HASH (hash);
+
+CREATE TABLE postings_p0  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 0);
+CREATE TABLE postings_p1  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 1);
+CREATE TABLE postings_p2  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 2);
+CREATE TABLE postings_p3  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 3);
+CREATE TABLE postings_p4  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 4);
+CREATE TABLE postings_p5  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 5);
+CREATE TABLE postings_p6  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 6);
+CREATE TABLE postings_p7  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 7);
+CREATE TABLE postings_p8  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 8);
+CREATE TABLE postings_p9  PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 9);
+CREATE TABLE postings_p10 PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 10);
+CREATE TABLE postings_p11 PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 11);
+CREATE TABLE postings_p12 PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 12);
+CREATE TABLE postings_p13 PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 13);
+CREATE TABLE postings_p14 PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 14);
+CREATE TABLE postings_p15 PARTITION OF postings FOR VALUES WITH (MODULUS 16, REMAINDER 15);
+
+-- Lookups by hash (matching) and by song (deletes, catch-up, duplicate scan)
+CREATE INDEX idx_postings_hash ON postings(hash);
+CREATE INDEX idx_postings_song_id ON postings(song_id);
+
+-- ═══ Mirror writes to the old table until the backfill is done ═══
+
+CREATE FUNCTION mirror_fingerprint_inserts() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO postings (hash, song_id, time_offset)
+    SELECT hash, song_id, time_offset FROM inserted;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION mirror_fingerprint_deletes() RETURNS trigger AS $$
+BEGIN
+    DELETE FROM postings p USING (SELECT DISTINCT song_id FROM deleted) d
+    WHERE p.song_id = d.song_id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Statement-level with transition tables: one INSERT per COPY / batch, not per row
+CREATE TRIGGER trg_fingerprints_mirror_insert
+    AFTER INSERT ON fingerprints
+    REFERENCING NEW TABLE AS inserted
+    FOR EACH STATEMENT EXECUTE FUNCTION mirror_fingerprint_inserts();
+
+CREATE TRIGGER trg_fingerprints_mirror_delete
+    AFTER DELETE ON fingerprints
+    REFERENCING OLD TABLE AS deleted
+    FOR EACH STATEMENT EXECUTE FUNCTION mirror_fingerprint_deletes();
+
+-- ═══ Backfill progress ═══
+-- Creating the triggers waited for in-flight writes to fingerprints, so every
+-- song written before them has an ID <= watermark. Songs above it arrive
+-- through the triggers. A fresh database has nothing to copy.
+
+CREATE TABLE postings_backfill (
+    id              INT PRIMARY KEY CHECK (id = 1),
+    watermark       BIGINT NOT NULL,
+    last_song_id    BIGINT NOT NULL DEFAULT 0,
+    done            BOOLEAN NOT NULL,
+    updated_at      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO postings_backfill (id, watermark, done)
+SELECT 1, COALESCE(MAX(song_id), 0), COUNT(*) = 0
+FROM (SELECT song_id FROM fingerprints ORDER BY song_id DESC LIMIT 1) latest;
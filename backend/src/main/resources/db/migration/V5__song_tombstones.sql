@@ -0,0 +1,10 @@
+-- V5: Tombstoned song deletion
+--
+-- Deleting a song only sets deleted_at; matching screens its postings out
+-- at once and SongPurgeService removes them in small batches afterwards,
+-- deleting the songs row last.
+
+ALTER TABLE songs ADD COLUMN deleted_at TIMESTAMP;
+
+-- The purger's work queue: only tombstoned songs are indexed
+CREATE INDEX idx_songs_deleted_at ON songs(deleted_at) WHERE deleted_at IS NOT NULL;
@@ -0,0 +1,12 @@
+-- V6: Switch writes to postings only after every node reads it
+--
+-- Nodes notice the end of the backfill independently, each within
+-- PostingRepository's recheck interval. Writes stay on fingerprints, whose
+-- V4 triggers mirror them into postings, until a grace period after done_at
+-- has passed, so a node still reading fingerprints never misses a song
+-- indexed by a node that already reads postings. timestamptz keeps the
+-- comparison independent of each node's session time zone.
+
+ALTER TABLE postings_backfill ADD COLUMN done_at TIMESTAMPTZ;
+
+UPDATE postings_backfill SET done_at = now() WHERE done;
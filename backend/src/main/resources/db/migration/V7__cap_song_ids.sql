@@ -0,0 +1,9 @@
+-- V7: Keep song IDs within what postings can hold
+--
+-- postings.song_id is INT (V4) and the matcher packs song IDs into 32 bits,
+-- so IDs stop at 2^31 - 1 (SongIds.MAX). Capping the sequence makes the
+-- songs insert fail at the limit instead of creating a song that indexing
+-- would have to reject. The catalog is nowhere near it; should the sequence
+-- already be past the cap, this migration fails rather than hide it.
+
+ALTER SEQUENCE songs_id_seq MAXVALUE 2147483647;
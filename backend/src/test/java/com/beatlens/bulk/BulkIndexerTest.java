@@ -0,0 +1,39 @@
+package com.beatlens.bulk;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkIndexerTest {
+
+    @Test
+    void options_parseFlagsAndDefaults() {
+        BulkIndexer.Options options = BulkIndexer.Options.parse(new String[]{
+                "/music", "--out=/tmp/out", "--threads=3", "--first-id=1000",
+                "--catalog=backlist", "--tags= live, demo ,", "--segments"});
+
+        assertEquals(Path.of("/music"), options.input());
+        assertEquals(Path.of("/tmp/out"), options.output());
+        assertEquals(3, options.threads());
+        assertEquals(1000, options.firstId());
+        assertEquals("backlist", options.catalog());
+        assertEquals(Set.of("live", "demo"), options.tags());
+        assertTrue(options.segments());
+        assertNull(options.config());
+    }
+
+    @Test
+    void options_rejectMissingInputAndUnknownFlags() {
+        assertThrows(IllegalArgumentException.class, () -> BulkIndexer.Options.parse(new String[]{"--out=x"}));
+        assertThrows(IllegalArgumentException.class, () -> BulkIndexer.Options.parse(new String[]{"/music", "--bogus"}));
+        assertThrows(IllegalArgumentException.class, () -> BulkIndexer.Options.parse(new String[]{"/music", "--threads=0"}));
+    }
+
+    @Test
+    void loadProperties_bindsBundledConfiguration() throws Exception {
+        assertNotNull(BulkIndexer.loadProperties(null).getIndex());
+    }
+}
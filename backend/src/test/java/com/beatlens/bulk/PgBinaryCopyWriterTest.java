@@ -0,0 +1,79 @@
+package com.beatlens.bulk;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PgBinaryCopyWriterTest {
+
+    private static DataInputStream written(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static void skipHeader(DataInputStream in) throws IOException {
+        in.skipNBytes(11 + 4 + 4);
+    }
+
+    @Test
+    void emptyFile_isHeaderAndTrailer() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new PgBinaryCopyWriter(bytes).close();
+
+        DataInputStream in = written(bytes);
+        byte[] signature = in.readNBytes(11);
+        assertArrayEquals(new byte[]{'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0}, signature);
+        assertEquals(0, in.readInt(), "flags");
+        assertEquals(0, in.readInt(), "extension length");
+        assertEquals(-1, in.readShort(), "trailer");
+        assertEquals(-1, in.read(), "nothing after the trailer");
+    }
+
+    @Test
+    void row_writesLengthPrefixedBigEndianFields() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PgBinaryCopyWriter writer = new PgBinaryCopyWriter(bytes)) {
+            writer.startRow(5).writeLong(42).writeInt(-7).writeDouble(1.5).writeText("Ünïcode").writeNull();
+            assertEquals(1, writer.getRowCount());
+        }
+
+        DataInputStream in = written(bytes);
+        skipHeader(in);
+        assertEquals(5, in.readShort());
+        assertEquals(8, in.readInt());
+        assertEquals(42, in.readLong());
+        assertEquals(4, in.readInt());
+        assertEquals(-7, in.readInt());
+        assertEquals(8, in.readInt());
+        assertEquals(1.5, in.readDouble());
+        byte[] utf8 = "Ünïcode".getBytes(StandardCharsets.UTF_8);
+        assertEquals(utf8.length, in.readInt());
+        assertArrayEquals(utf8, in.readNBytes(utf8.length));
+        assertEquals(-1, in.readInt(), "NULL");
+        assertEquals(-1, in.readShort(), "trailer");
+    }
+
+    @Test
+    void timestamp_isMicrosecondsSince2000() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PgBinaryCopyWriter writer = new PgBinaryCopyWriter(bytes)) {
+            writer.startRow(2)
+                    .writeTimestamp(LocalDateTime.of(2000, 1, 1, 0, 0, 1, 500_000))
+                    .writeTimestamp(LocalDateTime.of(1999, 12, 31, 23, 59, 59));
+        }
+
+        DataInputStream in = written(bytes);
+        skipHeader(in);
+        in.readShort();
+        assertEquals(8, in.readInt());
+        assertEquals(1_000_500, in.readLong());
+        assertEquals(8, in.readInt());
+        assertEquals(-1_000_000, in.readLong());
+    }
+}
@@ -0,0 +1,46 @@
+package com.beatlens.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineTest {
+
+    @Test
+    void none_neverExpires() {
+        assertFalse(Deadline.NONE.isBounded());
+        assertFalse(Deadline.NONE.isExpired());
+        assertEquals(Long.MAX_VALUE, Deadline.NONE.remainingMillis());
+        assertDoesNotThrow(() -> Deadline.NONE.check("test"));
+    }
+
+    @Test
+    void after_futureBudget_notExpired() {
+        Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+        assertTrue(deadline.isBounded());
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.remainingMillis() > 0);
+    }
+
+    @Test
+    void after_zeroBudget_expiredAndChecks() {
+        Deadline deadline = Deadline.after(Duration.ZERO);
+        assertTrue(deadline.isExpired());
+        assertEquals(0, deadline.remainingMillis());
+        Deadline.ExceededException ex = assertThrows(Deadline.ExceededException.class,
+                () -> deadline.check("decode"));
+        assertTrue(ex.getMessage().contains("decode"));
+    }
+
+    @Test
+    void after_hugeBudget_saturatesInsteadOfOverflowing() {
+        Deadline deadline = Deadline.after(Duration.ofMillis(Long.MAX_VALUE));
+        assertTrue(deadline.isBounded());
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.remainingMillis() > Duration.ofDays(365 * 100).toMillis());
+
+        assertFalse(Deadline.after(Deadline.MAX_BUDGET.plusNanos(1)).isExpired());
+    }
+}
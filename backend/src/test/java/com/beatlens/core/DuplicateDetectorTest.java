@@ -0,0 +1,93 @@
+package com.beatlens.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateDetectorTest {
+
+    private final Map<Long, List<SongMatcher.FingerprintEntry>> postings = new HashMap<>();
+    private final Map<Long, List<FingerprintGenerator.Fingerprint>> songs = new HashMap<>();
+    private final SongMatcher.FingerprintLookup lookup = hash -> postings.getOrDefault(hash, List.of());
+
+    private final DuplicateDetector detector = new DuplicateDetector(
+            new SongMatcher(3, 5, 0.0), 2, 0.2, 0.5);
+
+    private void add(long songId, long[] hashes, int from, int to, int shift) {
+        List<FingerprintGenerator.Fingerprint> fps = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            int anchor = i * 4 + shift;
+            fps.add(FingerprintGenerator.Fingerprint.fromHash(hashes[i], anchor));
+            postings.computeIfAbsent(hashes[i], h -> new ArrayList<>())
+                    .add(new SongMatcher.FingerprintEntry(songId, anchor));
+        }
+        songs.put(songId, fps);
+    }
+
+    private static long[] randomHashes(long seed, int count) {
+        Random random = new Random(seed);
+        long[] hashes = new long[count];
+        for (int i = 0; i < count; i++) hashes[i] = random.nextLong() & ((1L << 34) - 1); // 12 + 12 + 10 bits
+        return hashes;
+    }
+
+    private List<DuplicateDetector.Pair> scan() {
+        List<DuplicateDetector.Pair> pairs = new ArrayList<>();
+        for (long songId : new TreeSet<>(songs.keySet())) {
+            pairs.addAll(detector.findPairs(songId, detector.sample(songs.get(songId)), lookup, 4,
+                    id -> songs.get(id).size()));
+        }
+        return pairs;
+    }
+
+    @Test
+    void sample_isConsistentPerHash() {
+        long[] hashes = randomHashes(1, 1000);
+        int kept = 0;
+        for (long hash : hashes) {
+            assertEquals(detector.sampled(hash), detector.sampled(hash));
+            if (detector.sampled(hash)) kept++;
+        }
+        assertTrue(kept > 400 && kept < 600, "about half kept at rate 2, got " + kept);
+    }
+
+    @Test
+    void findPairs_classifiesDuplicatesExcerptsAndIgnoresUnrelated() {
+        long[] master = randomHashes(7, 400);
+        add(1, master, 0, 400, 0);          // master
+        add(2, master, 0, 400, 40);         // re-upload with leading silence
+        add(3, master, 100, 200, 0);        // excerpt
+        add(4, randomHashes(9, 400), 0, 400, 0);
+
+        List<DuplicateDetector.Pair> pairs = scan();
+
+        DuplicateDetector.Pair dup = pairs.stream().filter(p -> p.songA() == 1 && p.songB() == 2).findFirst().orElseThrow();
+        assertEquals(DuplicateDetector.Kind.DUPLICATE, dup.kind());
+        assertTrue(dup.coverageA() > 0.9 && dup.coverageB() > 0.9);
+
+        DuplicateDetector.Pair excerpt = pairs.stream().filter(p -> p.songA() == 1 && p.songB() == 3).findFirst().orElseThrow();
+        assertEquals(DuplicateDetector.Kind.CONTAINED, excerpt.kind());
+
+        assertTrue(pairs.stream().noneMatch(p -> p.songA() == p.songB()), "a song never matches itself");
+        assertTrue(pairs.stream().allMatch(p -> p.songA() < p.songB()), "each pair is reported once");
+        assertTrue(pairs.stream().noneMatch(p -> p.songA() == 4 || p.songB() == 4));
+    }
+
+    @Test
+    void plan_keepsSongWithMostFingerprintsPerCluster() {
+        List<DuplicateDetector.Pair> pairs = List.of(
+                new DuplicateDetector.Pair(1, 2, DuplicateDetector.Kind.DUPLICATE, 50, 1, 1, 0, 50),
+                new DuplicateDetector.Pair(2, 5, DuplicateDetector.Kind.DUPLICATE, 50, 1, 1, 0, 50),
+                new DuplicateDetector.Pair(3, 4, DuplicateDetector.Kind.DUPLICATE, 50, 1, 1, 0, 50),
+                new DuplicateDetector.Pair(1, 6, DuplicateDetector.Kind.CONTAINED, 50, 1, 0.3, 0, 50));
+        Map<Long, Integer> counts = Map.of(1L, 100, 2L, 100, 3L, 50, 4L, 80, 5L, 120, 6L, 500);
+
+        List<DuplicateDetector.MergeGroup> plan = DuplicateDetector.plan(pairs, id -> counts.get(id));
+
+        assertEquals(List.of(
+                new DuplicateDetector.MergeGroup(4, List.of(3L)),
+                new DuplicateDetector.MergeGroup(5, List.of(1L, 2L))), plan);
+    }
+}
@@ -64,4 +64,48 @@ class FingerprintGeneratorTest {
         List<FingerprintGenerator.Fingerprint> fingerprints = generator.generateFingerprints(peaks);
         assertTrue(fingerprints.isEmpty(), "Peaks beyond MAX_TIME_DELTA should not be paired");
     }
+
+    @Test
+    void coarseHash_toleratesOneBinDrift() {
+        FingerprintGenerator.Fingerprint original = new FingerprintGenerator.Fingerprint(400, 800, 20, 0);
+        FingerprintGenerator.Fingerprint drifted = new FingerprintGenerator.Fingerprint(401, 802, 21, 0);
+
+        assertNotEquals(original.hash, drifted.hash);
+        assertEquals(original.coarseHash, drifted.coarseHash);
+    }
+
+    @Test
+    void coarseHash_isDerivedFromExactHash() {
+        FingerprintGenerator.Fingerprint fp = new FingerprintGenerator.Fingerprint(2000, 1500, 100, 0);
+
+        long expected = ((long) (2000 >> 2) << 19) | ((long) (1500 >> 2) << 9) | (100 >> 1);
+        assertEquals(expected, fp.coarseHash);
+        assertEquals(fp.coarseHash, FingerprintGenerator.coarseHash(fp.hash));
+    }
+
+    @Test
+    void fromHash_rebuildsTheSameFingerprint() {
+        FingerprintGenerator.Fingerprint fp = new FingerprintGenerator.Fingerprint(2000, 1500, 100, 42);
+        FingerprintGenerator.Fingerprint copy = FingerprintGenerator.Fingerprint.fromHash(fp.hash, 42);
+
+        assertEquals(fp.hash, copy.hash);
+        assertEquals(fp.coarseHash, copy.coarseHash);
+        assertEquals(2000, copy.freq1);
+        assertEquals(1500, copy.freq2);
+        assertEquals(100, copy.timeDelta);
+        assertEquals(42, copy.anchorTime);
+    }
+
+    @Test
+    void exactHashes_areExactlyTheHashesWithThatCoarseHash() {
+        FingerprintGenerator.Fingerprint fp = new FingerprintGenerator.Fingerprint(2001, 1502, 101, 0);
+        long[] hashes = FingerprintGenerator.exactHashes(fp.coarseHash);
+
+        assertEquals(32, hashes.length);
+        assertTrue(Arrays.stream(hashes).anyMatch(h -> h == fp.hash));
+        for (int i = 0; i < hashes.length; i++) {
+            assertEquals(fp.coarseHash, FingerprintGenerator.coarseHash(hashes[i]));
+            if (i > 0) assertTrue(hashes[i] > hashes[i - 1], "ascending and distinct");
+        }
+    }
 }
@@ -0,0 +1,169 @@
+package com.beatlens.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentMatcherTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final SegmentMatcher segmentMatcher = new SegmentMatcher(new SongMatcher(), 100, 50, 3);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void matchSegments_twoSongsBackToBack() {
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+        twoSongs(query, db);
+
+        List<SegmentMatcher.MatchSegment> segments =
+                segmentMatcher.matchSegments(query, hash -> db.getOrDefault(hash, List.of()), executor);
+
+        assertEquals(2, segments.size());
+        assertEquals(1, segments.get(0).getSongId());
+        assertEquals(2, segments.get(1).getSongId());
+        assertEquals(0.0, segments.get(0).getStartSeconds(), 1e-9);
+        assertTrue(segments.get(0).getEndSeconds() <= segments.get(1).getStartSeconds());
+        assertEquals(1000 * AudioConstants.TIME_RESOLUTION,
+                segments.get(0).getSongOffsetSeconds(), 3 * AudioConstants.TIME_RESOLUTION);
+    }
+
+    @Test
+    void matchSegments_songThenSilence_keepsTheSongsTail() {
+        // Song 1 is dense up to frame 300 and sparse until 340 (too sparse for a window
+        // of its own to match); unmatched noise follows until frame 600
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+        for (int anchor = 0; anchor < 600; anchor += 2) {
+            boolean song = anchor < 300 || anchor == 310 || anchor == 330;
+            FingerprintGenerator.Fingerprint fp = song
+                    ? new FingerprintGenerator.Fingerprint(anchor % 1000, (anchor * 7) % 1000, 10 + anchor % 50, anchor)
+                    : new FingerprintGenerator.Fingerprint(anchor % 1000, 999, 77, anchor);
+            query.add(fp);
+            if (song) db.put(fp.hash, List.of(new SongMatcher.FingerprintEntry(1, anchor + 1000)));
+        }
+
+        List<SegmentMatcher.MatchSegment> segments =
+                segmentMatcher.matchSegments(query, hash -> db.getOrDefault(hash, List.of()), executor);
+
+        assertEquals(1, segments.size());
+        assertEquals(1, segments.get(0).getSongId());
+        // Nothing competes for the last matching window [250, 350), so none of it is cut off
+        assertEquals(350 * AudioConstants.TIME_RESOLUTION, segments.get(0).getEndSeconds(), 1e-9);
+    }
+
+    @Test
+    void matchSegments_looksUpEachHashOnce() {
+        // The same 20 hashes repeat throughout the query
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        for (int anchor = 0; anchor < 400; anchor++) {
+            query.add(new FingerprintGenerator.Fingerprint(100 + anchor % 20, 200, 10, anchor));
+        }
+
+        AtomicInteger lookups = new AtomicInteger();
+        segmentMatcher.matchSegments(query, hash -> {
+            lookups.incrementAndGet();
+            return List.of();
+        }, executor);
+
+        assertEquals(20, lookups.get());
+    }
+
+    @Test
+    void matchSegmentsDetailed_deadlineStopsLookupsAndReportsPartial() {
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+        twoSongs(query, db);
+
+        // The 150th distinct hash (the last one of song 1) exhausts the whole budget
+        Deadline deadline = Deadline.after(java.time.Duration.ofSeconds(1));
+        AtomicInteger calls = new AtomicInteger();
+        SongMatcher.FingerprintLookup lookup = hash -> {
+            if (calls.incrementAndGet() == 150) {
+                while (!deadline.isExpired()) {
+                    Thread.onSpinWait();
+                }
+            }
+            return db.getOrDefault(hash, List.of());
+        };
+
+        SegmentMatcher.SegmentOutcome outcome = segmentMatcher.matchSegmentsDetailed(
+                query, lookup, SongMatcher.MatchOptions.DEFAULT.withDeadline(deadline), executor);
+
+        assertTrue(outcome.partial());
+        assertEquals(0.5, outcome.hashCoverage(), 1e-9);
+        assertEquals(150, calls.get());
+        assertEquals(List.of(1L), outcome.segments().stream().map(SegmentMatcher.MatchSegment::getSongId).toList());
+    }
+
+    @Test
+    void matchSegmentsDetailed_songFilter_appliesToEveryWindow() {
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+        twoSongs(query, db);
+
+        SegmentMatcher.SegmentOutcome outcome = segmentMatcher.matchSegmentsDetailed(
+                query, hash -> db.getOrDefault(hash, List.of()),
+                SongMatcher.MatchOptions.DEFAULT.withSongFilter(SongFilter.of(2)), executor);
+
+        assertFalse(outcome.partial());
+        assertEquals(1.0, outcome.hashCoverage(), 1e-9);
+        assertEquals(List.of(2L), outcome.segments().stream().map(SegmentMatcher.MatchSegment::getSongId).toList());
+    }
+
+    @Test
+    void matchSegmentsDetailed_coarseLookup_isAskedOncePerCoarseHash() {
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+        twoSongs(query, db);
+        long distinctCoarse = query.stream().mapToLong(fp -> fp.coarseHash).distinct().count();
+
+        Map<Long, AtomicInteger> coarseCalls = new java.util.concurrent.ConcurrentHashMap<>();
+        SongMatcher.CoarseLookup coarse = coarseHash -> {
+            coarseCalls.computeIfAbsent(coarseHash, h -> new AtomicInteger()).incrementAndGet();
+            return new long[]{1, 2};
+        };
+
+        SegmentMatcher.SegmentOutcome outcome = segmentMatcher.matchSegmentsDetailed(
+                query, hash -> db.getOrDefault(hash, List.of()),
+                SongMatcher.MatchOptions.DEFAULT.withCoarseLookup(coarse), executor);
+
+        assertEquals(2, outcome.segments().size());
+        assertEquals(distinctCoarse, coarseCalls.size());
+        assertTrue(coarseCalls.values().stream().allMatch(c -> c.get() == 1), "overlapping windows share answers");
+    }
+
+    @Test
+    void matchSegments_emptyQuery_returnsEmpty() {
+        assertTrue(segmentMatcher.matchSegments(List.of(), hash -> List.of(), executor).isEmpty());
+    }
+
+    @Test
+    void constructor_rejectsHopLargerThanWindow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SegmentMatcher(new SongMatcher(), 10, 20, 3));
+    }
+
+    /** Frames 0-299 play song 1 from frame 1000, frames 300-599 play song 2 from frame 50. */
+    private static void twoSongs(List<FingerprintGenerator.Fingerprint> query,
+                                 Map<Long, List<SongMatcher.FingerprintEntry>> db) {
+        for (int anchor = 0; anchor < 600; anchor += 2) {
+            FingerprintGenerator.Fingerprint fp = new FingerprintGenerator.Fingerprint(
+                    anchor % 2000, (anchor * 7) % 2000, 10 + anchor % 50, anchor);
+            query.add(fp);
+            long songId = anchor < 300 ? 1 : 2;
+            int songOffset = anchor < 300 ? anchor + 1000 : anchor - 300 + 50;
+            db.put(fp.hash, List.of(new SongMatcher.FingerprintEntry(songId, songOffset)));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.beatlens.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardAssignmentTest {
+
+    @Test
+    void everySongHasExactlyOneOwner() {
+        ShardAssignment[] shards = {
+                new ShardAssignment(3, 0), new ShardAssignment(3, 1), new ShardAssignment(3, 2)};
+        for (long songId = 0; songId < 100; songId++) {
+            int owners = 0;
+            for (ShardAssignment shard : shards) {
+                if (shard.owns(songId)) owners++;
+            }
+            assertEquals(1, owners, "song " + songId);
+            assertTrue(shards[shards[0].shardOf(songId)].owns(songId));
+        }
+    }
+
+    @Test
+    void single_ownsEverythingAndAddsNoSql() {
+        assertFalse(ShardAssignment.SINGLE.isSharded());
+        assertTrue(ShardAssignment.SINGLE.owns(12345));
+        assertEquals("", ShardAssignment.SINGLE.sqlPredicate("WHERE", "song_id"));
+        assertEquals(" WHERE MOD(song_id, 4) = 1", new ShardAssignment(4, 1).sqlPredicate("WHERE", "song_id"));
+    }
+
+    @Test
+    void restrict_dropsPostingsOfOtherShards() {
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = Map.of(7L, List.of(
+                new SongMatcher.FingerprintEntry(1, 10),
+                new SongMatcher.FingerprintEntry(2, 20),
+                new SongMatcher.FingerprintEntry(3, 30)));
+        SongMatcher.FingerprintLookup restricted = new ShardAssignment(2, 1).restrict(db::get);
+
+        assertEquals(List.of(1L, 3L), restricted.lookup(7).stream().map(e -> e.songId).toList());
+        List<Long> visited = new ArrayList<>();
+        restricted.forEachPosting(7, (songId, offset) -> visited.add(songId));
+        assertEquals(List.of(1L, 3L), visited);
+    }
+
+    @Test
+    void rejectsIndexOutsideCount() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardAssignment(2, 2));
+        assertThrows(IllegalArgumentException.class, () -> new ShardAssignment(0, 0));
+    }
+}
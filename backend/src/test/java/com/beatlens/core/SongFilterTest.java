@@ -0,0 +1,58 @@
+package com.beatlens.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongFilterTest {
+
+    @Test
+    void all_allowsEverySong() {
+        assertTrue(SongFilter.ALL.allows(1));
+        assertTrue(SongFilter.ALL.allows(Long.MAX_VALUE));
+        assertTrue(SongFilter.ALL.isUnrestricted());
+        assertFalse(SongFilter.ALL.isEmpty());
+    }
+
+    @Test
+    void of_allowsOnlyListedSongs() {
+        SongFilter filter = SongFilter.of(3, 5, SongIds.MAX);
+
+        assertTrue(filter.allows(3));
+        assertTrue(filter.allows(SongIds.MAX));
+        assertFalse(filter.allows(4));
+        assertFalse(filter.allows(-1));
+        assertEquals(3, filter.cardinality());
+    }
+
+    @Test
+    void and_intersects() {
+        SongFilter a = SongFilter.of(List.of(1L, 2L, 3L));
+        SongFilter b = SongFilter.of(2, 3, 4);
+
+        SongFilter both = a.and(b);
+        assertEquals(2, both.cardinality());
+        assertTrue(both.allows(2));
+        assertFalse(both.allows(1));
+        assertSame(a, a.and(SongFilter.ALL));
+        assertTrue(SongFilter.of(1).and(SongFilter.of(2)).isEmpty());
+    }
+
+    @Test
+    void of_rejectsIdsBeyondTheIndexableRange() {
+        assertThrows(IllegalArgumentException.class, () -> SongFilter.of(1L << 33));
+        assertThrows(IllegalArgumentException.class, () -> SongFilter.of(SongIds.MAX + 1));
+        assertFalse(SongFilter.of(5).allows((1L << 32) + 5), "no aliasing onto the low 32 bits");
+    }
+
+    @Test
+    void denseRange_compressesWell() {
+        long[] ids = new long[100_000];
+        for (int i = 0; i < ids.length; i++) ids[i] = i + 1;
+
+        SongFilter filter = SongFilter.of(ids);
+        assertTrue(filter.sizeInBytes() < 1_000, "run-length encoded range should be tiny");
+    }
+}
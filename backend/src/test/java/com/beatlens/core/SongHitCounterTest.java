@@ -0,0 +1,49 @@
+package com.beatlens.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SongHitCounterTest {
+
+    @Test
+    void increment_countsPerSong() {
+        SongHitCounter counter = new SongHitCounter(4);
+        counter.increment(7);
+        counter.increment(7);
+        counter.increment(42);
+
+        assertEquals(2, counter.get(7));
+        assertEquals(1, counter.get(42));
+        assertEquals(0, counter.get(99));
+        assertEquals(2, counter.size());
+        assertEquals(2, counter.maxCount());
+    }
+
+    @Test
+    void increment_growsPastInitialCapacity() {
+        SongHitCounter counter = new SongHitCounter(2);
+        for (long songId = 1; songId <= 10_000; songId++) {
+            for (int i = 0; i < songId % 5; i++) {
+                counter.increment(songId);
+            }
+        }
+
+        assertEquals(8000, counter.size()); // songId % 5 == 0 never incremented
+        assertEquals(4, counter.get(4));
+        assertEquals(3, counter.get(9_998));
+    }
+
+    @Test
+    void top_returnsBestFirstAndRespectsMinCount() {
+        SongHitCounter counter = new SongHitCounter();
+        for (int i = 0; i < 10; i++) counter.increment(1);
+        for (int i = 0; i < 30; i++) counter.increment(2);
+        for (int i = 0; i < 20; i++) counter.increment(3);
+        counter.increment(4);
+
+        assertArrayEquals(new long[]{2, 3}, counter.top(2, 1));
+        assertArrayEquals(new long[]{2, 3, 1}, counter.top(10, 5));
+        assertEquals(0, counter.top(0, 1).length);
+    }
+}
@@ -58,4 +58,230 @@ class SongMatcherTest {
         List<SongMatcher.MatchResult> results = matcher.match(List.of(), lookup);
         assertTrue(results.isEmpty());
     }
+
+    @Test
+    void match_shortlistDropsNoiseSongs() {
+        // Song 1 aligns perfectly; 500 noise songs each share a single hash
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+
+        for (int i = 0; i < 50; i++) {
+            int anchorTime = i * 5;
+            query.add(new FingerprintGenerator.Fingerprint(100 + i, 200 + i, 10, anchorTime));
+
+            List<SongMatcher.FingerprintEntry> entries = new ArrayList<>();
+            entries.add(new SongMatcher.FingerprintEntry(1, anchorTime + 100));
+            for (int n = 0; n < 10; n++) {
+                entries.add(new SongMatcher.FingerprintEntry(1000 + i * 10 + n, n * 37));
+            }
+            db.put(query.get(i).hash, entries);
+        }
+
+        SongMatcher.FingerprintLookup lookup = hash -> db.getOrDefault(hash, List.of());
+        List<SongMatcher.MatchResult> results = matcher.match(query, lookup);
+
+        assertEquals(1, results.size());
+        assertEquals(1, results.get(0).getSongId());
+        assertEquals(50, results.get(0).getAlignedMatches());
+    }
+
+    @Test
+    void match_maxCandidatesLimitsScoredSongs() {
+        // Three songs align equally well, but only two candidates are allowed
+        SongMatcher narrow = new SongMatcher(3, 3, 5.0, 2, 0.0);
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+
+        for (int i = 0; i < 40; i++) {
+            int anchorTime = i * 5;
+            query.add(new FingerprintGenerator.Fingerprint(100 + i, 200 + i, 10, anchorTime));
+            List<SongMatcher.FingerprintEntry> entries = new ArrayList<>();
+            entries.add(new SongMatcher.FingerprintEntry(1, anchorTime + 10));
+            entries.add(new SongMatcher.FingerprintEntry(2, anchorTime + 20));
+            if (i < 30) {
+                entries.add(new SongMatcher.FingerprintEntry(3, anchorTime + 30));
+            }
+            db.put(query.get(i).hash, entries);
+        }
+
+        List<SongMatcher.MatchResult> results = narrow.match(query, hash -> db.getOrDefault(hash, List.of()));
+
+        assertEquals(2, results.size());
+        assertTrue(results.stream().noneMatch(r -> r.getSongId() == 3));
+    }
+
+    @Test
+    void match_coarseLookupRestrictsCandidates() {
+        // Songs 1 and 2 align equally well on exact hashes, but coarse
+        // retrieval only knows about song 2
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+
+        for (int i = 0; i < 40; i++) {
+            int anchorTime = i * 5;
+            query.add(new FingerprintGenerator.Fingerprint(100 + i * 8, 300, 10, anchorTime));
+            db.put(query.get(i).hash, List.of(
+                    new SongMatcher.FingerprintEntry(1, anchorTime + 10),
+                    new SongMatcher.FingerprintEntry(2, anchorTime + 20)));
+        }
+
+        SongMatcher.MatchOptions options = SongMatcher.MatchOptions.DEFAULT
+                .withCoarseLookup(coarseHash -> new long[]{2});
+        List<SongMatcher.MatchResult> results =
+                matcher.match(query, hash -> db.getOrDefault(hash, List.of()), options);
+
+        assertEquals(1, results.size());
+        assertEquals(2, results.get(0).getSongId());
+    }
+
+    @Test
+    void match_coarseRetrieval_prefetchesOnceAndSkipsBucketsWithoutShortlistedSongs() {
+        // Song 1 aligns on the first 40 fingerprints; the last 2 fall into
+        // coarse buckets that only song 9 shares, too few to shortlist it
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+        Set<Long> noiseBuckets = new HashSet<>();
+        for (int i = 0; i < 42; i++) {
+            int anchorTime = i * 5;
+            FingerprintGenerator.Fingerprint fp = i < 40
+                    ? new FingerprintGenerator.Fingerprint(100 + i * 8, 300, 10, anchorTime)
+                    : new FingerprintGenerator.Fingerprint(100 + i * 8, 700, 40, anchorTime);
+            query.add(fp);
+            if (i < 40) db.put(fp.hash, List.of(new SongMatcher.FingerprintEntry(1, anchorTime + 10)));
+            else noiseBuckets.add(fp.coarseHash);
+        }
+        List<long[]> coarsePrefetches = new ArrayList<>();
+        SongMatcher.CoarseLookup coarse = SongMatcher.CoarseLookup.of(
+                coarseHash -> noiseBuckets.contains(coarseHash) ? new long[]{9} : new long[]{1},
+                coarsePrefetches::add);
+        Set<Long> looked = new HashSet<>();
+        List<long[]> prefetches = new ArrayList<>();
+        SongMatcher.FingerprintLookup lookup = new SongMatcher.FingerprintLookup() {
+            @Override
+            public List<SongMatcher.FingerprintEntry> lookup(long hash) {
+                looked.add(hash);
+                return db.getOrDefault(hash, List.of());
+            }
+
+            @Override
+            public void prefetch(long[] hashes) {
+                prefetches.add(hashes);
+            }
+        };
+
+        List<SongMatcher.MatchResult> results = matcher.match(query, lookup,
+                SongMatcher.MatchOptions.DEFAULT.withCoarseLookup(coarse));
+
+        assertEquals(List.of(1L), results.stream().map(SongMatcher.MatchResult::getSongId).toList());
+        assertEquals(1, coarsePrefetches.size());
+        assertArrayEquals(query.stream().mapToLong(fp -> fp.coarseHash).sorted().distinct().toArray(),
+                coarsePrefetches.get(0));
+        assertEquals(40, looked.size(), "noise hashes are never looked up");
+        assertEquals(40, prefetches.get(0).length);
+        assertTrue(query.subList(40, 42).stream().noneMatch(fp -> looked.contains(fp.hash)));
+    }
+
+    @Test
+    void match_songIdsBeyondTheIndexableRange_areSkippedNotFatal() {
+        long outOfRange = SongIds.MAX + 5;
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            int anchorTime = i * 5;
+            query.add(new FingerprintGenerator.Fingerprint(100 + i * 8, 300, 10, anchorTime));
+            db.put(query.get(i).hash, List.of(
+                    new SongMatcher.FingerprintEntry(1, anchorTime + 10),
+                    new SongMatcher.FingerprintEntry(outOfRange, anchorTime + 20)));
+        }
+        SongMatcher.FingerprintLookup lookup = hash -> db.getOrDefault(hash, List.of());
+
+        List<SongMatcher.MatchResult> exact = matcher.match(query, lookup);
+        List<SongMatcher.MatchResult> coarse = matcher.match(query, lookup, SongMatcher.MatchOptions.DEFAULT
+                .withCoarseLookup(coarseHash -> new long[]{1, outOfRange}));
+
+        assertEquals(List.of(1L), exact.stream().map(SongMatcher.MatchResult::getSongId).toList());
+        assertEquals(List.of(1L), coarse.stream().map(SongMatcher.MatchResult::getSongId).toList());
+    }
+
+    @Test
+    void matchDetailed_deadlineStopsLookupsAndScoresPartialVotes() {
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            int anchorTime = i * 5;
+            query.add(new FingerprintGenerator.Fingerprint(100 + i, 200 + i, 10, anchorTime));
+            db.put(query.get(i).hash, List.of(new SongMatcher.FingerprintEntry(1, anchorTime + 100)));
+        }
+
+        // The 30th lookup is slow enough to exhaust the whole budget
+        Deadline deadline = Deadline.after(java.time.Duration.ofSeconds(1));
+        int[] calls = {0};
+        SongMatcher.FingerprintLookup lookup = hash -> {
+            if (++calls[0] == 30) {
+                while (!deadline.isExpired()) {
+                    Thread.onSpinWait();
+                }
+            }
+            return db.getOrDefault(hash, List.of());
+        };
+
+        SongMatcher.MatchOutcome outcome = matcher.matchDetailed(
+                query, lookup, SongMatcher.MatchOptions.DEFAULT.withDeadline(deadline));
+
+        assertTrue(outcome.isPartial());
+        assertEquals(30, outcome.getHashesConsulted());
+        assertEquals(50, outcome.getHashesTotal());
+        assertEquals(0.6, outcome.getHashCoverage(), 1e-9);
+        assertEquals(1, outcome.getResults().get(0).getSongId());
+    }
+
+    @Test
+    void matchDetailed_noDeadline_isComplete() {
+        List<FingerprintGenerator.Fingerprint> query = List.of(
+                new FingerprintGenerator.Fingerprint(100, 200, 10, 0));
+
+        SongMatcher.MatchOutcome outcome = matcher.matchDetailed(
+                query, hash -> List.of(), SongMatcher.MatchOptions.DEFAULT);
+
+        assertFalse(outcome.isPartial());
+        assertEquals(1.0, outcome.getHashCoverage(), 1e-9);
+    }
+
+    @Test
+    void match_songFilterExcludesPostingsBeforeCounting() {
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        Map<Long, List<SongMatcher.FingerprintEntry>> db = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            int anchorTime = i * 5;
+            query.add(new FingerprintGenerator.Fingerprint(100 + i, 200 + i, 10, anchorTime));
+            db.put(query.get(i).hash, List.of(
+                    new SongMatcher.FingerprintEntry(1, anchorTime + 10),
+                    new SongMatcher.FingerprintEntry(2, anchorTime + 20)));
+        }
+
+        SongMatcher.MatchOutcome outcome = matcher.matchDetailed(query,
+                hash -> db.getOrDefault(hash, List.of()),
+                SongMatcher.MatchOptions.DEFAULT.withSongFilter(SongFilter.of(2)));
+
+        assertEquals(1, outcome.getResults().size());
+        assertEquals(2, outcome.getResults().get(0).getSongId());
+        assertEquals(40, outcome.getResults().get(0).getTotalMatches());
+    }
+
+    @Test
+    void mergeOutcomes_ranksAcrossShardsAndCountsMissingShards() {
+        SongMatcher.MatchOutcome shard0 = new SongMatcher.MatchOutcome(List.of(
+                new SongMatcher.MatchResult(2, 30, 40, 1.0, 40.0)), 100, 100);
+        SongMatcher.MatchOutcome shard1 = new SongMatcher.MatchOutcome(List.of(
+                new SongMatcher.MatchResult(1, 50, 60, 2.0, 70.0),
+                new SongMatcher.MatchResult(3, 10, 20, 3.0, 10.0)), 50, 100);
+
+        // Three shards queried, one never answered
+        SongMatcher.MatchOutcome merged = SongMatcher.MatchOutcome.merge(List.of(shard0, shard1), 3, 100);
+
+        assertEquals(List.of(1L, 2L, 3L),
+                merged.getResults().stream().map(SongMatcher.MatchResult::getSongId).toList());
+        assertTrue(merged.isPartial());
+        assertEquals(0.5, merged.getHashCoverage(), 1e-9);
+    }
 }
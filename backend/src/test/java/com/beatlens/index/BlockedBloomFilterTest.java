@@ -0,0 +1,92 @@
+package com.beatlens.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockedBloomFilterTest {
+
+    @Test
+    void addedKeys_areAlwaysReported() {
+        BlockedBloomFilter filter = BlockedBloomFilter.create(100_000, 0.01);
+        for (long key = 0; key < 100_000; key++) {
+            filter.put(key << 10);
+        }
+        for (long key = 0; key < 100_000; key++) {
+            assertTrue(filter.mightContain(key << 10));
+        }
+    }
+
+    @Test
+    void falsePositiveRate_isNearTarget() {
+        BlockedBloomFilter filter = BlockedBloomFilter.create(200_000, 0.01);
+        Random rnd = new Random(5);
+        for (int i = 0; i < 200_000; i++) {
+            filter.put(rnd.nextLong() & 0x3_FFFF_FFFFL);
+        }
+
+        int falsePositives = 0;
+        int probes = 200_000;
+        for (int i = 0; i < probes; i++) {
+            // Disjoint key space: bit 40 is never set on inserted keys
+            if (filter.mightContain((1L << 40) | (rnd.nextLong() & 0x3_FFFF_FFFFL))) falsePositives++;
+        }
+        double observed = falsePositives / (double) probes;
+
+        assertTrue(observed < 0.02, "observed fpp " + observed);
+        assertEquals(observed, filter.estimatedFpp(), 0.01);
+    }
+
+    @Test
+    void estimatedInsertions_countsDistinctKeys() {
+        BlockedBloomFilter filter = BlockedBloomFilter.create(100_000, 0.01);
+        for (int repeat = 0; repeat < 3; repeat++) {
+            for (long key = 0; key < 60_000; key++) filter.put(key * 31);
+        }
+
+        assertEquals(60_000, filter.estimatedInsertions(), 3_000);
+        assertEquals(0, BlockedBloomFilter.create(1_000, 0.01).estimatedInsertions());
+    }
+
+    @Test
+    void estimatedFpp_growsWhenOverfilled() {
+        BlockedBloomFilter filter = BlockedBloomFilter.create(1_000, 0.01);
+        for (long key = 0; key < 1_000; key++) filter.put(key);
+        double atCapacity = filter.estimatedFpp();
+        for (long key = 1_000; key < 10_000; key++) filter.put(key);
+
+        assertTrue(atCapacity < 0.02, "at capacity " + atCapacity);
+        assertTrue(filter.estimatedFpp() > 0.2);
+    }
+
+    @Test
+    void concurrentPuts_loseNoBits() throws InterruptedException {
+        BlockedBloomFilter filter = BlockedBloomFilter.create(1_000, 0.01); // small: heavy word contention
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            final long base = t * 1_000_000L;
+            pool.submit(() -> {
+                for (long key = base; key < base + 2_000; key++) filter.put(key);
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (int t = 0; t < 4; t++) {
+            for (long key = t * 1_000_000L; key < t * 1_000_000L + 2_000; key++) {
+                assertTrue(filter.mightContain(key));
+            }
+        }
+    }
+
+    @Test
+    void create_rejectsInvalidFpp() {
+        assertThrows(IllegalArgumentException.class, () -> BlockedBloomFilter.create(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> BlockedBloomFilter.create(10, 1));
+    }
+}
@@ -0,0 +1,109 @@
+package com.beatlens.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotHashSketchTest {
+
+    @TempDir
+    Path dir;
+
+    /** Hashes 0..9 are hot (hash h recorded 100 × (10 − h) times); many others once. */
+    private static HotHashSketch skewed(int capacity) {
+        HotHashSketch sketch = new HotHashSketch(capacity);
+        Random rnd = new Random(3);
+        for (int round = 0; round < 100; round++) {
+            for (long h = 0; h < 10; h++) {
+                for (int i = 0; i < 10 - h; i++) sketch.record(h);
+            }
+            for (int i = 0; i < 50; i++) sketch.record(1_000 + rnd.nextInt(1_000_000));
+        }
+        return sketch;
+    }
+
+    @Test
+    void topHashes_ranksHotHashesFirst() {
+        HotHashSketch sketch = skewed(20);
+
+        assertArrayEquals(new long[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, sketch.topHashes(10));
+        // 10 500 samples: one halving already happened
+        assertTrue(sketch.estimate(0) >= 500, "count-min never under-counts");
+        assertEquals(20, sketch.candidateCount(), "candidates stay bounded at capacity");
+    }
+
+    @Test
+    void record_hashThatOutgrowsTheCoolestCandidateReplacesIt() {
+        HotHashSketch sketch = new HotHashSketch(2);
+        sketch.record(10);
+        sketch.record(10);
+        sketch.record(11);
+
+        sketch.record(12); // ties the coolest candidate: not enough
+        assertArrayEquals(new long[]{10, 11}, sketch.topHashes(2));
+
+        sketch.record(12);
+        assertArrayEquals(new long[]{10, 12}, sketch.topHashes(2));
+        assertEquals(2, sketch.candidateCount());
+    }
+
+    @Test
+    void merge_addsCountsAndCandidatesOfTheOtherSketch() {
+        HotHashSketch live = new HotHashSketch(4);
+        for (int i = 0; i < 30; i++) live.record(1);
+        for (int i = 0; i < 5; i++) live.record(3);
+        HotHashSketch restored = new HotHashSketch(4);
+        for (int i = 0; i < 50; i++) restored.record(1);
+        for (int i = 0; i < 60; i++) restored.record(2);
+
+        live.merge(restored);
+
+        assertTrue(live.estimate(1) >= 80, "estimate " + live.estimate(1));
+        assertArrayEquals(new long[]{1, 2, 3}, live.topHashes(4));
+        assertEquals(3, live.candidateCount());
+        assertThrows(IllegalArgumentException.class, () -> live.merge(new HotHashSketch(1 << 20)));
+    }
+
+    @Test
+    void writeAndRead_roundTrips() throws IOException {
+        HotHashSketch sketch = skewed(20);
+        Path file = dir.resolve("hot.bin");
+        sketch.writeTo(file);
+
+        HotHashSketch restored = HotHashSketch.readFrom(file, 20);
+
+        assertArrayEquals(sketch.topHashes(10), restored.topHashes(10));
+        assertEquals(sketch.estimate(3), restored.estimate(3));
+        assertFalse(Files.exists(dir.resolve("hot.bin.tmp")));
+    }
+
+    @Test
+    void readFrom_rejectsOtherWidthOrGarbage() throws IOException {
+        Path file = dir.resolve("hot.bin");
+        new HotHashSketch(20).writeTo(file);
+        assertThrows(IOException.class, () -> HotHashSketch.readFrom(file, 1_000_000));
+
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> HotHashSketch.readFrom(file, 20));
+    }
+
+    @Test
+    void aging_halvesOldCounts() {
+        HotHashSketch sketch = new HotHashSketch(10);
+        for (int i = 0; i < 1_000; i++) sketch.record(42);
+        int before = sketch.estimate(42);
+
+        // 10 × width samples trigger one halving
+        Random rnd = new Random(5);
+        for (int i = 0; i < 10 * 1024; i++) sketch.record(100 + rnd.nextInt(1 << 30));
+
+        // Random hashes may collide with 42 in every row, but only a few times
+        assertTrue(sketch.estimate(42) < before * 0.6, "estimate " + sketch.estimate(42));
+    }
+}
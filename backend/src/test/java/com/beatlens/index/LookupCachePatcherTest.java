@@ -0,0 +1,129 @@
+package com.beatlens.index;
+
+import com.beatlens.core.FingerprintGenerator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LookupCachePatcherTest {
+
+    private final Cache<Object, Object> exact = Caffeine.newBuilder().build();
+    private final Cache<Object, Object> coarse = Caffeine.newBuilder().build();
+    private final LookupCachePatcher patcher = new LookupCachePatcher(exact.asMap(), coarse.asMap());
+
+    private static List<FingerprintGenerator.Fingerprint> song(long... hashes) {
+        List<FingerprintGenerator.Fingerprint> fps = new ArrayList<>();
+        for (int i = 0; i < hashes.length; i++) {
+            fps.add(FingerprintGenerator.Fingerprint.fromHash(hashes[i], i * 10));
+        }
+        return fps;
+    }
+
+    private List<Long> songsUnder(long hash) {
+        long[] postings = (long[]) exact.getIfPresent(hash);
+        return postings == null ? null : Arrays.stream(postings).map(PackedPostings::songId).sorted().boxed().toList();
+    }
+
+    @Test
+    void addSong_patchesCachedKeysOnlyAndIsIdempotent() {
+        exact.put(100L, new long[]{PackedPostings.pack(1, 5)});
+        coarse.put(FingerprintGenerator.coarseHash(100L), new long[]{1});
+
+        patcher.addSong(2, song(100, 200));
+        patcher.addSong(2, song(100, 200));
+
+        assertEquals(List.of(1L, 2L), songsUnder(100));
+        assertNull(songsUnder(200), "uncached keys load from the database on their next miss");
+        assertArrayEquals(new long[]{1, 2}, (long[]) coarse.getIfPresent(FingerprintGenerator.coarseHash(100L)));
+    }
+
+    @Test
+    void addSong_fillsCachedNegativeEntry() {
+        exact.put(100L, PackedPostings.EMPTY);
+
+        patcher.addSong(3, song(100));
+
+        long[] postings = (long[]) exact.getIfPresent(100L);
+        assertArrayEquals(new long[]{PackedPostings.pack(3, 0)}, postings);
+    }
+
+    @Test
+    void removeSong_stripsPostingsAndCoarseCandidates() {
+        exact.put(100L, new long[]{PackedPostings.pack(1, 5), PackedPostings.pack(2, 7), PackedPostings.pack(2, 9)});
+        coarse.put(FingerprintGenerator.coarseHash(100L), new long[]{1, 2});
+
+        int patched = patcher.removeSong(2, new long[]{100, 100, 300});
+
+        assertEquals(2, patched);
+        assertEquals(List.of(1L), songsUnder(100));
+        assertArrayEquals(new long[]{1}, (long[]) coarse.getIfPresent(FingerprintGenerator.coarseHash(100L)));
+    }
+
+    @Test
+    void patchWaitsForLoadThatReadBeforeCommit() throws Exception {
+        long[] beforeCommit = {PackedPostings.pack(1, 5)};
+        CountDownLatch read = new CountDownLatch(1);
+        ExecutorService loader = Executors.newSingleThreadExecutor();
+        try {
+            // A miss reads the database, then is slow to put its result
+            Future<?> load = loader.submit(() -> exact.get(100L, k -> {
+                read.countDown();
+                sleep(100);
+                return beforeCommit;
+            }));
+            assertTrue(read.await(5, TimeUnit.SECONDS));
+
+            // Song 2 commits meanwhile; the patch must not be lost under the stale load
+            patcher.addSong(2, song(100));
+            load.get(5, TimeUnit.SECONDS);
+        } finally {
+            loader.shutdownNow();
+        }
+        assertEquals(List.of(1L, 2L), songsUnder(100));
+    }
+
+    @Test
+    void concurrentPatchesOfSharedHashesAreAllKept() throws Exception {
+        long[] hashes = {100, 200, 300, 400};
+        for (long hash : hashes) exact.put(hash, PackedPostings.EMPTY);
+        int songs = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (long songId = 1; songId <= songs; songId++) {
+                long id = songId;
+                futures.add(pool.submit(() -> {
+                    patcher.addSong(id, song(hashes));
+                    if (id % 2 == 0) patcher.removeSong(id, hashes);
+                }));
+            }
+            for (Future<?> f : futures) f.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        for (long hash : hashes) {
+            List<Long> expected = new ArrayList<>();
+            for (long songId = 1; songId <= songs; songId += 2) expected.add(songId);
+            assertEquals(expected, songsUnder(hash), "hash " + hash);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
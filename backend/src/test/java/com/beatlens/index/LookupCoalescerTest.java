@@ -0,0 +1,109 @@
+package com.beatlens.index;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LookupCoalescerTest {
+
+    /** Hashes below 1000 have one posting (song = hash); the rest have none. */
+    private final List<long[]> batches = new CopyOnWriteArrayList<>();
+    private final Function<long[], Map<Long, long[]>> loader = hashes -> {
+        batches.add(hashes);
+        Map<Long, long[]> found = new HashMap<>();
+        for (long hash : hashes) {
+            if (hash < 1000) found.put(hash, new long[]{PackedPostings.pack(hash, 7)});
+        }
+        return found;
+    };
+    private LookupCoalescer coalescer;
+
+    @AfterEach
+    void close() {
+        if (coalescer != null) coalescer.close();
+    }
+
+    @Test
+    void concurrentCallersShareOneBatchAndDuplicateHashes() throws Exception {
+        coalescer = new LookupCoalescer(loader, 1000, Duration.ofMillis(200), 2, "test-batch");
+        int callers = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                long hash = i % 4;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return LookupCoalescer.await(coalescer.load(hash));
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < callers; i++) {
+                assertArrayEquals(new long[]{PackedPostings.pack(i % 4, 7)}, results.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, batches.size());
+        assertEquals(4, batches.get(0).length);
+    }
+
+    @Test
+    void loadAll_splitsAtMaxBatchAndFillsMissingHashes() {
+        coalescer = new LookupCoalescer(loader, 100, Duration.ofMillis(100), 2, "test-batch");
+        long[] hashes = new long[250];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = 900 + i;
+
+        // Two full batches go out at once; the last 50 wait out the delay for company
+        Map<Long, long[]> postings = coalescer.loadAll(hashes);
+
+        assertEquals(250, postings.size());
+        assertEquals(1, postings.get(950L).length);
+        assertSame(PackedPostings.EMPTY, postings.get(1100L));
+        assertEquals(3, batches.size());
+        assertTrue(batches.stream().allMatch(b -> b.length <= 100));
+    }
+
+    @Test
+    void loaderFailureReachesEveryWaiter() {
+        Function<long[], Map<Long, long[]>> failing = hashes -> {
+            throw new IllegalStateException("database down");
+        };
+        coalescer = new LookupCoalescer(failing, 1000, Duration.ofMillis(50), 1, "test-batch");
+
+        CompletableFuture<long[]> a = coalescer.load(1);
+        CompletableFuture<long[]> b = coalescer.load(2);
+
+        assertEquals("database down",
+                assertThrows(IllegalStateException.class, () -> LookupCoalescer.await(a)).getMessage());
+        assertThrows(IllegalStateException.class, () -> LookupCoalescer.await(b));
+    }
+
+    @Test
+    void close_failsQueuedHashes() {
+        coalescer = new LookupCoalescer(loader, 1000, Duration.ofSeconds(10), 1, "test-batch");
+        CompletableFuture<long[]> queued = coalescer.load(1);
+
+        coalescer.close();
+
+        assertThrows(IllegalStateException.class, () -> LookupCoalescer.await(queued));
+        assertThrows(IllegalStateException.class, () -> LookupCoalescer.await(coalescer.load(2)));
+        assertTrue(batches.isEmpty());
+    }
+}
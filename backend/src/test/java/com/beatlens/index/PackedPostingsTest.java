@@ -0,0 +1,43 @@
+package com.beatlens.index;
+
+import com.beatlens.core.SongMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedPostingsTest {
+
+    @Test
+    void pack_roundTripsSongIdAndSignedOffset() {
+        long[][] cases = {{0, 0}, {1, 12345}, {Integer.MAX_VALUE, -7}, {4_000_000_000L, Integer.MIN_VALUE}};
+        for (long[] c : cases) {
+            long packed = PackedPostings.pack(c[0], (int) c[1]);
+            assertEquals(c[0], PackedPostings.songId(packed));
+            assertEquals((int) c[1], PackedPostings.timeOffset(packed));
+        }
+    }
+
+    @Test
+    void weigh_growsWithPostings() {
+        assertEquals(PackedPostings.ENTRY_OVERHEAD_BYTES, PackedPostings.weigh(PackedPostings.EMPTY));
+        assertEquals(PackedPostings.ENTRY_OVERHEAD_BYTES + 8 * 1000, PackedPostings.weigh(new long[1000]));
+    }
+
+    @Test
+    void asLookup_unpacksBothWays() {
+        long[] stored = {PackedPostings.pack(7, 3), PackedPostings.pack(9, -1)};
+        SongMatcher.FingerprintLookup lookup = PackedPostings.asLookup(hash -> hash == 42 ? stored : PackedPostings.EMPTY);
+
+        List<SongMatcher.FingerprintEntry> entries = lookup.lookup(42);
+        assertEquals(List.of(7L, 9L), entries.stream().map(e -> e.songId).toList());
+        assertEquals(List.of(3, -1), entries.stream().map(e -> e.timeOffset).toList());
+
+        List<String> visited = new ArrayList<>();
+        lookup.forEachPosting(42, (songId, offset) -> visited.add(songId + "@" + offset));
+        assertEquals(List.of("7@3", "9@-1"), visited);
+        assertTrue(lookup.lookup(1).isEmpty());
+    }
+}
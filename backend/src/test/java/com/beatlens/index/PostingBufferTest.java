@@ -0,0 +1,48 @@
+package com.beatlens.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingBufferTest {
+
+    @Test
+    void cursor_yieldsPostingsInHashSongOffsetOrder() {
+        PostingBuffer buffer = new PostingBuffer(4);
+        Random rnd = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            buffer.add(rnd.nextInt(300), rnd.nextInt(20), rnd.nextInt(1000));
+        }
+
+        PostingCursor c = buffer.cursor();
+        long prevHash = -1, prevSong = -1;
+        int prevOffset = Integer.MIN_VALUE;
+        int count = 0;
+        while (c.next()) {
+            boolean ordered = c.hash() > prevHash
+                    || (c.hash() == prevHash && (c.songId() > prevSong
+                        || (c.songId() == prevSong && c.timeOffset() >= prevOffset)));
+            assertTrue(ordered, "out of order at posting " + count);
+            prevHash = c.hash();
+            prevSong = c.songId();
+            prevOffset = c.timeOffset();
+            count++;
+        }
+        assertEquals(5_000, count);
+    }
+
+    @Test
+    void filter_skipsRejectedSongs() {
+        PostingBuffer buffer = new PostingBuffer();
+        buffer.add(1, 1, 0);
+        buffer.add(1, 2, 0);
+        buffer.add(2, 1, 5);
+
+        PostingCursor c = buffer.cursor().filter(id -> id != 1);
+        assertTrue(c.next());
+        assertEquals(2, c.songId());
+        assertFalse(c.next());
+    }
+}
@@ -0,0 +1,86 @@
+package com.beatlens.index;
+
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.SongMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Size and decode-throughput benchmark for posting representations.
+ *
+ * <p>Not a unit test (Surefire only runs {@code *Test} classes). Run after
+ * {@code mvn test-compile} with:</p>
+ * <pre>
+ * java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *     com.beatlens.index.PostingCodecBenchmark [songs] [postingsPerSong]
+ * </pre>
+ * <p>The synthetic catalog builds hashes the way {@link FingerprintGenerator}
+ * does, from anchor/target peaks that cluster in the low frequency bins, with
+ * offsets spread over a four-minute song.</p>
+ */
+public final class PostingCodecBenchmark {
+
+    /** Heap cost of one cached entry: FingerprintEntry (16 header + 8 + 4, padded) + list slot. */
+    private static final int HEAP_ENTRY_BYTES = 32 + 4;
+
+    private PostingCodecBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int songs = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int perSong = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+
+        Random rnd = new Random(42);
+        PostingBuffer buffer = new PostingBuffer(songs * perSong);
+        for (int song = 1; song <= songs; song++) {
+            for (int i = 0; i < perSong; i++) {
+                // Peaks cluster in the low bins and targets sit near their anchor
+                double u = rnd.nextDouble();
+                int freq1 = (int) (u * u * 256);
+                int freq2 = Math.max(0, freq1 + rnd.nextInt(65) - 32);
+                int timeDelta = 1 + rnd.nextInt(100);
+                long hash = new FingerprintGenerator.Fingerprint(freq1, freq2, timeDelta, 0).hash;
+                buffer.add(hash, song, rnd.nextInt(5_200));
+            }
+        }
+        PostingSegment segment = PostingSegment.builder(buffer.size()).appendAll(buffer.cursor()).build();
+        long postings = segment.postingCount();
+
+        System.out.printf("catalog: %,d songs, %,d postings, %,d distinct hashes%n",
+                songs, postings, segment.hashCount());
+        System.out.printf("%-28s %12s %10s%n", "representation", "bytes", "B/posting");
+        row("cached FingerprintEntry", postings * HEAP_ENTRY_BYTES, postings);
+        row("packed long postings", postings * Long.BYTES, postings);
+        row("delta+varint postings", segment.postingBytes(), postings);
+        row("segment incl. directory", segment.sizeInBytes(), postings);
+
+        // Decode throughput: look up a random sample of indexed hashes
+        List<Long> sample = new ArrayList<>();
+        PostingCursor c = segment.cursor();
+        while (c.next()) {
+            if (rnd.nextInt(64) == 0) sample.add(c.hash());
+        }
+        long[] sink = new long[1];
+        SongMatcher.PostingConsumer consumer = (songId, offset) -> sink[0] += songId + offset;
+        for (int warmup = 0; warmup < 3; warmup++) {
+            for (long hash : sample) segment.forEach(hash, consumer);
+        }
+        long decoded = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < 5; round++) {
+            for (long hash : sample) {
+                segment.forEach(hash, consumer);
+                decoded += segment.postingCount(hash);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("lookup+decode: %,.0f postings/s over %,d lookups (checksum %d)%n",
+                decoded / seconds, sample.size() * 5L, sink[0]);
+    }
+
+    private static void row(String name, long bytes, long postings) {
+        System.out.printf("%-28s %,12d %10.2f%n", name, bytes, bytes / (double) postings);
+    }
+}
@@ -0,0 +1,60 @@
+package com.beatlens.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingCodecTest {
+
+    private static List<long[]> roundTrip(long[][] postings) {
+        ByteBuffer buf = ByteBuffer.allocate(postings.length * PostingCodec.MAX_BYTES_PER_POSTING);
+        PostingCodec.BlockEncoder encoder = new PostingCodec.BlockEncoder();
+        encoder.startBlock();
+        for (long[] p : postings) {
+            encoder.encode(buf, p[0], (int) p[1]);
+        }
+        List<long[]> decoded = new ArrayList<>();
+        PostingCodec.decodeBlock(buf, 0, buf.position(), (songId, offset) -> decoded.add(new long[]{songId, offset}));
+        assertEquals(postings.length, PostingCodec.countBlock(buf, 0, buf.position()));
+        return decoded;
+    }
+
+    @Test
+    void block_roundTripsSortedPostings() {
+        long[][] postings = {{0, 5}, {0, 9}, {3, 0}, {3, 0}, {3, 700}, {70_000, 12}, {0xFFFFFFFFL, 1_000_000}};
+
+        List<long[]> decoded = roundTrip(postings);
+
+        assertEquals(postings.length, decoded.size());
+        for (int i = 0; i < postings.length; i++) {
+            assertArrayEquals(postings[i], decoded.get(i));
+        }
+    }
+
+    @Test
+    void block_handlesNegativeAndExtremeOffsets() {
+        long[][] postings = {{1, Integer.MIN_VALUE}, {1, -3}, {2, -7}, {2, Integer.MAX_VALUE}};
+
+        List<long[]> decoded = roundTrip(postings);
+
+        for (int i = 0; i < postings.length; i++) {
+            assertArrayEquals(postings[i], decoded.get(i));
+        }
+    }
+
+    @Test
+    void typicalPostings_takeFarLessThanEightBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        PostingCodec.BlockEncoder encoder = new PostingCodec.BlockEncoder();
+        encoder.startBlock();
+        for (int i = 0; i < 1000; i++) {
+            encoder.encode(buf, 1000 + i * 3L, 2000 + (i % 7) * 100);
+        }
+
+        assertTrue(buf.position() < 1000 * 4, "encoded " + buf.position() + " bytes");
+    }
+}
@@ -0,0 +1,118 @@
+package com.beatlens.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingSegmentTest {
+
+    @Test
+    void empty_hasNoPostings() {
+        PostingSegment segment = PostingSegment.empty();
+
+        assertEquals(0, segment.hashCount());
+        assertEquals(0, segment.postingCount());
+        assertFalse(segment.contains(0));
+        segment.forEach(42, (songId, offset) -> fail("unexpected posting"));
+    }
+
+    @Test
+    void forEach_returnsPostingsForHash() {
+        PostingSegment segment = PostingSegment.builder(4)
+                .append(10, 1, 5)
+                .append(10, 2, 7)
+                .append(20, 1, 9)
+                .build();
+
+        List<long[]> seen = new ArrayList<>();
+        segment.forEach(10, (songId, offset) -> seen.add(new long[]{songId, offset}));
+
+        assertEquals(2, seen.size());
+        assertArrayEquals(new long[]{1, 5}, seen.get(0));
+        assertArrayEquals(new long[]{2, 7}, seen.get(1));
+        assertEquals(1, segment.postingCount(20));
+        assertEquals(0, segment.postingCount(15));
+        assertFalse(segment.contains(21));
+    }
+
+    @Test
+    void forEachHash_visitsDistinctHashesInOrder() {
+        PostingSegment segment = PostingSegment.builder(4)
+                .append(10, 1, 5)
+                .append(10, 2, 7)
+                .append(30, 1, 9)
+                .build();
+
+        List<Long> hashes = new ArrayList<>();
+        segment.forEachHash(hashes::add);
+
+        assertEquals(List.of(10L, 30L), hashes);
+    }
+
+    @Test
+    void copyToDirectMemory_keepsPostings() {
+        PostingSegment segment = PostingSegment.builder(4)
+                .append(10, 1, 5)
+                .append(30, 2, 9)
+                .build();
+
+        PostingSegment copy = segment.copyToDirectMemory();
+
+        assertEquals(segment.sizeInBytes(), copy.sizeInBytes());
+        List<Long> songs = new ArrayList<>();
+        copy.forEach(30, (songId, offset) -> songs.add(songId));
+        assertEquals(List.of(2L), songs);
+    }
+
+    @Test
+    void lookup_matchesReferenceMapAcrossManyHashes() {
+        Random rnd = new Random(11);
+        PostingBuffer buffer = new PostingBuffer();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            long hash = rnd.nextLong() & 0x7FFF_FFFFL;
+            buffer.add(hash, rnd.nextInt(500), rnd.nextInt(10_000));
+            expected.merge(hash, 1, Integer::sum);
+        }
+
+        PostingSegment segment = PostingSegment.builder(buffer.size()).appendAll(buffer.cursor()).build();
+
+        assertEquals(expected.size(), segment.hashCount());
+        assertEquals(50_000, segment.postingCount());
+        for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), segment.postingCount(e.getKey()));
+        }
+        assertFalse(segment.contains(0x8000_0000L));
+        assertTrue(segment.sizeInBytes() >= 50_000L * Long.BYTES);
+    }
+
+    @Test
+    void cursor_roundTripsAllPostings() {
+        PostingSegment segment = PostingSegment.builder(3)
+                .append(1, 3, 0)
+                .append(1, 4, -2)
+                .append(9, 3, 8)
+                .build();
+
+        PostingCursor c = segment.cursor();
+        assertTrue(c.next());
+        assertEquals(1, c.hash());
+        assertTrue(c.next());
+        assertEquals(-2, c.timeOffset());
+        assertTrue(c.next());
+        assertEquals(9, c.hash());
+        assertEquals(3, c.songId());
+        assertFalse(c.next());
+    }
+
+    @Test
+    void builder_rejectsOutOfOrderAndOutOfRangePostings() {
+        PostingSegment.Builder builder = PostingSegment.builder(2).append(5, 1, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> builder.append(4, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> builder.append(6, 1L << 32, 0));
+        assertThrows(IllegalArgumentException.class, () -> builder.append(-1, 1, 0));
+    }
+}
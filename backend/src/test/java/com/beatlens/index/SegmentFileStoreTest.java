@@ -0,0 +1,127 @@
+package com.beatlens.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentFileStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private static PostingBuffer song(long songId, long... hashes) {
+        PostingBuffer buffer = new PostingBuffer();
+        for (int i = 0; i < hashes.length; i++) {
+            buffer.add(hashes[i], songId, i * 10);
+        }
+        return buffer;
+    }
+
+    private static SegmentedFingerprintIndex populated() {
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex(SegmentedFingerprintIndex.SegmentStore.IN_MEMORY, 2);
+        index.putSong(1, song(1, 100, 200));  // segment
+        index.putSong(2, song(2, 200, 300));  // segment
+        index.putSong(3, song(3, 300));       // memtable
+        index.removeSong(2);                  // tombstone
+        return index;
+    }
+
+    @Test
+    void snapshot_roundTripsSegmentsTombstonesAndMemtable() throws IOException {
+        SegmentedFingerprintIndex original = populated();
+        SegmentedFingerprintIndex.Snapshot snapshot = original.snapshot();
+        IndexManifest.Watermark watermark = new IndexManifest.Watermark(snapshot.maxSongId(), snapshot.songCount(), 42);
+        new SegmentFileStore(dir).writeSnapshot(snapshot, watermark, true);
+
+        Optional<SegmentFileStore.Restored> restored =
+                new SegmentFileStore(dir).restoreSnapshot(true, true, Runnable::run);
+
+        assertTrue(restored.isPresent());
+        assertEquals(watermark, restored.get().manifest().watermark());
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex();
+        index.replace(restored.get().segments(), restored.get().tombstones());
+        index.restoreMemtable(restored.get().memtable());
+
+        assertEquals(original.liveSongs(), index.liveSongs());
+        assertEquals(2, index.segmentCount());
+        assertEquals(1, index.lookup(200).size());
+        assertEquals(1, index.lookup(300).size());
+        assertEquals(3, index.lookup(300).get(0).songId);
+    }
+
+    @Test
+    void snapshot_recordsIndexWatermark() {
+        SegmentedFingerprintIndex.Snapshot snapshot = populated().snapshot();
+
+        assertEquals(3, snapshot.maxSongId());
+        assertEquals(2, snapshot.songCount());
+        assertNotNull(snapshot.memtable());
+        assertEquals(1, snapshot.tombstones().getCardinality());
+    }
+
+    @Test
+    void writeSnapshot_prunesUnlistedSegments() throws IOException {
+        SegmentFileStore store = new SegmentFileStore(dir);
+        SegmentedFingerprintIndex index = populated();
+        store.writeSnapshot(index.snapshot(), new IndexManifest.Watermark(3, 2, 0), true);
+        assertTrue(index.compact(1, CompactionThrottle.UNLIMITED));
+
+        IndexManifest manifest = store.writeSnapshot(index.snapshot(), new IndexManifest.Watermark(3, 2, 0), true);
+
+        assertEquals(1, manifest.generations().size());
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.filter(f -> f.getFileName().toString().startsWith("segment-")).count());
+        }
+    }
+
+    @Test
+    void restoreSnapshot_withoutManifest_isEmpty() throws IOException {
+        SegmentFileStore store = new SegmentFileStore(dir);
+        store.store(1, PostingSegment.builder(1).append(1, 1, 0).build());
+
+        assertTrue(store.restoreSnapshot(true, false, Runnable::run).isEmpty());
+    }
+
+    @Test
+    void restoreSnapshot_withMissingSegment_isEmpty() throws IOException {
+        SegmentFileStore store = new SegmentFileStore(dir);
+        IndexManifest manifest = store.writeSnapshot(populated().snapshot(), new IndexManifest.Watermark(3, 2, 0), true);
+        Files.delete(store.segmentPath(manifest.generations().get(0)));
+
+        assertTrue(store.restoreSnapshot(true, false, Runnable::run).isEmpty());
+    }
+
+    @Test
+    void manifest_roundTrips() throws IOException {
+        IndexManifest manifest = new IndexManifest(List.of(3L, 7L), RoaringBitmap.bitmapOf(5, 8), true,
+                new IndexManifest.Watermark(9, 4, 1234));
+        manifest.write(dir);
+
+        assertEquals(Optional.of(manifest), IndexManifest.read(dir));
+    }
+
+    @Test
+    void importSegment_storesShippedFile() throws IOException {
+        SegmentFileStore primary = new SegmentFileStore(dir.resolve("primary"));
+        SegmentFileStore replica = new SegmentFileStore(dir.resolve("replica"));
+        IndexManifest manifest = primary.writeSnapshot(populated().snapshot(), new IndexManifest.Watermark(3, 2, 0), true);
+
+        for (long generation : manifest.generations()) {
+            try (var in = Files.newInputStream(primary.segmentPath(generation))) {
+                replica.importSegment(generation, in);
+            }
+        }
+
+        IndexSegment first = replica.openSegment(manifest.generations().get(0), true, false);
+        assertEquals(1, first.getSongs().getCardinality());
+        assertEquals(RoaringBitmap.bitmapOf(2), manifest.tombstones());
+    }
+}
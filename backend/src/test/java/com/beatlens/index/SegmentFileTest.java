@@ -0,0 +1,119 @@
+package com.beatlens.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentFileTest {
+
+    @TempDir
+    Path dir;
+
+    private static PostingSegment randomSegment(int postings) {
+        Random rnd = new Random(3);
+        PostingBuffer buffer = new PostingBuffer(postings);
+        for (int i = 0; i < postings; i++) {
+            buffer.add(rnd.nextLong() & 0x3FFF_FFFFL, rnd.nextInt(1000), rnd.nextInt(20_000));
+        }
+        return PostingSegment.builder(postings).appendAll(buffer.cursor()).build();
+    }
+
+    @Test
+    void writeThenMap_roundTripsEveryPosting() throws IOException {
+        PostingSegment original = randomSegment(20_000);
+        Path file = dir.resolve("test.seg");
+
+        SegmentFile.write(original, file);
+        PostingSegment mapped = SegmentFile.map(file, true);
+
+        assertEquals(original.hashCount(), mapped.hashCount());
+        assertEquals(original.postingCount(), mapped.postingCount());
+        PostingCursor a = original.cursor();
+        PostingCursor b = mapped.cursor();
+        while (a.next()) {
+            assertTrue(b.next());
+            assertEquals(a.hash(), b.hash());
+            assertEquals(a.songId(), b.songId());
+            assertEquals(a.timeOffset(), b.timeOffset());
+            assertEquals(original.postingCount(a.hash()), mapped.postingCount(a.hash()));
+        }
+        assertFalse(b.next());
+    }
+
+    @Test
+    void header_describesSegment() throws IOException {
+        PostingSegment original = randomSegment(500);
+        Path file = dir.resolve("test.seg");
+        SegmentFile.write(original, file);
+
+        SegmentFile.Header header = SegmentFile.readHeader(file);
+
+        assertEquals(SegmentFile.VERSION, header.version());
+        assertEquals(original.postingCount(), header.postingCount());
+        assertEquals(original.hashCount(), header.hashCount());
+        assertEquals(Files.size(file), header.fileLength());
+    }
+
+    @Test
+    void emptySegment_roundTrips() throws IOException {
+        Path file = dir.resolve("empty.seg");
+        SegmentFile.write(PostingSegment.empty(), file);
+
+        PostingSegment mapped = SegmentFile.map(file, true);
+
+        assertEquals(0, mapped.postingCount());
+        assertFalse(mapped.contains(1));
+    }
+
+    @Test
+    void map_rejectsCorruptPostings() throws IOException {
+        Path file = dir.resolve("test.seg");
+        SegmentFile.write(randomSegment(1000), file);
+        flipByte(file, SegmentFile.readHeader(file).postingsOffset() + 5);
+
+        assertThrows(SegmentFile.FormatException.class, () -> SegmentFile.map(file, true));
+        // Without posting verification only the directory is checked
+        assertDoesNotThrow(() -> SegmentFile.map(file, false));
+    }
+
+    @Test
+    void map_rejectsCorruptDirectory() throws IOException {
+        Path file = dir.resolve("test.seg");
+        SegmentFile.write(randomSegment(1000), file);
+        flipByte(file, SegmentFile.HEADER_BYTES + 1);
+
+        assertThrows(SegmentFile.FormatException.class, () -> SegmentFile.map(file, false));
+    }
+
+    @Test
+    void map_rejectsTruncatedAndForeignFiles() throws IOException {
+        Path file = dir.resolve("test.seg");
+        SegmentFile.write(randomSegment(1000), file);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(Files.size(file) - 8);
+        }
+        assertThrows(SegmentFile.FormatException.class, () -> SegmentFile.map(file, false));
+
+        Path foreign = dir.resolve("foreign.seg");
+        Files.write(foreign, new byte[256]);
+        assertThrows(SegmentFile.FormatException.class, () -> SegmentFile.readHeader(foreign));
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, position);
+            b.put(0, (byte) ~b.get(0));
+            ch.write(b.rewind(), position);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.beatlens.index;
+
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.SongMatcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedFingerprintIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private static PostingBuffer song(long songId, long... hashes) {
+        PostingBuffer buffer = new PostingBuffer();
+        for (int i = 0; i < hashes.length; i++) {
+            buffer.add(hashes[i], songId, i * 10);
+        }
+        return buffer;
+    }
+
+    @Test
+    void putSong_makesPostingsVisibleToLookup() {
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex();
+        index.putSong(1, song(1, 100, 200));
+        index.putSong(2, song(2, 200, 300));
+
+        List<SongMatcher.FingerprintEntry> entries = index.lookup(200);
+        assertEquals(2, entries.size());
+        assertEquals(1, entries.get(0).songId);
+        assertEquals(10, entries.get(0).timeOffset);
+        assertEquals(2, entries.get(1).songId);
+        assertEquals(4, index.postingCount());
+        assertEquals(0, index.segmentCount());
+    }
+
+    @Test
+    void putSong_isIdempotent() {
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex(SegmentedFingerprintIndex.SegmentStore.IN_MEMORY, 2);
+        index.putSong(1, song(1, 100, 200));  // flushed: reaches the memtable limit
+        assertFalse(index.putSong(1, song(1, 100, 200)));
+
+        assertEquals(2, index.postingCount());
+        assertEquals(1, index.segmentCount());
+    }
+
+    @Test
+    void memtable_isFrozenIntoSegmentAtLimit() {
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex(SegmentedFingerprintIndex.SegmentStore.IN_MEMORY, 3);
+        index.putSong(1, song(1, 100, 200));
+        assertEquals(0, index.segmentCount());
+
+        index.putSong(2, song(2, 200, 300));
+
+        assertEquals(1, index.segmentCount());
+        assertEquals(0, index.memtablePostingCount());
+        assertEquals(2, index.lookup(200).size());
+    }
+
+    @Test
+    void removeSong_fromMemtableAndByTombstone() {
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex(SegmentedFingerprintIndex.SegmentStore.IN_MEMORY, 2);
+        index.putSong(1, song(1, 100, 200));  // segment
+        index.putSong(2, song(2, 200));       // memtable
+
+        index.removeSong(1);
+        index.removeSong(2);
+
+        assertTrue(index.lookup(100).isEmpty());
+        assertTrue(index.lookup(200).isEmpty());
+        assertEquals(1, index.tombstoneCount());
+        assertFalse(index.containsSong(1));
+        assertFalse(index.putSong(1, song(1, 100)), "deleted songs are not re-added");
+        assertTrue(index.liveSongs().isEmpty());
+    }
+
+    @Test
+    void songIdsBeyondTheIndexableRange_neverAliasIndexedSongs() {
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex(SegmentedFingerprintIndex.SegmentStore.IN_MEMORY, 1);
+        index.putSong(5, song(5, 100));  // segment
+        long aliasOf5 = (1L << 32) | 5;
+
+        assertThrows(IllegalArgumentException.class, () -> index.putSong(aliasOf5, song(aliasOf5, 200)));
+        assertFalse(index.containsSong(aliasOf5));
+        index.removeSong(aliasOf5);
+
+        assertTrue(index.containsSong(5));
+        assertEquals(0, index.tombstoneCount());
+        assertEquals(1, index.lookup(100).size());
+    }
+
+    @Test
+    void compact_mergesSmallestSegmentsAndDropsTombstones() {
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex(SegmentedFingerprintIndex.SegmentStore.IN_MEMORY, 1);
+        for (long id = 1; id <= 5; id++) {
+            index.putSong(id, song(id, 100, 100 + id));
+        }
+        assertEquals(5, index.segmentCount());
+        index.removeSong(3);
+
+        assertTrue(index.compact(2, CompactionThrottle.UNLIMITED));
+        while (index.compact(2, CompactionThrottle.UNLIMITED)) { }
+
+        assertTrue(index.segmentCount() <= 2);
+        assertEquals(0, index.tombstoneCount());
+        assertEquals(8, index.postingCount());
+        assertEquals(4, index.lookup(100).size());
+        assertTrue(index.lookup(103).isEmpty());
+        assertFalse(index.compact(2, CompactionThrottle.UNLIMITED));
+    }
+
+    @Test
+    void compact_keepsUpdatesMadeDuringMerge() {
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex(SegmentedFingerprintIndex.SegmentStore.IN_MEMORY, 1);
+        index.putSong(1, song(1, 100));
+        index.putSong(2, song(2, 100));
+
+        CompactionThrottle racing = new CompactionThrottle(0) {
+            @Override
+            public CompactionThrottle start() {
+                index.removeSong(1);
+                index.putSong(3, song(3, 100));
+                return CompactionThrottle.UNLIMITED;
+            }
+        };
+        assertTrue(index.compact(1, racing));
+
+        List<SongMatcher.FingerprintEntry> entries = index.lookup(100);
+        assertEquals(2, entries.size());
+        assertTrue(entries.stream().noneMatch(e -> e.songId == 1));
+        assertEquals(1, index.tombstoneCount(), "song 1 is still in the merged segment");
+    }
+
+    @Test
+    void fileStore_persistsSegmentsAndTombstones() throws IOException {
+        SegmentFileStore store = new SegmentFileStore(dir);
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex(store, 2);
+        index.putSong(1, song(1, 100, 200));
+        index.putSong(2, song(2, 200, 300));
+        index.removeSong(1);
+
+        List<IndexSegment> reopened = store.openAll(true);
+        RoaringBitmap tombstones = store.readTombstones();
+        SegmentedFingerprintIndex restored = new SegmentedFingerprintIndex(store, 2);
+        restored.replace(reopened, tombstones);
+
+        assertEquals(2, reopened.size());
+        assertEquals(RoaringBitmap.bitmapOf(1), tombstones);
+        assertEquals(1, restored.lookup(200).size());
+        assertEquals(2, restored.lookup(200).get(0).songId);
+
+        while (restored.compact(1, CompactionThrottle.UNLIMITED)) { }
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.filter(f -> f.toString().endsWith(".seg")).count());
+        }
+        assertTrue(store.readTombstones().isEmpty());
+    }
+
+    @Test
+    void index_drivesSongMatcher() {
+        List<FingerprintGenerator.Fingerprint> query = new ArrayList<>();
+        PostingBuffer target = new PostingBuffer();
+        for (int i = 0; i < 50; i++) {
+            FingerprintGenerator.Fingerprint fp = new FingerprintGenerator.Fingerprint(100 + i, 200 + i, 10, i * 2);
+            query.add(fp);
+            target.add(fp.hash, 7, fp.anchorTime + 40);
+        }
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex(SegmentedFingerprintIndex.SegmentStore.IN_MEMORY, 60);
+        index.putSong(7, target);
+        index.putSong(8, song(8, query.get(0).hash, query.get(1).hash));
+
+        List<SongMatcher.MatchResult> results = new SongMatcher().match(query, index);
+
+        assertFalse(results.isEmpty());
+        assertEquals(7, results.get(0).getSongId());
+    }
+
+    @Test
+    void segmentMerger_interleavesSourcesAndDropsRejectedSongs() {
+        PostingSegment merged = SegmentMerger.merge(
+                List.of(song(1, 5, 1).cursor(), song(2, 3, 5).cursor(), song(3, 4).cursor()),
+                id -> id != 3, 8);
+
+        PostingCursor c = merged.cursor();
+        long prev = -1;
+        int count = 0;
+        while (c.next()) {
+            assertTrue(c.hash() >= prev);
+            assertNotEquals(3, c.songId());
+            prev = c.hash();
+            count++;
+        }
+        assertEquals(4, count);
+        assertEquals(3, merged.hashCount());
+    }
+}
@@ -0,0 +1,72 @@
+package com.beatlens.repository;
+
+import com.beatlens.bulk.PgBinaryCopyWriter;
+import com.beatlens.core.FingerprintGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FingerprintCopyWriterTest {
+
+    private static final List<FingerprintGenerator.Fingerprint> SONG = List.of(
+            new FingerprintGenerator.Fingerprint(100, 200, 10, 0),
+            new FingerprintGenerator.Fingerprint(300, 400, 25, 17));
+
+    private static DataInputStream encode(long songId, boolean compact) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PgBinaryCopyWriter writer = new PgBinaryCopyWriter(bytes)) {
+            FingerprintCopyWriter.writeRows(writer, songId, SONG, compact);
+            assertEquals(SONG.size(), writer.getRowCount());
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        in.skipNBytes(11 + 4 + 4); // signature, flags, extension length
+        return in;
+    }
+
+    @Test
+    void compactRows_areHashSongIdOffset() throws IOException {
+        assertTrue(FingerprintCopyWriter.COPY_COMPACT_SQL.contains("postings (hash, song_id, time_offset)"));
+
+        DataInputStream in = encode(42, true);
+        for (FingerprintGenerator.Fingerprint fp : SONG) {
+            assertEquals(3, in.readShort());
+            assertEquals(8, in.readInt());
+            assertEquals(fp.hash, in.readLong());
+            assertEquals(4, in.readInt(), "song_id is an int column in postings");
+            assertEquals(42, in.readInt());
+            assertEquals(4, in.readInt());
+            assertEquals(fp.anchorTime, in.readInt());
+        }
+        assertEquals(-1, in.readShort(), "trailer");
+    }
+
+    @Test
+    void legacyRows_areHashCoarseHashSongIdOffset() throws IOException {
+        assertTrue(FingerprintCopyWriter.COPY_LEGACY_SQL.contains("fingerprints (hash, coarse_hash, song_id, time_offset)"));
+
+        DataInputStream in = encode(42, false);
+        for (FingerprintGenerator.Fingerprint fp : SONG) {
+            assertEquals(4, in.readShort());
+            assertEquals(8, in.readInt());
+            assertEquals(fp.hash, in.readLong());
+            assertEquals(8, in.readInt());
+            assertEquals(fp.coarseHash, in.readLong());
+            assertEquals(8, in.readInt());
+            assertEquals(42, in.readLong());
+            assertEquals(4, in.readInt());
+            assertEquals(fp.anchorTime, in.readInt());
+        }
+        assertEquals(-1, in.readShort(), "trailer");
+    }
+
+    @Test
+    void compactRows_rejectSongIdsBeyondInt() {
+        assertThrows(ArithmeticException.class, () -> encode(1L << 32, true));
+    }
+}
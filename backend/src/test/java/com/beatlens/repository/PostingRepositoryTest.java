@@ -0,0 +1,187 @@
+package com.beatlens.repository;
+
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.index.PackedPostings;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PostingRepositoryTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PostingRepository repository = new PostingRepository(jdbcTemplate);
+
+    /** SQL and bigint arrays of the statements the repository prepared */
+    private final List<String> statements = new ArrayList<>();
+    private final List<Object[]> arrays = new ArrayList<>();
+
+    @Test
+    void findByHashes_groupsRowsPerHashAndFillsMissingHashes() throws SQLException {
+        layout(true, true);
+        List<long[]> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) rows.add(new long[]{5, i, 10 + i}); // outgrows the initial buffer
+        rows.add(new long[]{9, 3, 30});
+        rows.add(new long[]{12, 4, 40});
+        rows.add(new long[]{12, 5, 50});
+        respond(rows);
+
+        Map<Long, long[]> found = repository.findByHashes(new long[]{5, 7, 9, 12});
+
+        assertEquals(4, found.size());
+        long[] five = found.get(5L);
+        assertEquals(100, five.length);
+        assertEquals(PackedPostings.pack(0, 10), five[0]);
+        assertEquals(PackedPostings.pack(99, 109), five[99]);
+        assertSame(PackedPostings.EMPTY, found.get(7L));
+        assertArrayEquals(new long[]{PackedPostings.pack(3, 30)}, found.get(9L));
+        assertArrayEquals(new long[]{PackedPostings.pack(4, 40), PackedPostings.pack(5, 50)}, found.get(12L));
+
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0).contains("FROM postings WHERE hash = ANY(?) ORDER BY hash"), statements.get(0));
+        assertArrayEquals(new Object[]{5L, 7L, 9L, 12L}, arrays.get(0));
+    }
+
+    @Test
+    void findByHashes_noRows_everyHashEmpty() throws SQLException {
+        layout(true, true);
+        respond(List.of());
+
+        Map<Long, long[]> found = repository.findByHashes(new long[]{1, 2});
+
+        assertSame(PackedPostings.EMPTY, found.get(1L));
+        assertSame(PackedPostings.EMPTY, found.get(2L));
+    }
+
+    @Test
+    void findSongIdsByCoarseHash_compact_probesTheExactHashesOfTheCoarseHash() throws SQLException {
+        layout(true, true);
+        FingerprintGenerator.Fingerprint fp = new FingerprintGenerator.Fingerprint(37, 182, 17, 1000);
+        respond(List.of(new long[]{3}, new long[]{8}));
+
+        long[] songIds = repository.findSongIdsByCoarseHash(fp.coarseHash);
+
+        assertArrayEquals(new long[]{3, 8}, songIds);
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0).contains("FROM postings WHERE hash = ANY(?)"), statements.get(0));
+        long[] probed = Arrays.stream(arrays.get(0)).mapToLong(h -> (Long) h).toArray();
+        assertArrayEquals(FingerprintGenerator.exactHashes(fp.coarseHash), probed);
+        assertTrue(Arrays.stream(probed).anyMatch(h -> h == fp.hash), "probe covers the fingerprint's own hash");
+    }
+
+    @Test
+    void findSongIdsByCoarseHash_legacy_queriesTheCoarseColumn() {
+        layout(false, false);
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            handler.processRow(row(6));
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any());
+
+        long[] songIds = repository.findSongIdsByCoarseHash(42L);
+
+        assertArrayEquals(new long[]{6}, songIds);
+        verify(jdbcTemplate).query(eq("SELECT DISTINCT song_id FROM fingerprints WHERE coarse_hash = ?"),
+                any(RowCallbackHandler.class), eq(42L));
+    }
+
+    @Test
+    void findSongIdsByCoarseHashes_compact_probesAllExactHashesInOneQuery() throws SQLException {
+        layout(true, true);
+        FingerprintGenerator.Fingerprint a = new FingerprintGenerator.Fingerprint(37, 182, 17, 0);
+        FingerprintGenerator.Fingerprint b = new FingerprintGenerator.Fingerprint(400, 90, 3, 0);
+        long[] aHashes = FingerprintGenerator.exactHashes(a.coarseHash);
+        respond(List.of(new long[]{aHashes[0], 3}, new long[]{aHashes[5], 3}, new long[]{aHashes[9], 8}));
+
+        Map<Long, long[]> found = repository.findSongIdsByCoarseHashes(new long[]{a.coarseHash, b.coarseHash});
+
+        assertArrayEquals(new long[]{3, 8}, found.get(a.coarseHash));
+        assertSame(PackedPostings.EMPTY, found.get(b.coarseHash));
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0).contains("FROM postings WHERE hash = ANY(?)"), statements.get(0));
+        assertEquals(64, arrays.get(0).length);
+    }
+
+    @Test
+    void findSongIdsByCoarseHashes_legacy_queriesTheCoarseColumnOnce() throws SQLException {
+        layout(false, false);
+        respond(List.of(new long[]{42, 6}, new long[]{42, 7}));
+
+        Map<Long, long[]> found = repository.findSongIdsByCoarseHashes(new long[]{42, 43});
+
+        assertArrayEquals(new long[]{6, 7}, found.get(42L));
+        assertSame(PackedPostings.EMPTY, found.get(43L));
+        assertTrue(statements.get(0).contains("FROM fingerprints WHERE coarse_hash = ANY(?)"), statements.get(0));
+        assertArrayEquals(new Object[]{42L, 43L}, arrays.get(0));
+    }
+
+    @Test
+    void layout_readsSwitchAtDoneButWritesWaitForTheGracePeriod() {
+        layout(true, false);
+
+        assertTrue(repository.isCompact());
+        assertEquals(PostingRepository.COMPACT_TABLE, repository.table());
+        assertFalse(repository.isCompactWrites());
+    }
+
+    @Test
+    void layout_backfillPending_readsAndWritesStayOnLegacyTable() {
+        layout(false, false);
+
+        assertFalse(repository.isCompact());
+        assertEquals(PostingRepository.LEGACY_TABLE, repository.table());
+        assertFalse(repository.isCompactWrites());
+    }
+
+    // ═══ Fakes ═══
+
+    private void layout(boolean done, boolean writesCompact) {
+        when(jdbcTemplate.queryForMap(anyString(), any()))
+                .thenReturn(Map.of("done", done, "writes_compact", writesCompact));
+    }
+
+    /** Answer the next prepared query with these rows, recording its SQL and array parameter. */
+    private void respond(List<long[]> rows) throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenAnswer(inv -> {
+            statements.add(inv.getArgument(0));
+            return mock(PreparedStatement.class);
+        });
+        when(connection.createArrayOf(eq("bigint"), any())).thenAnswer(inv -> {
+            arrays.add(inv.getArgument(1));
+            return mock(Array.class);
+        });
+        doAnswer(inv -> {
+            PreparedStatementCreator creator = inv.getArgument(0);
+            RowCallbackHandler handler = inv.getArgument(1);
+            creator.createPreparedStatement(connection);
+            for (long[] values : rows) handler.processRow(row(values));
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    private static ResultSet row(long... values) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        for (int i = 0; i < values.length; i++) {
+            when(rs.getLong(i + 1)).thenReturn(values[i]);
+            when(rs.getInt(i + 1)).thenReturn((int) values[i]);
+        }
+        return rs;
+    }
+}
@@ -0,0 +1,90 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CatalogChangeListenerTest {
+
+    private final ShardCoordinator shardCoordinator = mock(ShardCoordinator.class);
+    private final FingerprintLookupService lookupService = mock(FingerprintLookupService.class);
+    private final MatchResultCache resultCache = mock(MatchResultCache.class);
+    private final SongFilterService songFilterService = mock(SongFilterService.class);
+    private final SongMetadataService songMetadataService = mock(SongMetadataService.class);
+    private final HashFilterService hashFilterService = mock(HashFilterService.class);
+    private final FingerprintIndexService indexService = mock(FingerprintIndexService.class);
+    private final CatalogChangeListener listener = new CatalogChangeListener(shardCoordinator, lookupService,
+            resultCache, songFilterService, songMetadataService, hashFilterService, indexService,
+            mock(JdbcTemplate.class),
+            mock(DataSourceProperties.class), new SimpleMeterRegistry(), new AudioProperties());
+
+    // ═══ Payload ═══
+
+    @Test
+    void parse_readsChangesOfOtherNodes() {
+        assertEquals(new CatalogChangeListener.Change(false, 42),
+                CatalogChangeListener.parse(CatalogChangeListener.payload("indexed", 42, "node-a"), "node-b"));
+        assertEquals(new CatalogChangeListener.Change(true, 7),
+                CatalogChangeListener.parse(CatalogChangeListener.payload("deleted", 7, "node-a"), "node-b"));
+    }
+
+    @Test
+    void parse_skipsOwnChanges() {
+        assertNull(CatalogChangeListener.parse(CatalogChangeListener.payload("indexed", 42, "node-a"), "node-a"));
+    }
+
+    @Test
+    void parse_rejectsMalformedPayloads() {
+        assertNull(CatalogChangeListener.parse("indexed 42", "node-b"));
+        assertNull(CatalogChangeListener.parse("indexed 42 node-a extra", "node-b"));
+        assertNull(CatalogChangeListener.parse("renamed 42 node-a", "node-b"));
+        assertNull(CatalogChangeListener.parse("deleted forty-two node-a", "node-b"));
+        assertNull(CatalogChangeListener.parse("", "node-b"));
+    }
+
+    // ═══ Apply ═══
+
+    @Test
+    void handle_indexed_loadsTheSongAndDropsMatchResponses() {
+        listener.handle("indexed 42 other-node");
+
+        verify(shardCoordinator).loadRemoteSong(42);
+        verify(resultCache).invalidate();
+        verifyNoInteractions(lookupService, songFilterService, hashFilterService, indexService);
+    }
+
+    @Test
+    void handle_deleted_evictsMetadataAndRemovesTheSong() {
+        listener.handle("deleted 7 other-node");
+
+        verify(songMetadataService).evict(7);
+        verify(shardCoordinator).removeRemoteSong(7);
+        verify(resultCache).invalidate();
+    }
+
+    @Test
+    void handle_failure_flushesTheCachesAndCatchesUpWhatItShouldHavePatched() {
+        doThrow(new IllegalStateException("database down")).when(shardCoordinator).loadRemoteSong(42);
+
+        listener.handle("indexed 42 other-node");
+
+        verify(lookupService).invalidateCache();
+        verify(songFilterService).invalidateCache();
+        verify(resultCache).invalidate();
+        verify(hashFilterService).markIncomplete();
+        verify(indexService).catchUpWithCatalog();
+    }
+
+    @Test
+    void handle_malformed_changesNothing() {
+        listener.handle("indexed not-a-song other-node");
+
+        verifyNoInteractions(shardCoordinator, lookupService, resultCache, songFilterService, songMetadataService,
+                hashFilterService, indexService);
+    }
+}
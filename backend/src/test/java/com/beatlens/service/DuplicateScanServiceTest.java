@@ -0,0 +1,181 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.DuplicateDetector;
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.ShardAssignment;
+import com.beatlens.index.PostingBuffer;
+import com.beatlens.index.SegmentedFingerprintIndex;
+import com.beatlens.model.dto.DuplicateReportDto;
+import com.beatlens.repository.PostingRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class DuplicateScanServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final FingerprintIndexService indexService = mock(FingerprintIndexService.class);
+    private final HashFilterService hashFilterService = mock(HashFilterService.class);
+    private final SongPurgeService purgeService = mock(SongPurgeService.class);
+    private final PostingRepository postingRepository = mock(PostingRepository.class);
+    private final DuplicateScanService service;
+
+    /** Fingerprint counts of the catalog's songs, by ID */
+    private final Map<Long, Integer> catalog = new HashMap<>();
+    /** Fingerprints of each song, as stored in the posting table */
+    private final Map<Long, List<FingerprintGenerator.Fingerprint>> postings = new HashMap<>();
+    /** Released once the catalog may be read */
+    private CountDownLatch catalogRead = new CountDownLatch(0);
+
+    DuplicateScanServiceTest() {
+        AudioProperties props = new AudioProperties();
+        props.getDuplicates().setSampleRate(1);
+        props.getDuplicates().setParallelism(2);
+        service = new DuplicateScanService(indexService, hashFilterService, purgeService, jdbcTemplate,
+                postingRepository, ShardAssignment.SINGLE, props);
+
+        when(postingRepository.table()).thenReturn(PostingRepository.COMPACT_TABLE);
+        when(hashFilterService.screen(any())).thenAnswer(inv -> inv.getArgument(0));
+        when(purgeService.screen(any())).thenAnswer(inv -> inv.getArgument(0));
+        doAnswer(inv -> {
+            await(catalogRead);
+            RowCallbackHandler handler = inv.getArgument(1);
+            long[] row = new long[2];
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getLong(1)).thenAnswer(get -> row[0]);
+            when(rs.getInt(2)).thenAnswer(get -> (int) row[1]);
+            for (long songId : catalog.keySet().stream().sorted().toList()) {
+                row[0] = songId;
+                row[1] = catalog.get(songId);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        doAnswer(inv -> {
+            long songId = inv.getArgument(2);
+            List<FingerprintGenerator.Fingerprint> song = postings.get(songId);
+            if (song == null) throw new IllegalStateException("postings of song " + songId + " unreadable");
+            RowCallbackHandler handler = inv.getArgument(1);
+            long[] row = new long[2];
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getLong(1)).thenAnswer(get -> row[0]);
+            when(rs.getInt(2)).thenAnswer(get -> (int) row[1]);
+            for (FingerprintGenerator.Fingerprint fp : song) {
+                row[0] = fp.hash;
+                row[1] = fp.anchorTime;
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any());
+    }
+
+    @Test
+    void scan_reportsPairsPlansAndCountsFailedSongs() throws InterruptedException {
+        song(1, 40, 300, 0);
+        song(2, 50, 300, 7);     // song 1 again, 7 frames in, with more fingerprints
+        song(3, 40, 700, 0);     // unrelated
+        catalog.put(4L, 40);     // its postings cannot be read
+        indexSongs();
+
+        assertTrue(service.start(true));
+        DuplicateReportDto report = awaitScan();
+
+        assertEquals("finished", report.state());
+        assertEquals(4, report.songsTotal());
+        assertEquals(4, report.songsScanned());
+        assertEquals(1, report.songsFailed());
+        assertEquals(1, report.pairs().size());
+        DuplicateDetector.Pair pair = report.pairs().get(0);
+        assertEquals(1, pair.songA());
+        assertEquals(2, pair.songB());
+        assertEquals(DuplicateDetector.Kind.DUPLICATE, pair.kind());
+        assertEquals(List.of(new DuplicateDetector.MergeGroup(2, List.of(1L))), report.plan(),
+                "the song with more fingerprints is kept");
+        assertNotNull(report.finishedAt());
+    }
+
+    @Test
+    void start_whileRunning_isRefusedAndTheNextScanStartsAfresh() throws InterruptedException {
+        song(1, 40, 300, 0);
+        song(2, 40, 300, 0);
+        indexSongs();
+        catalogRead = new CountDownLatch(1);
+
+        assertTrue(service.start(false));
+        assertFalse(service.start(true), "one scan at a time");
+        assertEquals("running", service.getReport().state());
+        catalogRead.countDown();
+        DuplicateReportDto first = awaitScan();
+        assertEquals(1, first.pairs().size());
+        assertEquals(List.of(), first.plan(), "no plan unless asked for");
+
+        postings.remove(2L);
+        assertTrue(service.start(true));
+        DuplicateReportDto second = awaitScan();
+        assertEquals(1, second.songsFailed());
+        assertEquals(1, second.pairs().size(), "pairs of the previous scan are not carried over");
+    }
+
+    @Test
+    void unreadableCatalog_failsTheScan() throws InterruptedException {
+        doThrow(new IllegalStateException("database down"))
+                .when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        assertTrue(service.start(false));
+        DuplicateReportDto report = awaitScan();
+
+        assertEquals("failed", report.state());
+        assertEquals(0, report.songsScanned());
+        assertTrue(service.start(false), "a failed scan can be restarted");
+    }
+
+    // ═══ Helpers ═══
+
+    /** Add a song of {@code count} fingerprints shaped by {@code freq2}, starting {@code shift} frames in. */
+    private void song(long songId, int count, int freq2, int shift) {
+        List<FingerprintGenerator.Fingerprint> fps = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            fps.add(new FingerprintGenerator.Fingerprint(100 + i * 8, freq2, 10, i * 5 + shift));
+        }
+        postings.put(songId, fps);
+        catalog.put(songId, count);
+    }
+
+    private void indexSongs() {
+        SegmentedFingerprintIndex index = new SegmentedFingerprintIndex();
+        postings.forEach((songId, fps) -> {
+            PostingBuffer buffer = new PostingBuffer();
+            fps.forEach(fp -> buffer.add(fp.hash, songId, fp.anchorTime));
+            index.putSong(songId, buffer);
+        });
+        when(indexService.isReady()).thenReturn(true);
+        when(indexService.currentLookup()).thenReturn(index);
+    }
+
+    private DuplicateReportDto awaitScan() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ("running".equals(service.getReport().state())) {
+            if (System.nanoTime() > deadline) fail("the scan never finished");
+            Thread.sleep(1);
+        }
+        return service.getReport();
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(5, TimeUnit.SECONDS)) throw new IllegalStateException("never released");
+    }
+}
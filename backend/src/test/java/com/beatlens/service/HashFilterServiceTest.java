@@ -0,0 +1,195 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.ShardAssignment;
+import com.beatlens.core.SongMatcher;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.event.SongIndexedEvent;
+import com.beatlens.repository.PostingRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class HashFilterServiceTest {
+
+    private static final long PRESENT = new FingerprintGenerator.Fingerprint(10, 20, 5, 0).hash;
+    private static final long ABSENT = new FingerprintGenerator.Fingerprint(11, 21, 6, 0).hash;
+    private static final long LATE = new FingerprintGenerator.Fingerprint(12, 22, 7, 0).hash;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PostingRepository postingRepository = mock(PostingRepository.class);
+    private final FingerprintIndexService indexService = mock(FingerprintIndexService.class);
+    private final AudioProperties props = new AudioProperties();
+    private final HashFilterService service = new HashFilterService(jdbcTemplate, postingRepository,
+            mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), ShardAssignment.SINGLE,
+            indexService, props);
+
+    /** Hashes of the committed postings, served by every scan */
+    private final List<Long> committed = new ArrayList<>(List.of(PRESENT));
+    /** Runs once, in the middle of the next scan */
+    private Runnable duringScan = () -> {};
+
+    HashFilterServiceTest() {
+        when(postingRepository.table()).thenReturn(PostingRepository.COMPACT_TABLE);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenAnswer(inv -> (long) committed.size());
+        when(jdbcTemplate.queryForList(anyString(), eq(Double.class), any())).thenReturn(List.of());
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            long[] row = new long[1];
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getLong(1)).thenAnswer(get -> row[0]);
+            for (long hash : List.copyOf(committed)) {
+                row[0] = hash;
+                handler.processRow(rs);
+                Runnable hook = duringScan;
+                duringScan = () -> {};
+                hook.run();
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    // ═══ Screening ═══
+
+    @Test
+    void screen_beforeTheFirstBuild_passesEveryLookupThrough() {
+        SongMatcher.FingerprintLookup delegate = hash -> List.of();
+
+        assertSame(delegate, service.screen(delegate));
+        assertFalse(service.isReady());
+    }
+
+    @Test
+    void screen_absentHashesSkipTheDelegate() {
+        service.rebuild();
+        AtomicInteger calls = new AtomicInteger();
+        SongMatcher.FingerprintLookup screened = service.screen(counting(calls));
+
+        assertTrue(screened.lookup(ABSENT).isEmpty());
+        assertEquals(0, calls.get());
+        assertEquals(1, screened.lookup(PRESENT).size());
+        assertEquals(1, calls.get());
+        assertTrue(service.isReady());
+    }
+
+    @Test
+    void songIndexedDuringRebuild_isInTheNewFilter() {
+        duringScan = () -> service.onSongIndexed(new SongIndexedEvent(9,
+                List.of(FingerprintGenerator.Fingerprint.fromHash(LATE, 0))));
+
+        service.rebuild();
+
+        AtomicInteger calls = new AtomicInteger();
+        service.screen(counting(calls)).lookup(LATE);
+        assertEquals(1, calls.get(), "the song committed after the scan's snapshot is not hidden");
+    }
+
+    // ═══ Staleness ═══
+
+    @Test
+    void markIncomplete_stopsScreeningUntilARebuildHasReadEverything() throws InterruptedException {
+        service.rebuild();
+        committed.add(LATE); // indexed elsewhere; its event was lost
+
+        service.markIncomplete();
+        SongMatcher.FingerprintLookup delegate = counting(new AtomicInteger());
+        assertTrue(service.isReady(), "an incomplete filter does not take the node out of service");
+
+        awaitScreening(delegate);
+        AtomicInteger calls = new AtomicInteger();
+        service.screen(counting(calls)).lookup(LATE);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void markIncomplete_duringRebuild_discardsItAndBuildsAgain() throws InterruptedException {
+        service.rebuild();
+        committed.add(LATE);
+        duringScan = service::markIncomplete;
+
+        service.rebuild();
+
+        awaitScreening(hash -> List.of());
+        verify(jdbcTemplate, atLeast(3)).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        AtomicInteger calls = new AtomicInteger();
+        service.screen(counting(calls)).lookup(LATE);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void maintain_rebuildsAfterDeletesOrAFailedBuild() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenThrow(new IllegalStateException("down"));
+        service.rebuild();
+        assertFalse(service.isReady());
+
+        reset(jdbcTemplate);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1L);
+        when(jdbcTemplate.queryForList(anyString(), eq(Double.class), any())).thenReturn(List.of());
+        service.maintain();
+        assertTrue(service.isReady());
+
+        service.maintain();
+        verify(jdbcTemplate, times(1)).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        service.onSongDeleted(new SongDeletedEvent(1));
+        service.maintain();
+        verify(jdbcTemplate, times(2)).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    // ═══ Sizing ═══
+
+    @Test
+    void estimateDistinctHashes_usesPlannerStatisticsBeforeTheFirstBuild() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(10_000_000L);
+
+        assertEquals(10_000_000L, service.estimateDistinctHashes(), "no statistics: the posting count");
+
+        when(jdbcTemplate.queryForList(anyString(), eq(Double.class), any())).thenReturn(List.of(-0.25));
+        assertEquals(2_500_000L, service.estimateDistinctHashes());
+
+        when(jdbcTemplate.queryForList(anyString(), eq(Double.class), any())).thenReturn(List.of(400_000.0));
+        assertEquals(400_000L, service.estimateDistinctHashes());
+    }
+
+    @Test
+    void estimateDistinctHashes_afterABuild_usesTheFilterItself() {
+        for (long hash = 1; hash <= 50_000; hash++) committed.add(hash * 7919);
+        service.rebuild();
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(10_000_000L);
+
+        assertEquals(50_001, service.estimateDistinctHashes(), 2_500);
+    }
+
+    // ═══ Helpers ═══
+
+    private static SongMatcher.FingerprintLookup counting(AtomicInteger calls) {
+        return hash -> {
+            calls.incrementAndGet();
+            return List.of(new SongMatcher.FingerprintEntry(1, 0));
+        };
+    }
+
+    /** Wait for the background rebuild to install a complete filter. */
+    private void awaitScreening(SongMatcher.FingerprintLookup delegate) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.screen(delegate) == delegate) {
+            if (System.nanoTime() > deadline) fail("the filter was never rebuilt");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.index.CompactionThrottle;
+import com.beatlens.index.IndexManifest;
+import com.beatlens.index.IndexSegment;
+import com.beatlens.index.PostingBuffer;
+import com.beatlens.index.SegmentFileStore;
+import com.beatlens.index.SegmentedFingerprintIndex;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IndexReplicaServiceTest {
+
+    @TempDir
+    Path primaryDir;
+    @TempDir
+    Path replicaDir;
+
+    private final FingerprintIndexService indexService = mock(FingerprintIndexService.class);
+    private final HashFilterService hashFilterService = mock(HashFilterService.class);
+    /** Freezes each two-posting song into a segment of its own */
+    private final SegmentedFingerprintIndex primary = new SegmentedFingerprintIndex(
+            SegmentedFingerprintIndex.SegmentStore.IN_MEMORY, 2);
+
+    /** What the replica serves, as last installed */
+    private List<IndexSegment> served = List.of();
+    private RoaringBitmap servedTombstones = new RoaringBitmap();
+    private final AtomicInteger installs = new AtomicInteger();
+    private HttpServer server;
+
+    IndexReplicaServiceTest() {
+        when(indexService.isReplica()).thenReturn(true);
+        when(indexService.currentSegments()).thenAnswer(inv -> served);
+        doAnswer(inv -> {
+            served = List.copyOf(inv.getArgument(0));
+            servedTombstones = inv.getArgument(1);
+            installs.incrementAndGet();
+            return null;
+        }).when(indexService).installReplica(any(), any());
+    }
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) server.stop(0);
+    }
+
+    // ═══ Directory source ═══
+
+    @Test
+    void firstInstall_servesEverySegmentAndRebuildsTheHashFilter() throws IOException {
+        primary.putSong(1, song(100, 200));
+        primary.putSong(2, song(300, 400));
+        snapshot();
+
+        replica(primaryDir.toString()).poll();
+
+        assertEquals(1, installs.get());
+        assertEquals(List.of(1L, 2L), songsServed());
+        for (long hash : new long[]{100, 200, 300, 400}) verify(hashFilterService).addHash(hash);
+        verify(hashFilterService).rebuild();
+    }
+
+    @Test
+    void laterInstalls_reuseHeldGenerationsAndApplyTombstones() throws IOException {
+        IndexReplicaService replica = replica(primaryDir.toString());
+        primary.putSong(1, song(100, 200));
+        snapshot();
+        replica.poll();
+        IndexSegment first = served.get(0);
+
+        primary.putSong(2, song(300, 400));
+        primary.removeSong(1);
+        snapshot();
+        replica.poll();
+
+        assertEquals(2, installs.get());
+        assertSame(first, served.get(0), "a held generation is not opened again");
+        assertEquals(List.of(1L, 2L), songsServed());
+        assertTrue(servedTombstones.contains(1));
+        verify(hashFilterService, times(1)).addHash(100);
+        verify(hashFilterService).addHash(300);
+        verify(hashFilterService, times(1)).rebuild();
+    }
+
+    @Test
+    void unchangedManifest_isNotInstalledAgain() throws IOException {
+        IndexReplicaService replica = replica(primaryDir.toString());
+        replica.poll();
+        assertEquals(0, installs.get(), "nothing to install before the primary's first snapshot");
+
+        primary.putSong(1, song(100, 200));
+        snapshot();
+        replica.poll();
+        replica.poll();
+
+        assertEquals(1, installs.get());
+    }
+
+    @Test
+    void replicationSourceMustNotBeTheReplicasOwnDirectory() {
+        assertThrows(IllegalStateException.class, () -> replica(replicaDir.toString()));
+    }
+
+    // ═══ HTTP source ═══
+
+    @Test
+    void httpSource_downloadsNewSegmentsAndDeletesDroppedOnes() throws IOException {
+        IndexReplicaService replica = replica(servePrimary());
+        replica.poll();
+        assertEquals(0, installs.get(), "the primary has no manifest yet");
+
+        primary.putSong(1, song(100, 200));
+        primary.putSong(2, song(300, 400));
+        snapshot();
+        replica.poll();
+
+        assertEquals(List.of(1L, 2L), songsServed());
+        assertEquals(Set.of(1L, 2L), replicaGenerations());
+
+        primary.removeSong(1);
+        assertTrue(primary.compact(1, CompactionThrottle.UNLIMITED));
+        snapshot();
+        replica.poll();
+
+        assertEquals(List.of(2L), songsServed());
+        Set<Long> generations = served.stream().map(IndexSegment::getGeneration).collect(Collectors.toSet());
+        assertEquals(generations, replicaGenerations(), "released generations are deleted locally");
+        verify(hashFilterService, times(1)).rebuild();
+    }
+
+    @Test
+    void httpSource_failedDownload_keepsServingThePreviousSnapshot() throws IOException {
+        IndexReplicaService replica = replica(servePrimary());
+        primary.putSong(1, song(100, 200));
+        snapshot();
+        replica.poll();
+        List<IndexSegment> before = served;
+
+        primary.putSong(2, song(300, 400));
+        snapshot();
+        long added = primary.snapshot().segments().get(1).getGeneration();
+        Files.delete(new SegmentFileStore(primaryDir).segmentPath(added));
+        replica.poll();
+
+        assertEquals(1, installs.get());
+        assertSame(before, served);
+    }
+
+    // ═══ Helpers ═══
+
+    private IndexReplicaService replica(String source) {
+        AudioProperties props = new AudioProperties();
+        props.getIndex().setReplicationRole(AudioProperties.Index.ReplicationRole.REPLICA);
+        props.getIndex().setReplicationSource(source);
+        props.getIndex().setDirectory(replicaDir.toString());
+        return new IndexReplicaService(indexService, hashFilterService, props);
+    }
+
+    private void snapshot() throws IOException {
+        SegmentedFingerprintIndex.Snapshot snapshot = primary.snapshot();
+        new SegmentFileStore(primaryDir).writeSnapshot(snapshot,
+                new IndexManifest.Watermark(snapshot.maxSongId(), snapshot.songCount(), 0), true);
+    }
+
+    private List<Long> songsServed() {
+        RoaringBitmap songs = new RoaringBitmap();
+        served.forEach(segment -> songs.or(segment.getSongs()));
+        List<Long> ids = new ArrayList<>();
+        songs.forEach((int id) -> ids.add((long) id));
+        return ids;
+    }
+
+    private Set<Long> replicaGenerations() throws IOException {
+        try (var files = Files.list(replicaDir)) {
+            return files.map(f -> f.getFileName().toString())
+                    .filter(name -> name.matches("segment-\\d+\\.seg"))
+                    .map(name -> Long.parseLong(name.substring(8, name.length() - 4)))
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    /** Serve the primary directory the way {@code IndexController} does. */
+    private String servePrimary() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/index/replication/manifest",
+                exchange -> send(exchange, primaryDir.resolve(IndexManifest.FILE)));
+        server.createContext("/api/index/replication/segments/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            long generation = Long.parseLong(path.substring(path.lastIndexOf('/') + 1));
+            send(exchange, new SegmentFileStore(primaryDir).segmentPath(generation));
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static void send(HttpExchange exchange, Path file) throws IOException {
+        if (!Files.exists(file)) {
+            exchange.sendResponseHeaders(404, -1);
+        } else {
+            byte[] bytes = Files.readAllBytes(file);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    private static PostingBuffer song(long... hashes) {
+        PostingBuffer buffer = new PostingBuffer();
+        for (int i = 0; i < hashes.length; i++) {
+            buffer.add(hashes[i], 0, i * 10);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,166 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.index.PackedPostings;
+import com.beatlens.model.dto.CacheWarmupDto;
+import com.beatlens.repository.PostingRepository;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class LookupCacheWarmerTest {
+
+    @TempDir
+    Path dir;
+
+    private final FingerprintLookupService lookupService = mock(FingerprintLookupService.class);
+    private final PostingRepository postingRepository = mock(PostingRepository.class);
+    private final AudioProperties props = new AudioProperties();
+
+    /** Hash batches the warm-up read from the posting table */
+    private final List<long[]> batches = new ArrayList<>();
+
+    LookupCacheWarmerTest() {
+        props.getLookupCache().setSampleRate(1);
+        props.getLookupCache().setWarmupRate(0);
+        when(lookupService.exactStats()).thenReturn(CacheStats.empty());
+        when(postingRepository.findByHashes(any())).thenAnswer(inv -> {
+            long[] hashes = inv.getArgument(0);
+            batches.add(hashes);
+            Map<Long, long[]> found = new HashMap<>();
+            for (long hash : hashes) found.put(hash, PackedPostings.EMPTY);
+            return found;
+        });
+    }
+
+    // ═══ Persistence ═══
+
+    @Test
+    void sketchPersistedBeforeRestart_warmsTheHottestHashesAfterIt() throws Exception {
+        props.getLookupCache().setWarmupHashes(3);
+        props.getLookupCache().setWarmupBatch(2);
+        LookupCacheWarmer before = warmer();
+        awaitState(before, "skipped");
+        for (long hash = 1; hash <= 6; hash++) {
+            for (int i = 0; i < hash * 10; i++) before.record(hash);
+        }
+        before.shutdown();
+
+        LookupCacheWarmer after = warmer();
+        CacheWarmupDto status = awaitState(after, "finished");
+
+        assertEquals(3, status.hashesTotal());
+        assertEquals(3, status.hashesLoaded());
+        assertEquals(List.of(2, 1), batches.stream().map(b -> b.length).toList());
+        Set<Long> warmed = batches.stream().flatMapToLong(Arrays::stream).boxed().collect(Collectors.toSet());
+        assertEquals(Set.of(4L, 5L, 6L), warmed);
+        verify(lookupService, times(2)).preload(any(), anyLong());
+    }
+
+    @Test
+    void sketchIsNotOverwrittenBeforeItWasRead() throws Exception {
+        LookupCacheWarmer before = warmer();
+        awaitState(before, "skipped");
+        for (int i = 0; i < 50; i++) before.record(42);
+        before.shutdown();
+        byte[] persisted = Files.readAllBytes(sketchFile());
+
+        LookupCacheWarmer after = warmer();   // warm-up not started yet
+        after.record(7);
+        after.persistSketch();
+
+        assertArrayEquals(persisted, Files.readAllBytes(sketchFile()));
+    }
+
+    // ═══ Warm-up ═══
+
+    @Test
+    void warmup_isPacedToTheConfiguredRate() throws Exception {
+        props.getLookupCache().setWarmupHashes(30);
+        props.getLookupCache().setWarmupBatch(10);
+        props.getLookupCache().setWarmupRate(100);
+        persistSketchOf(30);
+
+        long started = System.nanoTime();
+        awaitState(warmer(), "finished");
+
+        assertEquals(3, batches.size());
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(250),
+                "30 hashes at 100 a second take about 300 ms");
+    }
+
+    @Test
+    void warmup_databaseFailure_stopsAndReportsFailed() throws Exception {
+        props.getLookupCache().setWarmupBatch(5);
+        persistSketchOf(20);
+        doReturn(Map.of()).doThrow(new IllegalStateException("database down"))
+                .when(postingRepository).findByHashes(any());
+
+        CacheWarmupDto status = awaitState(warmer(), "failed");
+
+        assertEquals(20, status.hashesTotal());
+        assertEquals(5, status.hashesLoaded());
+    }
+
+    @Test
+    void inProcessIndex_neitherRecordsNorWarms() throws Exception {
+        props.getIndex().setEngine(AudioProperties.Index.Engine.MEMORY);
+        LookupCacheWarmer warmer = warmer();
+
+        warmer.record(1);
+        warmer.persistSketch();
+
+        assertEquals("disabled", warmer.getStatus().state());
+        assertEquals(0, warmer.getStatus().hotHashes());
+        assertFalse(Files.exists(sketchFile()));
+        verifyNoInteractions(postingRepository);
+    }
+
+    // ═══ Helpers ═══
+
+    private Path sketchFile() {
+        return dir.resolve("hot-hashes.bin");
+    }
+
+    private LookupCacheWarmer warmer() {
+        props.getLookupCache().setSketchFile(sketchFile().toString());
+        return new LookupCacheWarmer(lookupService, postingRepository, new SimpleMeterRegistry(), props);
+    }
+
+    /** Persist a sketch that saw hashes 1..{@code count} through a warmer that then stopped. */
+    private void persistSketchOf(int count) throws Exception {
+        LookupCacheWarmer before = warmer();
+        awaitState(before, "skipped");
+        for (long hash = 1; hash <= count; hash++) before.record(hash);
+        before.shutdown();
+        batches.clear();
+    }
+
+    /** Start the warmer's warm-up and wait until it reports {@code state}. */
+    private static CacheWarmupDto awaitState(LookupCacheWarmer warmer, String state) throws InterruptedException {
+        warmer.startWarmup();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!state.equals(warmer.getStatus().state())) {
+            if (System.nanoTime() > deadline) fail("warm-up never " + state + ": " + warmer.getStatus());
+            Thread.sleep(1);
+        }
+        return warmer.getStatus();
+    }
+}
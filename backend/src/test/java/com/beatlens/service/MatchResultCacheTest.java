@@ -0,0 +1,225 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.Deadline;
+import com.beatlens.model.dto.MatchResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchResultCacheTest {
+
+    private static final byte[] CLIP = {1, 2, 3, 4};
+    private static final MatchResponse FULL = new MatchResponse(List.of(), 40, 4.0, false, 1.0);
+    private static final MatchResponse PARTIAL = new MatchResponse(List.of(), 40, 4.0, true, 0.5);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AudioProperties props = new AudioProperties();
+    private final MatchResultCache cache = new MatchResultCache(meterRegistry, props);
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void repeatedUpload_isServedFromTheCache() {
+        AtomicInteger runs = new AtomicInteger();
+
+        assertSame(FULL, cache.get(CLIP, SongFilterService.Criteria.NONE, counting(runs, FULL)));
+        assertSame(FULL, cache.get(CLIP.clone(), SongFilterService.Criteria.NONE, counting(runs, FULL)));
+
+        assertEquals(1, runs.get());
+        assertEquals(1, requests("miss"));
+        assertEquals(1, requests("hit"));
+    }
+
+    @Test
+    void otherCriteriaOrOtherBytes_areMatchedSeparately() {
+        AtomicInteger runs = new AtomicInteger();
+        SongFilterService.Criteria rock = new SongFilterService.Criteria(Set.of(), Set.of("rock"), Set.of());
+
+        cache.get(CLIP, SongFilterService.Criteria.NONE, counting(runs, FULL));
+        cache.get(CLIP, rock, counting(runs, FULL));
+        cache.get(new byte[]{9}, SongFilterService.Criteria.NONE, counting(runs, FULL));
+
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void disabled_alwaysMatches() {
+        props.getResultCache().setEnabled(false);
+        MatchResultCache disabled = new MatchResultCache(new SimpleMeterRegistry(), props);
+        AtomicInteger runs = new AtomicInteger();
+
+        disabled.get(CLIP, SongFilterService.Criteria.NONE, counting(runs, FULL));
+        disabled.get(CLIP, SongFilterService.Criteria.NONE, counting(runs, FULL));
+
+        assertEquals(2, runs.get());
+    }
+
+    // ═══ Single flight ═══
+
+    @Test
+    void concurrentIdenticalUploads_shareOneMatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Future<MatchResponse> leader = pool.submit(() -> cache.get(CLIP, SongFilterService.Criteria.NONE,
+                blocking(release, runs, FULL)));
+        awaitRequests("miss", 1);
+        Future<MatchResponse> waiter = pool.submit(() -> cache.get(CLIP, SongFilterService.Criteria.NONE,
+                counting(runs, FULL)));
+        awaitRequests("coalesced", 1);
+
+        release.countDown();
+
+        assertSame(FULL, leader.get(5, TimeUnit.SECONDS));
+        assertSame(FULL, waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void leaderFailure_reachesWaitersAndIsNotKept() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Future<MatchResponse> leader = pool.submit(() -> cache.get(CLIP, SongFilterService.Criteria.NONE, () -> {
+            await(release);
+            throw new IllegalArgumentException("not audio");
+        }));
+        awaitRequests("miss", 1);
+        Future<MatchResponse> waiter = pool.submit(() -> cache.get(CLIP, SongFilterService.Criteria.NONE,
+                counting(runs, FULL)));
+        awaitRequests("coalesced", 1);
+
+        release.countDown();
+
+        assertInstanceOf(IllegalArgumentException.class, assertThrows(Exception.class, leader::get).getCause());
+        assertInstanceOf(IllegalArgumentException.class, assertThrows(Exception.class, waiter::get).getCause());
+        assertEquals(0, runs.get(), "waiters share the leader's exception");
+        assertSame(FULL, cache.get(CLIP, SongFilterService.Criteria.NONE, counting(runs, FULL)));
+        assertEquals(1, runs.get());
+    }
+
+    // ═══ Deadlines ═══
+
+    @Test
+    void partialResponse_isNotSharedOrKept() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Future<MatchResponse> leader = pool.submit(() -> cache.get(CLIP, SongFilterService.Criteria.NONE,
+                blocking(release, new AtomicInteger(), PARTIAL)));
+        awaitRequests("miss", 1);
+        Future<MatchResponse> waiter = pool.submit(() -> cache.get(CLIP, SongFilterService.Criteria.NONE,
+                counting(runs, FULL)));
+        awaitRequests("coalesced", 1);
+
+        release.countDown();
+
+        assertSame(PARTIAL, leader.get(5, TimeUnit.SECONDS));
+        assertSame(FULL, waiter.get(5, TimeUnit.SECONDS), "the waiter matches on its own budget");
+        assertEquals(1, runs.get());
+        assertSame(FULL, cache.get(CLIP, SongFilterService.Criteria.NONE, counting(runs, FULL)));
+        assertEquals(2, runs.get(), "the partial response was never cached");
+    }
+
+    @Test
+    void leaderOutOfTime_waitersMatchOnTheirOwnBudget() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Future<MatchResponse> leader = pool.submit(() -> cache.get(CLIP, SongFilterService.Criteria.NONE, () -> {
+            await(release);
+            throw new Deadline.ExceededException("decode");
+        }));
+        awaitRequests("miss", 1);
+        Future<MatchResponse> waiter = pool.submit(() -> cache.get(CLIP, SongFilterService.Criteria.NONE,
+                counting(runs, FULL)));
+        awaitRequests("coalesced", 1);
+
+        release.countDown();
+
+        assertInstanceOf(Deadline.ExceededException.class, assertThrows(Exception.class, leader::get).getCause());
+        assertSame(FULL, waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    // ═══ Invalidation ═══
+
+    @Test
+    void invalidate_dropsCachedResponses() {
+        AtomicInteger runs = new AtomicInteger();
+        cache.get(CLIP, SongFilterService.Criteria.NONE, counting(runs, FULL));
+
+        cache.invalidate();
+        cache.get(CLIP, SongFilterService.Criteria.NONE, counting(runs, FULL));
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void invalidate_whileMatching_responseIsNotServedAfterwards() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Future<MatchResponse> inFlight = pool.submit(() -> cache.get(CLIP, SongFilterService.Criteria.NONE,
+                blocking(release, runs, FULL)));
+        awaitRequests("miss", 1);
+
+        cache.invalidate();
+        release.countDown();
+        inFlight.get(5, TimeUnit.SECONDS);
+        cache.get(CLIP, SongFilterService.Criteria.NONE, counting(runs, FULL));
+
+        assertEquals(2, runs.get(), "the response computed before the change is not reused");
+    }
+
+    // ═══ Helpers ═══
+
+    private static Supplier<MatchResponse> counting(AtomicInteger runs, MatchResponse response) {
+        return () -> {
+            runs.incrementAndGet();
+            return response;
+        };
+    }
+
+    private static Supplier<MatchResponse> blocking(CountDownLatch release, AtomicInteger runs, MatchResponse response) {
+        return () -> {
+            await(release);
+            runs.incrementAndGet();
+            return response;
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) throw new IllegalStateException("never released");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("beatlens.match-cache.requests").tag("result", result).counter().count();
+    }
+
+    /** Wait until the cache has counted {@code count} requests with this outcome. */
+    private void awaitRequests(String result, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (requests(result) < count) {
+            if (System.nanoTime() > deadline) fail("no " + result + " request counted");
+            Thread.sleep(1);
+        }
+    }
+}
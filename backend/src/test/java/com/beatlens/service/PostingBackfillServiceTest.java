@@ -0,0 +1,31 @@
+package com.beatlens.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingBackfillServiceTest {
+
+    @Test
+    void conflictBackoff_growsFromThePauseUpToTheCap() {
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, PostingBackfillService.conflictBackoff(Duration.ofMillis(100), 1));
+            assertBetween(200, 400, PostingBackfillService.conflictBackoff(Duration.ofMillis(100), 3));
+            assertBetween(5_000, 10_000, PostingBackfillService.conflictBackoff(Duration.ofMillis(100), 40));
+        }
+    }
+
+    @Test
+    void conflictBackoff_zeroPause_stillWaits() {
+        for (int i = 0; i < 100; i++) {
+            assertBetween(25, 50, PostingBackfillService.conflictBackoff(Duration.ZERO, 1));
+        }
+    }
+
+    private static void assertBetween(long minMillis, long maxMillis, Duration actual) {
+        assertTrue(actual.toMillis() >= minMillis && actual.toMillis() <= maxMillis,
+                actual.toMillis() + " ms not in [" + minMillis + ", " + maxMillis + "]");
+    }
+}
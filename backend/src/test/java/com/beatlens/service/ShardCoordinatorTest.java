@@ -0,0 +1,240 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.Deadline;
+import com.beatlens.core.FingerprintGenerator;
+import com.beatlens.core.ShardAssignment;
+import com.beatlens.core.SongMatcher;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.event.SongIndexedEvent;
+import com.beatlens.model.dto.ShardMatchRequest;
+import com.beatlens.model.dto.ShardMatchResponse;
+import com.beatlens.repository.PostingRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ShardCoordinatorTest {
+
+    private static final String SECRET = "s3cret";
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final List<FingerprintGenerator.Fingerprint> QUERY = List.of(
+            new FingerprintGenerator.Fingerprint(10, 20, 5, 0),
+            new FingerprintGenerator.Fingerprint(11, 21, 6, 3));
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ShardCoordinator coordinator;
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        if (coordinator != null) coordinator.shutdown();
+        nodes.forEach(node -> node.server.stop(0));
+    }
+
+    // ═══ Scatter-gather ═══
+
+    @Test
+    void match_mergesTheRankingsOfEveryShard() throws Exception {
+        Node shard0 = node(exchange -> respond(exchange, 200, new ShardMatchResponse(0, List.of(
+                new ShardMatchResponse.Result(4, 12, 20, 1.5, 0.4)), 2, 2)));
+        Node shard1 = node(exchange -> respond(exchange, 200, new ShardMatchResponse(1, List.of(
+                new ShardMatchResponse.Result(7, 30, 35, 3.0, 0.9)), 2, 2)));
+        coordinator = coordinator(Duration.ofSeconds(5));
+
+        SongMatcher.MatchOutcome outcome = coordinator.match(QUERY, Deadline.NONE, SongFilterService.Criteria.NONE);
+
+        assertEquals(List.of(7L, 4L), outcome.getResults().stream().map(SongMatcher.MatchResult::getSongId).toList());
+        assertFalse(outcome.isPartial());
+        assertEquals(1.0, outcome.getHashCoverage());
+        for (Node node : List.of(shard0, shard1)) {
+            Call call = node.calls.poll(5, TimeUnit.SECONDS);
+            assertEquals("POST /api/shard/match", call.request());
+            assertEquals(SECRET, call.secret());
+            ShardMatchRequest request = JSON.readValue(call.body(), ShardMatchRequest.class);
+            assertArrayEquals(new long[]{QUERY.get(0).hash, QUERY.get(1).hash}, request.hashes());
+            assertArrayEquals(new int[]{0, 3}, request.anchorTimes());
+        }
+    }
+
+    @Test
+    void match_slowOrFailingShard_isLeftOutAndTheMatchIsPartial() {
+        node(exchange -> respond(exchange, 200, new ShardMatchResponse(0, List.of(
+                new ShardMatchResponse.Result(4, 12, 20, 1.5, 0.4)), 1, 2)));
+        Node slow = node(exchange -> respond(exchange, 200, new ShardMatchResponse(1, List.of(), 2, 2)));
+        // A first match loads the HTTP client and JSON classes, so only the shard's own delay can miss the timeout
+        ShardCoordinator warmUp = coordinator(Duration.ofSeconds(5));
+        assertEquals(0.75, warmUp.match(QUERY, Deadline.NONE, SongFilterService.Criteria.NONE).getHashCoverage());
+        warmUp.shutdown();
+        coordinator = coordinator(Duration.ofMillis(500));
+        slow.handler = exchange -> {
+            await(release);
+            respond(exchange, 200, new ShardMatchResponse(1, List.of(), 2, 2));
+        };
+
+        long start = System.nanoTime();
+        SongMatcher.MatchOutcome outcome = coordinator.match(QUERY, Deadline.NONE, SongFilterService.Criteria.NONE);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "the slow shard is not waited for");
+        assertEquals(List.of(4L), outcome.getResults().stream().map(SongMatcher.MatchResult::getSongId).toList());
+        assertTrue(outcome.isPartial());
+        assertEquals(0.25, outcome.getHashCoverage(), 1e-9, "half of shard 0, none of shard 1");
+
+        slow.handler = exchange -> respond(exchange, 500, null);
+        outcome = coordinator.match(QUERY, Deadline.NONE, SongFilterService.Criteria.NONE);
+        assertEquals(List.of(4L), outcome.getResults().stream().map(SongMatcher.MatchResult::getSongId).toList());
+        assertTrue(outcome.isPartial());
+    }
+
+    // ═══ Catalog changes ═══
+
+    @Test
+    void songChangedOnTheWrongShard_notifiesItsOwner() throws Exception {
+        node(exchange -> respond(exchange, 204, null));
+        Node owner = node(exchange -> respond(exchange, 204, null));
+        coordinator = coordinator(Duration.ofSeconds(5));
+
+        coordinator.onSongIndexed(new SongIndexedEvent(8, List.of()));   // shard 0 owns it: nothing to tell
+        coordinator.onSongIndexed(new SongIndexedEvent(7, List.of()));
+        coordinator.onSongDeleted(new SongDeletedEvent(9));
+
+        Set<String> requests = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            Call call = owner.calls.poll(5, TimeUnit.SECONDS);
+            assertNotNull(call, "owner notified of both changes");
+            assertEquals(SECRET, call.secret());
+            requests.add(call.request());
+        }
+        assertEquals(Set.of("PUT /api/shard/songs/7", "DELETE /api/shard/songs/9"), requests);
+        assertTrue(nodes.get(0).calls.isEmpty());
+    }
+
+    // ═══ Authentication ═══
+
+    @Test
+    void isTrustedNode_acceptsOnlyTheConfiguredSecret() {
+        node(exchange -> respond(exchange, 204, null));
+        node(exchange -> respond(exchange, 204, null));
+        coordinator = coordinator(Duration.ofSeconds(5));
+
+        assertTrue(coordinator.isTrustedNode(SECRET));
+        assertFalse(coordinator.isTrustedNode("s3cre"));
+        assertFalse(coordinator.isTrustedNode(""));
+        assertFalse(coordinator.isTrustedNode(null));
+    }
+
+    @Test
+    void singleShardWithoutSecret_trustsNoCaller() {
+        ShardCoordinator single = new ShardCoordinator(ShardAssignment.SINGLE, mock(PostingRepository.class),
+                mock(ApplicationEventPublisher.class), new AudioProperties());
+        try {
+            assertFalse(single.isTrustedNode(""));
+            assertFalse(single.isTrustedNode(null));
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    void shardedWithoutSecret_refusesToStart() {
+        AudioProperties props = new AudioProperties();
+        props.getShard().setCount(2);
+
+        assertThrows(IllegalStateException.class, () -> new ShardCoordinator(new ShardAssignment(2, 0),
+                mock(PostingRepository.class), mock(ApplicationEventPublisher.class), props));
+    }
+
+    // ═══ Fakes ═══
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private record Call(String request, String secret, String body) {}
+
+    /** A shard node listening on a local port, recording every call it gets */
+    private static final class Node {
+        final HttpServer server;
+        final BlockingQueue<Call> calls = new LinkedBlockingQueue<>();
+        volatile Handler handler;
+
+        Node(Handler handler) throws IOException {
+            this.handler = handler;
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/", exchange -> {
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                calls.add(new Call(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath(),
+                        exchange.getRequestHeaders().getFirst(ShardCoordinator.SECRET_HEADER), body));
+                this.handler.handle(exchange);
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+    }
+
+    private Node node(Handler handler) {
+        try {
+            Node node = new Node(handler);
+            nodes.add(node);
+            return node;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Coordinator for shard 0 of the nodes started so far. */
+    private ShardCoordinator coordinator(Duration timeout) {
+        AudioProperties props = new AudioProperties();
+        props.getShard().setCount(nodes.size());
+        props.getShard().setNodes(nodes.stream().map(Node::url).toList());
+        props.getShard().setTimeout(timeout);
+        props.getShard().setSecret(SECRET);
+        return new ShardCoordinator(new ShardAssignment(nodes.size(), 0), mock(PostingRepository.class),
+                mock(ApplicationEventPublisher.class), props);
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            byte[] bytes = JSON.writeValueAsBytes(body);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.beatlens.service;
+
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.model.Song;
+import com.beatlens.repository.SongRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SongMetadataServiceTest {
+
+    private final SongRepository songRepository = mock(SongRepository.class);
+    private final SongMetadataService service = new SongMetadataService(songRepository,
+            new CaffeineCacheManager(SongMetadataService.CACHE));
+
+    /** ID lists of every findAllById the service issued */
+    private final List<List<Long>> loads = new ArrayList<>();
+
+    SongMetadataServiceTest() {
+        when(songRepository.findAllById(any())).thenAnswer(inv -> {
+            List<Long> ids = new ArrayList<>();
+            inv.<Iterable<Long>>getArgument(0).forEach(ids::add);
+            loads.add(ids);
+            // Song 3 was deleted
+            return ids.stream().filter(id -> id != 3).map(SongMetadataServiceTest::song).toList();
+        });
+    }
+
+    @Test
+    void resolve_loadsOnlyTheMissingSongsInOneQuery() {
+        Map<Long, SongMetadataService.SongMetadata> first = service.resolve(List.of(1L, 2L));
+        Map<Long, SongMetadataService.SongMetadata> second = service.resolve(List.of(1L, 2L, 3L, 4L));
+
+        assertEquals(new SongMetadataService.SongMetadata(2, "Title 2", "Artist 2"), first.get(2L));
+        assertEquals(Set.of(1L, 2L, 4L), second.keySet(), "unknown songs are left out");
+        assertEquals(2, loads.size());
+        assertEquals(Set.of(1L, 2L), Set.copyOf(loads.get(0)));
+        assertEquals(Set.of(3L, 4L), Set.copyOf(loads.get(1)), "cached songs are not read again");
+    }
+
+    @Test
+    void onSongDeleted_evictsTheSong() {
+        service.resolve(List.of(1L, 2L));
+
+        service.onSongDeleted(new SongDeletedEvent(1));
+        service.resolve(List.of(1L, 2L));
+
+        assertEquals(List.of(1L), loads.get(1));
+    }
+
+    @Test
+    void onSongDeleted_runsOnlyAfterTheDeleteCommits() throws NoSuchMethodException {
+        // Evicting earlier would let a concurrent match reload the row before the tombstone is visible
+        TransactionalEventListener listener = SongMetadataService.class
+                .getMethod("onSongDeleted", SongDeletedEvent.class)
+                .getAnnotation(TransactionalEventListener.class);
+
+        assertNotNull(listener);
+        assertEquals(TransactionPhase.AFTER_COMMIT, listener.phase());
+    }
+
+    private static Song song(long id) {
+        Song song = new Song();
+        song.setId(id);
+        song.setTitle("Title " + id);
+        song.setArtist("Artist " + id);
+        return song;
+    }
+}
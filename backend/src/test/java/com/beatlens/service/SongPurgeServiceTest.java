@@ -0,0 +1,174 @@
+package com.beatlens.service;
+
+import com.beatlens.config.AudioProperties;
+import com.beatlens.core.ShardAssignment;
+import com.beatlens.core.SongMatcher;
+import com.beatlens.event.SongDeletedEvent;
+import com.beatlens.model.dto.PurgeStatusDto;
+import com.beatlens.repository.PostingRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SongPurgeServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PostingRepository postingRepository = mock(PostingRepository.class);
+    private final FingerprintIndexService indexService = mock(FingerprintIndexService.class);
+    private final FingerprintLookupService lookupService = mock(FingerprintLookupService.class);
+    private final SongPurgeService purgeService;
+
+    SongPurgeServiceTest() {
+        AudioProperties props = new AudioProperties();
+        props.getPostings().setPurgeBatchRows(2);
+        props.getPostings().setPurgePause(Duration.ZERO);
+        purgeService = new SongPurgeService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                postingRepository, indexService, lookupService, ShardAssignment.SINGLE,
+                new SimpleMeterRegistry(), props);
+    }
+
+    @AfterEach
+    void shutdown() {
+        purgeService.shutdown();
+    }
+
+    // ═══ Screening ═══
+
+    /** Songs 1, 2 and 3 each have one posting at offset 10 * songId for every hash. */
+    private final List<long[]> prefetched = new ArrayList<>();
+    private final SongMatcher.FingerprintLookup lookup = new SongMatcher.FingerprintLookup() {
+        @Override
+        public List<SongMatcher.FingerprintEntry> lookup(long hash) {
+            return List.of(new SongMatcher.FingerprintEntry(1, 10),
+                    new SongMatcher.FingerprintEntry(2, 20),
+                    new SongMatcher.FingerprintEntry(3, 30));
+        }
+
+        @Override
+        public void prefetch(long[] hashes) {
+            prefetched.add(hashes);
+        }
+    };
+
+    @Test
+    void screen_nothingDeleted_returnsTheDelegate() {
+        SongMatcher.CoarseLookup coarse = coarseHash -> new long[]{1, 2};
+
+        assertSame(lookup, purgeService.screen(lookup));
+        assertSame(coarse, purgeService.screenCoarse(coarse));
+    }
+
+    @Test
+    void screen_dropsPostingsOfDeletedSongs() {
+        purgeService.onSongDeleted(new SongDeletedEvent(2));
+
+        SongMatcher.FingerprintLookup screened = purgeService.screen(lookup);
+
+        assertEquals(List.of(1L, 3L), screened.lookup(99).stream().map(e -> e.songId).toList());
+        List<Long> visited = new ArrayList<>();
+        screened.forEachPosting(99, (songId, timeOffset) -> visited.add(songId));
+        assertEquals(List.of(1L, 3L), visited);
+        long[] hashes = {4, 5};
+        screened.prefetch(hashes);
+        assertSame(hashes, prefetched.get(0));
+    }
+
+    @Test
+    void screenCoarse_dropsDeletedSongsAndKeepsUntouchedArrays() {
+        purgeService.onSongDeleted(new SongDeletedEvent(2));
+        long[] withoutDeleted = {1, 3};
+        List<long[]> coarsePrefetched = new ArrayList<>();
+
+        SongMatcher.CoarseLookup screened = purgeService.screenCoarse(SongMatcher.CoarseLookup.of(
+                coarseHash -> switch ((int) coarseHash) {
+                    case 0 -> new long[]{1, 2, 3};
+                    case 1 -> withoutDeleted;
+                    default -> null;
+                }, coarsePrefetched::add));
+
+        assertArrayEquals(new long[]{1, 3}, screened.lookupSongs(0));
+        assertSame(withoutDeleted, screened.lookupSongs(1));
+        assertArrayEquals(new long[0], screened.lookupSongs(2));
+        long[] coarseHashes = {0, 1, 2};
+        screened.prefetch(coarseHashes);
+        assertSame(coarseHashes, coarsePrefetched.get(0));
+    }
+
+    @Test
+    void screen_idBeyondTheIndexableRange_doesNotHideTheSongItAliases() {
+        purgeService.onSongDeleted(new SongDeletedEvent((1L << 32) | 2));
+
+        assertSame(lookup, purgeService.screen(lookup));
+    }
+
+    // ═══ Purge ═══
+
+    @Test
+    void purge_deletesBatchesUntilNoneLeftThenTheSongRow() {
+        tombstoned(7L);
+        when(postingRepository.deleteBatchBySongId(7L, 2))
+                .thenReturn(new long[]{100, 101}, new long[]{102}, new long[0]);
+
+        purgeService.purge();
+
+        verify(lookupService).removeSong(7L, new long[]{100, 101});
+        verify(lookupService).removeSong(7L, new long[]{102});
+        verify(postingRepository, times(3)).deleteBatchBySongId(7L, 2);
+        verify(jdbcTemplate).update("DELETE FROM songs WHERE id = ? AND deleted_at IS NOT NULL", 7L);
+        verify(postingRepository).deleteBySongId(7L);
+        assertEquals(new PurgeStatusDto(0, null, 3, 1, 3), purgeService.getStatus());
+        assertArrayEquals(new long[]{6}, purgeService.screenCoarse(coarseHash -> new long[]{6, 7}).lookupSongs(0));
+    }
+
+    @Test
+    void purge_failedBatch_stopsAndLeavesTheSongRow() {
+        tombstoned(7L, 8L);
+        when(postingRepository.deleteBatchBySongId(7L, 2)).thenThrow(new IllegalStateException("lock timeout"));
+
+        purgeService.purge();
+
+        verify(postingRepository, never()).deleteBatchBySongId(eq(8L), anyInt());
+        verify(jdbcTemplate, never()).update(anyString(), anyLong());
+        assertEquals(0, purgeService.getStatus().songsPurged());
+        assertNull(purgeService.getStatus().currentSongId());
+    }
+
+    @Test
+    void purge_onReplica_onlyScreens() {
+        tombstoned(7L);
+        when(indexService.isReplica()).thenReturn(true);
+
+        purgeService.purge();
+
+        verifyNoInteractions(postingRepository, lookupService);
+        assertArrayEquals(new long[0], purgeService.screenCoarse(coarseHash -> new long[]{7}).lookupSongs(0));
+    }
+
+    /** Answer every tombstone query with these song IDs. */
+    private void tombstoned(Long... songIds) {
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (long songId : songIds) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong(1)).thenReturn(songId);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+    }
+}
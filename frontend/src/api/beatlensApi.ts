@@ -1,4 +1,4 @@
-import type { Song, MatchResponse, Stats } from './types';
+import type { Song, MatchResponse, SegmentedMatchResponse, Stats } from './types';
 
 const BASE = '/api';
 
@@ -61,6 +61,15 @@ export async function matchAudio(blob: Blob): Promise<MatchResponse> {
   return handleResponse<MatchResponse>(res);
 }
 
+/** Match a long recording and get a timeline of the songs it contains. */
+export async function matchSegments(blob: Blob): Promise<SegmentedMatchResponse> {
+  const form = new FormData();
+  form.append('file', blob, 'query.audio');
+
+  const res = await fetch(`${BASE}/match/segments`, { method: 'POST', body: form });
+  return handleResponse<SegmentedMatchResponse>(res);
+}
+
 /** Get database statistics. */
 export async function getStats(): Promise<Stats> {
   const res = await fetch(`${BASE}/stats`);
@@ -6,6 +6,8 @@ export interface Song {
   durationSeconds: number | null;
   fingerprintCount: number;
   indexedAt: string;
+  catalog: string | null;
+  tags: string[];
 }
 
 /** A single match result from the /api/match endpoint */
@@ -24,6 +26,32 @@ export interface MatchResponse {
   results: MatchResult[];
   queryFingerprints: number;
   queryDurationSeconds: number;
+  /** True when the server deadline cut hash lookups short */
+  partial: boolean;
+  /** Fraction of query hashes consulted before scoring (0-1) */
+  hashCoverage: number;
+}
+
+/** One segment of a timeline match from /api/match/segments */
+export interface MatchSegment {
+  songId: number;
+  title: string;
+  artist: string;
+  startSeconds: number;
+  endSeconds: number;
+  songOffsetSeconds: number;
+  confidence: number;
+}
+
+/** Response from the /api/match/segments endpoint */
+export interface SegmentedMatchResponse {
+  segments: MatchSegment[];
+  queryFingerprints: number;
+  queryDurationSeconds: number;
+  /** True when the server deadline cut hash lookups short */
+  partial: boolean;
+  /** Fraction of distinct query hashes looked up before scoring (0-1) */
+  hashCoverage: number;
 }
 
 /** Response from the /api/stats endpoint */